@@ -1,7 +1,9 @@
 package org.myjtools.openbbt.cli;
 
+import org.myjtools.openbbt.core.OpenBBTException;
 import org.myjtools.openbbt.core.OpenBBTRuntime;
 import org.myjtools.openbbt.core.persistence.AttachmentRepository;
+import org.myjtools.openbbt.core.persistence.RepositoryCleaner;
 import org.myjtools.openbbt.core.persistence.TestExecutionRepository;
 import picocli.CommandLine;
 
@@ -25,10 +27,12 @@ public final class DeleteExecutionCommand extends AbstractCommand {
         OpenBBTRuntime runtime = OpenBBTRuntime.repositoryOnly(getContext().configuration());
         TestExecutionRepository executionRepo = runtime.getRepository(TestExecutionRepository.class);
         AttachmentRepository attachmentRepo = runtime.getRepository(AttachmentRepository.class);
-        if (attachmentRepo != null) {
-            attachmentRepo.deleteAttachments(executionId);
+        try (var cleaner = new RepositoryCleaner(null, executionRepo, attachmentRepo)) {
+            var progress = cleaner.deleteExecution(executionId).completion().join();
+            if (progress.state() == RepositoryCleaner.State.FAILED) {
+                throw new OpenBBTException("Failed to delete execution {}: {}", executionId, progress.error());
+            }
         }
-        executionRepo.deleteExecution(executionId);
         System.out.println("Execution " + executionId + " deleted.");
     }
 }
@@ -1,7 +1,9 @@
 package org.myjtools.openbbt.cli;
 
+import org.myjtools.openbbt.core.OpenBBTException;
 import org.myjtools.openbbt.core.OpenBBTRuntime;
 import org.myjtools.openbbt.core.persistence.AttachmentRepository;
+import org.myjtools.openbbt.core.persistence.RepositoryCleaner;
 import org.myjtools.openbbt.core.persistence.TestExecutionRepository;
 import org.myjtools.openbbt.core.persistence.TestPlanRepository;
 import picocli.CommandLine;
@@ -28,16 +30,22 @@ public final class DeletePlanCommand extends AbstractCommand {
         TestExecutionRepository executionRepo = runtime.getRepository(TestExecutionRepository.class);
         AttachmentRepository attachmentRepo = runtime.getRepository(AttachmentRepository.class);
 
-        var plan = planRepo.getPlan(planId)
+        planRepo.getPlan(planId)
             .orElseThrow(() -> new IllegalArgumentException("Plan not found: " + planId));
 
-        // Delete file-system attachments before the DB cascades remove the execution records
-        if (executionRepo != null && attachmentRepo != null) {
-            executionRepo.listExecutions(planId, plan.planNodeRoot(), 0, 0)
-                .forEach(ex -> attachmentRepo.deleteAttachments(ex.executionID()));
+        try (var cleaner = new RepositoryCleaner(planRepo, executionRepo, attachmentRepo, this::printProgress)) {
+            var progress = cleaner.deletePlan(planId).completion().join();
+            if (progress.state() == RepositoryCleaner.State.FAILED) {
+                throw new OpenBBTException("Failed to delete plan {}: {}", planId, progress.error());
+            }
         }
-        // Deleting the plan cascades: executions, execution_nodes, attachment records, plan_nodes
-        planRepo.deletePlan(planId);
         System.out.println("Plan " + planId + " and all its executions deleted.");
     }
+
+    private void printProgress(RepositoryCleaner.Progress progress) {
+        System.out.print("\rDeleting plan... " + progress.deletedRows() + " rows deleted");
+        if (progress.state() != RepositoryCleaner.State.RUNNING) {
+            System.out.println();
+        }
+    }
 }
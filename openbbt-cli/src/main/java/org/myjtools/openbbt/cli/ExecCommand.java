@@ -5,6 +5,7 @@ import org.myjtools.openbbt.core.OpenBBTContext;
 import org.myjtools.openbbt.core.OpenBBTException;
 import org.myjtools.openbbt.core.OpenBBTPluginManager;
 import org.myjtools.openbbt.core.OpenBBTRuntime;
+import org.myjtools.openbbt.core.execution.EffectiveResult;
 import org.myjtools.openbbt.core.execution.ExecutionResult;
 import org.myjtools.openbbt.core.execution.TestExecution;
 import org.myjtools.openbbt.core.execution.TestPlanExecutor;
@@ -17,6 +18,7 @@ import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 @CommandLine.Command(
     name = "exec",
@@ -40,6 +42,18 @@ public final class ExecCommand extends AbstractCommand {
     )
     boolean json;
 
+    @CommandLine.Option(
+        names = {"--rerun-failed"},
+        description = "UUID of a previous execution: execute again only its failed, error or undefined test cases"
+    )
+    UUID rerunFailed;
+
+    @CommandLine.Option(
+        names = {"--changed-since"},
+        description = "UUID of a previous execution: execute only the test cases affected by the resources changed since then, carrying forward the results of the rest"
+    )
+    UUID changedSince;
+
     @Override
     protected void execute() {
         OpenBBTContext context = getContext();
@@ -53,8 +67,7 @@ public final class ExecCommand extends AbstractCommand {
 
     private void executeAttached(OpenBBTContext context) {
         OpenBBTRuntime runtime = buildRuntime(context);
-        TestPlan plan = buildPlan(context, runtime);
-        TestExecution execution = new TestPlanExecutor(runtime).execute(plan.planID(), null);
+        TestExecution execution = run(context, runtime, null);
 
         // TODO: step 4 - reports
 
@@ -64,12 +77,24 @@ public final class ExecCommand extends AbstractCommand {
             result = execRepo.getExecutionNodeResult(execution.executionRootNodeID());
         }
         String resultName = result.map(ExecutionResult::name).orElse("-");
+        EffectiveResult effective = execution.rerunOf() == null ? null : EffectiveResult.of(
+            runtime.getRepository(TestExecutionRepository.class), execution.executionID()
+        );
 
         if (json) {
             JsonObject obj = new JsonObject();
             obj.addProperty("executionId", execution.executionID().toString());
             obj.addProperty("result", resultName);
+            if (effective != null) {
+                obj.addProperty("rerunOf", execution.rerunOf().toString());
+                obj.addProperty("effectiveResult", effective.result().name());
+                obj.addProperty("effectivePassedCount", effective.passedCount());
+                obj.addProperty("effectiveErrorCount", effective.errorCount());
+                obj.addProperty("effectiveFailedCount", effective.failedCount());
+            }
             System.out.println(obj);
+        } else if (effective != null) {
+            System.out.println(execution.executionID() + " " + resultName + " (effective " + effective.result().name() + ")");
         } else {
             System.out.println(execution.executionID() + " " + resultName);
         }
@@ -83,8 +108,7 @@ public final class ExecCommand extends AbstractCommand {
         Thread bgThread = new Thread(() -> {
             try {
                 OpenBBTRuntime runtime = buildRuntime(context);
-                TestPlan plan = buildPlan(context, runtime);
-                new TestPlanExecutor(runtime).execute(plan.planID(), id -> {
+                run(context, runtime, id -> {
                     executionIdRef.set(id);
                     latch.countDown();
                 });
@@ -121,6 +145,27 @@ public final class ExecCommand extends AbstractCommand {
         }
     }
 
+    private TestExecution run(OpenBBTContext context, OpenBBTRuntime runtime, Consumer<UUID> onExecutionCreated) {
+        if (rerunFailed != null && changedSince != null) {
+            throw new OpenBBTException("Options --rerun-failed and --changed-since cannot be used together");
+        }
+        TestPlanExecutor executor = new TestPlanExecutor(runtime);
+        try {
+            if (rerunFailed != null) {
+                // the plan of the original execution is re-used as is, without rebuilding it
+                return executor.rerunFailed(rerunFailed, onExecutionCreated);
+            }
+            TestPlan plan = buildPlan(context, runtime);
+            if (changedSince != null) {
+                return executor.executeChangedSince(plan.planID(), changedSince, onExecutionCreated);
+            }
+            return executor.execute(plan.planID(), onExecutionCreated);
+        } finally {
+            // expired executions may still be being archived in the background
+            runtime.closeRepositoryCleaner();
+        }
+    }
+
     private OpenBBTRuntime buildRuntime(OpenBBTContext context) {
         // Step 1: install plugins
         if (!context.plugins().isEmpty()) {
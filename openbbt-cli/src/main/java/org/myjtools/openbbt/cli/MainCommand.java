@@ -23,6 +23,7 @@ import java.util.Map;
 		PlanCommand.class,
 		ServeCommand.class,
 		ShowConfigCommand.class,
+		TestStatsCommand.class,
 		LspCommand.class
 	}
 )
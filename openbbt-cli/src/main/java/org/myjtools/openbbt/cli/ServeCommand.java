@@ -2,10 +2,12 @@ package org.myjtools.openbbt.cli;
 
 import org.myjtools.imconfig.Config;
 import org.myjtools.openbbt.jsonrpc.serve.JsonRpcServer;
+import org.myjtools.openbbt.core.OpenBBTConfig;
 import org.myjtools.openbbt.core.OpenBBTContext;
 import org.myjtools.openbbt.core.OpenBBTException;
 import org.myjtools.openbbt.core.OpenBBTPluginManager;
 import org.myjtools.openbbt.core.OpenBBTRuntime;
+import org.myjtools.openbbt.core.execution.TestExecution;
 import org.myjtools.openbbt.core.execution.TestPlanExecutor;
 import org.myjtools.openbbt.core.persistence.AttachmentRepository;
 import org.myjtools.openbbt.core.persistence.TestExecutionRepository;
@@ -14,9 +16,11 @@ import org.myjtools.openbbt.core.testplan.TestPlan;
 import org.myjtools.openbbt.core.util.Log;
 import picocli.CommandLine;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 @CommandLine.Command(
@@ -27,6 +31,17 @@ public final class ServeCommand extends AbstractCommand {
 
     private static final Log log = Log.of();
 
+    /**
+     * The interval of the progress notifications, whose default is given by the definition
+     * of the property
+     */
+    private static Duration progressInterval(OpenBBTRuntime runtime) {
+        return runtime.configuration()
+            .getInteger(OpenBBTConfig.SERVE_PROGRESS_INTERVAL)
+            .map(Duration::ofMillis)
+            .orElseThrow(() -> new OpenBBTException("Missing configuration property {}", OpenBBTConfig.SERVE_PROGRESS_INTERVAL));
+    }
+
     @Override
     protected void execute() {
         LogConfig.redirectToFile(Path.of(System.getProperty("user.home"), ".openbbt", "openbbt.log"));
@@ -38,32 +53,39 @@ public final class ServeCommand extends AbstractCommand {
         // which would prevent exec from writing execution records.
         OpenBBTRuntime runtime = new OpenBBTRuntime(context.configuration());
 
-        JsonRpcServer.ExecHandler execHandler = (onExecutionCreated, profileName, suites) -> {
-            if (!context.plugins().isEmpty()) {
-                OpenBBTPluginManager pluginManager = new OpenBBTPluginManager(context.configuration());
-                for (String plugin : context.plugins()) {
-                    try {
-                        pluginManager.installPlugin(plugin);
-                    } catch (Exception e) {
-                        log.error(e, "Failed to install plugin {}", plugin);
-                    }
+        JsonRpcServer.ExecHandler execHandler = new JsonRpcServer.ExecHandler() {
+            @Override
+            public TestExecution exec(BiConsumer<UUID, UUID> onExecutionCreated, String profileName, List<String> suites) {
+                installPlugins(context);
+                OpenBBTContext execContext = suites.isEmpty()
+                    ? context
+                    : readConfigurationFile().createContext(inputParams, suites);
+                TestPlan plan;
+                OpenBBTRuntime execRuntime = runtime.withProfile(profile(profileName));
+                try {
+                    plan = execRuntime.buildTestPlan(execContext, suites);
+                } catch (Exception e) {
+                    throw new OpenBBTException(e, "Failed to build test plan: {}", e.getMessage());
                 }
+                final var planId = plan.planID();
+                Consumer<UUID> cb = onExecutionCreated != null
+                    ? id -> onExecutionCreated.accept(id, planId)
+                    : null;
+                return new TestPlanExecutor(execRuntime).execute(planId, cb);
             }
-            OpenBBTContext execContext = suites.isEmpty()
-                ? context
-                : readConfigurationFile().createContext(inputParams, suites);
-            TestPlan plan;
-            OpenBBTRuntime execRuntime = runtime.withProfile(profile(profileName));
-            try {
-                plan = execRuntime.buildTestPlan(execContext, suites);
-            } catch (Exception e) {
-                throw new OpenBBTException(e, "Failed to build test plan: {}", e.getMessage());
+
+            @Override
+            public TestExecution rerunFailed(BiConsumer<UUID, UUID> onExecutionCreated, UUID executionID, String profileName) {
+                installPlugins(context);
+                OpenBBTRuntime execRuntime = runtime.withProfile(profile(profileName));
+                UUID planId = execRuntime.getRepository(TestExecutionRepository.class).getExecution(executionID)
+                    .orElseThrow(() -> new OpenBBTException("Execution with ID {} not found", executionID))
+                    .planID();
+                Consumer<UUID> cb = onExecutionCreated != null
+                    ? id -> onExecutionCreated.accept(id, planId)
+                    : null;
+                return new TestPlanExecutor(execRuntime).rerunFailed(executionID, cb);
             }
-            final var planId = plan.planID();
-            Consumer<UUID> cb = onExecutionCreated != null
-                ? id -> onExecutionCreated.accept(id, planId)
-                : null;
-            return new TestPlanExecutor(execRuntime).execute(planId, cb);
         };
 
         JsonRpcServer.PlanHandler planHandler = () -> {
@@ -74,16 +96,36 @@ public final class ServeCommand extends AbstractCommand {
             }
         };
 
-        new JsonRpcServer(System.in, System.out, new JsonRpcServer.RepositoryFactory() {
-            @Override public TestPlanRepository open() {
-                return runtime.getRepository(TestPlanRepository.class);
-            }
-            @Override public TestExecutionRepository openExecution() {
-                return runtime.getRepository(TestExecutionRepository.class);
-            }
-            @Override public AttachmentRepository openAttachment() {
-                return runtime.getRepository(AttachmentRepository.class);
+        try {
+            new JsonRpcServer(System.in, System.out, new JsonRpcServer.RepositoryFactory() {
+                @Override public TestPlanRepository open() {
+                    return runtime.getRepository(TestPlanRepository.class);
+                }
+                @Override public TestExecutionRepository openExecution() {
+                    return runtime.getRepository(TestExecutionRepository.class);
+                }
+                @Override public AttachmentRepository openAttachment() {
+                    return runtime.getRepository(AttachmentRepository.class);
+                }
+            }, execHandler, planHandler, runtime::getContributors)
+                .notifyProgress(runtime.eventBus(), progressInterval(runtime))
+                .run();
+        } finally {
+            // expired executions may still be being archived in the background
+            runtime.closeRepositoryCleaner();
+        }
+    }
+
+    private void installPlugins(OpenBBTContext context) {
+        if (!context.plugins().isEmpty()) {
+            OpenBBTPluginManager pluginManager = new OpenBBTPluginManager(context.configuration());
+            for (String plugin : context.plugins()) {
+                try {
+                    pluginManager.installPlugin(plugin);
+                } catch (Exception e) {
+                    log.error(e, "Failed to install plugin {}", plugin);
+                }
             }
-        }, execHandler, planHandler, runtime::getContributors).run();
+        }
     }
 }
@@ -0,0 +1,105 @@
+package org.myjtools.openbbt.cli;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.myjtools.openbbt.core.OpenBBTRuntime;
+import org.myjtools.openbbt.core.execution.TestCaseStats;
+import org.myjtools.openbbt.core.persistence.TestExecutionRepository;
+import org.myjtools.openbbt.core.persistence.TestPlanRepository;
+import org.myjtools.openbbt.core.testplan.TestPlan;
+import org.myjtools.openbbt.core.testplan.TestPlanNode;
+import picocli.CommandLine;
+
+import java.util.List;
+import java.util.UUID;
+
+@CommandLine.Command(
+    name = "test-stats",
+    description = "Show the execution statistics of the test cases of a plan, such as the flakiest or the slowest ones"
+)
+public final class TestStatsCommand extends AbstractCommand {
+
+    @CommandLine.Option(
+        names = {"--plan-id"},
+        description = "UUID of the test plan",
+        required = true
+    )
+    UUID planId;
+
+    @CommandLine.Option(
+        names = {"--plan-node-id"},
+        description = "UUID of a test case node, to show only its statistics"
+    )
+    UUID planNodeId;
+
+    @CommandLine.Option(
+        names = {"--ranking"},
+        description = "Ranking of the test cases: ${COMPLETION-CANDIDATES} (default: FLAKY)",
+        defaultValue = "FLAKY"
+    )
+    TestCaseStats.Ranking ranking;
+
+    @CommandLine.Option(
+        names = {"--max"},
+        description = "Maximum number of test cases to show, 0 means no limit (default: 20)",
+        defaultValue = "20"
+    )
+    int max;
+
+    @CommandLine.Option(
+        names = {"--json"},
+        description = "Output as JSON array",
+        defaultValue = "false"
+    )
+    boolean json;
+
+    @Override
+    protected void execute() {
+        OpenBBTRuntime runtime = OpenBBTRuntime.repositoryOnly(getContext().configuration());
+        TestPlanRepository planRepository = runtime.getRepository(TestPlanRepository.class);
+        TestExecutionRepository repository = runtime.getRepository(TestExecutionRepository.class);
+        TestPlan plan = planRepository.getPlan(planId)
+            .orElseThrow(() -> new IllegalArgumentException("Plan not found: " + planId));
+        List<TestCaseStats> statsList;
+        if (planNodeId != null) {
+            TestPlanNode node = planRepository.getNodeData(planNodeId)
+                .orElseThrow(() -> new IllegalArgumentException("Node not found: " + planNodeId));
+            statsList = repository.getTestCaseStats(plan.projectID(), TestCaseStats.keyOf(node)).stream().toList();
+        } else {
+            statsList = repository.listTestCaseStats(plan.projectID(), ranking, max);
+        }
+        if (json) {
+            JsonArray result = new JsonArray();
+            for (TestCaseStats stats : statsList) {
+                JsonObject obj = new JsonObject();
+                obj.addProperty("testCaseKey", stats.testCaseKey());
+                obj.add("name",       stats.name()       != null ? new JsonPrimitive(stats.name())                  : JsonNull.INSTANCE);
+                obj.add("planNodeId", stats.planNodeID() != null ? new JsonPrimitive(stats.planNodeID().toString()) : JsonNull.INSTANCE);
+                obj.addProperty("executionCount", stats.executionCount());
+                obj.add("lastResult", stats.lastResult() != null ? new JsonPrimitive(stats.lastResult().name()) : JsonNull.INSTANCE);
+                obj.addProperty("trend",          stats.trend());
+                obj.addProperty("failureRate",    stats.failureRate());
+                obj.addProperty("flipCount",      stats.flipCount());
+                obj.addProperty("recentFlips",    stats.recentFlips());
+                obj.addProperty("durationAvgMs",  Math.round(stats.durationEwma()));
+                obj.addProperty("durationP95Ms",  Math.round(stats.durationP95()));
+                result.add(obj);
+            }
+            out().println(result);
+        } else {
+            for (TestCaseStats stats : statsList) {
+                out().printf(
+                    "%8dms p95 %8dms avg %5.1f%% failed %3d flips  %-20s %s%n",
+                    Math.round(stats.durationP95()),
+                    Math.round(stats.durationEwma()),
+                    stats.failureRate() * 100,
+                    stats.recentFlips(),
+                    stats.trend().length() > 20 ? stats.trend().substring(0, 20) : stats.trend(),
+                    stats.name() != null ? stats.name() : stats.testCaseKey()
+                );
+            }
+        }
+    }
+}
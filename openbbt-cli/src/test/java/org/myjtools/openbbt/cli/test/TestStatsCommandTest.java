@@ -0,0 +1,124 @@
+package org.myjtools.openbbt.cli.test;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.myjtools.imconfig.Config;
+import org.myjtools.openbbt.cli.MainCommand;
+import org.myjtools.openbbt.core.OpenBBTConfig;
+import org.myjtools.openbbt.core.OpenBBTFile;
+import org.myjtools.openbbt.core.OpenBBTRuntime;
+import org.myjtools.openbbt.core.execution.ExecutionResult;
+import org.myjtools.openbbt.core.persistence.TestExecutionRepository;
+import org.myjtools.openbbt.core.persistence.TestPlanRepository;
+import org.myjtools.openbbt.core.testplan.NodeType;
+import org.myjtools.openbbt.core.testplan.TestPlan;
+import org.myjtools.openbbt.core.testplan.TestPlanNode;
+import org.myjtools.openbbt.core.testplan.TestProject;
+import picocli.CommandLine;
+
+import java.io.FileReader;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.myjtools.openbbt.cli.test.ListExecutionsCommandTest.captureStdout;
+import static org.myjtools.openbbt.cli.test.ListExecutionsCommandTest.countOccurrences;
+import static org.myjtools.openbbt.cli.test.ListExecutionsCommandTest.deleteDirectory;
+
+class TestStatsCommandTest {
+
+    static final String ENV_PATH = "target/.openbbt-teststats";
+
+    static String planId;
+    static String flakyNodeId;
+
+    static final String[] BASE_ARGS = {
+        "-f", "src/test/resources/openbbt.yaml",
+        "-D" + OpenBBTConfig.ENV_PATH + "=" + ENV_PATH,
+        "-D" + OpenBBTConfig.PERSISTENCE_MODE + "=" + OpenBBTConfig.PERSISTENCE_MODE_FILE
+    };
+
+    @BeforeAll
+    static void setup() throws Exception {
+        deleteDirectory(Path.of(ENV_PATH));
+        new CommandLine(new MainCommand()).execute(
+            "install",
+            "-f", "src/test/resources/openbbt.yaml",
+            "-D" + OpenBBTConfig.ENV_PATH + "=" + ENV_PATH
+        );
+        try (var reader = new FileReader("src/test/resources/openbbt.yaml")) {
+            OpenBBTFile file = OpenBBTFile.read(reader);
+            Map<String, String> params = Map.of(
+                OpenBBTConfig.ENV_PATH, ENV_PATH,
+                OpenBBTConfig.PERSISTENCE_MODE, OpenBBTConfig.PERSISTENCE_MODE_FILE
+            );
+            var context = file.createContext(Config.ofMap(params), List.of());
+            OpenBBTRuntime runtime = new OpenBBTRuntime(context.configuration());
+            TestPlanRepository planRepo = runtime.getRepository(TestPlanRepository.class);
+            TestExecutionRepository execRepo = runtime.getRepository(TestExecutionRepository.class);
+
+            UUID root = planRepo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_PLAN).name("root"));
+            UUID flaky = planRepo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("flaky test").identifier("T1"));
+            UUID slow = planRepo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("slow test").identifier("T2"));
+            planRepo.attachChildNodeLast(root, flaky);
+            planRepo.attachChildNodeLast(root, slow);
+            UUID projectId = planRepo.persistProject(new TestProject("P", "desc", "Org", List.of()));
+            TestPlan plan = planRepo.persistPlan(new TestPlan(null, projectId, Instant.now(), "rh", "ch", root, 2, null));
+            planId = plan.planID().toString();
+            flakyNodeId = flaky.toString();
+
+            TestPlanNode flakyNode = planRepo.getNodeData(flaky).orElseThrow();
+            TestPlanNode slowNode = planRepo.getNodeData(slow).orElseThrow();
+            ExecutionResult[] flakyResults = {ExecutionResult.PASSED, ExecutionResult.FAILED, ExecutionResult.PASSED};
+            for (ExecutionResult result : flakyResults) {
+                execRepo.recordTestCaseResult(projectId, flakyNode, result, 100, Instant.now());
+                execRepo.recordTestCaseResult(projectId, slowNode, ExecutionResult.PASSED, 5000, Instant.now());
+            }
+        }
+    }
+
+    @Test
+    void showHelp() {
+        int exitCode = new CommandLine(new MainCommand()).execute(args("test-stats", "--help", "--plan-id", planId));
+        assertEquals(0, exitCode);
+    }
+
+    @Test
+    void flakyRankingOnlyListsTestCasesWithFlips() {
+        var out = captureStdout(args("test-stats", "--json", "--plan-id", planId));
+        assertEquals(0, out.exitCode());
+        assertEquals(1, countOccurrences(out.text(), "\"testCaseKey\""));
+        assertTrue(out.text().contains("\"trend\":\"PFP\""));
+        assertTrue(out.text().contains("\"recentFlips\":2"));
+    }
+
+    @Test
+    void slowestRankingListsSlowestTestCaseFirst() {
+        var out = captureStdout(args("test-stats", "--json", "--plan-id", planId, "--ranking", "SLOWEST"));
+        assertEquals(0, out.exitCode());
+        assertEquals(2, countOccurrences(out.text(), "\"testCaseKey\""));
+        assertTrue(out.text().indexOf("slow test") < out.text().indexOf("flaky test"));
+    }
+
+    @Test
+    void statsOfSingleTestCase() {
+        var out = captureStdout(args("test-stats", "--plan-id", planId, "--plan-node-id", flakyNodeId));
+        assertEquals(0, out.exitCode());
+        String[] lines = out.text().trim().split("\\n");
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].contains("flaky test"));
+    }
+
+    // --- helpers ---
+
+    static String[] args(String... extra) {
+        List<String> all = new ArrayList<>(Arrays.asList(extra));
+        all.addAll(Arrays.asList(BASE_ARGS));
+        return all.toArray(String[]::new);
+    }
+}
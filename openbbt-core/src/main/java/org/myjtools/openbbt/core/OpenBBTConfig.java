@@ -27,6 +27,7 @@ public class OpenBBTConfig extends ConfigAdapter implements ConfigProvider {
 
 	/** Configuration key for the tag that marks a test case as eligible for parallel execution. */
 	public static final String PARALLEL_EXECUTION_TAG = "core.parallelExecutionTag";
+	public static final String PARALLEL_EXECUTION_THREADS = "core.parallelExecutionThreads";
 
 	public static final String PERSISTENCE_MODE = "core.persistence.mode";
 	public static final String PERSISTENCE_MODE_TRANSIENT = "transient";
@@ -36,6 +37,11 @@ public class OpenBBTConfig extends ConfigAdapter implements ConfigProvider {
 	public static final String PERSISTENCE_DB_URL = "core.persistence.db.url";
 	public static final String PERSISTENCE_DB_USERNAME = "core.persistence.db.username";
 	public static final String PERSISTENCE_DB_PASSWORD = "core.persistence.db.password";
+	public static final String PERSISTENCE_FETCH_SIZE = "core.persistence.fetchSize";
+	public static final String PERSISTENCE_DELETE_CHUNK_SIZE = "core.persistence.deleteChunkSize";
+	public static final String PERSISTENCE_RETENTION_MAX_EXECUTIONS = "core.persistence.retention.maxExecutionsPerPlan";
+	public static final String PERSISTENCE_RETENTION_MAX_AGE_DAYS = "core.persistence.retention.maxAgeDays";
+	public static final String PERSISTENCE_ARCHIVE_PATH = "core.persistence.archive.path";
 
 	public static final String ARTIFACTS_LOCAL_REPOSITORY = "core.artifacts.local.repository";
 	public static final String ARTIFACTS_REPOSITORY_URL = "core.artifacts.repository.url";
@@ -54,6 +60,28 @@ public class OpenBBTConfig extends ConfigAdapter implements ConfigProvider {
 	/** Configuration key for the password (secret key) of the remote attachment server. */
 	public static final String ATTACHMENT_SERVER_PASSWORD = "core.attachments.server.password";
 
+	/** Configuration keys for the asynchronous uploads to the remote attachment server. */
+	public static final String ATTACHMENT_SERVER_UPLOAD_THREADS = "core.attachments.server.uploadThreads";
+	public static final String ATTACHMENT_SERVER_UPLOAD_BUFFER_SIZE = "core.attachments.server.uploadBufferSize";
+	public static final String ATTACHMENT_SERVER_UPLOAD_RETRIES = "core.attachments.server.uploadRetries";
+
+	/** Configuration key for how attachments are stored in the file system. Used when persistence mode is {@code file} or {@code transient}. */
+	public static final String ATTACHMENT_STORE = "core.attachments.store";
+	public static final String ATTACHMENT_STORE_FILES = "files";
+	public static final String ATTACHMENT_STORE_CONTENT_ADDRESSED = "content-addressed";
+	public static final String ATTACHMENT_STORE_PACKED = "packed";
+
+	/** Configuration keys for the policies that decide which attachments captured by the plugins are stored. */
+	public static final String ATTACHMENT_CAPTURE_MODE = "core.attachments.capture.mode";
+	public static final String ATTACHMENT_CAPTURE_SAMPLE_RATE = "core.attachments.capture.sampleRate";
+	public static final String ATTACHMENT_CAPTURE_MAX_SIZE = "core.attachments.capture.maxSize";
+	public static final String ATTACHMENT_CAPTURE_MAX_PENDING_SIZE = "core.attachments.capture.maxPendingSize";
+	public static final String ATTACHMENT_CAPTURE_PLUGINS = "core.attachments.capture.plugins";
+	public static final String ATTACHMENT_CAPTURE_CONTENT_TYPES = "core.attachments.capture.contentTypes";
+
+	/** Configuration key for the interval, in milliseconds, at which the server mode notifies the progress of the executions. */
+	public static final String SERVE_PROGRESS_INTERVAL = "core.serve.progressInterval";
+
 	public static final Path ENV_DEFAULT_PATH = Path.of(".openbbt");
 	public static final Path PLUGINS_PATH = Path.of("plugins");
 
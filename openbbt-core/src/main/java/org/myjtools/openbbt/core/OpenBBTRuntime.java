@@ -11,6 +11,7 @@ import org.myjtools.openbbt.core.messages.MessageProvider;
 import org.myjtools.openbbt.core.messages.Messages;
 import org.myjtools.openbbt.core.persistence.AttachmentRepository;
 import org.myjtools.openbbt.core.persistence.Repository;
+import org.myjtools.openbbt.core.persistence.RepositoryCleaner;
 import org.myjtools.openbbt.core.persistence.TestExecutionRepository;
 import org.myjtools.openbbt.core.persistence.TestPlanRepository;
 import org.myjtools.openbbt.core.testplan.PlanBuilder;
@@ -21,6 +22,7 @@ import java.nio.file.Path;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -45,6 +47,7 @@ public class OpenBBTRuntime implements InjectionProvider {
 	private final Lazy<DataTypes> dataTypes = Lazy.of(this::collectDataTypes);
 	private final Profile profile;
 	private final EventBus eventBus;
+	private final AtomicReference<RepositoryCleaner> repositoryCleaner;
 
 	public OpenBBTRuntime(Config configuration) {
 		this(configuration, Instant::now);
@@ -80,6 +83,7 @@ public class OpenBBTRuntime implements InjectionProvider {
 		this.contentTypes = ContentTypes.of(extensionManager.getExtensions(ContentType.class).toList());
 		this.planBuilder = new PlanBuilder(this);
 		this.eventBus = new EventBus();
+		this.repositoryCleaner = new AtomicReference<>();
 		getExtensions(EventObserver.class).forEach(eventBus::registerObserver);
 	}
 
@@ -97,6 +101,7 @@ public class OpenBBTRuntime implements InjectionProvider {
 		this.readOnly = copy.readOnly;
 		this.profile = profile;
 		this.eventBus = copy.eventBus;
+		this.repositoryCleaner = copy.repositoryCleaner;
 	}
 
 
@@ -137,6 +142,7 @@ public class OpenBBTRuntime implements InjectionProvider {
 		this.planBuilder = null;
 		this.contentTypes = null;
 		this.eventBus = new EventBus();
+		this.repositoryCleaner = new AtomicReference<>();
 		getExtensions(EventObserver.class).forEach(eventBus::registerObserver);
 	}
 
@@ -292,6 +298,10 @@ public class OpenBBTRuntime implements InjectionProvider {
 		return resourceSet;
 	}
 
+	public ResourceFinder resourceFinder() {
+		return resourceFinder;
+	}
+
 
 	public TestPlan buildTestPlan(OpenBBTContext context) {
 		return planBuilder.buildTestPlan(context);
@@ -310,4 +320,37 @@ public class OpenBBTRuntime implements InjectionProvider {
 		return eventBus;
 	}
 
+
+	/**
+	 * Cleaner of the repositories of this runtime, shared with the runtimes of other profiles.
+	 * Every cleanup task requested through the runtime is queued in the same cleaner, and
+	 * they run one after another in the background.
+	 */
+	public RepositoryCleaner repositoryCleaner() {
+		synchronized (repositoryCleaner) {
+			if (repositoryCleaner.get() == null) {
+				repositoryCleaner.set(new RepositoryCleaner(
+					getRepository(TestPlanRepository.class),
+					getRepository(TestExecutionRepository.class),
+					getRepository(AttachmentRepository.class)
+				));
+			}
+			return repositoryCleaner.get();
+		}
+	}
+
+
+	/**
+	 * Wait for the pending cleanup tasks to finish and release the cleaner, if it was used.
+	 * A new cleaner is created if it is requested again.
+	 */
+	public void closeRepositoryCleaner() {
+		synchronized (repositoryCleaner) {
+			RepositoryCleaner cleaner = repositoryCleaner.getAndSet(null);
+			if (cleaner != null) {
+				cleaner.close();
+			}
+		}
+	}
+
 }
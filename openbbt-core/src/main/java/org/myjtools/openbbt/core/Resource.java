@@ -3,6 +3,7 @@ package org.myjtools.openbbt.core;
 import org.myjtools.openbbt.core.util.Hash;
 import org.myjtools.openbbt.core.util.Lazy;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.nio.file.Path;
@@ -18,6 +19,7 @@ public class Resource implements Comparable<Resource> {
 	private final Path relativePath;
 	private final Supplier<InputStream> reader;
 	private final Lazy<String> hash;
+	private final Lazy<String> contentHash;
 
 
 	public Resource(URI URI, Path relativePath, Supplier<InputStream> reader) {
@@ -25,6 +27,7 @@ public class Resource implements Comparable<Resource> {
 		this.relativePath = relativePath;
 		this.reader = reader;
 		this.hash = Lazy.of(() -> Hash.of(relativePath));
+		this.contentHash = Lazy.of(this::computeContentHash);
 	}
 
 
@@ -36,6 +39,28 @@ public class Resource implements Comparable<Resource> {
 		return hash.get();
 	}
 
+	/**
+	 * Hash of the content of the resource, computed the first time it is requested
+	 */
+	public String contentHash() {
+		return contentHash.get();
+	}
+
+	private String computeContentHash() {
+		try (InputStream input = open()) {
+			return Hash.of(input);
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Cannot read resource {}", relativePath);
+		}
+	}
+
+	/**
+	 * Relative path of the resource using {@code /} as separator, regardless of the platform
+	 */
+	public String normalizedPath() {
+		return relativePath.toString().replace('\\', '/');
+	}
+
 	public URI URI() {
 		return URI;
 	}
@@ -3,9 +3,17 @@ package org.myjtools.openbbt.core;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 
 
@@ -37,6 +45,40 @@ public class ResourceFinder {
 	}
 
 
+	/**
+	 * Find every file under the starting path, regardless of any filter. Hidden directories
+	 * (such as {@code .git}) and the given directories are not visited.
+	 * The content of the files is not read until requested.
+	 */
+	public ResourceSet findAllResources(Collection<Path> excludedDirectories) {
+		Set<Path> excluded = new HashSet<>();
+		excludedDirectories.forEach(directory -> excluded.add(directory.toAbsolutePath().normalize()));
+		List<Resource> resources = new ArrayList<>();
+		try {
+			Files.walkFileTree(startingPath, new SimpleFileVisitor<>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+					boolean hidden = !directory.equals(startingPath)
+						&& directory.getFileName().toString().startsWith(".");
+					return hidden || excluded.contains(directory.toAbsolutePath().normalize())
+						? FileVisitResult.SKIP_SUBTREE
+						: FileVisitResult.CONTINUE;
+				}
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+					if (attributes.isRegularFile()) {
+						resources.add(new Resource(file.toUri(), file, ()->newReader(file)));
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+			return new ResourceSet(resources);
+		} catch (IOException e) {
+			throw new OpenBBTException(e,"Error reading resources from {}",startingPath);
+		}
+	}
+
+
 	private InputStream newReader(Path path) {
 		Path absolutePath = path.toAbsolutePath();
 	    try {
@@ -6,7 +6,9 @@ import java.nio.file.PathMatcher;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Spliterator;
+import java.util.TreeMap;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
@@ -50,6 +52,16 @@ public class ResourceSet implements Iterable<Resource>{
 		return hash;
 	}
 
+	/**
+	 * Content hash of every resource, by normalized relative path
+	 * @see Resource#contentHash()
+	 */
+	public Map<String, String> contentHashes() {
+		Map<String, String> hashes = new TreeMap<>();
+		resources.forEach(resource -> hashes.put(resource.normalizedPath(), resource.contentHash()));
+		return hashes;
+	}
+
 	@Override
 	public Iterator<Resource> iterator() {
 		return resources.iterator();
@@ -0,0 +1,199 @@
+package org.myjtools.openbbt.core.backend;
+
+import org.myjtools.imconfig.Config;
+import org.myjtools.openbbt.core.OpenBBTConfig;
+import org.myjtools.openbbt.core.OpenBBTException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Decides how the attachments captured by the plugins are stored, according to the
+ * attachment capture policies of the configuration.
+ * <p>
+ * A policy can be set for the attachments of a plugin and for the attachments of a content
+ * type, either a full type ({@code text/plain}) or a main type ({@code image}). The policy of
+ * the plugin takes precedence over the policy of the content type, and both inherit the
+ * unspecified values from the default policy.
+ * <p>
+ * Attachments kept in memory in mode {@link Mode#ON_FAILURE} are limited to a total size
+ * per test case, so that long test cases do not accumulate them without bound.
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public class AttachmentCapture {
+
+	public static final int DEFAULT_SAMPLE_RATE = 10;
+	public static final int DEFAULT_MAX_SIZE = 64 * 1024;
+	public static final int DEFAULT_MAX_PENDING_SIZE = 16 * 1024 * 1024;
+
+	private static final String MODE = "mode";
+	private static final String SAMPLE_RATE = "sampleRate";
+	private static final String MAX_SIZE = "maxSize";
+
+
+	public enum Mode {
+
+		/** Every attachment is stored */
+		ALWAYS("always"),
+		/** Attachments are kept in memory, and only stored if the step fails */
+		ON_FAILURE("onFailure"),
+		/** Only the attachments of one of every N step executions are stored */
+		SAMPLED("sampled"),
+		/** Every attachment is stored, keeping only its head and tail when it is too large */
+		TRUNCATED("truncated");
+
+		private final String value;
+
+		Mode(String value) {
+			this.value = value;
+		}
+
+		public static Mode of(String value) {
+			for (Mode mode : values()) {
+				if (mode.value.equalsIgnoreCase(value)) {
+					return mode;
+				}
+			}
+			throw new OpenBBTException("Unknown attachment capture mode: {}", value);
+		}
+
+		@Override
+		public String toString() {
+			return value;
+		}
+	}
+
+
+	/**
+	 * @param sampleRate one of every {@code sampleRate} step executions stores its attachments, in mode {@link Mode#SAMPLED}
+	 * @param maxSize the size, in bytes, above which attachments are truncated, in mode {@link Mode#TRUNCATED}
+	 */
+	public record Policy(Mode mode, int sampleRate, int maxSize) {
+
+		public static final Policy ALWAYS = new Policy(Mode.ALWAYS, DEFAULT_SAMPLE_RATE, DEFAULT_MAX_SIZE);
+
+		public Policy {
+			if (sampleRate < 1) {
+				throw new OpenBBTException("Invalid attachment sample rate: {}", sampleRate);
+			}
+			if (maxSize < 1) {
+				throw new OpenBBTException("Invalid attachment maximum size: {}", maxSize);
+			}
+		}
+
+		/**
+		 * Whether the attachments of a step execution are stored when sampling. The decision
+		 * depends only on the execution node, so every attachment of a step is kept or dropped
+		 * together, and no state is shared between test cases.
+		 */
+		public boolean isSampled(UUID executionNodeID) {
+			return executionNodeID == null || Math.floorMod(executionNodeID.hashCode(), sampleRate) == 0;
+		}
+
+		/**
+		 * Keep the head and the tail of the content when it exceeds the maximum size,
+		 * replacing the middle with a note of the omitted bytes.
+		 */
+		public byte[] truncate(byte[] bytes) {
+			if (bytes.length <= maxSize) {
+				return bytes;
+			}
+			int head = maxSize / 2;
+			int tail = maxSize - head;
+			byte[] note = ("\n[... " + (bytes.length - maxSize) + " bytes omitted ...]\n").getBytes(StandardCharsets.UTF_8);
+			byte[] truncated = new byte[head + note.length + tail];
+			System.arraycopy(bytes, 0, truncated, 0, head);
+			System.arraycopy(note, 0, truncated, head, note.length);
+			System.arraycopy(bytes, bytes.length - tail, truncated, head + note.length, tail);
+			return truncated;
+		}
+	}
+
+
+	public static final AttachmentCapture ALWAYS = new AttachmentCapture(
+		Policy.ALWAYS, Map.of(), Map.of(), DEFAULT_MAX_PENDING_SIZE
+	);
+
+	private final Policy defaultPolicy;
+	private final Map<String, Policy> pluginPolicies;
+	private final Map<String, Policy> contentTypePolicies;
+	private final int maxPendingSize;
+
+
+	private AttachmentCapture(
+		Policy defaultPolicy,
+		Map<String, Policy> pluginPolicies,
+		Map<String, Policy> contentTypePolicies,
+		int maxPendingSize
+	) {
+		if (maxPendingSize < 1) {
+			throw new OpenBBTException("Invalid attachment maximum pending size: {}", maxPendingSize);
+		}
+		this.defaultPolicy = defaultPolicy;
+		this.pluginPolicies = pluginPolicies;
+		this.contentTypePolicies = contentTypePolicies;
+		this.maxPendingSize = maxPendingSize;
+	}
+
+
+	public static AttachmentCapture of(Config config) {
+		Policy defaultPolicy = new Policy(
+			config.getString(OpenBBTConfig.ATTACHMENT_CAPTURE_MODE).map(Mode::of).orElse(Mode.ALWAYS),
+			config.getInteger(OpenBBTConfig.ATTACHMENT_CAPTURE_SAMPLE_RATE).orElse(DEFAULT_SAMPLE_RATE),
+			config.getInteger(OpenBBTConfig.ATTACHMENT_CAPTURE_MAX_SIZE).map(AttachmentCapture::kilobytes).orElse(DEFAULT_MAX_SIZE)
+		);
+		return new AttachmentCapture(
+			defaultPolicy,
+			policies(config.inner(OpenBBTConfig.ATTACHMENT_CAPTURE_PLUGINS), defaultPolicy),
+			policies(config.inner(OpenBBTConfig.ATTACHMENT_CAPTURE_CONTENT_TYPES), defaultPolicy),
+			config.getInteger(OpenBBTConfig.ATTACHMENT_CAPTURE_MAX_PENDING_SIZE).map(AttachmentCapture::kilobytes).orElse(DEFAULT_MAX_PENDING_SIZE)
+		);
+	}
+
+
+	/**
+	 * @return the total size, in bytes, of the attachments kept in memory for a test case
+	 * in mode {@link Mode#ON_FAILURE}
+	 */
+	public int maxPendingSize() {
+		return maxPendingSize;
+	}
+
+
+	/**
+	 * Obtain the policy for an attachment of the given plugin and content type
+	 */
+	public Policy policyFor(String plugin, String contentType) {
+		Policy policy = plugin == null ? null : pluginPolicies.get(plugin);
+		if (policy == null && contentType != null) {
+			String type = contentType.split(";")[0].trim();
+			policy = contentTypePolicies.get(type);
+			if (policy == null && type.contains("/")) {
+				policy = contentTypePolicies.get(type.substring(0, type.indexOf('/')));
+			}
+		}
+		return policy == null ? defaultPolicy : policy;
+	}
+
+
+	private static Map<String, Policy> policies(Config config, Policy defaultPolicy) {
+		Map<String, Policy> policies = new HashMap<>();
+		for (String key : config.innerKeys().toList()) {
+			Config entry = config.inner(key);
+			policies.put(key, new Policy(
+				entry.getString(MODE).map(Mode::of).orElse(defaultPolicy.mode()),
+				entry.getInteger(SAMPLE_RATE).orElse(defaultPolicy.sampleRate()),
+				entry.getInteger(MAX_SIZE).map(AttachmentCapture::kilobytes).orElse(defaultPolicy.maxSize())
+			));
+		}
+		return Map.copyOf(policies);
+	}
+
+
+	private static int kilobytes(int kilobytes) {
+		return Math.min(kilobytes, Integer.MAX_VALUE / 1024) * 1024;
+	}
+
+}
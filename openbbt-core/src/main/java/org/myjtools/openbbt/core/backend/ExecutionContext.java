@@ -3,6 +3,10 @@ package org.myjtools.openbbt.core.backend;
 import org.myjtools.openbbt.core.OpenBBTRuntime;
 import org.myjtools.openbbt.core.persistence.AttachmentRepository;
 import org.myjtools.openbbt.core.persistence.TestExecutionRepository;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -26,15 +30,27 @@ public class ExecutionContext {
 
 
 
+	private record PendingCapture(UUID executionNodeID, byte[] bytes, String contentType) { }
+
+
 	private final Map<String,String> variables = new ConcurrentHashMap<>();
+	private final Deque<PendingCapture> pendingCaptures = new ArrayDeque<>();
+	private long pendingSize;
 	private final OpenBBTRuntime runtime;
 	private final UUID executionID;
+	private final AttachmentCapture capture;
 	private UUID executionNodeID;
+	private boolean failed;
 
 	public ExecutionContext(OpenBBTRuntime runtime, UUID executionID, UUID executionNodeID) {
+		this(runtime, executionID, executionNodeID, AttachmentCapture.ALWAYS);
+	}
+
+	public ExecutionContext(OpenBBTRuntime runtime, UUID executionID, UUID executionNodeID, AttachmentCapture capture) {
 		this.runtime = runtime;
 		this.executionID = executionID;
 		this.executionNodeID = executionNodeID;
+		this.capture = capture;
 	}
 
 	void setExecutionNodeID(UUID nodeID) {
@@ -59,6 +75,99 @@ public class ExecutionContext {
 	}
 
 	public void storeAttachment(byte[] bytes, String contentType) {
+		storeAttachment(executionNodeID, bytes, contentType);
+	}
+
+	/**
+	 * Capture an attachment produced by a plugin, which is stored, truncated or discarded
+	 * according to the attachment capture policy of the plugin and the content type.
+	 * Attachments only stored on failure are kept in memory until the test case finishes,
+	 * or stored right away once a step of the test case has failed. The attachments kept
+	 * are limited to the maximum pending size of the capture policies, dropping the oldest
+	 * ones first.
+	 */
+	public synchronized void captureAttachment(String plugin, byte[] bytes, String contentType) {
+		AttachmentCapture.Policy policy = capture.policyFor(plugin, contentType);
+		switch (policy.mode()) {
+			case ALWAYS -> storeAttachment(bytes, contentType);
+			case TRUNCATED -> storeAttachment(policy.truncate(bytes), contentType);
+			case SAMPLED -> {
+				if (policy.isSampled(executionNodeID)) {
+					storeAttachment(bytes, contentType);
+				}
+			}
+			case ON_FAILURE -> {
+				if (failed) {
+					storeAttachment(bytes, contentType);
+				} else {
+					keepPending(bytes, contentType);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Notify the end of a step. When the step has failed, the attachments kept since the
+	 * start of the test case are stored, since they may help to explain the failure.
+	 */
+	public synchronized void completeStep(boolean failed) {
+		if (!failed || this.failed) {
+			return;
+		}
+		this.failed = true;
+		try {
+			for (PendingCapture pending : pendingCaptures) {
+				storeAttachment(pending.executionNodeID(), pending.bytes(), pending.contentType());
+			}
+		} finally {
+			discardPendingCaptures();
+		}
+	}
+
+	/**
+	 * Discard the attachments kept in case of failure. It is invoked when the test case
+	 * finishes without failures, or when a step is abandoned because of a timeout.
+	 */
+	public synchronized void discardPendingCaptures() {
+		pendingCaptures.clear();
+		pendingSize = 0;
+	}
+
+
+	private void keepPending(byte[] bytes, String contentType) {
+		int maxPendingSize = capture.maxPendingSize();
+		if (bytes.length > maxPendingSize) {
+			bytes = new AttachmentCapture.Policy(AttachmentCapture.Mode.TRUNCATED, 1, maxPendingSize).truncate(bytes);
+		}
+		while (!pendingCaptures.isEmpty() && pendingSize + bytes.length > maxPendingSize) {
+			pendingSize -= pendingCaptures.removeFirst().bytes().length;
+		}
+		pendingCaptures.addLast(new PendingCapture(executionNodeID, bytes, contentType));
+		pendingSize += bytes.length;
+	}
+
+	/**
+	 * Store an attachment reading its content from the given stream, which is not closed
+	 */
+	public void storeAttachment(InputStream content, String contentType) {
+		TestExecutionRepository testExecutionRepository = runtime.getRepository(TestExecutionRepository.class);
+		AttachmentRepository attachmentRepository = runtime.getRepository(AttachmentRepository.class);
+		UUID attachmentID = testExecutionRepository.newAttachment(executionNodeID);
+		attachmentRepository.storeAttachment(executionID, executionNodeID, attachmentID, content, contentType);
+	}
+
+	/**
+	 * Store an attachment reading its content from the given channel, which is not closed
+	 */
+	public void storeAttachment(ReadableByteChannel content, String contentType) {
+		TestExecutionRepository testExecutionRepository = runtime.getRepository(TestExecutionRepository.class);
+		AttachmentRepository attachmentRepository = runtime.getRepository(AttachmentRepository.class);
+		UUID attachmentID = testExecutionRepository.newAttachment(executionNodeID);
+		attachmentRepository.storeAttachment(executionID, executionNodeID, attachmentID, content, contentType);
+	}
+
+
+	protected void storeAttachment(UUID executionNodeID, byte[] bytes, String contentType) {
 		TestExecutionRepository testExecutionRepository = runtime.getRepository(TestExecutionRepository.class);
 		AttachmentRepository attachmentRepository = runtime.getRepository(AttachmentRepository.class);
 		UUID attachmentID = testExecutionRepository.newAttachment(executionNodeID);
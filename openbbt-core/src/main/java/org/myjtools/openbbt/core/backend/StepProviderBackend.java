@@ -20,7 +20,9 @@ public class StepProviderBackend {
 	private final ConcurrentHashMap<String,Object> variables = new ConcurrentHashMap<>();
 	private final StepProviderHinter hinter;
 	private final Config config;
+	private final AttachmentCapture attachmentCapture;
 	private final OpenBBTRuntime runtime;
+	private volatile ExecutionContext context;
 
 	public StepProviderBackend(OpenBBTRuntime runtime) {
 		this.runtime = runtime;
@@ -40,22 +42,49 @@ public class StepProviderBackend {
 		}
 		this.hinter = new StepProviderHinter(services);
 		this.config = runtime.configuration();
+		this.attachmentCapture = AttachmentCapture.of(config);
 	}
 
 
 
 	public void setUp(UUID executionID, UUID executionNodeID, Map<String,String> properties) {
-		ExecutionContext.setCurrent(new ExecutionContext(runtime, executionID, executionNodeID));
+		this.context = new ExecutionContext(runtime, executionID, executionNodeID, attachmentCapture);
+		ExecutionContext.setCurrent(context);
 		for (var service : services) {
 			service.setUp(config.append(Config.ofMap(properties)));
 		}
 	}
 
+	/**
+	 * Notify the end of a step, storing the attachments kept in case of failure if it failed
+	 */
+	public void completeStep(boolean failed) {
+		var ctx = context;
+		if (ctx != null) {
+			ctx.completeStep(failed);
+		}
+	}
+
+	/**
+	 * Discard the attachments kept in case of failure. It can be invoked from any thread.
+	 */
+	public void discardCaptures() {
+		var ctx = context;
+		if (ctx != null) {
+			ctx.discardPendingCaptures();
+		}
+	}
+
 	public void tearDown() {
-		for (var service : services) {
-			service.tearDown();
+		try {
+			for (var service : services) {
+				service.tearDown();
+			}
+		} finally {
+			discardCaptures();
+			context = null;
+			ExecutionContext.clearCurrent();
 		}
-		ExecutionContext.clearCurrent();
 	}
 
 	private Optional<Pair<StepProviderMethod, Match>> matchingStep(String step, Locale locale) {
@@ -72,6 +101,15 @@ public class StepProviderBackend {
 		return matchingStep(step, locale).isPresent();
 	}
 
+	/**
+	 * Builds the step matchers of every provider for the given locales in advance
+	 */
+	public void compileMatchers(Collection<Locale> locales) {
+		for (var service : services) {
+			locales.forEach(service::compileMatchers);
+		}
+	}
+
 	public List<String> allStepsForLocale(Locale locale) {
 		return services.stream()
 			.flatMap(s -> s.stepStringsForLocale(locale).stream())
@@ -82,18 +82,8 @@ public class StepProviderService {
             if (keyExpression == null) {
                 keyExpression = stepKey;
             }
-            if (failedExpressions.contains(keyExpression)) continue;
-            ExpressionMatcher matcher = matcherCache.get(keyExpression);
-            if (matcher == null) {
-                try {
-                    matcher = matcherBuilder.buildExpressionMatcher(keyExpression);
-                    matcherCache.put(keyExpression, matcher);
-                } catch (OpenBBTException e) {
-                    log.warn("Cannot build matcher for step '{}': {}", keyExpression, e.getMessage());
-                    failedExpressions.add(keyExpression);
-                    continue;
-                }
-            }
+            ExpressionMatcher matcher = matcherFor(keyExpression);
+            if (matcher == null) continue;
             var matchingStep = matcher.matches(step, locale).map(match -> Pair.of(runnableStep, match));
             if (matchingStep.isPresent()) {
                 return matchingStep;
@@ -103,6 +93,37 @@ public class StepProviderService {
     }
 
 
+    /**
+     * Builds in advance the matchers of every step expression for the given locale,
+     * so that later concurrent matching only reads the matcher cache.
+     */
+    public void compileMatchers(Locale locale) {
+        for (String stepKey : runnableMethods.keySet()) {
+            String keyExpression = messages.forLocale(locale).get(stepKey);
+            matcherFor(keyExpression == null ? stepKey : keyExpression);
+        }
+    }
+
+
+    private ExpressionMatcher matcherFor(String keyExpression) {
+        if (failedExpressions.contains(keyExpression)) {
+            return null;
+        }
+        ExpressionMatcher matcher = matcherCache.get(keyExpression);
+        if (matcher == null) {
+            try {
+                matcher = matcherBuilder.buildExpressionMatcher(keyExpression);
+                matcherCache.put(keyExpression, matcher);
+            } catch (OpenBBTException e) {
+                log.warn("Cannot build matcher for step '{}': {}", keyExpression, e.getMessage());
+                failedExpressions.add(keyExpression);
+                return null;
+            }
+        }
+        return matcher;
+    }
+
+
     private void addRunnableMethod(DataTypes dataTypes, Method method, StepExpression step) {
         if (step != null) {
             try {
@@ -1,18 +1,24 @@
 package org.myjtools.openbbt.core.events;
 
 import org.myjtools.openbbt.core.contributors.EventObserver;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class EventBus {
 
-	private final List<EventObserver> observers = new ArrayList<>();
+	// observers may be registered while events are being published from other threads
+	private final List<EventObserver> observers = new CopyOnWriteArrayList<>();
 
 	public void registerObserver(EventObserver observer) {
 		observers.add(observer);
 	}
 
 
+	public void unregisterObserver(EventObserver observer) {
+		observers.remove(observer);
+	}
+
+
 	public void publish(Event event) {
 		for (EventObserver observer : observers) {
 			observer.onEvent(event);
@@ -54,6 +54,15 @@ public class BackendExecutor {
 	}
 
 
+	private void completeStep(boolean failed) {
+		try {
+			backend.completeStep(failed);
+		} catch (Exception e) {
+			log.error(e, "Failed to store the attachments captured by the step");
+		}
+	}
+
+
 	public Future<Pair<ExecutionResult,Throwable>> submitStepExecution(TestPlanNode node) {
 		return submitStepExecution(node, null, NO_TIMEOUT);
 	}
@@ -75,16 +84,20 @@ public class BackendExecutor {
 					return Pair.of(ExecutionResult.SKIPPED, null);
 				}
 				backend.run(node.name(), locale(node.language()), nodeArgument(node), executionNodeID);
+				completeStep(false);
 				return Pair.of(ExecutionResult.PASSED, null);
 			} catch (AssertionError e) {
 				testCaseFailed = true;
+				completeStep(true);
 				return Pair.of(ExecutionResult.FAILED, e);
 			} catch (NoMatchingStepException e) {
 				testCaseFailed = true;
+				completeStep(true);
 				return Pair.of(ExecutionResult.UNDEFINED, e);
 			} catch (Exception e) {
 				testCaseFailed = true;
 				log.error(e);
+				completeStep(true);
 				return Pair.of(ExecutionResult.ERROR, e);
 			}
 		});
@@ -95,6 +108,8 @@ public class BackendExecutor {
 			return CompletableFuture.completedFuture(result);
 		} catch (TimeoutException e) {
 			future.cancel(true);
+			// the abandoned step may still be running, so its captures are not kept
+			backend.discardCaptures();
 			throw new OpenBBTException("Step execution timed out after {} seconds: {}", timeoutSec, node.name());
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
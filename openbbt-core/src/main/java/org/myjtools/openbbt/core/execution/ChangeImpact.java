@@ -0,0 +1,222 @@
+package org.myjtools.openbbt.core.execution;
+
+import org.myjtools.openbbt.core.persistence.TestPlanRepository;
+import org.myjtools.openbbt.core.testplan.TestPlanNode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Resolves the resources each test case depends on, in order to select the test cases
+ * affected by a set of changed resources.
+ * <p>
+ * A test case depends on the resource it was assembled from (its {@code source}) and on
+ * every resource referenced from the text of its steps, such as the CSV, XLS or body
+ * files used by database and REST steps. References are detected by the relative path of
+ * the resource, or by its file name alone; a false match only causes a test case to be
+ * executed unnecessarily, never to be skipped.
+ * <p>
+ * Texts are split into words, and each word (and each of its trailing path segments) is
+ * looked up among the known resources, so the cost does not depend on the number of
+ * resources. The descendants of test cases among the known nodes are walked in memory,
+ * from the children of every known node retrieved at once.
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public final class ChangeImpact {
+
+	private static final Pattern WORD_DELIMITERS = Pattern.compile("[\\s\"'`,;:|()\\[\\]{}<>=]+");
+
+	private final TestPlanRepository repository;
+	private final Map<UUID, TestPlanNode> knownNodes;
+	private final Map<String, Set<String>> resourcesByReference;
+	private Map<UUID, List<UUID>> knownChildren;
+
+
+	/**
+	 * @param repository    the repository containing the test plan
+	 * @param resourcePaths normalized relative paths of the known resources
+	 */
+	public ChangeImpact(TestPlanRepository repository, Collection<String> resourcePaths) {
+		this(repository, resourcePaths, Map.of());
+	}
+
+
+	/**
+	 * @param repository    the repository containing the test plan
+	 * @param resourcePaths normalized relative paths of the known resources
+	 * @param knownNodes    plan nodes already retrieved, by ID, that are not fetched again;
+	 *                      the descendants of a known node are expected to be known as well
+	 */
+	public ChangeImpact(
+		TestPlanRepository repository,
+		Collection<String> resourcePaths,
+		Map<UUID, TestPlanNode> knownNodes
+	) {
+		this.repository = repository;
+		this.knownNodes = knownNodes;
+		this.resourcesByReference = indexByReference(resourcePaths);
+	}
+
+
+	/**
+	 * Obtain the resources among the given ones that are referenced from any of the given
+	 * plan nodes, either as their source or from their text
+	 */
+	public static Set<String> referencedResources(Collection<String> resourcePaths, Collection<TestPlanNode> nodes) {
+		Map<String, Set<String>> index = indexByReference(resourcePaths);
+		Set<String> references = new HashSet<>();
+		nodes.forEach(node -> collect(node, index, references));
+		return references;
+	}
+
+
+	/**
+	 * Obtain the resources the given test case depends on
+	 */
+	public Set<String> dependenciesOf(TestPlanNode testCase) {
+		Set<String> dependencies = new HashSet<>();
+		collect(testCase, resourcesByReference, dependencies);
+		// steps may come from other resources, such as step definitions shared among test cases
+		Collection<TestPlanNode> descendants = knownNodes.containsKey(testCase.nodeID())
+			? knownDescendants(testCase.nodeID())
+			: fetchDescendants(testCase.nodeID());
+		descendants.forEach(node -> collect(node, resourcesByReference, dependencies));
+		return dependencies;
+	}
+
+
+	/**
+	 * Whether the given test case depends on any of the changed resources
+	 */
+	public boolean isAffected(TestPlanNode testCase, Set<String> changedResources) {
+		if (changedResources.isEmpty()) {
+			return false;
+		}
+		if (changedResources.contains(sourceResource(testCase.source()))) {
+			return true;
+		}
+		return dependenciesOf(testCase).stream().anyMatch(changedResources::contains);
+	}
+
+
+	private List<TestPlanNode> knownDescendants(UUID nodeID) {
+		if (knownChildren == null) {
+			knownChildren = repository.getNodeChildren(knownNodes.keySet());
+		}
+		List<TestPlanNode> descendants = new ArrayList<>();
+		Deque<UUID> pending = new ArrayDeque<>(knownChildren.getOrDefault(nodeID, List.of()));
+		while (!pending.isEmpty()) {
+			TestPlanNode node = knownNodes.get(pending.pop());
+			if (node != null) {
+				descendants.add(node);
+				pending.addAll(knownChildren.getOrDefault(node.nodeID(), List.of()));
+			}
+		}
+		return descendants;
+	}
+
+
+	private Collection<TestPlanNode> fetchDescendants(UUID nodeID) {
+		List<UUID> descendants;
+		try (Stream<UUID> stream = repository.getNodeDescendants(nodeID)) {
+			descendants = stream.toList();
+		}
+		return descendants.isEmpty() ? List.of() : repository.getNodeData(descendants).values();
+	}
+
+
+	/**
+	 * Extract the resource path from the source of a node, which may be followed by a
+	 * location within the resource, as in {@code path/file.feature[12,5]}
+	 */
+	static String sourceResource(String source) {
+		if (source == null || source.isBlank()) {
+			return null;
+		}
+		int location = source.lastIndexOf('[');
+		String path = location > 0 && source.endsWith("]") ? source.substring(0, location) : source;
+		return path.replace('\\', '/');
+	}
+
+
+	private static Map<String, Set<String>> indexByReference(Collection<String> resourcePaths) {
+		Map<String, Set<String>> index = new HashMap<>();
+		for (String path : resourcePaths) {
+			index.computeIfAbsent(path, x -> new HashSet<>()).add(path);
+			String fileName = path.substring(path.lastIndexOf('/') + 1);
+			index.computeIfAbsent(fileName, x -> new HashSet<>()).add(path);
+		}
+		return index;
+	}
+
+
+	private static void collect(TestPlanNode node, Map<String, Set<String>> index, Set<String> dependencies) {
+		String source = sourceResource(node.source());
+		if (source != null) {
+			dependencies.add(source);
+			addReferences(source, index, dependencies);
+		}
+		for (String text : texts(node)) {
+			addReferences(text, index, dependencies);
+		}
+	}
+
+
+	private static List<String> texts(TestPlanNode node) {
+		List<String> texts = new ArrayList<>();
+		if (node.name() != null) {
+			texts.add(node.name());
+		}
+		if (node.document() != null && node.document().content() != null) {
+			texts.add(node.document().content());
+		}
+		if (node.dataTable() != null) {
+			texts.add(node.dataTable().toString());
+		}
+		texts.addAll(node.properties().values());
+		return texts;
+	}
+
+
+	/**
+	 * Look up every word of the text, and each of its trailing path segments, among the
+	 * known references; for instance, {@code ./data/users.csv} is looked up as
+	 * {@code data/users.csv} and {@code users.csv} as well
+	 */
+	private static void addReferences(String text, Map<String, Set<String>> index, Set<String> dependencies) {
+		for (String word : WORD_DELIMITERS.split(text.replace('\\', '/'))) {
+			String reference = stripTrailingDots(word);
+			while (!reference.isEmpty()) {
+				Set<String> paths = index.get(reference);
+				if (paths != null) {
+					dependencies.addAll(paths);
+				}
+				int separator = reference.indexOf('/');
+				if (separator < 0) {
+					break;
+				}
+				reference = reference.substring(separator + 1);
+			}
+		}
+	}
+
+
+	private static String stripTrailingDots(String word) {
+		int end = word.length();
+		while (end > 0 && word.charAt(end - 1) == '.') {
+			end--;
+		}
+		return word.substring(0, end);
+	}
+
+}
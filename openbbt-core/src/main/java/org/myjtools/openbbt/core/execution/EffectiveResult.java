@@ -0,0 +1,49 @@
+package org.myjtools.openbbt.core.execution;
+
+import org.myjtools.openbbt.core.persistence.TestExecutionRepository;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Overall result of an execution once merged with the executions it re-runs: each test
+ * case counts with its latest result. As in a regular execution, the overall result is the
+ * most severe among the test cases: error (including undefined), failed, skipped and passed.
+ *
+ * @see TestExecutionRepository#getEffectiveTestCaseResults(UUID)
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public record EffectiveResult(ExecutionResult result, int passedCount, int errorCount, int failedCount) {
+
+	public static EffectiveResult of(Collection<ExecutionResult> testCaseResults) {
+		int passed = 0;
+		int error = 0;
+		int failed = 0;
+		int skipped = 0;
+		for (ExecutionResult testCaseResult : testCaseResults) {
+			switch (testCaseResult) {
+				case PASSED -> passed++;
+				case FAILED -> failed++;
+				case ERROR, UNDEFINED -> error++;
+				case SKIPPED -> skipped++;
+			}
+		}
+		ExecutionResult result;
+		if (error > 0) {
+			result = ExecutionResult.ERROR;
+		} else if (failed > 0) {
+			result = ExecutionResult.FAILED;
+		} else if (skipped > 0) {
+			result = ExecutionResult.SKIPPED;
+		} else {
+			result = ExecutionResult.PASSED;
+		}
+		return new EffectiveResult(result, passed, error, failed);
+	}
+
+
+	public static EffectiveResult of(TestExecutionRepository repository, UUID executionID) {
+		return of(repository.getEffectiveTestCaseResults(executionID).values());
+	}
+
+}
@@ -0,0 +1,110 @@
+package org.myjtools.openbbt.core.execution;
+
+import java.util.*;
+
+/**
+ * Orders a block of parallel tasks using the longest-processing-time-first rule: the
+ * tasks expected to take longer are started first, so that a long task is not left for
+ * the end of the run while the other workers are idle.
+ * <p>
+ * Expected durations come from previous executions. Tasks without history are given the
+ * median of the known durations of the block, so new tests are neither started first
+ * nor left for the end.
+ * <p>
+ * The scheduler also predicts the makespan (the wall-clock time of the whole block)
+ * by simulating the assignment of each task, in order, to the least loaded worker.
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public final class LongestFirstScheduler {
+
+	/**
+	 * @param parallel          the parallel tasks, in the order they should be started
+	 * @param sequential        the tasks that must run one after another, in their original order
+	 * @param predictedMakespan the expected duration of the whole block, in milliseconds
+	 * @param estimatedTasks    number of tasks with a duration estimated from previous executions
+	 */
+	public record Schedule<T>(List<T> parallel, List<T> sequential, long predictedMakespan, int estimatedTasks) { }
+
+
+	private final int workers;
+
+
+	/**
+	 * @param workers number of workers running the parallel tasks concurrently
+	 */
+	public LongestFirstScheduler(int workers) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("The number of workers must be positive");
+		}
+		this.workers = workers;
+	}
+
+
+	/**
+	 * Schedule a block of tasks. The sequential tasks run on their own lane, along with the
+	 * parallel ones.
+	 * @param parallel the tasks that can run concurrently, in plan order
+	 * @param sequential the tasks that must run one after another, in plan order
+	 * @param durations the historical duration of the tasks, in milliseconds; tasks without
+	 *                  history may be absent
+	 */
+	public <T> Schedule<T> schedule(List<T> parallel, List<T> sequential, Map<T, Long> durations) {
+		long fallback = fallbackEstimate(durations.values());
+		Map<T, Long> estimates = new HashMap<>();
+		int estimatedTasks = 0;
+		for (T task : parallel) {
+			Long duration = durations.get(task);
+			if (duration != null) {
+				estimatedTasks++;
+			}
+			estimates.put(task, duration != null ? duration : fallback);
+		}
+		List<T> ordered = new ArrayList<>(parallel);
+		// List.sort is stable, so tasks with the same estimate keep the plan order
+		ordered.sort(Comparator.comparingLong((T task) -> estimates.get(task)).reversed());
+
+		long sequentialLoad = 0;
+		for (T task : sequential) {
+			Long duration = durations.get(task);
+			if (duration != null) {
+				estimatedTasks++;
+			}
+			sequentialLoad += duration != null ? duration : fallback;
+		}
+		long makespan = Math.max(
+			predictMakespan(ordered.stream().map(estimates::get).toList()),
+			sequentialLoad
+		);
+		return new Schedule<>(List.copyOf(ordered), List.copyOf(sequential), makespan, estimatedTasks);
+	}
+
+
+	/**
+	 * Predict the makespan of running the given durations, in order, each one on the
+	 * first worker to become available.
+	 */
+	public long predictMakespan(List<Long> durations) {
+		PriorityQueue<Long> loads = new PriorityQueue<>();
+		for (int i = 0; i < Math.min(workers, durations.size()); i++) {
+			loads.add(0L);
+		}
+		long makespan = 0;
+		for (Long duration : durations) {
+			long load = loads.poll() + duration;
+			makespan = Math.max(makespan, load);
+			loads.add(load);
+		}
+		return makespan;
+	}
+
+
+	private static long fallbackEstimate(Collection<Long> knownDurations) {
+		if (knownDurations.isEmpty()) {
+			return 0;
+		}
+		long[] sorted = knownDurations.stream().mapToLong(Long::longValue).sorted().toArray();
+		return sorted[sorted.length / 2];
+	}
+
+}
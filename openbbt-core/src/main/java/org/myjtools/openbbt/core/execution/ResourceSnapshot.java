@@ -0,0 +1,127 @@
+package org.myjtools.openbbt.core.execution;
+
+import org.myjtools.openbbt.core.OpenBBTConfig;
+import org.myjtools.openbbt.core.OpenBBTRuntime;
+import org.myjtools.openbbt.core.Resource;
+import org.myjtools.openbbt.core.contributors.StepProvider;
+import org.myjtools.openbbt.core.testplan.TestPlanNode;
+import org.myjtools.openbbt.core.util.Hash;
+import java.lang.module.ModuleDescriptor;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * State of the resources at the time of an execution: the content hash of every resource
+ * and a hash of the step providers (and their versions) available.
+ *
+ * @param contentHashes      content hash of every resource, by normalized relative path
+ * @param stepProvidersHash  hash of the step provider implementations and their versions
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public record ResourceSnapshot(Map<String, String> contentHashes, String stepProvidersHash) {
+
+	public ResourceSnapshot {
+		contentHashes = Map.copyOf(contentHashes);
+	}
+
+
+	/**
+	 * Take a snapshot of the step providers of the given runtime and of every resource the
+	 * given plan nodes may depend on: the resources of the runtime, and any other file under
+	 * the resource path referenced from the nodes, such as data files excluded by the
+	 * resource filter. Only the content of those resources is read.
+	 */
+	public static ResourceSnapshot of(OpenBBTRuntime runtime, Collection<TestPlanNode> planNodes) {
+		Path environmentPath = runtime.configuration().get(OpenBBTConfig.ENV_PATH, Path::of)
+			.orElse(OpenBBTConfig.ENV_DEFAULT_PATH);
+		Map<String, Resource> files = new HashMap<>();
+		runtime.resourceFinder().findAllResources(List.of(environmentPath))
+			.forEach(file -> files.put(file.normalizedPath(), file));
+		Map<String, String> contentHashes = new TreeMap<>(runtime.resourceSet().contentHashes());
+		for (String path : ChangeImpact.referencedResources(files.keySet(), planNodes)) {
+			Resource file = files.get(path);
+			if (file != null && !contentHashes.containsKey(path)) {
+				contentHashes.put(path, file.contentHash());
+			}
+		}
+		return new ResourceSnapshot(contentHashes, stepProvidersHash(runtime));
+	}
+
+
+	/**
+	 * Hash of the content hashes of every resource, which identifies the set of resources
+	 * and their content regardless of the execution
+	 */
+	public String resourcesHash() {
+		StringBuilder content = new StringBuilder();
+		new TreeMap<>(contentHashes).forEach((path, hash) -> content.append(path).append('=').append(hash).append('\n'));
+		return Hash.of(content.toString());
+	}
+
+
+	/**
+	 * Obtain the resources that have been added, removed or modified since a previous snapshot
+	 */
+	public Set<String> changedSince(ResourceSnapshot previous) {
+		Set<String> changed = new HashSet<>();
+		contentHashes.forEach((path, hash) -> {
+			if (!hash.equals(previous.contentHashes().get(path))) {
+				changed.add(path);
+			}
+		});
+		previous.contentHashes().keySet().stream()
+			.filter(path -> !contentHashes.containsKey(path))
+			.forEach(changed::add);
+		return changed;
+	}
+
+
+	/**
+	 * Whether the step providers differ from those of a previous snapshot, in which case
+	 * any test case may behave differently
+	 */
+	public boolean stepProvidersChangedSince(ResourceSnapshot previous) {
+		return !Objects.equals(stepProvidersHash, previous.stepProvidersHash());
+	}
+
+
+	private static String stepProvidersHash(OpenBBTRuntime runtime) {
+		Map<String, String> versions = new TreeMap<>();
+		runtime.getExtensions(StepProvider.class).forEach(provider -> {
+			Class<?> type = provider.getClass();
+			versions.put(type.getName(), versionOf(type));
+		});
+		StringBuilder content = new StringBuilder();
+		versions.forEach((type, version) -> content.append(type).append('@').append(version).append('\n'));
+		return Hash.of(content.toString());
+	}
+
+
+	private static String versionOf(Class<?> type) {
+		ModuleDescriptor descriptor = type.getModule().getDescriptor();
+		if (descriptor != null && descriptor.rawVersion().isPresent()) {
+			return descriptor.rawVersion().get();
+		}
+		String version = type.getPackage() == null ? null : type.getPackage().getImplementationVersion();
+		if (version != null) {
+			return version;
+		}
+		// plugin artifacts are named after their version
+		CodeSource codeSource = type.getProtectionDomain().getCodeSource();
+		if (codeSource != null && codeSource.getLocation() != null) {
+			String location = codeSource.getLocation().getPath();
+			return location.substring(location.lastIndexOf('/', location.length() - 2) + 1);
+		}
+		return "";
+	}
+
+}
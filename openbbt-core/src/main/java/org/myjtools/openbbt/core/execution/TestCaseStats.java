@@ -0,0 +1,171 @@
+package org.myjtools.openbbt.core.execution;
+
+import org.myjtools.openbbt.core.testplan.TestPlanNode;
+import org.myjtools.openbbt.core.util.Hash;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Aggregated execution history of a test case, maintained incrementally every time the
+ * test case finishes, so that trend, flakiness and duration queries do not need to
+ * traverse past executions.
+ * <p>
+ * Test cases are identified across plans by a stable key within the project (see
+ * {@link #keyOf(TestPlanNode)}). Only conclusive outcomes (passed, failed or error) are
+ * recorded in the history and the duration statistics; skipped or undefined test cases
+ * are only counted.
+ *
+ * @param testCaseKey        stable identity of the test case within the project
+ * @param name               name of the test case in the latest execution
+ * @param planNodeID         plan node of the test case in the latest execution
+ * @param executionCount     number of times the test case has been executed
+ * @param sampleCount        number of conclusive outcomes recorded
+ * @param recentResults      bitset of the latest {@value #WINDOW} outcomes, the most recent
+ *                           in the lowest bit; a set bit means failed or error
+ * @param flipCount          number of changes between passing and not passing outcomes
+ * @param recentFlips        number of such changes within the recent outcomes
+ * @param lastResult         result of the latest execution
+ * @param lastExecutedAt     finish instant of the latest execution
+ * @param durationEwma       exponentially weighted moving average of the duration, in milliseconds
+ * @param durationDeviation  exponentially weighted mean absolute deviation of the duration
+ * @param durationP95        streaming estimate of the 95th percentile of the duration
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public record TestCaseStats(
+	UUID projectID,
+	String testCaseKey,
+	String name,
+	UUID planNodeID,
+	int executionCount,
+	int sampleCount,
+	long recentResults,
+	int flipCount,
+	int recentFlips,
+	ExecutionResult lastResult,
+	Instant lastExecutedAt,
+	double durationEwma,
+	double durationDeviation,
+	double durationP95
+) {
+
+	/** Number of recent outcomes kept in {@link #recentResults()} */
+	public static final int WINDOW = Long.SIZE;
+
+	private static final double EWMA_WEIGHT = 0.2;
+	private static final double PERCENTILE = 0.95;
+	private static final double PERCENTILE_STEP = 0.1;
+
+
+	public enum Ranking {
+		/** Test cases with the most outcome changes among the recent executions */
+		FLAKY,
+		/** Test cases with the highest estimated 95th percentile duration */
+		SLOWEST
+	}
+
+
+	/**
+	 * Obtain the stable identity of a test case: its identifier if it has one, or else
+	 * a hash of its source location and name.
+	 */
+	public static String keyOf(TestPlanNode testCase) {
+		if (testCase.identifier() != null && !testCase.identifier().isBlank()) {
+			return testCase.identifier();
+		}
+		return Hash.of(Objects.toString(testCase.source(), "") + "\n" + Objects.toString(testCase.name(), ""));
+	}
+
+
+	/**
+	 * Statistics of a test case that has not been executed yet
+	 */
+	public static TestCaseStats empty(UUID projectID, String testCaseKey) {
+		return new TestCaseStats(projectID, testCaseKey, null, null, 0, 0, 0L, 0, 0, null, null, 0, 0, 0);
+	}
+
+
+	/**
+	 * Compute the statistics after a new execution of the test case. The cost is
+	 * constant, regardless of the number of previous executions.
+	 */
+	public TestCaseStats record(
+		UUID planNodeID,
+		String name,
+		ExecutionResult result,
+		long durationMillis,
+		Instant finishedAt
+	) {
+		if (result != ExecutionResult.PASSED && result != ExecutionResult.FAILED && result != ExecutionResult.ERROR) {
+			return new TestCaseStats(
+				projectID, testCaseKey, name, planNodeID, executionCount + 1, sampleCount, recentResults,
+				flipCount, recentFlips, result, finishedAt, durationEwma, durationDeviation, durationP95
+			);
+		}
+		long failed = result == ExecutionResult.PASSED ? 0L : 1L;
+		long history = (recentResults << 1) | failed;
+		int samples = sampleCount + 1;
+		boolean flipped = sampleCount > 0 && (recentResults & 1L) != failed;
+		int recentSize = Math.min(samples, WINDOW);
+		int flipsInWindow = Long.bitCount((history ^ (history >>> 1)) & mask(recentSize - 1));
+
+		double duration = Math.max(durationMillis, 0);
+		double ewma;
+		double deviation;
+		double p95;
+		if (sampleCount == 0) {
+			ewma = duration;
+			deviation = 0;
+			p95 = duration;
+		} else {
+			deviation = (1 - EWMA_WEIGHT) * durationDeviation + EWMA_WEIGHT * Math.abs(duration - durationEwma);
+			ewma = (1 - EWMA_WEIGHT) * durationEwma + EWMA_WEIGHT * duration;
+			// stochastic approximation: the estimate drifts up 95% of a step when exceeded and
+			// down 5% otherwise, which balances out at the 95th percentile; the step is
+			// proportional to the spread of the durations
+			double step = Math.max(deviation * PERCENTILE_STEP, 1.0);
+			p95 = Math.max(0, durationP95 + (duration > durationP95 ? step * PERCENTILE : -step * (1 - PERCENTILE)));
+		}
+		return new TestCaseStats(
+			projectID, testCaseKey, name, planNodeID, executionCount + 1, samples, history,
+			flipCount + (flipped ? 1 : 0), flipsInWindow, result, finishedAt, ewma, deviation, p95
+		);
+	}
+
+
+	/**
+	 * Number of outcomes available in {@link #recentResults()}
+	 */
+	public int recentCount() {
+		return Math.min(sampleCount, WINDOW);
+	}
+
+
+	/**
+	 * Ratio of failed or error outcomes among the recent executions
+	 */
+	public double failureRate() {
+		int count = recentCount();
+		return count == 0 ? 0 : (double) Long.bitCount(recentResults & mask(count)) / count;
+	}
+
+
+	/**
+	 * Recent outcomes as a string, from the most recent to the oldest, using {@code P}
+	 * for passed and {@code F} for failed or error
+	 */
+	public String trend() {
+		StringBuilder trend = new StringBuilder(recentCount());
+		for (int i = 0; i < recentCount(); i++) {
+			trend.append((recentResults >>> i & 1L) == 0 ? 'P' : 'F');
+		}
+		return trend.toString();
+	}
+
+
+	private static long mask(int bits) {
+		return bits >= WINDOW ? -1L : (1L << bits) - 1;
+	}
+
+}
@@ -21,5 +21,7 @@ public class TestExecution {
 	private Integer testErrorCount;
 	private Integer testFailedCount;
 	private String profile;
+	/** The execution whose failed test cases are re-run by this one, if any */
+	private UUID rerunOf;
 
 }
\ No newline at end of file
@@ -8,9 +8,11 @@ import org.myjtools.openbbt.core.events.ExecutionNodeFinished;
 import org.myjtools.openbbt.core.events.ExecutionNodeStarted;
 import org.myjtools.openbbt.core.events.ExecutionStarted;
 import org.myjtools.openbbt.core.persistence.AttachmentRepository;
+import org.myjtools.openbbt.core.persistence.RetentionPolicy;
 import org.myjtools.openbbt.core.persistence.TestExecutionRepository;
 import org.myjtools.openbbt.core.persistence.TestPlanRepository;
 import org.myjtools.openbbt.core.testplan.NodeType;
+import org.myjtools.openbbt.core.testplan.PlanTagIndex;
 import org.myjtools.openbbt.core.testplan.TestPlan;
 import org.myjtools.openbbt.core.testplan.TestPlanNode;
 import org.myjtools.openbbt.core.util.Log;
@@ -19,17 +21,30 @@ import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class TestPlanExecutor {
 
 	private record Result(ExecutionResult result, String message, Throwable error) {}
 
+	/**
+	 * Part of the plan executed by a partial execution: the selected test cases (with all
+	 * their descendants) and their ancestors. Test cases whose previous result is carried
+	 * forward are part of the scope, but they are not executed.
+	 */
+	private record Scope(Set<UUID> testCases, Set<UUID> nodes, Map<UUID, TestExecutionNode> carried) {}
+
 	private record NodeResult(ExecutionResult result, int passedCount, int errorCount, int failedCount) {
 		static final NodeResult PASSED_LEAF = new NodeResult(ExecutionResult.PASSED, 0, 0, 0);
 		static NodeResult ofTestCase(ExecutionResult result) {
@@ -52,13 +67,18 @@ public class TestPlanExecutor {
 
 
 	private static final Log log = Log.of();
+	private static final int DURATION_HISTORY_SIZE = 5;
 
 	private final OpenBBTRuntime runtime;
 	private final TestPlanRepository testPlanRepository;
 	private final TestExecutionRepository testExecutionRepository;
 	private final AttachmentRepository attachmentRepository;
 	private final String parallelTag;
-	private final ExecutorService parallelExecutor = Executors.newCachedThreadPool();
+	private final ExecutorService parallelExecutor;
+	private final LongestFirstScheduler scheduler;
+	private PlanTagIndex tagIndex;
+	private UUID projectID;
+	private Scope scope;
 
 	public TestPlanExecutor(OpenBBTRuntime runtime) {
 		this.runtime = runtime;
@@ -68,6 +88,19 @@ public class TestPlanExecutor {
 		this.parallelTag = runtime.configuration().getString(OpenBBTConfig.PARALLEL_EXECUTION_TAG).orElseThrow(
 			() -> new OpenBBTException("Configuration key {} not found", OpenBBTConfig.PARALLEL_EXECUTION_TAG)
 		);
+		int parallelism = runtime.configuration().get(OpenBBTConfig.PARALLEL_EXECUTION_THREADS, Integer.class)
+			.filter(threads -> threads > 0)
+			.orElse(Runtime.getRuntime().availableProcessors());
+		// async mode makes the queue FIFO, and a fork-join pool compensates the workers
+		// blocked joining nested parallel nodes, so the bounded pool cannot deadlock
+		ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+		this.parallelExecutor = new ForkJoinPool(parallelism, pool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("openbbt-parallel-" + thread.getPoolIndex());
+			thread.setContextClassLoader(contextClassLoader);
+			return thread;
+		}, null, true);
+		this.scheduler = new LongestFirstScheduler(parallelism);
 	}
 
 	public TestExecution execute(UUID planID) {
@@ -75,6 +108,145 @@ public class TestPlanExecutor {
 	}
 
 	public TestExecution execute(UUID planID, Consumer<UUID> onExecutionCreated) {
+		return execute(planID, null, null, onExecutionCreated);
+	}
+
+
+	/**
+	 * Execute again only the test cases that failed, had an error or were undefined in a
+	 * previous execution. The new execution is linked to the previous one, so that they
+	 * can be merged into an effective result (see {@link EffectiveResult}).
+	 * The ancestors of the test cases are executed as usual, so they get their start and
+	 * finish instants and the aggregated counts of the re-run test cases.
+	 *
+	 * @param executionID the execution to re-run
+	 * @param onExecutionCreated called with the ID of the new execution once it is created
+	 */
+	public TestExecution rerunFailed(UUID executionID, Consumer<UUID> onExecutionCreated) {
+		TestExecution original = testExecutionRepository.getExecution(executionID).orElseThrow(
+			() -> new OpenBBTException("Execution with ID {} not found", executionID)
+		);
+		List<UUID> testCases = testExecutionRepository.listRerunTestCases(executionID);
+		if (testCases.isEmpty()) {
+			throw new OpenBBTException("Execution {} has no failed test cases to re-run", executionID);
+		}
+		Set<UUID> nodes = new HashSet<>(testCases);
+		for (UUID testCase : testCases) {
+			try (Stream<UUID> ancestors = testPlanRepository.getNodeAncestors(testCase)) {
+				ancestors.forEach(nodes::add);
+			}
+		}
+		log.info("Re-running {} test cases of execution {}", testCases.size(), executionID);
+		return execute(original.planID(), executionID, new Scope(Set.copyOf(testCases), nodes, Map.of()), onExecutionCreated);
+	}
+
+
+	/**
+	 * Execute only the test cases affected by the changes in the resources since a previous
+	 * execution: those whose source resource, or any resource referenced by their steps,
+	 * has been added, removed or modified (see {@link ChangeImpact}). If the step providers
+	 * have changed, every test case is executed.
+	 * The remaining test cases are not executed, but their results in the previous execution
+	 * are carried forward to the new one.
+	 *
+	 * @param planID the plan to execute
+	 * @param executionID the previous execution used as reference
+	 * @param onExecutionCreated called with the ID of the new execution once it is created
+	 */
+	public TestExecution executeChangedSince(UUID planID, UUID executionID, Consumer<UUID> onExecutionCreated) {
+		ResourceSnapshot previous = testExecutionRepository.getResourceSnapshot(executionID).orElseThrow(
+			() -> new OpenBBTException("No resource snapshot stored for execution {}", executionID)
+		);
+		TestPlan testPlan = testPlanRepository.getPlan(planID).orElseThrow(
+			() -> new OpenBBTException("Test plan with ID {} not found", planID)
+		);
+		// every node of the plan is fetched at once, and reused by the change impact analysis
+		List<UUID> descendants;
+		try (Stream<UUID> stream = testPlanRepository.getNodeDescendants(testPlan.planNodeRoot())) {
+			descendants = stream.toList();
+		}
+		Map<UUID, TestPlanNode> planNodes = testPlanRepository.getNodeData(descendants);
+		ResourceSnapshot current = ResourceSnapshot.of(runtime, planNodes.values());
+		if (current.stepProvidersChangedSince(previous)) {
+			log.info("Step providers changed since execution {}, executing every test case", executionID);
+			return execute(planID, null, null, current, onExecutionCreated);
+		}
+		Set<String> changedResources = current.changedSince(previous);
+
+		// the plan may have been rebuilt since, so test cases are matched by their stable key
+		Set<UUID> previousResults = testExecutionRepository.getTestCaseResults(executionID).keySet();
+		Map<UUID, TestPlanNode> previousNodes = new HashMap<>();
+		List<UUID> missing = new ArrayList<>();
+		for (UUID planNodeID : previousResults) {
+			TestPlanNode node = planNodes.get(planNodeID);
+			if (node != null) {
+				previousNodes.put(planNodeID, node);
+			} else {
+				missing.add(planNodeID);
+			}
+		}
+		if (!missing.isEmpty()) {
+			previousNodes.putAll(testPlanRepository.getNodeData(missing));
+		}
+		Map<String, UUID> previousTestCases = new HashMap<>();
+		previousNodes.forEach((planNodeID, node) -> previousTestCases.put(TestCaseStats.keyOf(node), planNodeID));
+
+		Map<UUID, UUID> previousNodeIDs = new HashMap<>();
+		for (UUID planNodeID : descendants) {
+			TestPlanNode node = planNodes.get(planNodeID);
+			if (node != null && node.nodeType() == NodeType.TEST_CASE) {
+				UUID previousNodeID = previousTestCases.get(TestCaseStats.keyOf(node));
+				if (previousNodeID != null) {
+					previousNodeIDs.put(planNodeID, previousNodeID);
+				}
+			}
+		}
+		Map<UUID, TestExecutionNode> previousExecutionNodes = testExecutionRepository.getExecutionNodes(
+			executionID, previousNodeIDs.values()
+		);
+		Set<String> resourcePaths = new HashSet<>(current.contentHashes().keySet());
+		resourcePaths.addAll(previous.contentHashes().keySet());
+		ChangeImpact impact = new ChangeImpact(testPlanRepository, resourcePaths, planNodes);
+
+		Set<UUID> testCases = new HashSet<>();
+		Set<UUID> nodes = new HashSet<>();
+		Map<UUID, TestExecutionNode> carried = new HashMap<>();
+		for (UUID planNodeID : descendants) {
+			TestPlanNode node = planNodes.get(planNodeID);
+			if (node == null || node.nodeType().value > NodeType.TEST_CASE.value) {
+				continue;
+			}
+			nodes.add(planNodeID);
+			if (node.nodeType() != NodeType.TEST_CASE) {
+				continue;
+			}
+			TestExecutionNode previousResult = previousExecutionNodes.get(previousNodeIDs.get(planNodeID));
+			if (previousResult != null && previousResult.result() != null && !impact.isAffected(node, changedResources)) {
+				carried.put(planNodeID, previousResult);
+			} else {
+				testCases.add(planNodeID);
+			}
+		}
+		log.info(
+			"{} resources changed since execution {}: executing {} test cases, carrying forward {}",
+			changedResources.size(), executionID, testCases.size(), carried.size()
+		);
+		return execute(planID, null, new Scope(testCases, nodes, carried), current, onExecutionCreated);
+	}
+
+
+	private TestExecution execute(UUID planID, UUID rerunOf, Scope scope, Consumer<UUID> onExecutionCreated) {
+		return execute(planID, rerunOf, scope, null, onExecutionCreated);
+	}
+
+
+	private TestExecution execute(
+		UUID planID,
+		UUID rerunOf,
+		Scope scope,
+		ResourceSnapshot snapshot,
+		Consumer<UUID> onExecutionCreated
+	) {
 		TestPlan testPlan = testPlanRepository.getPlan(planID).orElseThrow(
 			() -> new OpenBBTException("Test plan with ID {} not found", planID)
 		);
@@ -84,12 +256,18 @@ public class TestPlanExecutor {
 		if (planRoot.hasIssues()) {
 			throw new OpenBBTException("Test plan has issues, cannot be executed");
 		}
+		tagIndex = testPlanRepository.getTagIndex(planID);
+		projectID = testPlan.projectID();
+		this.scope = scope;
 		String profileName = runtime.profile().name().isBlank() ? null : runtime.profile().name();
-		TestExecution execution = testExecutionRepository.newExecution(planID, runtime.clock().now(), profileName);
+		TestExecution execution = testExecutionRepository.newExecution(
+			planID, runtime.clock().now(), profileName, rerunOf
+		);
 		if (onExecutionCreated != null) {
 			onExecutionCreated.accept(execution.executionID());
 		}
-		UUID rootExecutionNodeID = createExecutionNodes(execution.executionID(), planRoot.nodeID());
+		saveResourceSnapshot(execution.executionID(), planRoot.nodeID(), snapshot);
+		UUID rootExecutionNodeID = createExecutionNodes(execution.executionID(), planRoot.nodeID(), false);
 		execution.executionRootNodeID(rootExecutionNodeID);
 		runtime.eventBus().publish(
 			new ExecutionStarted(runtime.clock().now(), execution.executionID(), planID, profileName)
@@ -99,27 +277,78 @@ public class TestPlanExecutor {
 		testExecutionRepository.updateExecutionTestCounts(
 			execution.executionID(), rootResult.passedCount(), rootResult.errorCount(), rootResult.failedCount()
 		);
+		flushAttachments(execution.executionID());
 		runtime.eventBus().publish(
 			new ExecutionFinished(runtime.clock().now(), execution.executionID(), planID, profileName, rootResult.result)
 		);
+		applyRetentionPolicy();
 		return execution;
 	}
 
 
+	private void saveResourceSnapshot(UUID executionID, UUID planRootID, ResourceSnapshot snapshot) {
+		if (runtime.resourceSet() == null) {
+			return;
+		}
+		try {
+			if (snapshot == null) {
+				List<UUID> planNodeIDs;
+				try (Stream<UUID> descendants = testPlanRepository.getNodeDescendants(planRootID)) {
+					planNodeIDs = descendants.toList();
+				}
+				snapshot = ResourceSnapshot.of(runtime, testPlanRepository.getNodeData(planNodeIDs).values());
+			}
+			testExecutionRepository.saveResourceSnapshot(executionID, snapshot);
+		} catch (RuntimeException e) {
+			// the snapshot is only needed by later change impact analysis
+			log.error(e, "Cannot store the resource snapshot of execution {}", executionID);
+		}
+	}
+
+
+	private void flushAttachments(UUID executionID) {
+		if (attachmentRepository == null) {
+			return;
+		}
+		try {
+			attachmentRepository.flush(executionID);
+		} catch (RuntimeException e) {
+			// the attachments already written are still readable
+			log.error(e, "Cannot complete the attachments of execution {}", executionID);
+		}
+	}
+
+
+	private void applyRetentionPolicy() {
+		RetentionPolicy policy = RetentionPolicy.of(runtime.configuration());
+		if (!policy.isEnabled()) {
+			return;
+		}
+		// the expired executions are archived in the background, after any previous cleanup
+		runtime.repositoryCleaner().applyRetention(policy, runtime.clock().now());
+	}
+
+
 	private NodeResult executeTestPlanNode(UUID executionID, UUID testPlanNodeID, BackendExecutor backendExecutor) {
 		UUID executionNodeID = testExecutionRepository.getExecutionNodeByPlanNode(executionID, testPlanNodeID)
 		.orElseThrow(
 			() -> new OpenBBTException("Execution node for test plan node with ID {} not found", testPlanNodeID)
 		);
+		TestExecutionNode carried = scope != null ? scope.carried().get(testPlanNodeID) : null;
+		if (carried != null) {
+			return carryForward(executionID, executionNodeID, testPlanNodeID, carried);
+		}
+		TestPlanNode node = testPlanRepository.getNodeData(testPlanNodeID).orElse(null);
 		Instant start = runtime.clock().now();
 		testExecutionRepository.updateExecutionNodeStart(executionNodeID, start);
 		runtime.eventBus().publish(
 			new ExecutionNodeStarted(start, executionID, executionNodeID, testPlanNodeID)
 		);
 		try {
-			NodeResult nodeResult = doExecuteTestPlanNode(executionID, executionNodeID, testPlanNodeID, backendExecutor);
+			NodeResult nodeResult = doExecuteTestPlanNode(executionID, executionNodeID, testPlanNodeID, node, backendExecutor);
 			Instant finish = runtime.clock().now();
 			testExecutionRepository.updateExecutionNodeFinish(executionNodeID, nodeResult.result(), finish);
+			recordTestCaseStats(node, nodeResult.result(), start, finish);
 			runtime.eventBus().publish(
 				new ExecutionNodeFinished(finish, executionID, executionNodeID, testPlanNodeID, nodeResult.result())
 			);
@@ -129,6 +358,7 @@ public class TestPlanExecutor {
 			log.error(e);
 			Instant finish = runtime.clock().now();
 			testExecutionRepository.updateExecutionNodeFinish(executionNodeID, ExecutionResult.ERROR, finish);
+			recordTestCaseStats(node, ExecutionResult.ERROR, start, finish);
 			runtime.eventBus().publish(
 				new ExecutionNodeFinished(finish, executionID, executionNodeID, testPlanNodeID, ExecutionResult.ERROR)
 			);
@@ -137,15 +367,53 @@ public class TestPlanExecutor {
 	}
 
 
+	private NodeResult carryForward(
+		UUID executionID,
+		UUID executionNodeID,
+		UUID testPlanNodeID,
+		TestExecutionNode previous
+	) {
+		Instant now = runtime.clock().now();
+		Instant start = previous.startTime() != null ? previous.startTime() : now;
+		Instant finish = previous.endTime() != null ? previous.endTime() : now;
+		testExecutionRepository.updateExecutionNodeStart(executionNodeID, start);
+		runtime.eventBus().publish(new ExecutionNodeStarted(now, executionID, executionNodeID, testPlanNodeID));
+		if (previous.message() != null) {
+			testExecutionRepository.updateExecutionNodeMessage(executionNodeID, previous.message());
+		}
+		testExecutionRepository.updateExecutionNodeFinish(executionNodeID, previous.result(), finish);
+		runtime.eventBus().publish(
+			new ExecutionNodeFinished(now, executionID, executionNodeID, testPlanNodeID, previous.result())
+		);
+		return NodeResult.ofTestCase(previous.result());
+	}
+
+
+	private void recordTestCaseStats(TestPlanNode node, ExecutionResult result, Instant start, Instant finish) {
+		if (node == null || node.nodeType() != NodeType.TEST_CASE) {
+			return;
+		}
+		try {
+			testExecutionRepository.recordTestCaseResult(
+				projectID, node, result, finish.toEpochMilli() - start.toEpochMilli(), finish
+			);
+		} catch (RuntimeException e) {
+			// statistics are secondary, they must not alter the execution result
+			log.error(e, "Cannot update statistics of test case {}", node.nodeID());
+		}
+	}
+
+
 	private NodeResult doExecuteTestPlanNode(
 		UUID executionID,
 		UUID executionNodeID,
 		UUID testPlanNodeID,
+		TestPlanNode node,
 		BackendExecutor backendExecutor
 	) {
-		TestPlanNode node = testPlanRepository.getNodeData(testPlanNodeID).orElseThrow(
-			() -> new OpenBBTException("Test plan node with ID {} not found", testPlanNodeID)
-		);
+		if (node == null) {
+			throw new OpenBBTException("Test plan node with ID {} not found", testPlanNodeID);
+		}
 
 		if (node.nodeType() == NodeType.VIRTUAL_STEP) {
 			return NodeResult.PASSED_LEAF;
@@ -184,6 +452,10 @@ public class TestPlanExecutor {
 
 	private NodeResult executeChildren(UUID executionID, UUID testPlanNodeID, BackendExecutor backendExecutor) {
 		List<UUID> children = testPlanRepository.getNodeChildren(testPlanNodeID).toList();
+		if (scope != null && backendExecutor == null) {
+			// above the test case level, only the nodes within the scope are executed
+			children = children.stream().filter(scope.nodes()::contains).toList();
+		}
 		if (children.isEmpty()) {
 			return NodeResult.PASSED_LEAF;
 		}
@@ -195,28 +467,76 @@ public class TestPlanExecutor {
 
 
 	private NodeResult executeChildrenParallel(UUID executionID, List<UUID> children) {
-		List<CompletableFuture<NodeResult>> parallelFutures = new ArrayList<>();
-		NodeResult result = NodeResult.PASSED_LEAF;
+		List<UUID> parallelChildren = new ArrayList<>();
+		List<UUID> sequentialChildren = new ArrayList<>();
 		for (UUID childNodeID : children) {
-			TestPlanNode childNode = testPlanRepository.getNodeData(childNodeID).orElseThrow(
-				() -> new OpenBBTException("Test plan node with ID {} not found", childNodeID)
-			);
-			if (childNode.hasTag(parallelTag)) {
-				parallelFutures.add(CompletableFuture.supplyAsync(
-					() -> executeTestPlanNode(executionID, childNodeID, null),
-					parallelExecutor
-				));
-			} else {
-				result = result.merge(executeTestPlanNode(executionID, childNodeID, null));
+			if (!tagIndex.contains(childNodeID)) {
+				throw new OpenBBTException("Test plan node with ID {} not found", childNodeID);
 			}
+			(tagIndex.hasTag(childNodeID, parallelTag) ? parallelChildren : sequentialChildren).add(childNodeID);
+		}
+		if (parallelChildren.isEmpty()) {
+			return executeChildrenSequential(executionID, children, null);
+		}
+		long start = System.nanoTime();
+		LongestFirstScheduler.Schedule<UUID> schedule = scheduler.schedule(
+			parallelChildren, sequentialChildren, estimateDurations(children)
+		);
+		// the pool queue is FIFO, so the longest tasks are picked up first
+		List<CompletableFuture<NodeResult>> parallelFutures = new ArrayList<>();
+		for (UUID childNodeID : schedule.parallel()) {
+			parallelFutures.add(CompletableFuture.supplyAsync(
+				() -> executeTestPlanNode(executionID, childNodeID, null),
+				parallelExecutor
+			));
+		}
+		NodeResult result = NodeResult.PASSED_LEAF;
+		for (UUID childNodeID : schedule.sequential()) {
+			result = result.merge(executeTestPlanNode(executionID, childNodeID, null));
 		}
 		for (CompletableFuture<NodeResult> future : parallelFutures) {
 			result = result.merge(future.join());
 		}
+		long actualMakespan = (System.nanoTime() - start) / 1_000_000;
+		log.debug(
+			"Executed {} parallel and {} sequential nodes ({} with history): predicted makespan {} ms, actual {} ms",
+			schedule.parallel().size(),
+			schedule.sequential().size(),
+			schedule.estimatedTasks(),
+			schedule.predictedMakespan(),
+			actualMakespan
+		);
 		return result;
 	}
 
 
+	/**
+	 * Estimate the duration of the given plan nodes from their previous executions. Test
+	 * cases whose plan node has never been executed (for example, after rebuilding the
+	 * plan) are estimated from the statistics of the test case.
+	 */
+	private Map<UUID, Long> estimateDurations(List<UUID> planNodeIDs) {
+		Map<UUID, Long> durations = new HashMap<>(
+			testExecutionRepository.getHistoricalDurations(planNodeIDs, DURATION_HISTORY_SIZE)
+		);
+		List<UUID> withoutHistory = planNodeIDs.stream().filter(id -> !durations.containsKey(id)).toList();
+		if (withoutHistory.isEmpty()) {
+			return durations;
+		}
+		// several plan nodes may share the key of a test case
+		Map<String, List<UUID>> testCases = new HashMap<>();
+		testPlanRepository.getNodeData(withoutHistory).values().stream()
+			.filter(node -> node.nodeType() == NodeType.TEST_CASE)
+			.forEach(node -> testCases.computeIfAbsent(TestCaseStats.keyOf(node), key -> new ArrayList<>()).add(node.nodeID()));
+		testExecutionRepository.getTestCaseStats(projectID, testCases.keySet()).forEach((key, stats) -> {
+			if (stats.sampleCount() > 0) {
+				testCases.get(key).forEach(planNodeID -> durations.put(planNodeID, Math.round(stats.durationEwma())));
+			}
+		});
+		return durations;
+	}
+
+
 	private NodeResult executeChildrenSequential(UUID executionID, List<UUID> children, BackendExecutor backendExecutor) {
 		NodeResult finalResult = NodeResult.PASSED_LEAF;
 		for (UUID childNodeID : children) {
@@ -274,10 +594,12 @@ public class TestPlanExecutor {
 	}
 
 
-	private UUID createExecutionNodes(UUID executionID, UUID planNodeID) {
+	private UUID createExecutionNodes(UUID executionID, UUID planNodeID, boolean wholeSubtree) {
 		UUID executionNodeID = testExecutionRepository.newExecutionNode(executionID, planNodeID);
-		testPlanRepository.getNodeChildren(planNodeID)
-			.forEach(childNodeID -> createExecutionNodes(executionID, childNodeID));
+		boolean whole = wholeSubtree || scope == null || scope.testCases().contains(planNodeID);
+		testPlanRepository.getNodeChildren(planNodeID).toList().stream()
+			.filter(childNodeID -> whole || scope.nodes().contains(childNodeID))
+			.forEach(childNodeID -> createExecutionNodes(executionID, childNodeID, whole));
 		return executionNodeID;
 	}
 
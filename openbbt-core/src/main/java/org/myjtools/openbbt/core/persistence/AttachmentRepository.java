@@ -1,5 +1,11 @@
 package org.myjtools.openbbt.core.persistence;
 
+import org.myjtools.openbbt.core.OpenBBTException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Stream;
@@ -27,8 +33,100 @@ public interface AttachmentRepository extends Repository {
 	}
 
 
+	/**
+	 * Metadata of a stored attachment, obtained without reading its content
+	 * @param size the size of the content, in bytes
+	 */
+	record AttachmentInfo(UUID attachmentID, long size, String contentType) { }
+
+
+	/**
+	 * Opens the content of an attachment on demand
+	 */
+	@FunctionalInterface
+	interface ContentOpener {
+		InputStream open() throws IOException;
+	}
+
+
+	/**
+	 * A stored attachment whose content is only read when it is opened. Each call to
+	 * {@link #open()} returns a new stream, which must be closed by the caller.
+	 */
+	record AttachmentContent(AttachmentInfo info, ContentOpener opener) {
+
+		public InputStream open() throws IOException {
+			return opener.open();
+		}
+
+		public byte[] readAllBytes() {
+			try (InputStream input = open()) {
+				return input.readAllBytes();
+			} catch (IOException e) {
+				throw new OpenBBTException(e, "Failed to read attachment {}", info.attachmentID());
+			}
+		}
+	}
+
+
+	/**
+	 * A range of the content of an attachment
+	 * @param offset the position of the first byte of the range within the content
+	 * @param bytes the bytes of the range, fewer than requested when it reaches the end of the content
+	 */
+	record AttachmentChunk(AttachmentInfo info, long offset, byte[] bytes) {
+
+		public boolean isLast() {
+			return offset + bytes.length >= info.size();
+		}
+	}
+
+
 	void storeAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID, byte[] bytes, String contentType);
 
+	/**
+	 * Store an attachment reading its content from the given stream, which is read until
+	 * its end but not closed. Implementations should not hold the whole content in memory.
+	 */
+	default void storeAttachment(
+		UUID executionID,
+		UUID executionNodeID,
+		UUID attachmentID,
+		InputStream content,
+		String contentType
+	) {
+		try {
+			storeAttachment(executionID, executionNodeID, attachmentID, content.readAllBytes(), contentType);
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to read content of attachment {}", attachmentID);
+		}
+	}
+
+	/**
+	 * Store an attachment reading its content from the given channel, which is read until
+	 * its end but not closed.
+	 */
+	default void storeAttachment(
+		UUID executionID,
+		UUID executionNodeID,
+		UUID attachmentID,
+		ReadableByteChannel content,
+		String contentType
+	) {
+		// the stream is not closed, since that would close the channel as well
+		InputStream input = Channels.newInputStream(content);
+		storeAttachment(executionID, executionNodeID, attachmentID, input, contentType);
+	}
+
+	/**
+	 * Complete the pending writes of the attachments of an execution, once no more
+	 * attachments are expected for it. Implementations that store every attachment
+	 * immediately do not need to do anything.
+	 */
+	default void flush(UUID executionID) {
+		// nothing pending by default
+	}
+
 	void deleteAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID);
 
 	void deleteAttachments(UUID executionID);
@@ -37,4 +135,57 @@ public interface AttachmentRepository extends Repository {
 
 	Stream<Attachment> streamAttachments(UUID executionID, UUID executionNodeID);
 
+	/**
+	 * Retrieve an attachment without reading its content, which can be opened later as a stream.
+	 */
+	default Optional<AttachmentContent> openAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		return retrieveAttachment(executionID, executionNodeID, attachmentID).map(attachment -> new AttachmentContent(
+			new AttachmentInfo(attachment.attachmentID(), attachment.bytes().length, attachment.contentType()),
+			() -> new ByteArrayInputStream(attachment.bytes())
+		));
+	}
+
+	/**
+	 * Read a range of the content of an attachment, without reading the rest of it.
+	 * An offset beyond the end of the content returns an empty chunk.
+	 * @param offset the position of the first byte to read
+	 * @param length the maximum number of bytes to read
+	 */
+	default Optional<AttachmentChunk> readAttachmentChunk(
+		UUID executionID,
+		UUID executionNodeID,
+		UUID attachmentID,
+		long offset,
+		int length
+	) {
+		if (offset < 0 || length < 0) {
+			throw new OpenBBTException("Invalid range of attachment {}: offset {}, length {}", attachmentID, offset, length);
+		}
+		return openAttachment(executionID, executionNodeID, attachmentID).map(content -> {
+			long start = Math.min(offset, content.info().size());
+			try (InputStream input = content.open()) {
+				input.skipNBytes(start);
+				return new AttachmentChunk(content.info(), start, input.readNBytes(length));
+			} catch (IOException e) {
+				throw new OpenBBTException(e, "Failed to read attachment {}", attachmentID);
+			}
+		});
+	}
+
+	/**
+	 * Retrieve the metadata of an attachment, without reading its content.
+	 */
+	default Optional<AttachmentInfo> getAttachmentInfo(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		return openAttachment(executionID, executionNodeID, attachmentID).map(AttachmentContent::info);
+	}
+
+	/**
+	 * List the metadata of the attachments of an execution node, without reading their content.
+	 * The stream may hold resources, so it must be closed if it is not fully consumed.
+	 */
+	default Stream<AttachmentInfo> listAttachments(UUID executionID, UUID executionNodeID) {
+		return streamAttachments(executionID, executionNodeID)
+			.map(attachment -> new AttachmentInfo(attachment.attachmentID(), attachment.bytes().length, attachment.contentType()));
+	}
+
 }
@@ -0,0 +1,41 @@
+package org.myjtools.openbbt.core.persistence;
+
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * A page of the results of a list query. The page starts right after the element identified
+ * by the cursor, if any, then skips a number of elements and takes up to a maximum number.
+ * <p>
+ * A cursor keeps the page stable when elements are added before it, and lets repositories
+ * seek the page directly instead of skipping every previous element.
+ * @param after the ID of the element preceding the page, or {@code null} to start from the first one
+ * @param offset number of elements to skip, after the cursor if any
+ * @param max maximum number of elements of the page, 0 or negative means no limit
+ */
+public record Page(UUID after, int offset, int max) {
+
+	public static final Page ALL = new Page(null, 0, 0);
+
+
+	public static Page of(int offset, int max) {
+		return new Page(null, offset, max);
+	}
+
+
+	/**
+	 * Restrict a stream of ordered elements to this page. If the cursor is not an element
+	 * of the stream, the page is empty.
+	 * @param id obtains the ID of an element, to be compared with the cursor
+	 */
+	public <T> Stream<T> apply(Stream<T> elements, Function<T, UUID> id) {
+		Stream<T> page = elements;
+		if (after != null) {
+			page = page.dropWhile(element -> !after.equals(id.apply(element))).skip(1);
+		}
+		page = page.skip(offset);
+		return max > 0 ? page.limit(max) : page;
+	}
+
+}
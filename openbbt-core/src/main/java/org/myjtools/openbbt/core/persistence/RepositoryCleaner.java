@@ -0,0 +1,345 @@
+package org.myjtools.openbbt.core.persistence;
+
+import org.myjtools.openbbt.core.execution.TestExecution;
+import org.myjtools.openbbt.core.testplan.TestPlan;
+import org.myjtools.openbbt.core.util.Log;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Deletes plans and executions in the background.
+ * <p>
+ * Deletions are queued and run one at a time on a dedicated thread, so the caller is not
+ * blocked and only one large deletion competes with other clients for the database.
+ * Repositories are expected to split each deletion in bounded chunks (see
+ * {@link TestPlanRepository#deletePlan(UUID, java.util.function.IntConsumer)}), and the
+ * progress of every chunk is reported to the listener. The attachments of the deleted
+ * executions are removed concurrently, while the database records are being deleted.
+ * <p>
+ * Finished tasks are kept for a while, so their final progress can still be polled.
+ * Closing the cleaner waits for the pending deletions to finish.
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public class RepositoryCleaner implements AutoCloseable {
+
+	private static final Log log = Log.of();
+	private static final int ATTACHMENT_THREADS = 4;
+	private static final Duration DEFAULT_FINISHED_TASK_RETENTION = Duration.ofMinutes(10);
+
+	public enum State { PENDING, RUNNING, COMPLETED, FAILED }
+
+	/**
+	 * Snapshot of the progress of a cleanup task.
+	 * @param completedItems number of plans or executions already deleted
+	 * @param totalItems number of plans or executions to delete
+	 * @param deletedRows number of database rows deleted so far
+	 * @param error the failure message, when the state is {@link State#FAILED}
+	 */
+	public record Progress(
+		UUID taskID,
+		String description,
+		State state,
+		int completedItems,
+		int totalItems,
+		long deletedRows,
+		String error
+	) { }
+
+
+	private final TestPlanRepository planRepository;
+	private final TestExecutionRepository executionRepository;
+	private final AttachmentRepository attachmentRepository;
+	private final Consumer<Progress> listener;
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(
+		Thread.ofPlatform().name("openbbt-cleanup").daemon().factory()
+	);
+	private final ExecutorService attachmentExecutor = Executors.newFixedThreadPool(
+		ATTACHMENT_THREADS,
+		Thread.ofPlatform().name("openbbt-cleanup-attachments-", 0).daemon().factory()
+	);
+	private final Map<UUID, Task> tasks = new ConcurrentHashMap<>();
+	private volatile Duration finishedTaskRetention = DEFAULT_FINISHED_TASK_RETENTION;
+
+
+	/**
+	 * @param planRepository the plan repository, or {@code null} if only executions are deleted
+	 * @param executionRepository the execution repository, or {@code null} if not available
+	 * @param attachmentRepository the attachment repository, or {@code null} if not available
+	 */
+	public RepositoryCleaner(
+		TestPlanRepository planRepository,
+		TestExecutionRepository executionRepository,
+		AttachmentRepository attachmentRepository
+	) {
+		this(planRepository, executionRepository, attachmentRepository, progress -> { });
+	}
+
+
+	/**
+	 * @param planRepository the plan repository, or {@code null} if only executions are deleted
+	 * @param executionRepository the execution repository, or {@code null} if not available
+	 * @param attachmentRepository the attachment repository, or {@code null} if not available
+	 * @param listener receives a progress snapshot whenever a task advances
+	 */
+	public RepositoryCleaner(
+		TestPlanRepository planRepository,
+		TestExecutionRepository executionRepository,
+		AttachmentRepository attachmentRepository,
+		Consumer<Progress> listener
+	) {
+		this.planRepository = planRepository;
+		this.executionRepository = executionRepository;
+		this.attachmentRepository = attachmentRepository;
+		this.listener = listener;
+	}
+
+
+	/**
+	 * Sets how long finished tasks are kept after finishing. Tasks still pending or running
+	 * are always kept.
+	 */
+	public RepositoryCleaner retainFinishedTasks(Duration retention) {
+		this.finishedTaskRetention = retention;
+		return this;
+	}
+
+
+	/**
+	 * Queue the deletion of a plan, along with its executions and their attachments.
+	 */
+	public Task deletePlan(UUID planId) {
+		return submit("delete plan " + planId, task -> {
+			task.start(1);
+			removePlan(task, planId);
+		});
+	}
+
+
+	/**
+	 * Queue the deletion of a single execution and its attachments.
+	 */
+	public Task deleteExecution(UUID executionId) {
+		if (executionRepository == null) {
+			throw new IllegalStateException("Execution repository not available");
+		}
+		return submit("delete execution " + executionId, task -> {
+			task.start(1);
+			CompletableFuture<Void> attachments = removeAttachments(List.of(executionId));
+			executionRepository.deleteExecution(executionId, task::rowsDeleted);
+			attachments.join();
+			task.itemCompleted();
+		});
+	}
+
+
+	/**
+	 * Queue the deletion of every plan without executions.
+	 */
+	public Task deleteUnexecutedPlans() {
+		return submit("delete unexecuted plans", task -> {
+			List<TestPlan> plans = planRepository.listUnexecutedPlans();
+			task.start(plans.size());
+			for (TestPlan plan : plans) {
+				planRepository.deletePlan(plan.planID(), task::rowsDeleted);
+				task.itemCompleted();
+			}
+		});
+	}
+
+
+	/**
+	 * Queue the archiving of every execution expired according to the retention policy.
+	 * Archived executions are removed from the repository, but their attachments are kept.
+	 */
+	public Task applyRetention(RetentionPolicy policy, Instant now) {
+		if (executionRepository == null) {
+			throw new IllegalStateException("Execution repository not available");
+		}
+		return submit("apply retention policy " + policy, task -> {
+			List<UUID> expired = executionRepository.listExpiredExecutions(policy, now);
+			task.start(expired.size());
+			for (UUID executionID : expired) {
+				executionRepository.archiveExecution(executionID, task::rowsDeleted);
+				task.itemCompleted();
+			}
+		});
+	}
+
+
+	/**
+	 * Obtain a task submitted recently. Finished tasks are retained only for a while.
+	 */
+	public Optional<Task> task(UUID taskID) {
+		evictFinishedTasks();
+		return Optional.ofNullable(tasks.get(taskID));
+	}
+
+
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				log.info("Waiting for pending cleanup tasks to finish...");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			executor.shutdownNow();
+		}
+		attachmentExecutor.shutdown();
+	}
+
+
+	private void removePlan(Task task, UUID planId) {
+		List<UUID> executionIDs = List.of();
+		if (executionRepository != null) {
+			// the execution records are needed to locate the attachments, so they are read before deleting
+			executionIDs = new ArrayList<>(planRepository.getPlan(planId).map(plan -> {
+				try (Stream<TestExecution> executions = executionRepository.streamExecutions(planId, plan.planNodeRoot(), 0, 0)) {
+					return executions.map(TestExecution::executionID).toList();
+				}
+			}).orElse(List.of()));
+			executionIDs.addAll(executionRepository.listArchivedExecutions(planId));
+		}
+		CompletableFuture<Void> attachments = removeAttachments(executionIDs);
+		if (executionRepository != null) {
+			executionRepository.deleteExecutionsByPlan(planId, task::rowsDeleted);
+		}
+		planRepository.deletePlan(planId, task::rowsDeleted);
+		attachments.join();
+		task.itemCompleted();
+	}
+
+
+	private CompletableFuture<Void> removeAttachments(List<UUID> executionIDs) {
+		if (attachmentRepository == null || executionIDs.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return CompletableFuture.allOf(executionIDs.stream()
+			.map(executionID -> CompletableFuture.runAsync(
+				() -> attachmentRepository.deleteAttachments(executionID),
+				attachmentExecutor
+			))
+			.toArray(CompletableFuture[]::new)
+		);
+	}
+
+
+	private Task submit(String description, Consumer<Task> work) {
+		evictFinishedTasks();
+		Task task = new Task(UUID.randomUUID(), description);
+		tasks.put(task.taskID, task);
+		executor.execute(() -> {
+			try {
+				work.accept(task);
+				task.finish(State.COMPLETED, null);
+				log.info("Cleanup task '{}' completed: {} rows deleted", description, task.deletedRows.get());
+			} catch (RuntimeException e) {
+				log.error(e, "Cleanup task '{}' failed", description);
+				task.finish(State.FAILED, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+			} finally {
+				// errors are not handled above, but whoever waits for the task must be released
+				task.abortIfUnfinished();
+			}
+		});
+		return task;
+	}
+
+
+	private void evictFinishedTasks() {
+		long now = System.nanoTime();
+		long retention = finishedTaskRetention.toNanos();
+		tasks.values().removeIf(task -> task.completion.isDone() && now - task.finishedAt >= retention);
+	}
+
+
+
+	/**
+	 * Handle of a queued cleanup task.
+	 */
+	public final class Task {
+
+		private final UUID taskID;
+		private final String description;
+		private final CompletableFuture<Progress> completion = new CompletableFuture<>();
+		private final AtomicInteger completedItems = new AtomicInteger();
+		private final AtomicLong deletedRows = new AtomicLong();
+		private volatile State state = State.PENDING;
+		private volatile int totalItems;
+		private volatile String error;
+		private volatile long finishedAt;
+
+		private Task(UUID taskID, String description) {
+			this.taskID = taskID;
+			this.description = description;
+		}
+
+		public UUID taskID() {
+			return taskID;
+		}
+
+		public Progress progress() {
+			return new Progress(
+				taskID, description, state, completedItems.get(), totalItems, deletedRows.get(), error
+			);
+		}
+
+		/**
+		 * Completes with the final progress once the task has finished, either successfully or
+		 * not. If the task is aborted by an error, it completes exceptionally.
+		 */
+		public CompletableFuture<Progress> completion() {
+			return completion;
+		}
+
+		private void start(int totalItems) {
+			this.totalItems = totalItems;
+			this.state = State.RUNNING;
+			listener.accept(progress());
+		}
+
+		private void rowsDeleted(int rows) {
+			deletedRows.addAndGet(rows);
+			listener.accept(progress());
+		}
+
+		private void itemCompleted() {
+			completedItems.incrementAndGet();
+			listener.accept(progress());
+		}
+
+		private void finish(State state, String error) {
+			this.error = error;
+			this.state = state;
+			this.finishedAt = System.nanoTime();
+			Progress progress = progress();
+			try {
+				listener.accept(progress);
+			} finally {
+				completion.complete(progress);
+			}
+		}
+
+		private void abortIfUnfinished() {
+			if (completion.isDone()) {
+				return;
+			}
+			this.error = "Cleanup task aborted";
+			this.state = State.FAILED;
+			this.finishedAt = System.nanoTime();
+			completion.completeExceptionally(new IllegalStateException("Cleanup task '" + description + "' aborted"));
+		}
+	}
+
+}
@@ -0,0 +1,41 @@
+package org.myjtools.openbbt.core.persistence;
+
+import org.myjtools.imconfig.Config;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import static org.myjtools.openbbt.core.OpenBBTConfig.PERSISTENCE_RETENTION_MAX_AGE_DAYS;
+import static org.myjtools.openbbt.core.OpenBBTConfig.PERSISTENCE_RETENTION_MAX_EXECUTIONS;
+
+/**
+ * Determines which executions are kept in the live repository. Expired executions are
+ * moved to the execution archive.
+ * @param maxExecutionsPerPlan number of most recent executions kept per plan, or 0 for no limit
+ * @param maxAge maximum age of the executions kept, or {@code null} for no limit
+ */
+public record RetentionPolicy(int maxExecutionsPerPlan, Duration maxAge) {
+
+	public static final RetentionPolicy NONE = new RetentionPolicy(0, null);
+
+
+	public static RetentionPolicy of(Config config) {
+		return new RetentionPolicy(
+			config.get(PERSISTENCE_RETENTION_MAX_EXECUTIONS, Integer.class).orElse(0),
+			config.get(PERSISTENCE_RETENTION_MAX_AGE_DAYS, Integer.class).map(Duration::ofDays).orElse(null)
+		);
+	}
+
+
+	public boolean isEnabled() {
+		return maxExecutionsPerPlan > 0 || maxAge != null;
+	}
+
+
+	/**
+	 * @return the instant before which executions are expired, if the policy limits the age
+	 */
+	public Optional<Instant> expiresBefore(Instant now) {
+		return Optional.ofNullable(maxAge).map(now::minus);
+	}
+
+}
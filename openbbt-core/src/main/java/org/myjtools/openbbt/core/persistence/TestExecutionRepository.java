@@ -1,18 +1,42 @@
 package org.myjtools.openbbt.core.persistence;
 
 
+import org.myjtools.openbbt.core.OpenBBTException;
 import org.myjtools.openbbt.core.execution.ExecutionResult;
+import org.myjtools.openbbt.core.execution.ResourceSnapshot;
+import org.myjtools.openbbt.core.execution.TestCaseStats;
 import org.myjtools.openbbt.core.execution.TestExecution;
 import org.myjtools.openbbt.core.execution.TestExecutionNode;
+import org.myjtools.openbbt.core.testplan.TestPlanNode;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
 
 public interface TestExecutionRepository extends Repository {
 
 	TestExecution newExecution(UUID planID, Instant executedAt, String profile);
 
+	/**
+	 * Create an execution that re-runs some test cases of a previous execution.
+	 *
+	 * @param rerunOf the execution being re-run, or {@code null} for a regular execution
+	 */
+	default TestExecution newExecution(UUID planID, Instant executedAt, String profile, UUID rerunOf) {
+		if (rerunOf != null) {
+			throw new OpenBBTException("Re-running executions is not supported by this repository");
+		}
+		return newExecution(planID, executedAt, profile);
+	}
+
 	UUID newExecutionNode(UUID executionID, UUID testPlanNodeID);
 
 	Optional<UUID> getExecutionNodeByPlanNode(UUID executionID, UUID testPlanNodeID);
@@ -23,6 +47,19 @@ public interface TestExecutionRepository extends Repository {
 	 */
 	Optional<TestExecutionNode> getExecutionNode(UUID executionID, UUID planNodeID);
 
+	/**
+	 * Retrieve all data for the execution nodes corresponding to several plan nodes of
+	 * an execution at once. Implementations are expected to fetch them with a constant
+	 * number of queries.
+	 *
+	 * @return the execution nodes by plan node ID; plan nodes not executed are absent
+	 */
+	default Map<UUID, TestExecutionNode> getExecutionNodes(UUID executionID, Collection<UUID> planNodeIDs) {
+		Map<UUID, TestExecutionNode> nodes = new HashMap<>();
+		planNodeIDs.forEach(id -> getExecutionNode(executionID, id).ifPresent(node -> nodes.put(id, node)));
+		return nodes;
+	}
+
 	void updateExecutionNodeStart(UUID executionNodeID, Instant startedAt);
 
 	void updateExecutionNodeFinish(UUID executionNodeID, ExecutionResult result, Instant finishedAt);
@@ -37,6 +74,14 @@ public interface TestExecutionRepository extends Repository {
 
 	List<UUID> listAttachmentIds(UUID executionNodeID);
 
+	/**
+	 * Same as {@link #listAttachmentIds(UUID)}, but also considering archived executions,
+	 * which are located by their execution ID.
+	 */
+	default List<UUID> listAttachmentIds(UUID executionID, UUID executionNodeID) {
+		return listAttachmentIds(executionNodeID);
+	}
+
 	/**
 	 * List executions for a given plan, ordered by executedAt descending.
 	 * Each returned {@link TestExecution} has {@code executionRootNodeID} populated
@@ -50,6 +95,26 @@ public interface TestExecutionRepository extends Repository {
 	 */
 	List<TestExecution> listExecutions(UUID planID, UUID planNodeRoot, int offset, int max);
 
+	/**
+	 * Same as {@link #listExecutions(UUID, UUID, int, int)}, but the executions are
+	 * lazily read as the stream is consumed. The stream may hold database resources,
+	 * so it must be closed if it is not fully consumed.
+	 */
+	default Stream<TestExecution> streamExecutions(UUID planID, UUID planNodeRoot, int offset, int max) {
+		return listExecutions(planID, planNodeRoot, offset, max).stream();
+	}
+
+	/**
+	 * Same as {@link #streamExecutions(UUID, UUID, int, int)}, restricted to the given page,
+	 * whose cursor is the ID of an execution.
+	 */
+	default Stream<TestExecution> streamExecutions(UUID planID, UUID planNodeRoot, Page page) {
+		if (page.after() == null) {
+			return streamExecutions(planID, planNodeRoot, page.offset(), page.max());
+		}
+		return page.apply(streamExecutions(planID, planNodeRoot, 0, 0), TestExecution::executionID);
+	}
+
 	Optional<TestExecution> getExecution(UUID executionId);
 
 	/**
@@ -60,6 +125,19 @@ public interface TestExecutionRepository extends Repository {
 	 */
 	Optional<ExecutionResult> getExecutionNodeResult(UUID executionNodeID);
 
+	/**
+	 * Retrieve the results of several execution nodes at once. Implementations are expected
+	 * to fetch them with a constant number of queries.
+	 *
+	 * @param executionNodeIDs the execution node IDs
+	 * @return the results by execution node ID; nodes that have not finished yet are absent
+	 */
+	default Map<UUID, ExecutionResult> getExecutionNodeResults(Collection<UUID> executionNodeIDs) {
+		Map<UUID, ExecutionResult> results = new HashMap<>();
+		executionNodeIDs.forEach(id -> getExecutionNodeResult(id).ifPresent(result -> results.put(id, result)));
+		return results;
+	}
+
 	/**
 	 * Delete a single execution and all its nodes and attachment records.
 	 * File-system attachments must be removed separately via {@link org.myjtools.openbbt.core.persistence.AttachmentRepository}.
@@ -68,6 +146,18 @@ public interface TestExecutionRepository extends Repository {
 	 */
 	void deleteExecution(UUID executionId);
 
+	/**
+	 * Delete a single execution like {@link #deleteExecution(UUID)}, reporting the progress.
+	 * Implementations may split the deletion in several bounded statements so that the
+	 * storage is not locked for the whole operation.
+	 *
+	 * @param executionId the execution to delete
+	 * @param onRowsDeleted receives the number of rows removed by each statement
+	 */
+	default void deleteExecution(UUID executionId, IntConsumer onRowsDeleted) {
+		deleteExecution(executionId);
+	}
+
 	/**
 	 * Delete all executions belonging to the given plan, including their nodes and attachment records.
 	 * File-system attachments must be removed separately via {@link org.myjtools.openbbt.core.persistence.AttachmentRepository}.
@@ -75,4 +165,171 @@ public interface TestExecutionRepository extends Repository {
 	 * @param planId the plan whose executions should be deleted
 	 */
 	void deleteExecutionsByPlan(UUID planId);
+
+	/**
+	 * Delete all executions belonging to the given plan like {@link #deleteExecutionsByPlan(UUID)},
+	 * reporting the progress.
+	 *
+	 * @param planId the plan whose executions should be deleted
+	 * @param onRowsDeleted receives the number of rows removed by each statement
+	 */
+	default void deleteExecutionsByPlan(UUID planId, IntConsumer onRowsDeleted) {
+		deleteExecutionsByPlan(planId);
+	}
+
+	/**
+	 * List the executions that are expired according to the given retention policy,
+	 * ordered by plan and then from the oldest to the newest.
+	 *
+	 * @param policy the retention policy
+	 * @param now    the current instant, used to compute the age of the executions
+	 */
+	default List<UUID> listExpiredExecutions(RetentionPolicy policy, Instant now) {
+		return List.of();
+	}
+
+	/**
+	 * Move an execution to the execution archive: its data is exported to a compact
+	 * read-only copy and then removed from the repository. Archived executions are no
+	 * longer listed, but they can still be retrieved with {@link #getExecution(UUID)} and
+	 * {@link #getExecutionNode(UUID, UUID)}.
+	 *
+	 * @param executionId   the execution to archive
+	 * @param onRowsDeleted receives the number of rows removed by each statement
+	 */
+	default void archiveExecution(UUID executionId, IntConsumer onRowsDeleted) {
+		throw new OpenBBTException("Execution archiving is not supported by this repository");
+	}
+
+	/**
+	 * List the IDs of the archived executions of the given plan.
+	 */
+	default List<UUID> listArchivedExecutions(UUID planId) {
+		return List.of();
+	}
+
+	/**
+	 * Obtain the average duration of the given plan nodes in their latest finished executions.
+	 *
+	 * @param planNodeIDs    the plan nodes to query
+	 * @param lastExecutions maximum number of executions considered for each plan node; 0 or
+	 *                       negative means all of them
+	 * @return the average duration in milliseconds of each plan node; plan nodes that have
+	 *         never finished are absent
+	 */
+	default Map<UUID, Long> getHistoricalDurations(Collection<UUID> planNodeIDs, int lastExecutions) {
+		return Map.of();
+	}
+
+	/**
+	 * Update the aggregated statistics of a test case with the result of a new execution.
+	 *
+	 * @param projectID      the project the test case belongs to
+	 * @param testCase       the plan node of the test case
+	 * @param result         the result of the test case
+	 * @param durationMillis the duration of the test case, in milliseconds
+	 * @param finishedAt     the instant the test case finished
+	 * @see TestCaseStats#record(UUID, String, ExecutionResult, long, Instant)
+	 */
+	default void recordTestCaseResult(
+		UUID projectID,
+		TestPlanNode testCase,
+		ExecutionResult result,
+		long durationMillis,
+		Instant finishedAt
+	) {
+		// statistics not supported
+	}
+
+	/**
+	 * Retrieve the aggregated statistics of a test case.
+	 *
+	 * @param projectID   the project the test case belongs to
+	 * @param testCaseKey the stable key of the test case, see {@link TestCaseStats#keyOf(TestPlanNode)}
+	 */
+	default Optional<TestCaseStats> getTestCaseStats(UUID projectID, String testCaseKey) {
+		return Optional.empty();
+	}
+
+	/**
+	 * Retrieve the aggregated statistics of several test cases at once.
+	 * Implementations are expected to fetch them with a constant number of queries.
+	 *
+	 * @param projectID    the project the test cases belong to
+	 * @param testCaseKeys the stable keys of the test cases
+	 * @return the statistics by test case key; test cases never executed are absent
+	 */
+	default Map<String, TestCaseStats> getTestCaseStats(UUID projectID, Collection<String> testCaseKeys) {
+		Map<String, TestCaseStats> stats = new HashMap<>();
+		testCaseKeys.forEach(key -> getTestCaseStats(projectID, key).ifPresent(testCase -> stats.put(key, testCase)));
+		return stats;
+	}
+
+	/**
+	 * List the statistics of the test cases of a project, ranked by the given criterion.
+	 *
+	 * @param projectID the project to query
+	 * @param ranking   the ranking criterion
+	 * @param max       maximum records to return; 0 or negative means no limit
+	 */
+	default List<TestCaseStats> listTestCaseStats(UUID projectID, TestCaseStats.Ranking ranking, int max) {
+		return List.of();
+	}
+
+	/**
+	 * List the plan nodes of the test cases that did not pass in the given execution, that
+	 * is, those with a failed, error or undefined result.
+	 */
+	default List<UUID> listRerunTestCases(UUID executionID) {
+		return getTestCaseResults(executionID).entrySet().stream()
+			.filter(entry -> entry.getValue() == ExecutionResult.FAILED
+				|| entry.getValue() == ExecutionResult.ERROR
+				|| entry.getValue() == ExecutionResult.UNDEFINED)
+			.map(Map.Entry::getKey)
+			.toList();
+	}
+
+	/**
+	 * Retrieve the result of every test case executed in the given execution, by plan node.
+	 * Test cases not executed (for instance, out of the scope of a re-run) are absent.
+	 */
+	default Map<UUID, ExecutionResult> getTestCaseResults(UUID executionID) {
+		return Map.of();
+	}
+
+	/**
+	 * Retrieve the effective result of every test case of an execution, that is, the result
+	 * of the test case in the given execution or, if it was not re-run there, in the
+	 * execution it re-runs, recursively.
+	 */
+	default Map<UUID, ExecutionResult> getEffectiveTestCaseResults(UUID executionID) {
+		List<UUID> chain = new ArrayList<>();
+		Set<UUID> visited = new HashSet<>();
+		UUID current = executionID;
+		while (current != null && visited.add(current)) {
+			chain.add(current);
+			current = getExecution(current).map(TestExecution::rerunOf).orElse(null);
+		}
+		Map<UUID, ExecutionResult> results = new HashMap<>();
+		// from the original execution to the latest re-run, so newer results prevail
+		for (int i = chain.size() - 1; i >= 0; i--) {
+			results.putAll(getTestCaseResults(chain.get(i)));
+		}
+		return results;
+	}
+
+	/**
+	 * Store the state of the resources at the time of an execution.
+	 */
+	default void saveResourceSnapshot(UUID executionID, ResourceSnapshot snapshot) {
+		// change impact analysis not supported
+	}
+
+	/**
+	 * Retrieve the state of the resources at the time of an execution, if it was stored.
+	 */
+	default Optional<ResourceSnapshot> getResourceSnapshot(UUID executionID) {
+		return Optional.empty();
+	}
+
 }
@@ -1,14 +1,21 @@
 package org.myjtools.openbbt.core.persistence;
 
 import org.myjtools.openbbt.core.OpenBBTException;
+import org.myjtools.openbbt.core.testplan.NodeType;
+import org.myjtools.openbbt.core.testplan.PlanTagIndex;
+import org.myjtools.openbbt.core.testplan.StepText;
 import org.myjtools.openbbt.core.testplan.TestPlan;
 import org.myjtools.openbbt.core.testplan.TestPlanNode;
 import org.myjtools.openbbt.core.testplan.TestProject;
 import org.myjtools.openbbt.core.testplan.ValidationStatus;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 import java.util.stream.Stream;
 
 
@@ -32,6 +39,19 @@ public interface TestPlanRepository extends Repository {
 	 */
 	Optional<TestPlanNode> getNodeData(UUID id);
 
+	/**
+	 * Retrieve the data of several nodes at once.
+	 * Implementations are expected to fetch them, along with their tags and properties, with
+	 * a constant number of queries.
+	 * @param ids the node IDs
+	 * @return the data of the nodes by node ID; nodes not in the repository are absent
+	 */
+	default Map<UUID, TestPlanNode> getNodeData(Collection<UUID> ids) {
+		Map<UUID, TestPlanNode> nodes = new HashMap<>();
+		ids.forEach(id -> getNodeData(id).ifPresent(node -> nodes.put(id, node)));
+		return nodes;
+	}
+
 	/**
 	 * Update a specific field of a plan node. The field name and value are determined by the caller,
 	 * and the repository implementation should handle the storage and retrieval of these fields.
@@ -102,6 +122,7 @@ public interface TestPlanRepository extends Repository {
 
 	/**
 	 * Retrieve the direct children of a node, ordered by their position.
+	 * The stream is backed by an open cursor, so it must be closed if it is not fully consumed.
 	 * @param id the parent node ID
 	 * @return a stream of child node IDs in order
 	 * @throws OpenBBTException if the node does not exist in the repository
@@ -110,6 +131,7 @@ public interface TestPlanRepository extends Repository {
 
 	/**
 	 * Retrieve all descendants of a node (children, grandchildren, etc.) recursively.
+	 * The stream is backed by an open cursor, so it must be closed if it is not fully consumed.
 	 * @param id the ancestor node ID
 	 * @return a stream of descendant node IDs
 	 * @throws OpenBBTException if the node does not exist in the repository
@@ -141,6 +163,52 @@ public interface TestPlanRepository extends Repository {
 	 */
 	int countNodeChildren(UUID id);
 
+	/**
+	 * Retrieve the data of a page of the direct children of a node, ordered by their position.
+	 * Implementations are expected to fetch the page, along with the tags and properties of
+	 * its nodes, with a constant number of queries.
+	 * @param id the parent node ID
+	 * @param page the page of children, whose cursor is the ID of a child node
+	 * @return the data of the child nodes in order
+	 * @throws OpenBBTException if the node does not exist in the repository
+	 */
+	default List<TestPlanNode> getNodeChildrenData(UUID id, Page page) {
+		try (Stream<UUID> children = getNodeChildren(id)) {
+			return page.apply(children, Function.identity())
+				.map(this::getNodeData)
+				.flatMap(Optional::stream)
+				.toList();
+		}
+	}
+
+	/**
+	 * Count the direct children of several nodes at once.
+	 * Implementations are expected to count them with a single query.
+	 * @param ids the parent node IDs
+	 * @return the number of direct children by node ID, nodes without children may be absent
+	 */
+	default Map<UUID, Integer> countNodeChildren(Collection<UUID> ids) {
+		Map<UUID, Integer> counts = new HashMap<>();
+		ids.forEach(id -> counts.put(id, countNodeChildren(id)));
+		return counts;
+	}
+
+	/**
+	 * Retrieve the direct children of several nodes at once, ordered by their position.
+	 * Implementations are expected to retrieve them with a single query.
+	 * @param ids the parent node IDs
+	 * @return the child node IDs in order by parent node ID, nodes without children may be absent
+	 */
+	default Map<UUID, List<UUID>> getNodeChildren(Collection<UUID> ids) {
+		Map<UUID, List<UUID>> children = new HashMap<>();
+		for (UUID id : ids) {
+			try (Stream<UUID> stream = getNodeChildren(id)) {
+				children.put(id, stream.toList());
+			}
+		}
+		return children;
+	}
+
 	/**
 	 * Count all descendants of a node recursively.
 	 * @param id the ancestor node ID
@@ -168,6 +236,7 @@ public interface TestPlanRepository extends Repository {
 
 	/**
 	 * Search for nodes matching the given criteria.
+	 * The stream is backed by an open cursor, so it must be closed if it is not fully consumed.
 	 * @param criteria the search criteria
 	 * @return a stream of matching node IDs
 	 */
@@ -258,13 +327,32 @@ public interface TestPlanRepository extends Repository {
 		return listPlans(organization, project, offset, max);
 	}
 
+	/**
+	 * List test plans like {@link #listPlans(String, String, int, int, boolean)}, restricted to
+	 * the given page, whose cursor is the ID of a plan.
+	 */
+	default List<TestPlan> listPlans(String organization, String project, boolean withExecutions, Page page) {
+		if (page.after() == null) {
+			return listPlans(organization, project, page.offset(), page.max(), withExecutions);
+		}
+		return page.apply(listPlans(organization, project, 0, 0, withExecutions).stream(), TestPlan::planID).toList();
+	}
+
 	/**
 	 * For every non-TEST_CASE node belonging to the given plan, compute the number of
-	 * descendant TEST_CASE nodes and persist it as {@code testCaseCount}.
+	 * descendant TEST_CASE nodes and persist it as {@code testCaseCount}, along with
+	 * the total number of test cases of the plan itself.
 	 * TEST_CASE nodes (and their descendants) are left with {@code null}.
-	 */
-	default void assignTestCaseCountsToNodes(UUID planId) {
-		// no-op default; concrete repositories may override
+	 * @return the number of test cases of the plan
+	 */
+	default int assignTestCaseCountsToNodes(UUID planId) {
+		// default only computes the total; concrete repositories may persist the counts
+		return getPlan(planId)
+			.map(plan -> countNodes(TestPlanNodeCriteria.and(
+				TestPlanNodeCriteria.descendantOf(plan.planNodeRoot()),
+				TestPlanNodeCriteria.withNodeType(NodeType.TEST_CASE)
+			)))
+			.orElse(0);
 	}
 
 	Optional<TestPlan> getPlan(TestProject testProject, String resourceSetHash, String configurationHash);
@@ -285,7 +373,9 @@ public interface TestPlanRepository extends Repository {
 	void assignPlanToNodes(UUID planId, UUID rootNodeId);
 
 	/**
-	 * Persist the validation result of a single node.
+	 * Persist the validation result of a single node. Implementations may flag the node
+	 * and its ancestors right away when the status is an error (see {@link #markNodeIssue(UUID)});
+	 * clearing the flags requires {@link #propagatePlanIssues(UUID)}.
 	 * @param nodeId the node to update
 	 * @param status the validation status
 	 * @param message human-readable error message, or {@code null} if OK
@@ -300,12 +390,110 @@ public interface TestPlanRepository extends Repository {
 	 */
 	void propagatePlanIssues(UUID planId);
 
+	/**
+	 * Flag a single node as having issues, along with its ancestors. The walk up the
+	 * hierarchy stops at the first node already flagged, since its ancestors are
+	 * flagged as well.
+	 * @param nodeId the node with issues
+	 * @throws OpenBBTException if the node does not exist in the repository
+	 */
+	default void markNodeIssue(UUID nodeId) {
+		Optional<UUID> current = Optional.of(nodeId);
+		while (current.isPresent()) {
+			UUID id = current.get();
+			TestPlanNode node = getNodeData(id).orElseThrow(
+				() -> new OpenBBTException("Plan node with ID {} not found", id)
+			);
+			if (node.hasIssues()) {
+				return;
+			}
+			updateNodeField(id, "hasIssues", true);
+			current = getParentNode(id);
+		}
+	}
+
 	/**
 	 * Returns {@code true} if any node in the plan has {@code HAS_ISSUES=true}.
 	 * @param planId the plan to check
 	 */
 	boolean planHasIssues(UUID planId);
 
+
+	/**
+	 * Retrieve the distinct step texts of a plan, so that each different step is
+	 * validated only once regardless of how many times it appears.
+	 * @param planId the plan
+	 * @return the distinct (name, language) pairs of the STEP nodes of the plan
+	 */
+	default List<StepText> getDistinctPlanSteps(UUID planId) {
+		return planNodesOfType(planId, NodeType.STEP).stream()
+			.map(node -> new StepText(node.name(), node.language()))
+			.distinct()
+			.toList();
+	}
+
+
+	/**
+	 * Retrieve the step aggregators of a plan that have no STEP or VIRTUAL_STEP children.
+	 * @param planId the plan
+	 */
+	default List<UUID> getPlanAggregatorsWithoutSteps(UUID planId) {
+		return planNodesOfType(planId, NodeType.STEP_AGGREGATOR).stream()
+			.map(TestPlanNode::nodeID)
+			.filter(id -> countNodes(TestPlanNodeCriteria.and(
+				TestPlanNodeCriteria.childOf(id),
+				TestPlanNodeCriteria.or(
+					TestPlanNodeCriteria.withNodeType(NodeType.STEP),
+					TestPlanNodeCriteria.withNodeType(NodeType.VIRTUAL_STEP)
+				)
+			)) == 0)
+			.toList();
+	}
+
+
+	/**
+	 * Retrieve the test cases of a plan that have no STEP descendants.
+	 * @param planId the plan
+	 */
+	default List<UUID> getPlanTestCasesWithoutSteps(UUID planId) {
+		return planNodesOfType(planId, NodeType.TEST_CASE).stream()
+			.map(TestPlanNode::nodeID)
+			.filter(id -> countNodes(TestPlanNodeCriteria.and(
+				TestPlanNodeCriteria.descendantOf(id),
+				TestPlanNodeCriteria.withNodeType(NodeType.STEP)
+			)) == 0)
+			.toList();
+	}
+
+
+	/**
+	 * Persist the validation result of a whole plan at once. Every node of the plan is
+	 * marked as {@link ValidationStatus#OK}, except the given nodes and the STEP nodes
+	 * with the given texts, which are marked as {@link ValidationStatus#ERROR}.
+	 * @param planId the plan
+	 * @param nodeErrors error messages by node ID
+	 * @param stepErrors error messages by step text
+	 */
+	default void setPlanValidation(UUID planId, Map<UUID, String> nodeErrors, Map<StepText, String> stepErrors) {
+		TestPlan plan = getPlan(planId).orElseThrow(
+			() -> new OpenBBTException("Test plan with ID {} not found", planId)
+		);
+		List<UUID> nodes;
+		try (Stream<UUID> descendants = getNodeDescendants(plan.planNodeRoot())) {
+			nodes = Stream.concat(Stream.of(plan.planNodeRoot()), descendants).toList();
+		}
+		for (UUID nodeID : nodes) {
+			String message = nodeErrors.get(nodeID);
+			if (message == null) {
+				message = getNodeData(nodeID)
+					.filter(node -> node.nodeType() == NodeType.STEP)
+					.map(node -> stepErrors.get(new StepText(node.name(), node.language())))
+					.orElse(null);
+			}
+			setNodeValidation(nodeID, message == null ? ValidationStatus.OK : ValidationStatus.ERROR, message);
+		}
+	}
+
 	/**
 	 * Delete a plan and all its nodes (including tags and properties).
 	 * Executions must be deleted separately via {@link TestExecutionRepository}.
@@ -314,4 +502,63 @@ public interface TestPlanRepository extends Repository {
 	 */
 	void deletePlan(UUID planId);
 
+	/**
+	 * Delete a plan like {@link #deletePlan(UUID)}, reporting the progress.
+	 * Implementations may split the deletion in several bounded statements so that the
+	 * storage is not locked for the whole operation.
+	 *
+	 * @param planId the plan to delete
+	 * @param onRowsDeleted receives the number of rows removed by each statement
+	 */
+	default void deletePlan(UUID planId, IntConsumer onRowsDeleted) {
+		deletePlan(planId);
+	}
+
+	/**
+	 * List the plans that have no executions, ordered by createdAt descending.
+	 * Repositories that are not aware of executions consider every plan unexecuted.
+	 */
+	default List<TestPlan> listUnexecutedPlans() {
+		return listPlans();
+	}
+
+
+	/**
+	 * Obtain the tag bitmap index of a plan, covering every node assigned to it.
+	 * Implementations are expected to build it with a constant number of queries.
+	 *
+	 * @param planId the plan
+	 * @return the tag index of the plan
+	 * @throws OpenBBTException if the plan does not exist
+	 */
+	default PlanTagIndex getTagIndex(UUID planId) {
+		TestPlan plan = getPlan(planId).orElseThrow(
+			() -> new OpenBBTException("Test plan with ID {} not found", planId)
+		);
+		PlanTagIndex.Builder builder = PlanTagIndex.builder();
+		try (Stream<UUID> descendants = getNodeDescendants(plan.planNodeRoot())) {
+			Stream.concat(Stream.of(plan.planNodeRoot()), descendants)
+				.map(this::getNodeData)
+				.flatMap(Optional::stream)
+				.forEach(node -> {
+					builder.addNode(node.nodeID());
+					node.tags().forEach(tag -> builder.addTag(node.nodeID(), tag));
+				});
+		}
+		return builder.build();
+	}
+
+
+	private List<TestPlanNode> planNodesOfType(UUID planId, NodeType nodeType) {
+		TestPlan plan = getPlan(planId).orElseThrow(
+			() -> new OpenBBTException("Test plan with ID {} not found", planId)
+		);
+		try (Stream<UUID> nodes = searchNodes(TestPlanNodeCriteria.and(
+			TestPlanNodeCriteria.descendantOf(plan.planNodeRoot()),
+			TestPlanNodeCriteria.withNodeType(nodeType)
+		))) {
+			return nodes.map(this::getNodeData).flatMap(Optional::stream).toList();
+		}
+	}
+
 }
@@ -0,0 +1,309 @@
+package org.myjtools.openbbt.core.testplan;
+
+import org.myjtools.openbbt.core.OpenBBTException;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact, versioned binary encoding for the arguments of a test plan node.
+ * <p>
+ * Layout (version 1):
+ * <pre>
+ * version:byte count:varint (kind:byte payload)*
+ * DataTable payload: rows:varint columns:varint dictionarySize:varint string* index:varint*
+ * Document payload:  flags:byte mimeType:nullableString content:(string | rawLength:varint deflated:bytes)
+ * </pre>
+ * Strings are length-prefixed UTF-8. Data table cells are dictionary-encoded, so repeated
+ * values are stored once. Documents larger than {@link #COMPRESSION_THRESHOLD} bytes are
+ * Deflate-compressed when that actually reduces their size.
+ * Unlike {@link DataTable#toString()}, the encoding is lossless for any cell content.
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public final class NodeArgumentCodec {
+
+	public static final byte VERSION = 1;
+	static final int COMPRESSION_THRESHOLD = 1024;
+
+	private static final byte KIND_DATA_TABLE = 1;
+	private static final byte KIND_DOCUMENT = 2;
+	private static final byte FLAG_DEFLATED = 1;
+
+
+	private NodeArgumentCodec() {
+		// utility class
+	}
+
+
+	/**
+	 * Encodes the given arguments, ignoring null values
+	 * @param arguments the arguments to encode
+	 * @return the encoded bytes, or null if there is no argument to encode
+	 */
+	public static byte[] encode(NodeArgument... arguments) {
+		List<NodeArgument> present = Arrays.stream(arguments).filter(Objects::nonNull).toList();
+		if (present.isEmpty()) {
+			return null;
+		}
+		Output output = new Output();
+		output.write(VERSION);
+		output.writeVarInt(present.size());
+		for (NodeArgument argument : present) {
+			switch (argument) {
+				case DataTable dataTable -> {
+					output.write(KIND_DATA_TABLE);
+					encodeDataTable(dataTable, output);
+				}
+				case Document document -> {
+					output.write(KIND_DOCUMENT);
+					encodeDocument(document, output);
+				}
+			}
+		}
+		return output.toByteArray();
+	}
+
+
+	/**
+	 * Decodes a sequence of arguments previously encoded with {@link #encode(NodeArgument...)}
+	 * @param bytes the encoded bytes
+	 * @return the decoded arguments, in the same order they were encoded
+	 * @throws OpenBBTException if the bytes are not a valid encoding
+	 */
+	public static List<NodeArgument> decode(byte[] bytes) {
+		if (bytes == null || bytes.length == 0) {
+			return List.of();
+		}
+		try {
+			Input input = new Input(bytes);
+			byte version = input.read();
+			if (version != VERSION) {
+				throw new OpenBBTException("Unsupported node argument encoding version {}", version);
+			}
+			int count = input.readVarInt();
+			List<NodeArgument> arguments = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				byte kind = input.read();
+				switch (kind) {
+					case KIND_DATA_TABLE -> arguments.add(decodeDataTable(input));
+					case KIND_DOCUMENT -> arguments.add(decodeDocument(input));
+					default -> throw new OpenBBTException("Unknown node argument kind {}", kind);
+				}
+			}
+			return arguments;
+		} catch (IndexOutOfBoundsException | DataFormatException e) {
+			throw new OpenBBTException(e, "Corrupted node argument encoding");
+		}
+	}
+
+
+	private static void encodeDataTable(DataTable dataTable, Output output) {
+		List<List<String>> values = dataTable.values();
+		output.writeVarInt(dataTable.rows());
+		output.writeVarInt(dataTable.columns());
+		Map<String, Integer> dictionary = new LinkedHashMap<>();
+		int[] indexes = new int[dataTable.rows() * dataTable.columns()];
+		int position = 0;
+		for (List<String> row : values) {
+			for (String cell : row) {
+				indexes[position++] = dictionary.computeIfAbsent(cell, key -> dictionary.size());
+			}
+		}
+		output.writeVarInt(dictionary.size());
+		dictionary.keySet().forEach(output::writeNullableString);
+		for (int index : indexes) {
+			output.writeVarInt(index);
+		}
+	}
+
+
+	private static DataTable decodeDataTable(Input input) {
+		int rows = input.readVarInt();
+		int columns = input.readVarInt();
+		if (rows == 0) {
+			return new DataTable();
+		}
+		String[] dictionary = new String[input.readVarInt()];
+		for (int i = 0; i < dictionary.length; i++) {
+			dictionary[i] = input.readNullableString();
+		}
+		List<List<String>> values = new ArrayList<>(rows);
+		for (int r = 0; r < rows; r++) {
+			String[] row = new String[columns];
+			for (int c = 0; c < columns; c++) {
+				row[c] = dictionary[input.readVarInt()];
+			}
+			values.add(Collections.unmodifiableList(Arrays.asList(row)));
+		}
+		return new DataTable(values);
+	}
+
+
+	private static void encodeDocument(Document document, Output output) {
+		String content = document.content();
+		byte[] raw = content == null ? null : content.getBytes(StandardCharsets.UTF_8);
+		byte[] deflated = raw != null && raw.length > COMPRESSION_THRESHOLD ? deflate(raw) : null;
+		boolean compress = deflated != null && deflated.length < raw.length;
+		output.write(compress ? FLAG_DEFLATED : 0);
+		output.writeNullableString(document.mimeType());
+		if (compress) {
+			output.writeVarInt(raw.length);
+			output.writeLengthPrefixed(deflated);
+		} else {
+			output.writeNullableBytes(raw);
+		}
+	}
+
+
+	private static Document decodeDocument(Input input) throws DataFormatException {
+		byte flags = input.read();
+		String mimeType = input.readNullableString();
+		String content;
+		if ((flags & FLAG_DEFLATED) != 0) {
+			int rawLength = input.readVarInt();
+			content = new String(inflate(input.readBytes(), rawLength), StandardCharsets.UTF_8);
+		} else {
+			byte[] raw = input.readNullableBytes();
+			content = raw == null ? null : new String(raw, StandardCharsets.UTF_8);
+		}
+		return new Document(mimeType, content);
+	}
+
+
+	private static byte[] deflate(byte[] raw) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(raw);
+			deflater.finish();
+			ByteArrayOutputStream output = new ByteArrayOutputStream(raw.length / 2);
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				int length = deflater.deflate(buffer);
+				output.write(buffer, 0, length);
+			}
+			return output.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+
+	private static byte[] inflate(byte[] deflated, int rawLength) throws DataFormatException {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(deflated);
+			byte[] raw = new byte[rawLength];
+			int position = 0;
+			while (position < rawLength && !inflater.finished()) {
+				int length = inflater.inflate(raw, position, rawLength - position);
+				if (length == 0 && inflater.needsInput()) {
+					throw new DataFormatException("Truncated compressed content");
+				}
+				position += length;
+			}
+			return raw;
+		} finally {
+			inflater.end();
+		}
+	}
+
+
+
+	private static final class Output extends ByteArrayOutputStream {
+
+		Output() {
+			super(64);
+		}
+
+		void writeVarInt(int value) {
+			while ((value & ~0x7F) != 0) {
+				write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			write(value);
+		}
+
+		void writeLengthPrefixed(byte[] bytes) {
+			writeVarInt(bytes.length);
+			write(bytes, 0, bytes.length);
+		}
+
+		/* lengths are shifted by one so that zero can represent null */
+		void writeNullableBytes(byte[] bytes) {
+			if (bytes == null) {
+				writeVarInt(0);
+			} else {
+				writeVarInt(bytes.length + 1);
+				write(bytes, 0, bytes.length);
+			}
+		}
+
+		void writeNullableString(String value) {
+			writeNullableBytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+
+
+	private static final class Input {
+
+		private final byte[] bytes;
+		private int position;
+
+		Input(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		byte read() {
+			return bytes[position++];
+		}
+
+		int readVarInt() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				if (shift > 28) {
+					throw new OpenBBTException("Malformed variable-length integer");
+				}
+				b = bytes[position++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		byte[] readBytes() {
+			return take(readVarInt());
+		}
+
+		byte[] readNullableBytes() {
+			int length = readVarInt();
+			return length == 0 ? null : take(length - 1);
+		}
+
+		String readNullableString() {
+			int length = readVarInt();
+			if (length == 0) {
+				return null;
+			}
+			String value = new String(bytes, position, length - 1, StandardCharsets.UTF_8);
+			position += length - 1;
+			return value;
+		}
+
+		private byte[] take(int length) {
+			if (length < 0 || position + length > bytes.length) {
+				throw new IndexOutOfBoundsException("Encoded length exceeds available bytes");
+			}
+			byte[] result = Arrays.copyOfRange(bytes, position, position + length);
+			position += length;
+			return result;
+		}
+	}
+
+}
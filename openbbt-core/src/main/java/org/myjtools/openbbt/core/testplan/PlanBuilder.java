@@ -7,7 +7,6 @@ import org.myjtools.openbbt.core.backend.StepProviderBackend;
 import org.myjtools.openbbt.core.contributors.SuiteAssembler;
 import org.myjtools.openbbt.core.contributors.TestPlanValidator;
 import org.myjtools.openbbt.core.events.TestPlanCreated;
-import org.myjtools.openbbt.core.persistence.TestPlanNodeCriteria;
 import org.myjtools.openbbt.core.persistence.TestPlanRepository;
 import org.myjtools.openbbt.core.util.Hash;
 import org.myjtools.openbbt.core.util.Log;
@@ -57,12 +56,6 @@ public class PlanBuilder {
 			var rootNodeID = assembleTestPlanNodes(context).orElseThrow(
 				() -> new OpenBBTException("Failed to assemble test plan for project: {}", context.testProject().name())
 			);
-			int testCaseCount = testPlanRepository.countNodes(
-				TestPlanNodeCriteria.and(
-					TestPlanNodeCriteria.descendantOf(rootNodeID),
-					TestPlanNodeCriteria.withNodeType(NodeType.TEST_CASE)
-				)
-			);
 			String suites = selectedSuites.isEmpty()
 				? null
 				: String.join(",", selectedSuites);
@@ -73,12 +66,22 @@ public class PlanBuilder {
 				resourceSetHash,
 				configurationHash,
 				rootNodeID,
-				testCaseCount,
+				0,
 				suites
 			);
 			testPlan = testPlanRepository.persistPlan(testPlan);
 			testPlanRepository.assignPlanToNodes(testPlan.planID(), rootNodeID);
-			testPlanRepository.assignTestCaseCountsToNodes(testPlan.planID());
+			int testCaseCount = testPlanRepository.assignTestCaseCountsToNodes(testPlan.planID());
+			testPlan = new TestPlan(
+				testPlan.planID(),
+				testPlan.projectID(),
+				testPlan.createdAt(),
+				testPlan.resourceSetHash(),
+				testPlan.configurationHash(),
+				testPlan.planNodeRoot(),
+				testCaseCount,
+				testPlan.suites()
+			);
 			var backend = new StepProviderBackend(runtime);
 			log.debug("Validating test plan");
 			for (var validator : runtime.getExtensions(TestPlanValidator.class).toList()) {
@@ -0,0 +1,106 @@
+package org.myjtools.openbbt.core.testplan;
+
+import java.util.*;
+
+/**
+ * In-memory index of the tags of every node of a test plan.
+ * <p>
+ * Nodes are mapped to dense ordinals, and tags are dictionary-encoded per plan, each entry
+ * holding a bitmap of the nodes that have it. This way, checking the tags of many nodes
+ * during an execution does not require loading each node.
+ * <p>
+ * Instances are immutable.
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public final class PlanTagIndex {
+
+	private final Map<UUID, Integer> ordinals;
+	private final Map<String, Integer> tagDictionary;
+	private final BitSet[] tagBitmaps;
+
+
+	private PlanTagIndex(Builder builder) {
+		this.ordinals = Map.copyOf(builder.ordinals);
+		this.tagDictionary = Map.copyOf(builder.tagDictionary);
+		this.tagBitmaps = builder.tagBitmaps.stream().map(bitmap -> (BitSet) bitmap.clone()).toArray(BitSet[]::new);
+	}
+
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+
+	/**
+	 * @return the number of indexed nodes
+	 */
+	public int size() {
+		return ordinals.size();
+	}
+
+
+	/**
+	 * @return the tags present in the plan, i.e. the tag dictionary
+	 */
+	public Set<String> tags() {
+		return tagDictionary.keySet();
+	}
+
+
+	public boolean contains(UUID nodeID) {
+		return ordinals.containsKey(nodeID);
+	}
+
+
+	/**
+	 * Checks whether a node has a given tag without loading the node
+	 * @param nodeID the node ID
+	 * @param tag the tag
+	 * @return true if the node is indexed and has the tag
+	 */
+	public boolean hasTag(UUID nodeID, String tag) {
+		Integer ordinal = ordinals.get(nodeID);
+		Integer tagID = tagDictionary.get(tag);
+		return ordinal != null && tagID != null && tagBitmaps[tagID].get(ordinal);
+	}
+
+
+
+	public static final class Builder {
+
+		private final Map<UUID, Integer> ordinals = new HashMap<>();
+		private final Map<String, Integer> tagDictionary = new HashMap<>();
+		private final List<BitSet> tagBitmaps = new ArrayList<>();
+
+		private Builder() { }
+
+
+		public Builder addNode(UUID nodeID) {
+			ordinals.putIfAbsent(nodeID, ordinals.size());
+			return this;
+		}
+
+
+		/**
+		 * Registers a tag of a node. Tags of nodes not previously added are ignored.
+		 */
+		public Builder addTag(UUID nodeID, String tag) {
+			Integer ordinal = ordinals.get(nodeID);
+			if (ordinal != null) {
+				int tagID = tagDictionary.computeIfAbsent(tag, key -> {
+					tagBitmaps.add(new BitSet());
+					return tagBitmaps.size() - 1;
+				});
+				tagBitmaps.get(tagID).set(ordinal);
+			}
+			return this;
+		}
+
+
+		public PlanTagIndex build() {
+			return new PlanTagIndex(this);
+		}
+	}
+
+}
@@ -0,0 +1,13 @@
+package org.myjtools.openbbt.core.testplan;
+
+/**
+ * The text of a step node along with its language, i.e. everything needed to decide
+ * whether the step matches any step provider. Plans usually repeat the same steps many
+ * times, so validation is performed once per distinct step text.
+ * @param name the step text, as stored in the node name
+ * @param language the language of the step, may be null
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public record StepText(String name, String language) {
+
+}
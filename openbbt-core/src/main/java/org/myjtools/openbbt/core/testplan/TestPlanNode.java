@@ -28,6 +28,9 @@ public class TestPlanNode {
 	private String validationMessage;
 	private boolean hasIssues;
 	private Integer testCaseCount;
+	/* encoded form of the arguments, decoded on first access */
+	@EqualsAndHashCode.Exclude
+	private byte[] encodedArguments;
 
 
 	public TestPlanNode(NodeType type) {
@@ -73,6 +76,72 @@ public class TestPlanNode {
 
 
 
+	public DataTable dataTable() {
+		decodeArguments();
+		return dataTable;
+	}
+
+
+	public TestPlanNode dataTable(DataTable dataTable) {
+		decodeArguments();
+		this.dataTable = dataTable;
+		return this;
+	}
+
+
+	public Document document() {
+		decodeArguments();
+		return document;
+	}
+
+
+	public TestPlanNode document(Document document) {
+		decodeArguments();
+		this.document = document;
+		return this;
+	}
+
+
+	/**
+	 * Sets the arguments of this node in their encoded form (as produced by
+	 * {@link NodeArgumentCodec}). They are not decoded until either the data table
+	 * or the document is accessed.
+	 */
+	public TestPlanNode encodedArguments(byte[] encodedArguments) {
+		this.dataTable = null;
+		this.document = null;
+		this.encodedArguments = encodedArguments;
+		return this;
+	}
+
+
+	/**
+	 * @return the encoded arguments of this node, reusing the pending encoded form
+	 * when the arguments have not been decoded yet
+	 */
+	public byte[] encodedArguments() {
+		if (encodedArguments != null) {
+			return encodedArguments;
+		}
+		return NodeArgumentCodec.encode(dataTable, document);
+	}
+
+
+	private void decodeArguments() {
+		if (encodedArguments == null) {
+			return;
+		}
+		byte[] encoded = encodedArguments;
+		encodedArguments = null;
+		for (NodeArgument argument : NodeArgumentCodec.decode(encoded)) {
+			switch (argument) {
+				case DataTable table -> this.dataTable = table;
+				case Document doc -> this.document = doc;
+			}
+		}
+	}
+
+
 	public SortedMap<String, String> properties() {
 		if (properties == null) {
 			properties = new TreeMap<>();
@@ -35,6 +35,24 @@ public class Hash {
 	}
 
 
+	/**
+	 * Creates a hash of the whole content of the given stream, which is read but not closed
+	 */
+	public static String of(InputStream input) {
+		MessageDigest digest = newDigest();
+		try {
+			byte[] buffer = new byte[8192];
+			int bytesRead;
+			while ((bytesRead = input.read(buffer)) != -1) {
+				digest.update(buffer, 0, bytesRead);
+			}
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Cannot calculate hash of content");
+		}
+		return encoder.encodeToString(digest.digest());
+	}
+
+
 	public static String of(Path path) {
 		return of(List.of(path));
 	}
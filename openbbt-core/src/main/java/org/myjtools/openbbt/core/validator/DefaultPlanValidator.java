@@ -4,25 +4,47 @@ import org.myjtools.jexten.Extension;
 import org.myjtools.jexten.Inject;
 import org.myjtools.openbbt.core.backend.StepProviderBackend;
 import org.myjtools.openbbt.core.contributors.TestPlanValidator;
-import org.myjtools.openbbt.core.persistence.TestPlanNodeCriteria;
 import org.myjtools.openbbt.core.persistence.TestPlanRepository;
 import org.myjtools.openbbt.core.testplan.*;
 import org.myjtools.openbbt.core.util.Log;
-import java.util.Locale;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.stream.Collectors;
 
 @Extension
 public class DefaultPlanValidator implements TestPlanValidator {
 
 	private static final Log log = Log.of();
 
+	// shared by every validation, so it is bounded to the available processors no matter
+	// how many plans are validated; idle workers are retired by the pool
+	private static final ForkJoinPool STEP_VALIDATION_POOL = new ForkJoinPool(
+		Runtime.getRuntime().availableProcessors(),
+		pool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("openbbt-validation-" + thread.getPoolIndex());
+			return thread;
+		},
+		null,
+		false
+	);
+
 	@Inject
 	TestPlanRepository repository;
 
 	@Override
 	public void validate(TestPlan plan, StepProviderBackend backend) {
 		log.debug("Validating test plan: {}", plan.planID());
-		validateNode(plan.planNodeRoot(), backend);
+		Map<UUID, String> nodeErrors = new HashMap<>();
+		repository.getPlanAggregatorsWithoutSteps(plan.planID()).forEach(
+			id -> nodeErrors.put(id, "Step aggregator has no STEP or VIRTUAL_STEP children")
+		);
+		repository.getPlanTestCasesWithoutSteps(plan.planID()).forEach(
+			id -> nodeErrors.put(id, "Test case has no STEP descendants")
+		);
+		Map<StepText, String> stepErrors = validateSteps(repository.getDistinctPlanSteps(plan.planID()), backend);
+		repository.setPlanValidation(plan.planID(), nodeErrors, stepErrors);
 		repository.propagatePlanIssues(plan.planID());
 		if (repository.planHasIssues(plan.planID())) {
 			log.warn("Test plan {} has validation errors", plan.planID());
@@ -31,49 +53,44 @@ public class DefaultPlanValidator implements TestPlanValidator {
 		}
 	}
 
-	private void validateNode(UUID nodeId, StepProviderBackend backend) {
-		TestPlanNode node = repository.getNodeData(nodeId).orElseThrow();
-		ValidationStatus status = ValidationStatus.OK;
-		String message = null;
 
-		switch (node.nodeType()) {
-			case STEP -> {
-				Locale locale = localeOf(node.language());
-				if (!backend.isValidStep(node.name(), locale)) {
-					status = ValidationStatus.ERROR;
-					message = "No matching step found for: " + node.name();
-				}
-			}
-			case STEP_AGGREGATOR -> {
-				boolean hasStepChild = repository.countNodes(TestPlanNodeCriteria.and(
-					TestPlanNodeCriteria.childOf(nodeId),
-					TestPlanNodeCriteria.or(
-						TestPlanNodeCriteria.withNodeType(NodeType.STEP),
-						TestPlanNodeCriteria.withNodeType(NodeType.VIRTUAL_STEP)
-					)
-				)) > 0;
-				if (!hasStepChild) {
-					status = ValidationStatus.ERROR;
-					message = "Step aggregator has no STEP or VIRTUAL_STEP children";
-				}
-			}
-			case TEST_CASE -> {
-				boolean hasStepDescendant = repository.countNodes(TestPlanNodeCriteria.and(
-					TestPlanNodeCriteria.descendantOf(nodeId),
-					TestPlanNodeCriteria.withNodeType(NodeType.STEP)
-				)) > 0;
-				if (!hasStepDescendant) {
-					status = ValidationStatus.ERROR;
-					message = "Test case has no STEP descendants";
-				}
-			}
-			default -> { /* no validation for other node types */ }
+	/*
+	 * Step texts are reduced to distinct (text, locale) pairs, which are matched in
+	 * parallel against the precompiled step matchers. The results are fanned out back
+	 * to every step text sharing the pair.
+	 */
+	private Map<StepText, String> validateSteps(List<StepText> steps, StepProviderBackend backend) {
+		long start = System.nanoTime();
+		Map<StepKey, List<StepText>> distinctSteps = new HashMap<>();
+		for (StepText step : steps) {
+			distinctSteps.computeIfAbsent(new StepKey(step.name(), localeOf(step.language())), key -> new ArrayList<>())
+				.add(step);
 		}
-
-		repository.setNodeValidation(nodeId, status, message);
-		repository.getNodeChildren(nodeId).forEach(childId -> validateNode(childId, backend));
+		backend.compileMatchers(distinctSteps.keySet().stream().map(StepKey::locale).collect(Collectors.toSet()));
+		List<StepKey> invalidSteps = STEP_VALIDATION_POOL.submit(() -> distinctSteps.keySet().parallelStream()
+			.filter(key -> !backend.isValidStep(key.text(), key.locale()))
+			.toList()
+		).join();
+		Map<StepText, String> stepErrors = new HashMap<>();
+		for (StepKey invalidStep : invalidSteps) {
+			String message = "No matching step found for: " + invalidStep.text();
+			distinctSteps.get(invalidStep).forEach(step -> stepErrors.put(step, message));
+		}
+		long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+		log.info(
+			"Validated {} distinct steps in {} ms ({} steps/s), {} not matching any step provider",
+			distinctSteps.size(),
+			elapsedMillis,
+			distinctSteps.size() * 1000L / elapsedMillis,
+			invalidSteps.size()
+		);
+		return stepErrors;
 	}
 
+
+	private record StepKey(String text, Locale locale) { }
+
+
 	private Locale localeOf(String language) {
 		if (language == null || language.isBlank()) return Locale.ENGLISH;
 		return Locale.forLanguageTag(language);
@@ -0,0 +1,95 @@
+package org.myjtools.openbbt.core.test;
+
+
+import org.junit.jupiter.api.Test;
+import org.myjtools.openbbt.core.OpenBBTException;
+import org.myjtools.openbbt.core.testplan.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+
+class NodeArgumentCodecTest {
+
+	@Test
+	void nothingToEncode_returnsNull() {
+		assertThat(NodeArgumentCodec.encode((NodeArgument) null)).isNull();
+		assertThat(NodeArgumentCodec.decode(null)).isEmpty();
+	}
+
+	@Test
+	void dataTable_withPipesAndEmptyCells_roundTrips() {
+		var dataTable = new DataTable(List.of(
+			List.of("a|b", "||", ""),
+			List.of("ñandú", "a|b", "x")
+		));
+		var decoded = NodeArgumentCodec.decode(NodeArgumentCodec.encode(dataTable));
+		assertThat(decoded).containsExactly(dataTable);
+	}
+
+	@Test
+	void dataTable_repeatedValues_areStoredOnce() {
+		var rows = IntStream.range(0, 1000)
+			.mapToObj(i -> List.of("some long repeated value", "another long repeated value"))
+			.toList();
+		byte[] encoded = NodeArgumentCodec.encode(new DataTable(rows));
+		assertThat(encoded.length).isLessThan(2100);
+		assertThat(NodeArgumentCodec.decode(encoded)).containsExactly(new DataTable(rows));
+	}
+
+	@Test
+	void emptyDataTable_roundTrips() {
+		var decoded = NodeArgumentCodec.decode(NodeArgumentCodec.encode(new DataTable()));
+		assertThat(decoded).containsExactly(new DataTable());
+	}
+
+	@Test
+	void largeDocument_isCompressed() {
+		String content = "<item>repeated content</item>\n".repeat(1000);
+		var document = new Document("application/xml", content);
+		byte[] encoded = NodeArgumentCodec.encode(document);
+		assertThat(encoded.length).isLessThan(content.length() / 10);
+		assertThat(NodeArgumentCodec.decode(encoded)).containsExactly(document);
+	}
+
+	@Test
+	void documentWithoutMimeType_roundTrips() {
+		var document = new Document(null, "plain content");
+		assertThat(NodeArgumentCodec.decode(NodeArgumentCodec.encode(document))).containsExactly(document);
+	}
+
+	@Test
+	void dataTableAndDocument_roundTripTogether() {
+		var dataTable = new DataTable(List.of(List.of("a", "b")));
+		var document = new Document("text/plain", "text");
+		var decoded = NodeArgumentCodec.decode(NodeArgumentCodec.encode(dataTable, document));
+		assertThat(decoded).containsExactly(dataTable, document);
+	}
+
+	@Test
+	void unknownVersion_fails() {
+		assertThatThrownBy(() -> NodeArgumentCodec.decode(new byte[] { 99, 0 }))
+			.isInstanceOf(OpenBBTException.class);
+	}
+
+	@Test
+	void truncatedEncoding_fails() {
+		byte[] encoded = NodeArgumentCodec.encode(new DataTable(List.of(List.of("a", "b"))));
+		byte[] truncated = Arrays.copyOf(encoded, encoded.length - 2);
+		assertThatThrownBy(() -> NodeArgumentCodec.decode(truncated))
+			.isInstanceOf(OpenBBTException.class);
+	}
+
+	@Test
+	void node_decodesArgumentsLazily() {
+		var dataTable = new DataTable(List.of(List.of("a", "b")));
+		byte[] encoded = NodeArgumentCodec.encode(dataTable);
+		var node = new TestPlanNode(NodeType.STEP).encodedArguments(encoded);
+		assertThat(node.encodedArguments()).isSameAs(encoded);
+		assertThat(node.dataTable()).isEqualTo(dataTable);
+		assertThat(node.document()).isNull();
+	}
+
+}
@@ -0,0 +1,51 @@
+package org.myjtools.openbbt.core.test;
+
+
+import org.junit.jupiter.api.Test;
+import org.myjtools.openbbt.core.testplan.PlanTagIndex;
+import java.util.UUID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+class PlanTagIndexTest {
+
+	private final UUID feature = UUID.randomUUID();
+	private final UUID smoke = UUID.randomUUID();
+	private final UUID smokeSlow = UUID.randomUUID();
+	private final UUID untagged = UUID.randomUUID();
+
+	private final PlanTagIndex index = PlanTagIndex.builder()
+		.addNode(feature)
+		.addNode(smoke)
+		.addNode(smokeSlow)
+		.addNode(untagged)
+		.addNode(smoke)
+		.addTag(feature, "smoke")
+		.addTag(smoke, "smoke")
+		.addTag(smokeSlow, "smoke")
+		.addTag(smokeSlow, "slow")
+		.addTag(UUID.randomUUID(), "ignored")
+		.build();
+
+
+	@Test
+	void dictionaries_containOnlyIndexedEntries() {
+		assertThat(index.size()).isEqualTo(4);
+		assertThat(index.tags()).containsExactlyInAnyOrder("smoke", "slow");
+	}
+
+	@Test
+	void contains_checksIndexedNodes() {
+		assertThat(index.contains(untagged)).isTrue();
+		assertThat(index.contains(UUID.randomUUID())).isFalse();
+	}
+
+	@Test
+	void hasTag_checksSingleNode() {
+		assertThat(index.hasTag(smokeSlow, "slow")).isTrue();
+		assertThat(index.hasTag(smoke, "slow")).isFalse();
+		assertThat(index.hasTag(untagged, "smoke")).isFalse();
+		assertThat(index.hasTag(UUID.randomUUID(), "smoke")).isFalse();
+	}
+
+}
@@ -5,6 +5,7 @@ import org.myjtools.openbbt.core.Resource;
 import org.myjtools.openbbt.core.ResourceFinder;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 import static org.assertj.core.api.Assertions.assertThat;
 
 class ResourceFinderTest {
@@ -124,6 +125,21 @@ class ResourceFinderTest {
 			);
 	}
 
+	@Test
+	void testFindAllResources_skipsExcludedDirectories() {
+		var resourceFinder = new ResourceFinder(Path.of("src/test/resources/files"));
+		assertThat(resourceFinder.findAllResources(List.of()).resources()).extracting(Resource::relativePath)
+			.containsExactly(
+				Path.of("src/test/resources/files/file_a.txt"),
+				Path.of("src/test/resources/files/file_b.txt"),
+				Path.of("src/test/resources/files/file_c.yml"),
+				Path.of("src/test/resources/files/subdir/file_d.txt")
+			);
+		assertThat(resourceFinder.findAllResources(List.of(Path.of("src/test/resources/files/subdir"))).resources())
+			.extracting(Resource::relativePath)
+			.doesNotContain(Path.of("src/test/resources/files/subdir/file_d.txt"));
+	}
+
 	@Test
 	void testResolveString() {
 		var resourceFinder = new ResourceFinder(Path.of("src/test/resources/files"));
@@ -0,0 +1,171 @@
+package org.myjtools.openbbt.core.test.backend;
+
+import org.junit.jupiter.api.Test;
+import org.myjtools.imconfig.Config;
+import org.myjtools.openbbt.core.OpenBBTConfig;
+import org.myjtools.openbbt.core.OpenBBTException;
+import org.myjtools.openbbt.core.backend.AttachmentCapture;
+import org.myjtools.openbbt.core.backend.AttachmentCapture.Mode;
+import org.myjtools.openbbt.core.backend.AttachmentCapture.Policy;
+import org.myjtools.openbbt.core.backend.ExecutionContext;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TestAttachmentCapture {
+
+	static final AttachmentCapture ON_FAILURE = AttachmentCapture.of(Config.ofMap(Map.of(
+		OpenBBTConfig.ATTACHMENT_CAPTURE_MODE, "onFailure"
+	)));
+
+	/** Execution context that keeps the stored attachments in memory */
+	static class RecordingExecutionContext extends ExecutionContext {
+
+		final List<String> stored = new ArrayList<>();
+
+		RecordingExecutionContext() {
+			this(ON_FAILURE);
+		}
+
+		RecordingExecutionContext(AttachmentCapture capture) {
+			super(null, UUID.randomUUID(), UUID.randomUUID(), capture);
+		}
+
+		@Override
+		protected void storeAttachment(UUID executionNodeID, byte[] bytes, String contentType) {
+			stored.add(new String(bytes, StandardCharsets.UTF_8));
+		}
+	}
+
+
+	@Test
+	void withoutConfiguration_everyAttachmentIsStored() {
+		var capture = AttachmentCapture.of(Config.empty());
+		assertThat(capture.policyFor("rest", "text/plain")).isEqualTo(Policy.ALWAYS);
+	}
+
+	@Test
+	void defaultPolicy_isTakenFromConfiguration() {
+		var capture = AttachmentCapture.of(Config.ofMap(Map.of(
+			OpenBBTConfig.ATTACHMENT_CAPTURE_MODE, "sampled",
+			OpenBBTConfig.ATTACHMENT_CAPTURE_SAMPLE_RATE, "100",
+			OpenBBTConfig.ATTACHMENT_CAPTURE_MAX_SIZE, "8"
+		)));
+		assertThat(capture.policyFor("rest", "text/plain")).isEqualTo(new Policy(Mode.SAMPLED, 100, 8 * 1024));
+	}
+
+	@Test
+	void pluginPolicy_takesPrecedenceOverContentTypePolicy() {
+		var capture = AttachmentCapture.of(Config.ofMap(Map.of(
+			OpenBBTConfig.ATTACHMENT_CAPTURE_PLUGINS + ".rest.mode", "onFailure",
+			OpenBBTConfig.ATTACHMENT_CAPTURE_CONTENT_TYPES + ".csv.mode", "truncated",
+			OpenBBTConfig.ATTACHMENT_CAPTURE_CONTENT_TYPES + ".csv.maxSize", "1"
+		)));
+		assertThat(capture.policyFor("rest", "csv").mode()).isEqualTo(Mode.ON_FAILURE);
+		assertThat(capture.policyFor("db", "csv")).isEqualTo(new Policy(Mode.TRUNCATED, AttachmentCapture.DEFAULT_SAMPLE_RATE, 1024));
+		assertThat(capture.policyFor("db", "text/plain")).isEqualTo(Policy.ALWAYS);
+	}
+
+	@Test
+	void contentTypePolicy_matchesTheMainType() {
+		var capture = AttachmentCapture.of(Config.ofMap(Map.of(
+			OpenBBTConfig.ATTACHMENT_CAPTURE_CONTENT_TYPES + ".image.mode", "onFailure"
+		)));
+		assertThat(capture.policyFor(null, "image/png; charset=binary").mode()).isEqualTo(Mode.ON_FAILURE);
+	}
+
+	@Test
+	void unknownMode_isRejected() {
+		var config = Config.ofMap(Map.of(OpenBBTConfig.ATTACHMENT_CAPTURE_MODE, "sometimes"));
+		assertThatThrownBy(() -> AttachmentCapture.of(config))
+			.isInstanceOf(OpenBBTException.class)
+			.hasMessageContaining("sometimes");
+	}
+
+	@Test
+	void truncate_keepsHeadAndTail() {
+		var policy = new Policy(Mode.TRUNCATED, 1, 10);
+		byte[] content = "HEAD-middle of the content-TAIL".getBytes(StandardCharsets.UTF_8);
+
+		String truncated = new String(policy.truncate(content), StandardCharsets.UTF_8);
+
+		assertThat(truncated).startsWith("HEAD-").endsWith("-TAIL").contains((content.length - 10) + " bytes omitted");
+		assertThat(policy.truncate("short".getBytes(StandardCharsets.UTF_8))).isEqualTo("short".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void sampling_keepsAboutOneOfEveryNSteps() {
+		var policy = new Policy(Mode.SAMPLED, 10, AttachmentCapture.DEFAULT_MAX_SIZE);
+		long sampled = IntStream.range(0, 10_000).mapToObj(i -> UUID.randomUUID()).filter(policy::isSampled).count();
+		assertThat(sampled).isBetween(700L, 1300L);
+	}
+
+	@Test
+	void onFailureCaptures_areKeptUntilAStepFails() {
+		var context = new RecordingExecutionContext();
+		context.captureAttachment("rest", bytes("first"), "text/plain");
+		context.completeStep(false);
+		context.captureAttachment("rest", bytes("second"), "text/plain");
+		assertThat(context.stored).isEmpty();
+
+		context.completeStep(true);
+		assertThat(context.stored).containsExactly("first", "second");
+	}
+
+	@Test
+	void onFailureCaptures_areStoredRightAwayAfterAFailure() {
+		var context = new RecordingExecutionContext();
+		context.completeStep(true);
+		context.captureAttachment("rest", bytes("after failure"), "text/plain");
+		context.completeStep(true);
+		assertThat(context.stored).containsExactly("after failure");
+	}
+
+	@Test
+	void onFailureCaptures_areDiscardedWhenNoStepFails() {
+		var context = new RecordingExecutionContext();
+		context.captureAttachment("rest", bytes("first"), "text/plain");
+		context.completeStep(false);
+		context.discardPendingCaptures();
+		context.completeStep(true);
+		assertThat(context.stored).isEmpty();
+	}
+
+	@Test
+	void onFailureCaptures_areCappedByTotalSize() {
+		var context = new RecordingExecutionContext(AttachmentCapture.of(Config.ofMap(Map.of(
+			OpenBBTConfig.ATTACHMENT_CAPTURE_MODE, "onFailure",
+			OpenBBTConfig.ATTACHMENT_CAPTURE_MAX_PENDING_SIZE, "1"
+		))));
+		String first = "A".repeat(600);
+		String second = "B".repeat(600);
+		String third = "C".repeat(300);
+		context.captureAttachment("rest", bytes(first), "text/plain");
+		context.captureAttachment("rest", bytes(second), "text/plain");
+		context.captureAttachment("rest", bytes(third), "text/plain");
+		context.completeStep(true);
+		assertThat(context.stored).containsExactly(second, third);
+	}
+
+	@Test
+	void onFailureCaptures_largerThanTheCapAreTruncated() {
+		var context = new RecordingExecutionContext(AttachmentCapture.of(Config.ofMap(Map.of(
+			OpenBBTConfig.ATTACHMENT_CAPTURE_MODE, "onFailure",
+			OpenBBTConfig.ATTACHMENT_CAPTURE_MAX_PENDING_SIZE, "1"
+		))));
+		context.captureAttachment("rest", bytes("HEAD" + "-".repeat(3000) + "TAIL"), "text/plain");
+		context.completeStep(true);
+		assertThat(context.stored).hasSize(1);
+		assertThat(context.stored.get(0)).startsWith("HEAD").endsWith("TAIL").contains((3008 - 1024) + " bytes omitted");
+	}
+
+	private static byte[] bytes(String content) {
+		return content.getBytes(StandardCharsets.UTF_8);
+	}
+
+}
@@ -13,6 +13,7 @@ import org.myjtools.openbbt.core.testplan.Document;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.stream.IntStream;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
 
@@ -43,6 +44,19 @@ class TestStepProviderBackend {
 				.hasMessageContaining("Step 'stepWithOneParameter' does not expect additional data, but it was provided");
 		}
 
+		@Test
+		void testValidateStepsConcurrentlyWithCompiledMatchers() {
+			var cm = new OpenBBTRuntime(TEST_CONFIG);
+			var backend = new StepProviderBackend(cm);
+			backend.compileMatchers(List.of(Locale.ENGLISH));
+			var steps = List.of("Step without parameters", "Step with one parameter: 5", "Non-existent step");
+			var results = IntStream.range(0, 300).parallel()
+				.mapToObj(i -> steps.get(i % steps.size()))
+				.filter(step -> backend.isValidStep(step, Locale.ENGLISH))
+				.count();
+			assertThat(results).isEqualTo(200);
+		}
+
 		@Test
 		void testRunStepWithoutParameters() {
 			var cm = new OpenBBTRuntime(TEST_CONFIG);
@@ -0,0 +1,77 @@
+package org.myjtools.openbbt.core.test.execution;
+
+import org.junit.jupiter.api.Test;
+import org.myjtools.openbbt.core.execution.LongestFirstScheduler;
+import java.util.List;
+import java.util.Map;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+
+class LongestFirstSchedulerTest {
+
+	@Test
+	void parallelTasks_areOrderedFromTheLongest() {
+		var scheduler = new LongestFirstScheduler(2);
+		var schedule = scheduler.schedule(
+			List.of("a", "b", "c", "d"), List.of(), Map.of("a", 10L, "b", 600L, "c", 20L, "d", 30L)
+		);
+		assertThat(schedule.parallel()).containsExactly("b", "d", "c", "a");
+		assertThat(schedule.predictedMakespan()).isEqualTo(600);
+		assertThat(schedule.estimatedTasks()).isEqualTo(4);
+	}
+
+
+	@Test
+	void tasksWithoutHistory_areEstimatedWithTheMedian() {
+		var scheduler = new LongestFirstScheduler(1);
+		var schedule = scheduler.schedule(
+			List.of("new", "short", "medium", "long"), List.of(), Map.of("short", 10L, "medium", 50L, "long", 90L)
+		);
+		assertThat(schedule.parallel()).containsExactly("long", "new", "medium", "short");
+		assertThat(schedule.predictedMakespan()).isEqualTo(200);
+		assertThat(schedule.estimatedTasks()).isEqualTo(3);
+	}
+
+
+	@Test
+	void tasksWithTheSameEstimate_keepThePlanOrder() {
+		var scheduler = new LongestFirstScheduler(4);
+		var schedule = scheduler.schedule(List.of("a", "b", "c"), List.of(), Map.of());
+		assertThat(schedule.parallel()).containsExactly("a", "b", "c");
+		assertThat(schedule.predictedMakespan()).isZero();
+	}
+
+
+	@Test
+	void sequentialTasks_runOnTheirOwnLane() {
+		var scheduler = new LongestFirstScheduler(2);
+		var schedule = scheduler.schedule(
+			List.of("p1", "p2"), List.of("s1", "s2"), Map.of("p1", 100L, "p2", 100L, "s1", 150L, "s2", 100L)
+		);
+		assertThat(schedule.sequential()).containsExactly("s1", "s2");
+		assertThat(schedule.predictedMakespan()).isEqualTo(250);
+	}
+
+
+	@Test
+	void longestFirst_beatsPlanOrder() {
+		var scheduler = new LongestFirstScheduler(3);
+		// plan order leaves the long task for the end
+		List<Long> planOrder = List.of(10L, 10L, 10L, 10L, 10L, 10L, 60L);
+		assertThat(scheduler.predictMakespan(planOrder)).isEqualTo(80);
+		var schedule = scheduler.schedule(
+			List.of(0, 1, 2, 3, 4, 5, 6), List.of(),
+			Map.of(0, 10L, 1, 10L, 2, 10L, 3, 10L, 4, 10L, 5, 10L, 6, 60L)
+		);
+		assertThat(schedule.parallel().getFirst()).isEqualTo(6);
+		assertThat(schedule.predictedMakespan()).isEqualTo(60);
+	}
+
+
+	@Test
+	void workers_mustBePositive() {
+		assertThatThrownBy(() -> new LongestFirstScheduler(0)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
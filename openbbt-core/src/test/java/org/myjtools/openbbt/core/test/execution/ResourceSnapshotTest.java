@@ -0,0 +1,49 @@
+package org.myjtools.openbbt.core.test.execution;
+
+import org.junit.jupiter.api.Test;
+import org.myjtools.openbbt.core.execution.ResourceSnapshot;
+import java.util.Map;
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+class ResourceSnapshotTest {
+
+	@Test
+	void changedSince_reportsAddedRemovedAndModifiedResources() {
+		var previous = new ResourceSnapshot(
+			Map.of("a.feature", "h1", "b.feature", "h2", "data/users.csv", "h3"), "providers"
+		);
+		var current = new ResourceSnapshot(
+			Map.of("a.feature", "h1", "b.feature", "h2-modified", "data/orders.csv", "h4"), "providers"
+		);
+		assertThat(current.changedSince(previous))
+			.containsExactlyInAnyOrder("b.feature", "data/users.csv", "data/orders.csv");
+		assertThat(current.stepProvidersChangedSince(previous)).isFalse();
+	}
+
+
+	@Test
+	void unchangedResources_reportNoChanges() {
+		var snapshot = new ResourceSnapshot(Map.of("a.feature", "h1"), "providers");
+		assertThat(snapshot.changedSince(snapshot)).isEmpty();
+	}
+
+
+	@Test
+	void resourcesHash_dependsOnlyOnTheResources() {
+		var snapshot = new ResourceSnapshot(Map.of("a.feature", "h1", "data/users.csv", "h2"), "providers-1.0");
+		var sameResources = new ResourceSnapshot(Map.of("data/users.csv", "h2", "a.feature", "h1"), "providers-1.1");
+		var modified = new ResourceSnapshot(Map.of("a.feature", "h1", "data/users.csv", "h3"), "providers-1.0");
+		assertThat(snapshot.resourcesHash()).isEqualTo(sameResources.resourcesHash());
+		assertThat(snapshot.resourcesHash()).isNotEqualTo(modified.resourcesHash());
+	}
+
+
+	@Test
+	void differentStepProviders_areDetected() {
+		var previous = new ResourceSnapshot(Map.of(), "providers-1.0");
+		var current = new ResourceSnapshot(Map.of(), "providers-1.1");
+		assertThat(current.stepProvidersChangedSince(previous)).isTrue();
+	}
+
+}
@@ -0,0 +1,105 @@
+package org.myjtools.openbbt.core.test.execution;
+
+import org.junit.jupiter.api.Test;
+import org.myjtools.openbbt.core.execution.ExecutionResult;
+import org.myjtools.openbbt.core.execution.TestCaseStats;
+import org.myjtools.openbbt.core.testplan.NodeType;
+import org.myjtools.openbbt.core.testplan.TestPlanNode;
+import java.time.Instant;
+import java.util.UUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+
+class TestCaseStatsTest {
+
+	private final UUID planNode = UUID.randomUUID();
+	private final TestCaseStats empty = TestCaseStats.empty(UUID.randomUUID(), "T1");
+
+
+	private TestCaseStats recordAll(TestCaseStats stats, ExecutionResult... results) {
+		for (ExecutionResult result : results) {
+			stats = stats.record(planNode, "test", result, 100, Instant.now());
+		}
+		return stats;
+	}
+
+
+	@Test
+	void recentResults_keepsTheTrendFromTheMostRecent() {
+		TestCaseStats stats = recordAll(empty,
+			ExecutionResult.PASSED, ExecutionResult.FAILED, ExecutionResult.ERROR, ExecutionResult.PASSED
+		);
+		assertThat(stats.executionCount()).isEqualTo(4);
+		assertThat(stats.trend()).isEqualTo("PFFP");
+		assertThat(stats.failureRate()).isEqualTo(0.5);
+		assertThat(stats.flipCount()).isEqualTo(2);
+		assertThat(stats.recentFlips()).isEqualTo(2);
+		assertThat(stats.lastResult()).isEqualTo(ExecutionResult.PASSED);
+	}
+
+
+	@Test
+	void inconclusiveResults_areCountedButNotRecorded() {
+		TestCaseStats stats = recordAll(empty, ExecutionResult.FAILED, ExecutionResult.SKIPPED, ExecutionResult.UNDEFINED);
+		assertThat(stats.executionCount()).isEqualTo(3);
+		assertThat(stats.sampleCount()).isEqualTo(1);
+		assertThat(stats.trend()).isEqualTo("F");
+		assertThat(stats.lastResult()).isEqualTo(ExecutionResult.UNDEFINED);
+	}
+
+
+	@Test
+	void recentFlips_onlyConsiderTheWindow() {
+		TestCaseStats stats = empty;
+		for (int i = 0; i < 10; i++) {
+			stats = recordAll(stats, ExecutionResult.PASSED, ExecutionResult.FAILED);
+		}
+		for (int i = 0; i < TestCaseStats.WINDOW; i++) {
+			stats = recordAll(stats, ExecutionResult.PASSED);
+		}
+		assertThat(stats.flipCount()).isEqualTo(20);
+		assertThat(stats.recentFlips()).isZero();
+		assertThat(stats.recentCount()).isEqualTo(TestCaseStats.WINDOW);
+		assertThat(stats.failureRate()).isZero();
+	}
+
+
+	@Test
+	void durationAverage_followsTheRecentDurations() {
+		TestCaseStats stats = empty;
+		for (int i = 0; i < 50; i++) {
+			stats = stats.record(planNode, "test", ExecutionResult.PASSED, 1000, Instant.now());
+		}
+		for (int i = 0; i < 50; i++) {
+			stats = stats.record(planNode, "test", ExecutionResult.PASSED, 200, Instant.now());
+		}
+		assertThat(stats.durationEwma()).isCloseTo(200, within(1.0));
+	}
+
+
+	@Test
+	void durationPercentile_convergesToThe95thPercentile() {
+		TestCaseStats stats = empty;
+		for (int i = 0; i < 5000; i++) {
+			// durations evenly spread between 0 and 999 ms, in scrambled order
+			long duration = (i * 617L) % 1000;
+			stats = stats.record(planNode, "test", ExecutionResult.PASSED, duration, Instant.now());
+		}
+		assertThat(stats.durationP95()).isCloseTo(950, within(50.0));
+	}
+
+
+	@Test
+	void keyOf_prefersTheIdentifier() {
+		TestPlanNode identified = new TestPlanNode(NodeType.TEST_CASE).identifier("TC-1").name("a").source("f:1");
+		TestPlanNode anonymous = new TestPlanNode(NodeType.TEST_CASE).name("a").source("f:1");
+		TestPlanNode renamed = new TestPlanNode(NodeType.TEST_CASE).name("b").source("f:1");
+		assertThat(TestCaseStats.keyOf(identified)).isEqualTo("TC-1");
+		assertThat(TestCaseStats.keyOf(anonymous)).isEqualTo(TestCaseStats.keyOf(
+			new TestPlanNode(NodeType.TEST_CASE).name("a").source("f:1")
+		));
+		assertThat(TestCaseStats.keyOf(anonymous)).isNotEqualTo(TestCaseStats.keyOf(renamed));
+	}
+
+}
@@ -72,6 +72,29 @@ class PlanValidatorTest {
 		assertThat(aggregatorNode.validationMessage()).isNotBlank();
 	}
 
+	@Test
+	void manyDistinctSteps_areValidatedInParallelAndFannedOutToEveryStep(@TempDir Path tempDir) {
+		var plan = buildPlan("manyDistinctSteps", tempDir);
+		var repo = (TestPlanRepository) plan.runtime().getRepository(TestPlanRepository.class);
+
+		List<TestPlanNode> steps = repo.searchNodes(TestPlanNodeCriteria.and(
+			TestPlanNodeCriteria.descendantOf(plan.testPlan().planNodeRoot()),
+			TestPlanNodeCriteria.withNodeType(NodeType.STEP)
+		)).map(id -> repo.getNodeData(id).orElseThrow()).toList();
+
+		assertThat(steps).hasSize(64);
+		assertThat(steps).filteredOn(step -> step.name().equals("a valid step"))
+			.hasSize(32)
+			.allSatisfy(step -> assertThat(step.validationStatus()).isEqualTo(ValidationStatus.OK));
+		assertThat(steps).filteredOn(step -> step.name().startsWith("undefined step"))
+			.hasSize(32)
+			.allSatisfy(step -> {
+				assertThat(step.validationStatus()).isEqualTo(ValidationStatus.ERROR);
+				assertThat(step.validationMessage()).isEqualTo("No matching step found for: " + step.name());
+			});
+		assertThat(repo.planHasIssues(plan.testPlan().planID())).isTrue();
+	}
+
 	@Test
 	void getNodeDescendantsWithIssues_returnsOnlyFailingNodes(@TempDir Path tempDir) {
 		var plan = buildPlan("invalidStep", tempDir);
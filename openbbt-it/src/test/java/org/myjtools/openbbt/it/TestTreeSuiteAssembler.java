@@ -32,6 +32,7 @@ public class TestTreeSuiteAssembler implements SuiteAssembler {
 			case "execVirtualStep"              -> suiteWithVirtualStep();
 			case "execTwoTestCases"             -> suiteWithTwoTestCases();
 			case "execMixedResults"             -> suiteWithMixedResults();
+			case "manyDistinctSteps"            -> suiteWithManyDistinctSteps();
 			default                             -> Optional.empty();
 		};
 	}
@@ -147,6 +148,23 @@ public class TestTreeSuiteAssembler implements SuiteAssembler {
 		return Optional.of(suite);
 	}
 
+	// TEST_SUITE → TEST_FEATURE → TEST_CASE_i → STEP_AGGREGATOR → STEP("a valid step")      (even i)
+	//                                                          → STEP("undefined step i")  (odd i)
+	private Optional<UUID> suiteWithManyDistinctSteps() {
+		UUID suite   = node(NodeType.TEST_SUITE,   "suite");
+		UUID feature = node(NodeType.TEST_FEATURE, "feature");
+		repository.attachChildNodeLast(suite, feature);
+		for (int i = 0; i < 64; i++) {
+			UUID testCase   = node(NodeType.TEST_CASE,       "test case " + i);
+			UUID aggregator = node(NodeType.STEP_AGGREGATOR, "steps");
+			UUID step       = node(NodeType.STEP,            i % 2 == 0 ? "a valid step" : "undefined step " + i);
+			repository.attachChildNodeLast(feature, testCase);
+			repository.attachChildNodeLast(testCase, aggregator);
+			repository.attachChildNodeLast(aggregator, step);
+		}
+		return Optional.of(suite);
+	}
+
 	private UUID node(NodeType type, String name) {
 		return repository.persistNode(new TestPlanNode(type).name(name));
 	}
@@ -1,30 +1,86 @@
 package org.myjtools.openbbt.jsonrpc.serve;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
+import org.myjtools.openbbt.core.events.EventBus;
+import org.myjtools.openbbt.core.execution.EffectiveResult;
+import org.myjtools.openbbt.core.execution.ExecutionResult;
+import org.myjtools.openbbt.core.execution.TestCaseStats;
 import org.myjtools.openbbt.core.execution.TestExecution;
 import org.myjtools.openbbt.core.execution.TestExecutionNode;
 import org.myjtools.openbbt.core.persistence.AttachmentRepository;
+import org.myjtools.openbbt.core.persistence.Page;
+import org.myjtools.openbbt.core.persistence.RepositoryCleaner;
 import org.myjtools.openbbt.core.persistence.TestExecutionRepository;
 import org.myjtools.openbbt.core.persistence.TestPlanRepository;
 import org.myjtools.openbbt.core.testplan.TestPlan;
 import org.myjtools.openbbt.core.testplan.TestPlanNode;
 import org.myjtools.openbbt.core.util.Log;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * JSON-RPC 2.0 server over stdio using Content-Length framing (same as LSP).
  * Reads requests from an InputStream and writes responses to an OutputStream.
+ * <p>
+ * Requests are processed concurrently, each one in its own virtual thread, so a slow
+ * request does not delay the others. Responses are written as soon as they are ready,
+ * correlated by the request id. A request in progress can be cancelled with
+ * {@code $/cancelRequest}; the cancellation is cooperative, so the request stops at the
+ * next check and its response is dropped. Heavy methods are limited to a few concurrent requests.
+ * {@code shutdown} waits for the requests in progress before responding.
+ * <p>
+ * When an event bus is given with {@link #notifyProgress}, the progress of the executions is
+ * pushed to the client as {@code executions/progress} notifications, coalesced per interval.
  */
 public class JsonRpcServer {
 
     private static final Log log = Log.of();
+    private static final int DEFAULT_ATTACHMENT_CHUNK = 256 * 1024;
+    private static final int MAX_ATTACHMENT_CHUNK = 4 * 1024 * 1024;
+    private static final int REQUEST_CANCELLED = -32800;
+    private static final int CHILDREN_BATCH = 500;
+
+    /** Default maximum number of concurrent requests of the heavy methods */
+    private static final Map<String, Integer> DEFAULT_METHOD_LIMITS = Map.of(
+        "browse/children", 4,
+        "plans/delete", 1,
+        "plans/deleteUnexecuted", 1,
+        "executions/delete", 2,
+        "executions/attachment", 2,
+        "stats/testCases", 2
+    );
+
+    /**
+     * Methods that run for a long time without using the repositories of the server, so they
+     * only lock them while they are used
+     */
+    private static final Set<String> SELF_LOCKING_METHODS = Set.of("exec", "browse/plan");
 
     public interface RepositoryFactory {
         TestPlanRepository open();
@@ -37,7 +93,6 @@ public class JsonRpcServer {
         java.util.Map<String, java.util.List<String>> getContributors();
     }
 
-    @FunctionalInterface
     public interface ExecHandler {
         /**
          * Execute the current plan synchronously.
@@ -47,6 +102,13 @@ public class JsonRpcServer {
          * {@code suites} is the list of test suite names to include; empty means all suites.
          */
         TestExecution exec(BiConsumer<UUID, UUID> onExecutionCreated, String profileName, List<String> suites);
+
+        /**
+         * Execute again, synchronously, only the failed, error or undefined test cases of a
+         * previous execution, using the plan of that execution.
+         * {@code onExecutionCreated} is called as in {@link #exec}.
+         */
+        TestExecution rerunFailed(BiConsumer<UUID, UUID> onExecutionCreated, UUID executionID, String profileName);
     }
 
     @FunctionalInterface
@@ -58,8 +120,8 @@ public class JsonRpcServer {
         TestPlan build();
     }
 
-    private final InputStream in;
-    private final OutputStream out;
+    private final MessageReader reader;
+    private final MessageWriter writer;
     private final RepositoryFactory factory;
     private final ExecHandler execHandler;
     private final PlanHandler planHandler;
@@ -67,7 +129,20 @@ public class JsonRpcServer {
     private TestPlanRepository repository;
     private TestExecutionRepository executionRepository;
     private AttachmentRepository attachmentRepository;
+    private RepositoryCleaner cleaner;
     private volatile boolean running = true;
+    private EventBus eventBus;
+    private Duration progressInterval;
+    private ProgressNotifier progressNotifier;
+
+    // refresh replaces the repositories, so it cannot run along with other requests;
+    // the lock is fair so requests received after a refresh wait for it, which is short
+    // since the long-running methods do not hold the lock while running
+    private final ReadWriteLock repositoryLock = new ReentrantReadWriteLock(true);
+    private final Map<String, Semaphore> methodLimits = new ConcurrentHashMap<>();
+    private final Map<Long, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+    private final ThreadLocal<PendingRequest> currentRequest = new ThreadLocal<>();
+    private final AtomicLong requestSequence = new AtomicLong();
 
     public JsonRpcServer(InputStream in, OutputStream out, RepositoryFactory factory) {
         this(in, out, factory, null, null, null);
@@ -82,113 +157,287 @@ public class JsonRpcServer {
     }
 
     public JsonRpcServer(InputStream in, OutputStream out, RepositoryFactory factory, ExecHandler execHandler, PlanHandler planHandler, ContributorsProvider contributorsProvider) {
-        this.in = in;
-        this.out = out;
+        this.reader = new MessageReader(in);
+        this.writer = new MessageWriter(out);
         this.factory = factory;
         this.execHandler = execHandler;
         this.planHandler = planHandler;
         this.contributorsProvider = contributorsProvider;
+        DEFAULT_METHOD_LIMITS.forEach(this::limitConcurrency);
+        // executing and building the plan both install plugins and build the test plan
+        Semaphore planning = new Semaphore(1);
+        methodLimits.put("exec", planning);
+        methodLimits.put("browse/plan", planning);
+    }
+
+    /**
+     * Limit the number of requests of a method processed at the same time. Further requests
+     * of the method wait until one of the running ones finishes.
+     */
+    public JsonRpcServer limitConcurrency(String method, int maxConcurrent) {
+        if (maxConcurrent < 1)
+            throw new IllegalArgumentException("Invalid concurrency limit for " + method + ": " + maxConcurrent);
+        methodLimits.put(method, new Semaphore(maxConcurrent));
+        return this;
+    }
+
+    /**
+     * Notify the progress of the executions published to the given event bus. The events
+     * received during each interval are sent together in a single notification.
+     */
+    public JsonRpcServer notifyProgress(EventBus eventBus, Duration interval) {
+        if (interval.isNegative() || interval.isZero())
+            throw new IllegalArgumentException("Invalid progress interval: " + interval);
+        this.eventBus = eventBus;
+        this.progressInterval = interval;
+        return this;
     }
 
     public void run() {
         repository = factory.open();
         executionRepository = factory.openExecution();
         attachmentRepository = factory.openAttachment();
+        cleaner = newCleaner();
+        if (eventBus != null) {
+            progressNotifier = new ProgressNotifier(writer, this::writeMessage, progressInterval);
+            eventBus.registerObserver(progressNotifier);
+        }
         log.info("OpenBBT serve: ready");
-        while (running) {
-            try {
-                String message = readMessage();
-                if (message == null) break;
-                JsonObject request = JsonParser.parseString(message).getAsJsonObject();
-                String response = dispatch(request);
-                if (response != null) {
-                    writeMessage(response);
+        // closing the executor waits for the requests still in progress
+        try (ExecutorService requests = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("openbbt-jsonrpc-", 0).factory()
+        )) {
+            while (running) {
+                try {
+                    JsonElement message = reader.read();
+                    if (message == null) break;
+                    accept(message.getAsJsonObject(), requests);
+                } catch (EOFException | InterruptedIOException e) {
+                    break;
+                } catch (IOException e) {
+                    break;
+                } catch (Exception e) {
+                    log.error(e, "Error processing JSON-RPC request");
                 }
-            } catch (EOFException | InterruptedIOException e) {
-                break;
-            } catch (IOException e) {
-                break;
-            } catch (Exception e) {
-                log.error(e, "Error processing JSON-RPC request");
             }
+        } finally {
+            // the event bus outlives the server, so the notifier must not stay registered
+            if (progressNotifier != null) {
+                eventBus.unregisterObserver(progressNotifier);
+                progressNotifier.close();
+            }
+            closeRepository();
         }
-        closeRepository();
         log.info("OpenBBT serve: stopped");
     }
 
-    // --- Protocol framing ---
+    // --- Request scheduling ---
 
-    private String readMessage() throws IOException {
-        int contentLength = -1;
-        StringBuilder header = new StringBuilder();
-        byte[] buf = new byte[1];
-        while (true) {
-            int read = in.read(buf);
-            if (read == -1) return null;
-            header.append((char) buf[0]);
-            String h = header.toString();
-            if (h.endsWith("\r\n\r\n")) {
-                for (String line : h.split("\r\n")) {
-                    if (line.toLowerCase().startsWith("content-length:")) {
-                        contentLength = Integer.parseInt(line.substring(15).trim());
-                    }
+    /**
+     * A request in progress. Its response is written only once, either by the request
+     * itself or by its cancellation, whichever comes first.
+     * <p>
+     * Cancelling does not interrupt the thread of the request, since an interrupted thread
+     * doing channel I/O closes the channel, which may be shared with other requests. Instead,
+     * the request checks the cancellation between units of work with {@link #checkCancelled}.
+     */
+    private final class PendingRequest {
+
+        private final JsonElement id;
+        private final AtomicBoolean responded = new AtomicBoolean();
+        private volatile boolean cancelled;
+        private volatile Future<?> future;
+
+        private PendingRequest(JsonElement id) {
+            this.id = id;
+        }
+
+        private void respond(MessageWriter.Buffer response) {
+            if (responded.compareAndSet(false, true)) {
+                writeMessage(response);
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+            respond(writer.serialize(buildError(id, REQUEST_CANCELLED, "Request cancelled")));
+            Future<?> task = future;
+            if (task != null) {
+                // a request not started yet never runs
+                task.cancel(false);
+            }
+        }
+
+        private void await() {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | CancellationException e) {
+                // the request has already responded
+            }
+        }
+    }
+
+    private void accept(JsonObject request, ExecutorService requests) {
+        String method = request.has("method") ? request.get("method").getAsString() : "";
+        switch (method) {
+            case "$/cancelRequest" -> cancelRequest(request);
+            case "shutdown" -> {
+                // stop reading, and respond once every request in progress has responded
+                running = false;
+                List.copyOf(pendingRequests.values()).forEach(PendingRequest::await);
+                // the progress of the finished requests is notified before the response
+                if (progressNotifier != null) {
+                    progressNotifier.flush();
                 }
-                break;
+                writeMessage(writer.serialize(buildSuccess(request.get("id"), JsonNull.INSTANCE)));
+            }
+            default -> {
+                long sequence = requestSequence.incrementAndGet();
+                PendingRequest pending = new PendingRequest(request.get("id"));
+                pendingRequests.put(sequence, pending);
+                pending.future = requests.submit(() -> {
+                    currentRequest.set(pending);
+                    try {
+                        pending.respond(process(method, request));
+                    } finally {
+                        currentRequest.remove();
+                        pendingRequests.remove(sequence);
+                    }
+                });
+            }
+        }
+    }
+
+    private MessageWriter.Buffer process(String method, JsonObject request) {
+        Semaphore limit = methodLimits.get(method);
+        try {
+            if (limit != null) {
+                limit.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return writer.serialize(buildError(request.get("id"), REQUEST_CANCELLED, "Request cancelled"));
+        }
+        Lock lock = "refresh".equals(method) ? repositoryLock.writeLock()
+            : SELF_LOCKING_METHODS.contains(method) ? null
+            : repositoryLock.readLock();
+        if (lock != null) {
+            lock.lock();
+        }
+        try {
+            return dispatch(request);
+        } finally {
+            if (lock != null) {
+                lock.unlock();
+            }
+            if (limit != null) {
+                limit.release();
             }
         }
-        if (contentLength < 0) throw new IOException("Missing Content-Length header");
-        byte[] body = in.readNBytes(contentLength);
-        return new String(body, StandardCharsets.UTF_8);
     }
 
-    private void writeMessage(String json) throws IOException {
-        byte[] body = json.getBytes(StandardCharsets.UTF_8);
-        byte[] header = ("Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.UTF_8);
-        synchronized (out) {
-            out.write(header);
-            out.write(body);
-            out.flush();
+    /**
+     * Run an action using the repositories, so they are not replaced by a refresh meanwhile
+     */
+    private <T> T withRepositories(Supplier<T> action) {
+        Lock lock = repositoryLock.readLock();
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop the current request if it has been cancelled. Its response has already been sent.
+     */
+    private void checkCancelled() {
+        PendingRequest pending = currentRequest.get();
+        if (pending != null && pending.cancelled) {
+            throw new CancellationException("Request cancelled");
+        }
+    }
+
+    private void cancelRequest(JsonObject request) {
+        JsonElement params = request.get("params");
+        if (params == null || !params.isJsonObject() || !params.getAsJsonObject().has("id")) {
+            return;
+        }
+        JsonElement id = params.getAsJsonObject().get("id");
+        // a request cancelled before it starts never runs, so it is removed here as well
+        pendingRequests.entrySet().removeIf(entry -> {
+            if (!id.equals(entry.getValue().id)) {
+                return false;
+            }
+            entry.getValue().cancel();
+            return true;
+        });
+    }
+
+    // --- Protocol framing ---
+
+    private void writeMessage(MessageWriter.Buffer message) {
+        try {
+            writer.write(message);
+        } catch (IOException e) {
+            log.error(e, "Error writing JSON-RPC message");
+            running = false;
         }
     }
 
     // --- Dispatcher ---
 
-    private String dispatch(JsonObject req) {
+    private MessageWriter.Buffer dispatch(JsonObject req) {
         JsonElement idEl = req.get("id");
         String method = req.has("method") ? req.get("method").getAsString() : "";
         JsonObject params = req.has("params") && req.get("params").isJsonObject()
             ? req.getAsJsonObject("params")
             : new JsonObject();
         try {
-            JsonElement result = switch (method) {
-                case "browse/plans"    -> handlePlans();
-                case "browse/plan"     -> handlePlanBuild();
-                case "browse/node"     -> handleNode(params);
-                case "browse/children" -> handleChildren(params);
-                case "plans/list"      -> handleListPlans(params);
-                case "plans/get"       -> handleGetPlan(params);
-                case "plans/delete"              -> { handleDeletePlan(params); yield JsonNull.INSTANCE; }
-                case "plans/deleteUnexecuted"    -> { handleDeleteUnexecutedPlans(); yield JsonNull.INSTANCE; }
-                case "executions/list"   -> handleListExecutions(params);
-                case "executions/node"        -> handleExecutionNode(params);
-                case "executions/attachments" -> handleListAttachments(params);
-                case "executions/attachment"  -> handleGetAttachment(params);
-                case "executions/delete" -> { handleDeleteExecution(params); yield JsonNull.INSTANCE; }
-                case "contributors/list" -> handleContributors();
-                case "exec"                   -> handleExec(params);
-                case "refresh"         -> { handleRefresh(); yield JsonNull.INSTANCE; }
-                case "shutdown"        -> { running = false; yield JsonNull.INSTANCE; }
-                default -> throw new IllegalArgumentException("Method not found: " + method);
+            checkCancelled();
+            // large results are streamed straight into the response buffer
+            return switch (method) {
+                case "browse/node"     -> writer.serializeResult(idEl, json -> writeNode(json, params));
+                case "browse/children" -> writer.serializeResult(idEl, json -> writeChildren(json, params));
+                case "plans/list"      -> writer.serializeResult(idEl, json -> writeListPlans(json, params));
+                case "executions/list" -> writer.serializeResult(idEl, json -> writeListExecutions(json, params));
+                default -> writer.serialize(buildSuccess(idEl, handle(method, params)));
             };
-            return buildSuccess(idEl, result);
+        } catch (CancellationException e) {
+            return writer.serialize(buildError(idEl, REQUEST_CANCELLED, e.getMessage()));
         } catch (IllegalArgumentException e) {
-            return buildError(idEl, -32601, e.getMessage());
+            return writer.serialize(buildError(idEl, -32601, e.getMessage()));
         } catch (Exception e) {
             log.error(e, "Handler error for method {}", method);
-            return buildError(idEl, -32000, e.getMessage());
+            return writer.serialize(buildError(idEl, -32000, e.getMessage()));
         }
     }
 
+    private JsonElement handle(String method, JsonObject params) {
+        return switch (method) {
+            case "browse/plans"    -> handlePlans();
+            case "browse/plan"     -> handlePlanBuild();
+            case "plans/get"       -> handleGetPlan(params);
+            case "plans/delete"              -> handleDeletePlan(params);
+            case "plans/deleteUnexecuted"    -> handleDeleteUnexecutedPlans();
+            case "executions/node"        -> handleExecutionNode(params);
+            case "executions/attachments" -> handleListAttachments(params);
+            case "executions/attachment"  -> handleGetAttachment(params);
+            case "executions/attachmentChunk" -> handleGetAttachmentChunk(params);
+            case "executions/delete" -> handleDeleteExecution(params);
+            case "cleanup/status"    -> handleCleanupStatus(params);
+            case "stats/testCases"   -> handleListTestCaseStats(params);
+            case "stats/testCase"    -> handleTestCaseStats(params);
+            case "contributors/list" -> handleContributors();
+            case "exec"                   -> handleExec(params);
+            case "refresh"         -> { handleRefresh(); yield JsonNull.INSTANCE; }
+            default -> throw new IllegalArgumentException("Method not found: " + method);
+        };
+    }
+
     // --- Handlers ---
 
     private JsonArray handlePlans() {
@@ -225,42 +474,59 @@ public class JsonRpcServer {
         return obj;
     }
 
-    private JsonObject handleNode(JsonObject params) {
+    private void writeNode(JsonWriter json, JsonObject params) throws IOException {
         UUID nodeId = UUID.fromString(params.get("nodeId").getAsString());
         TestPlanNode node = repository.getNodeData(nodeId)
             .orElseThrow(() -> new IllegalArgumentException("Node not found: " + nodeId));
-        return nodeToJson(node);
+        writeNode(json, node, repository.countNodeChildren(nodeId));
     }
 
-    private JsonArray handleChildren(JsonObject params) {
+    private void writeChildren(JsonWriter json, JsonObject params) throws IOException {
         UUID nodeId = UUID.fromString(params.get("nodeId").getAsString());
-        JsonArray arr = new JsonArray();
-        repository.getNodeChildren(nodeId).forEach(childId -> {
-            TestPlanNode child = repository.getNodeData(childId).orElseThrow();
-            arr.add(nodeToJson(child));
-        });
-        return arr;
+        Page page = page(params);
+        // the children are fetched in batches, each one along with the number of children of its nodes
+        int remaining = page.max() > 0 ? page.max() : Integer.MAX_VALUE;
+        Page batch = new Page(page.after(), page.offset(), Math.min(remaining, CHILDREN_BATCH));
+        json.beginArray();
+        while (remaining > 0) {
+            checkCancelled();
+            List<TestPlanNode> children = repository.getNodeChildrenData(nodeId, batch);
+            Map<UUID, Integer> childCounts = repository.countNodeChildren(
+                children.stream().map(TestPlanNode::nodeID).toList()
+            );
+            for (TestPlanNode child : children) {
+                writeNode(json, child, childCounts.getOrDefault(child.nodeID(), 0));
+            }
+            remaining -= children.size();
+            if (children.size() < batch.max()) {
+                break;
+            }
+            batch = new Page(children.getLast().nodeID(), 0, Math.min(remaining, CHILDREN_BATCH));
+        }
+        json.endArray();
     }
 
-    private JsonArray handleListPlans(JsonObject params) {
+    private void writeListPlans(JsonWriter json, JsonObject params) throws IOException {
         String organization = params.get("organization").getAsString();
         String project = params.get("project").getAsString();
-        int offset = params.has("offset") ? params.get("offset").getAsInt() : 0;
-        int max = params.has("max") ? params.get("max").getAsInt() : 0;
         boolean withExecutions = params.has("withExecutions") && params.get("withExecutions").getAsBoolean();
-        JsonArray arr = new JsonArray();
-        for (TestPlan plan : repository.listPlans(organization, project, offset, max, withExecutions)) {
-            JsonObject obj = new JsonObject();
-            obj.addProperty("planId", plan.planID().toString());
-            obj.addProperty("createdAt", plan.createdAt().toString());
-            boolean hasIssues = repository.getNodeData(plan.planNodeRoot())
-                .map(n -> n.hasIssues()).orElse(false);
-            obj.addProperty("hasIssues", hasIssues);
-            obj.addProperty("testCaseCount", plan.testCaseCount());
-            if (plan.suites() != null) obj.addProperty("testCases", plan.suites());
-            arr.add(obj);
+        List<TestPlan> plans = repository.listPlans(organization, project, withExecutions, page(params));
+        Map<UUID, TestPlanNode> roots = repository.getNodeData(
+            plans.stream().map(TestPlan::planNodeRoot).distinct().toList()
+        );
+        json.beginArray();
+        for (TestPlan plan : plans) {
+            checkCancelled();
+            json.beginObject();
+            json.name("planId").value(plan.planID().toString());
+            json.name("createdAt").value(plan.createdAt().toString());
+            TestPlanNode root = roots.get(plan.planNodeRoot());
+            json.name("hasIssues").value(root != null && root.hasIssues());
+            json.name("testCaseCount").value(plan.testCaseCount());
+            if (plan.suites() != null) json.name("testCases").value(plan.suites());
+            json.endObject();
         }
-        return arr;
+        json.endArray();
     }
 
     private JsonObject handleGetPlan(JsonObject params) {
@@ -280,38 +546,107 @@ public class JsonRpcServer {
         return obj;
     }
 
-    private JsonArray handleListExecutions(JsonObject params) {
+    private void writeListExecutions(JsonWriter json, JsonObject params) throws IOException {
         if (executionRepository == null)
             throw new IllegalStateException("Execution repository not available");
         UUID planId = UUID.fromString(params.get("planId").getAsString());
-        int offset = params.has("offset") ? params.get("offset").getAsInt() : 0;
-        int max = params.has("max") ? params.get("max").getAsInt() : 0;
+        Page page = page(params);
         UUID planNodeRoot = repository.getPlan(planId)
             .orElseThrow(() -> new IllegalArgumentException("Plan not found: " + planId))
             .planNodeRoot();
-        JsonArray arr = new JsonArray();
-        for (TestExecution ex : executionRepository.listExecutions(planId, planNodeRoot, offset, max)) {
-            JsonObject obj = new JsonObject();
-            obj.addProperty("executionId", ex.executionID().toString());
-            obj.addProperty("planId", ex.planID().toString());
-            obj.addProperty("planNodeRoot", planNodeRoot.toString());
-            obj.add("executionRootNodeId", ex.executionRootNodeID() != null
-                ? new JsonPrimitive(ex.executionRootNodeID().toString()) : JsonNull.INSTANCE);
-            obj.addProperty("executedAt", ex.executedAt().toString());
-            executionRepository.getExecutionNodeResult(ex.executionRootNodeID() != null
-                    ? ex.executionRootNodeID() : UUID.randomUUID())
-                .ifPresent(r -> obj.addProperty("result", r.name()));
+        json.beginArray();
+        // the executions are written in batches, each one along with the results of their root nodes
+        try (Stream<TestExecution> executions = executionRepository.streamExecutions(planId, planNodeRoot, page)) {
+            List<TestExecution> batch = new ArrayList<>(CHILDREN_BATCH);
+            for (TestExecution ex : (Iterable<TestExecution>) executions::iterator) {
+                batch.add(ex);
+                if (batch.size() == CHILDREN_BATCH) {
+                    writeExecutions(json, planNodeRoot, batch);
+                    batch.clear();
+                }
+            }
+            writeExecutions(json, planNodeRoot, batch);
+        }
+        json.endArray();
+    }
+
+    private void writeExecutions(JsonWriter json, UUID planNodeRoot, List<TestExecution> executions)
+    throws IOException {
+        checkCancelled();
+        Map<UUID, ExecutionResult> results = executionRepository.getExecutionNodeResults(
+            executions.stream().map(TestExecution::executionRootNodeID).filter(Objects::nonNull).toList()
+        );
+        for (TestExecution ex : executions) {
+            json.beginObject();
+            json.name("executionId").value(ex.executionID().toString());
+            json.name("planId").value(ex.planID().toString());
+            json.name("planNodeRoot").value(planNodeRoot.toString());
+            json.name("executionRootNodeId").value(ex.executionRootNodeID() != null
+                ? ex.executionRootNodeID().toString() : null);
+            json.name("executedAt").value(ex.executedAt().toString());
+            ExecutionResult result = ex.executionRootNodeID() != null ? results.get(ex.executionRootNodeID()) : null;
+            if (result != null) json.name("result").value(result.name());
             if (ex.testPassedCount() != null) {
-                obj.addProperty("testPassedCount", ex.testPassedCount());
-                obj.addProperty("testErrorCount",  ex.testErrorCount());
-                obj.addProperty("testFailedCount", ex.testFailedCount());
+                json.name("testPassedCount").value(ex.testPassedCount());
+                json.name("testErrorCount").value(ex.testErrorCount());
+                json.name("testFailedCount").value(ex.testFailedCount());
             }
-            if (ex.profile() != null) obj.addProperty("profile", ex.profile());
-            arr.add(obj);
+            if (ex.profile() != null) json.name("profile").value(ex.profile());
+            if (ex.rerunOf() != null) json.name("rerunOf").value(ex.rerunOf().toString());
+            json.endObject();
+        }
+    }
+
+    private JsonArray handleListTestCaseStats(JsonObject params) {
+        if (executionRepository == null)
+            throw new IllegalStateException("Execution repository not available");
+        UUID planId = UUID.fromString(params.get("planId").getAsString());
+        TestCaseStats.Ranking ranking = params.has("ranking")
+            ? TestCaseStats.Ranking.valueOf(params.get("ranking").getAsString().toUpperCase())
+            : TestCaseStats.Ranking.FLAKY;
+        int max = params.has("max") ? params.get("max").getAsInt() : 0;
+        UUID projectId = repository.getPlan(planId)
+            .orElseThrow(() -> new IllegalArgumentException("Plan not found: " + planId))
+            .projectID();
+        JsonArray arr = new JsonArray();
+        for (TestCaseStats stats : executionRepository.listTestCaseStats(projectId, ranking, max)) {
+            arr.add(testCaseStatsToJson(stats));
         }
         return arr;
     }
 
+    private JsonElement handleTestCaseStats(JsonObject params) {
+        if (executionRepository == null)
+            throw new IllegalStateException("Execution repository not available");
+        UUID planId = UUID.fromString(params.get("planId").getAsString());
+        UUID planNodeId = UUID.fromString(params.get("planNodeId").getAsString());
+        UUID projectId = repository.getPlan(planId)
+            .orElseThrow(() -> new IllegalArgumentException("Plan not found: " + planId))
+            .projectID();
+        TestPlanNode node = repository.getNodeData(planNodeId)
+            .orElseThrow(() -> new IllegalArgumentException("Node not found: " + planNodeId));
+        return executionRepository.getTestCaseStats(projectId, TestCaseStats.keyOf(node))
+            .<JsonElement>map(this::testCaseStatsToJson)
+            .orElse(JsonNull.INSTANCE);
+    }
+
+    private JsonObject testCaseStatsToJson(TestCaseStats stats) {
+        JsonObject obj = new JsonObject();
+        obj.addProperty("testCaseKey", stats.testCaseKey());
+        obj.add("name",       stats.name()       != null ? new JsonPrimitive(stats.name())                  : JsonNull.INSTANCE);
+        obj.add("planNodeId", stats.planNodeID() != null ? new JsonPrimitive(stats.planNodeID().toString()) : JsonNull.INSTANCE);
+        obj.addProperty("executionCount", stats.executionCount());
+        obj.add("lastResult",     stats.lastResult()     != null ? new JsonPrimitive(stats.lastResult().name())         : JsonNull.INSTANCE);
+        obj.add("lastExecutedAt", stats.lastExecutedAt() != null ? new JsonPrimitive(stats.lastExecutedAt().toString()) : JsonNull.INSTANCE);
+        obj.addProperty("trend",          stats.trend());
+        obj.addProperty("failureRate",    stats.failureRate());
+        obj.addProperty("flipCount",      stats.flipCount());
+        obj.addProperty("recentFlips",    stats.recentFlips());
+        obj.addProperty("durationAvgMs",  Math.round(stats.durationEwma()));
+        obj.addProperty("durationP95Ms",  Math.round(stats.durationP95()));
+        return obj;
+    }
+
     private JsonObject handleExecutionNode(JsonObject params) {
         if (executionRepository == null)
             throw new IllegalStateException("Execution repository not available");
@@ -332,7 +667,7 @@ public class JsonRpcServer {
         obj.add("testPassedCount", node.testPassedCount() != null ? new JsonPrimitive(node.testPassedCount()) : JsonNull.INSTANCE);
         obj.add("testErrorCount",  node.testErrorCount()  != null ? new JsonPrimitive(node.testErrorCount())  : JsonNull.INSTANCE);
         obj.add("testFailedCount", node.testFailedCount() != null ? new JsonPrimitive(node.testFailedCount()) : JsonNull.INSTANCE);
-        int attachmentCount = executionRepository.listAttachmentIds(node.executionNodeID()).size();
+        int attachmentCount = executionRepository.listAttachmentIds(executionId, node.executionNodeID()).size();
         obj.addProperty("attachmentCount", attachmentCount);
         return obj;
     }
@@ -345,15 +680,16 @@ public class JsonRpcServer {
         UUID executionNodeId = executionRepository.getExecutionNodeByPlanNode(executionId, planNodeId)
             .orElseThrow(() -> new IllegalArgumentException(
                 "Execution node not found for executionId=" + executionId + " planNodeId=" + planNodeId));
-        List<UUID> ids = executionRepository.listAttachmentIds(executionNodeId);
+        List<UUID> ids = executionRepository.listAttachmentIds(executionId, executionNodeId);
         JsonArray arr = new JsonArray();
         for (UUID attachmentId : ids) {
-            attachmentRepository.retrieveAttachment(executionId, executionNodeId, attachmentId).ifPresent(a -> {
+            attachmentRepository.getAttachmentInfo(executionId, executionNodeId, attachmentId).ifPresent(a -> {
                 JsonObject obj = new JsonObject();
                 obj.addProperty("attachmentId",    a.attachmentID().toString());
                 obj.addProperty("executionId",     executionId.toString());
                 obj.addProperty("executionNodeId", executionNodeId.toString());
                 obj.addProperty("contentType",     a.contentType());
+                obj.addProperty("size",            a.size());
                 arr.add(obj);
             });
         }
@@ -376,46 +712,45 @@ public class JsonRpcServer {
         return obj;
     }
 
+    /**
+     * Return a range of an attachment, so large attachments can be read in chunks
+     * without holding the whole content in memory.
+     */
+    private JsonObject handleGetAttachmentChunk(JsonObject params) {
+        if (executionRepository == null || attachmentRepository == null)
+            throw new IllegalStateException("Execution or attachment repository not available");
+        UUID executionId     = UUID.fromString(params.get("executionId").getAsString());
+        UUID executionNodeId = UUID.fromString(params.get("executionNodeId").getAsString());
+        UUID attachmentId    = UUID.fromString(params.get("attachmentId").getAsString());
+        long offset = params.has("offset") ? params.get("offset").getAsLong() : 0;
+        int length  = params.has("length") ? params.get("length").getAsInt() : DEFAULT_ATTACHMENT_CHUNK;
+        if (offset < 0 || length <= 0)
+            throw new IllegalArgumentException("Invalid attachment range: offset " + offset + ", length " + length);
+        AttachmentRepository.AttachmentChunk chunk = attachmentRepository
+            .readAttachmentChunk(executionId, executionNodeId, attachmentId, offset, Math.min(length, MAX_ATTACHMENT_CHUNK))
+            .orElseThrow(() -> new IllegalArgumentException("Attachment not found: " + attachmentId));
+        JsonObject obj = new JsonObject();
+        obj.addProperty("attachmentId",    chunk.info().attachmentID().toString());
+        obj.addProperty("contentType",     chunk.info().contentType());
+        obj.addProperty("size",            chunk.info().size());
+        obj.addProperty("offset",          chunk.offset());
+        obj.addProperty("length",          chunk.bytes().length);
+        obj.addProperty("eof",             chunk.isLast());
+        obj.addProperty("data",            Base64.getEncoder().encodeToString(chunk.bytes()));
+        return obj;
+    }
+
     private JsonObject handleExec(JsonObject params) {
         if (execHandler == null) {
             throw new IllegalStateException("exec handler not configured");
         }
         boolean detach = params.has("detach") && params.get("detach").getAsBoolean();
-        String profileName;
-        List<String> suites;
-        if (params.has("rerun") && !params.get("rerun").isJsonNull()) {
-            if (executionRepository == null)
-                throw new IllegalStateException("Execution repository not available");
-            UUID rerunId = UUID.fromString(params.get("rerun").getAsString());
-            TestExecution sourceEx = executionRepository.getExecution(rerunId)
-                .orElseThrow(() -> new IllegalArgumentException("Execution not found: " + rerunId));
-            profileName = sourceEx.profile();
-            TestPlan sourcePlan = repository.getPlan(sourceEx.planID())
-                .orElseThrow(() -> new IllegalArgumentException("Plan not found: " + sourceEx.planID()));
-            suites = sourcePlan.suites() != null && !sourcePlan.suites().isBlank()
-                ? List.of(sourcePlan.suites().split(","))
-                : List.of();
-        } else {
-            profileName = params.has("profile") && !params.get("profile").isJsonNull()
-                ? params.get("profile").getAsString()
-                : null;
-            suites = params.has("suites") && params.get("suites").isJsonArray()
-                ? params.getAsJsonArray("suites").asList().stream()
-                    .map(JsonElement::getAsString).toList()
-                : List.of();
-        }
+        // the repositories are locked before and after the execution, but not while it runs
+        Function<BiConsumer<UUID, UUID>, TestExecution> run = withRepositories(() -> execRun(params));
 
         if (!detach) {
-            TestExecution ex = execHandler.exec(null, profileName, suites);
-            JsonObject result = new JsonObject();
-            result.addProperty("executionId", ex.executionID().toString());
-            result.addProperty("planId", ex.planID().toString());
-            if (ex.profile() != null) result.addProperty("profile", ex.profile());
-            if (ex.executionRootNodeID() != null && executionRepository != null) {
-                executionRepository.getExecutionNodeResult(ex.executionRootNodeID())
-                    .ifPresent(r -> result.addProperty("result", r.name()));
-            }
-            return result;
+            TestExecution ex = run.apply(null);
+            return withRepositories(() -> execResult(ex));
         }
 
         // Detach mode: return executionId and planId as soon as the record is created
@@ -426,11 +761,11 @@ public class JsonRpcServer {
 
         Thread thread = new Thread(() -> {
             try {
-                execHandler.exec((id, planId) -> {
+                run.apply((id, planId) -> {
                     idRef.set(id);
                     planIdRef.set(planId);
                     latch.countDown();
-                }, profileName, suites);
+                });
             } catch (Throwable t) {
                 errorRef.set(t);
                 latch.countDown();
@@ -455,6 +790,70 @@ public class JsonRpcServer {
         return result;
     }
 
+    /**
+     * The execution requested by the parameters, as a function of the callback invoked once
+     * the execution is created
+     */
+    private Function<BiConsumer<UUID, UUID>, TestExecution> execRun(JsonObject params) {
+        String profileName;
+        List<String> suites;
+        Function<BiConsumer<UUID, UUID>, TestExecution> run = null;
+        if (params.has("rerunFailed") && !params.get("rerunFailed").isJsonNull()) {
+            if (executionRepository == null)
+                throw new IllegalStateException("Execution repository not available");
+            UUID rerunId = UUID.fromString(params.get("rerunFailed").getAsString());
+            TestExecution sourceEx = executionRepository.getExecution(rerunId)
+                .orElseThrow(() -> new IllegalArgumentException("Execution not found: " + rerunId));
+            profileName = sourceEx.profile();
+            suites = List.of();
+            run = onCreated -> execHandler.rerunFailed(onCreated, rerunId, sourceEx.profile());
+        } else if (params.has("rerun") && !params.get("rerun").isJsonNull()) {
+            if (executionRepository == null)
+                throw new IllegalStateException("Execution repository not available");
+            UUID rerunId = UUID.fromString(params.get("rerun").getAsString());
+            TestExecution sourceEx = executionRepository.getExecution(rerunId)
+                .orElseThrow(() -> new IllegalArgumentException("Execution not found: " + rerunId));
+            profileName = sourceEx.profile();
+            TestPlan sourcePlan = repository.getPlan(sourceEx.planID())
+                .orElseThrow(() -> new IllegalArgumentException("Plan not found: " + sourceEx.planID()));
+            suites = sourcePlan.suites() != null && !sourcePlan.suites().isBlank()
+                ? List.of(sourcePlan.suites().split(","))
+                : List.of();
+        } else {
+            profileName = params.has("profile") && !params.get("profile").isJsonNull()
+                ? params.get("profile").getAsString()
+                : null;
+            suites = params.has("suites") && params.get("suites").isJsonArray()
+                ? params.getAsJsonArray("suites").asList().stream()
+                    .map(JsonElement::getAsString).toList()
+                : List.of();
+        }
+        if (run == null) {
+            run = onCreated -> execHandler.exec(onCreated, profileName, suites);
+        }
+        return run;
+    }
+
+    private JsonObject execResult(TestExecution ex) {
+        JsonObject result = new JsonObject();
+        result.addProperty("executionId", ex.executionID().toString());
+        result.addProperty("planId", ex.planID().toString());
+        if (ex.profile() != null) result.addProperty("profile", ex.profile());
+        if (ex.executionRootNodeID() != null && executionRepository != null) {
+            executionRepository.getExecutionNodeResult(ex.executionRootNodeID())
+                .ifPresent(r -> result.addProperty("result", r.name()));
+        }
+        if (ex.rerunOf() != null && executionRepository != null) {
+            EffectiveResult effective = EffectiveResult.of(executionRepository, ex.executionID());
+            result.addProperty("rerunOf", ex.rerunOf().toString());
+            result.addProperty("effectiveResult", effective.result().name());
+            result.addProperty("effectivePassedCount", effective.passedCount());
+            result.addProperty("effectiveErrorCount", effective.errorCount());
+            result.addProperty("effectiveFailedCount", effective.failedCount());
+        }
+        return result;
+    }
+
     private JsonArray handleContributors() {
         if (contributorsProvider == null)
             throw new IllegalStateException("Contributors provider not configured");
@@ -470,114 +869,123 @@ public class JsonRpcServer {
         return result;
     }
 
-    private void handleDeleteExecution(JsonObject params) {
+    // Deletions run in the background; the response describes the queued task,
+    // whose progress can be polled with cleanup/status
+
+    private JsonObject handleDeleteExecution(JsonObject params) {
         if (executionRepository == null)
             throw new IllegalStateException("Execution repository not available");
         UUID executionId = UUID.fromString(params.get("executionId").getAsString());
-        if (attachmentRepository != null) {
-            attachmentRepository.deleteAttachments(executionId);
-        }
-        executionRepository.deleteExecution(executionId);
+        return progressToJson(cleaner.deleteExecution(executionId).progress());
     }
 
-    private void handleDeletePlan(JsonObject params) {
+    private JsonObject handleDeletePlan(JsonObject params) {
         UUID planId = UUID.fromString(params.get("planId").getAsString());
-        // Delete file-system attachments before the DB cascades remove the execution records
-        if (executionRepository != null && attachmentRepository != null) {
-            UUID planNodeRoot = repository.getPlan(planId)
-                .orElseThrow(() -> new IllegalArgumentException("Plan not found: " + planId))
-                .planNodeRoot();
-            executionRepository.listExecutions(planId, planNodeRoot, 0, 0)
-                .forEach(ex -> attachmentRepository.deleteAttachments(ex.executionID()));
-        }
-        // Deleting the plan cascades: executions, execution_nodes, attachment records, plan_nodes
-        repository.deletePlan(planId);
-    }
-
-    private void handleDeleteUnexecutedPlans() {
-        for (TestPlan plan : repository.listPlans()) {
-            boolean hasExecutions = executionRepository != null &&
-                !executionRepository.listExecutions(plan.planID(), plan.planNodeRoot(), 0, 1).isEmpty();
-            if (!hasExecutions) {
-                if (attachmentRepository != null) {
-                    // no executions means no attachments, but call for safety
-                    attachmentRepository.deleteAttachments(plan.planID());
-                }
-                repository.deletePlan(plan.planID());
-            }
-        }
+        if (executionRepository != null && attachmentRepository != null && repository.getPlan(planId).isEmpty())
+            throw new IllegalArgumentException("Plan not found: " + planId);
+        return progressToJson(cleaner.deletePlan(planId).progress());
+    }
+
+    private JsonObject handleDeleteUnexecutedPlans() {
+        return progressToJson(cleaner.deleteUnexecutedPlans().progress());
+    }
+
+    private JsonObject handleCleanupStatus(JsonObject params) {
+        UUID taskId = UUID.fromString(params.get("taskId").getAsString());
+        return cleaner.task(taskId)
+            .map(task -> progressToJson(task.progress()))
+            .orElseThrow(() -> new IllegalArgumentException("Cleanup task not found: " + taskId));
     }
 
     private void handleRefresh() {
         closeRepository();
         repository = factory.open();
+        cleaner = newCleaner();
         log.info("OpenBBT serve: repository refreshed");
     }
 
     // --- Helpers ---
 
-    private JsonObject nodeToJson(TestPlanNode node) {
-        JsonObject obj = new JsonObject();
-        obj.addProperty("nodeId", node.nodeID().toString());
-        obj.add("nodeType", node.nodeType() != null ? new JsonPrimitive(node.nodeType().name()) : JsonNull.INSTANCE);
-        obj.addProperty("display", node.toString());
-        obj.add("name", str(node.name()));
-        obj.add("identifier", str(node.identifier()));
-        obj.add("source", str(node.source()));
-        obj.add("keyword", str(node.keyword()));
-        obj.add("language", str(node.language()));
-        obj.add("validationStatus", node.validationStatus() != null ? new JsonPrimitive(node.validationStatus().name()) : JsonNull.INSTANCE);
-        obj.add("validationMessage", str(node.validationMessage()));
-        obj.addProperty("hasIssues", node.hasIssues());
-        obj.add("testCaseCount", node.testCaseCount() != null ? new JsonPrimitive(node.testCaseCount()) : JsonNull.INSTANCE);
-
-        JsonArray tags = new JsonArray();
-        if (node.tags() != null) node.tags().stream().sorted().forEach(tags::add);
-        obj.add("tags", tags);
-
-        JsonObject props = new JsonObject();
-        if (node.properties() != null) node.properties().forEach((k, v) -> props.addProperty(k, v));
-        obj.add("properties", props);
-
-        obj.addProperty("childCount", repository.countNodeChildren(node.nodeID()));
+    private void writeNode(JsonWriter json, TestPlanNode node, int childCount) throws IOException {
+        json.beginObject();
+        json.name("nodeId").value(node.nodeID().toString());
+        json.name("nodeType").value(node.nodeType() != null ? node.nodeType().name() : null);
+        json.name("display").value(node.toString());
+        json.name("name").value(node.name());
+        json.name("identifier").value(node.identifier());
+        json.name("source").value(node.source());
+        json.name("keyword").value(node.keyword());
+        json.name("language").value(node.language());
+        json.name("validationStatus").value(node.validationStatus() != null ? node.validationStatus().name() : null);
+        json.name("validationMessage").value(node.validationMessage());
+        json.name("hasIssues").value(node.hasIssues());
+        json.name("testCaseCount").value(node.testCaseCount());
 
+        json.name("tags").beginArray();
+        if (node.tags() != null) {
+            for (String tag : node.tags().stream().sorted().toList()) json.value(tag);
+        }
+        json.endArray();
+
+        json.name("properties").beginObject();
+        if (node.properties() != null) {
+            for (var property : node.properties().entrySet()) json.name(property.getKey()).value(property.getValue());
+        }
+        json.endObject();
+
+        json.name("childCount").value(childCount);
+
+        json.name("document");
         if (node.document() != null) {
-            JsonObject doc = new JsonObject();
-            doc.addProperty("mimeType", node.document().mimeType());
-            doc.addProperty("content",  node.document().content());
-            obj.add("document", doc);
+            json.beginObject();
+            json.name("mimeType").value(node.document().mimeType());
+            json.name("content").value(node.document().content());
+            json.endObject();
         } else {
-            obj.add("document", JsonNull.INSTANCE);
+            json.nullValue();
         }
 
+        json.name("dataTable");
         if (node.dataTable() != null) {
-            JsonArray rows = new JsonArray();
+            json.beginArray();
             for (var row : node.dataTable().values()) {
-                JsonArray rowArr = new JsonArray();
-                row.forEach(rowArr::add);
-                rows.add(rowArr);
+                json.beginArray();
+                for (String cell : row) json.value(cell);
+                json.endArray();
             }
-            obj.add("dataTable", rows);
+            json.endArray();
         } else {
-            obj.add("dataTable", JsonNull.INSTANCE);
+            json.nullValue();
         }
 
-        return obj;
+        json.endObject();
     }
 
-    private static JsonElement str(String value) {
-        return value != null ? new JsonPrimitive(value) : JsonNull.INSTANCE;
+    /**
+     * The page requested by the {@code offset}, {@code limit} and {@code after} parameters,
+     * {@code max} being accepted as well for the limit
+     */
+    private static Page page(JsonObject params) {
+        int offset = params.has("offset") ? params.get("offset").getAsInt() : 0;
+        int limit = params.has("limit") ? params.get("limit").getAsInt()
+            : params.has("max") ? params.get("max").getAsInt() : 0;
+        UUID after = params.has("after") && !params.get("after").isJsonNull()
+            ? UUID.fromString(params.get("after").getAsString()) : null;
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid page offset: " + offset);
+        }
+        return new Page(after, offset, limit);
     }
 
-    private String buildSuccess(JsonElement id, JsonElement result) {
+    private JsonObject buildSuccess(JsonElement id, JsonElement result) {
         JsonObject resp = new JsonObject();
         resp.addProperty("jsonrpc", "2.0");
         if (id != null) resp.add("id", id);
         resp.add("result", result);
-        return resp.toString();
+        return resp;
     }
 
-    private String buildError(JsonElement id, int code, String message) {
+    private JsonObject buildError(JsonElement id, int code, String message) {
         JsonObject error = new JsonObject();
         error.addProperty("code", code);
         error.addProperty("message", message != null ? message : "Unknown error");
@@ -585,10 +993,33 @@ public class JsonRpcServer {
         resp.addProperty("jsonrpc", "2.0");
         if (id != null) resp.add("id", id);
         resp.add("error", error);
-        return resp.toString();
+        return resp;
+    }
+
+    private RepositoryCleaner newCleaner() {
+        return new RepositoryCleaner(repository, executionRepository, attachmentRepository, progress ->
+            log.debug("Cleanup task '{}': {} of {} items, {} rows deleted",
+                progress.description(), progress.completedItems(), progress.totalItems(), progress.deletedRows())
+        );
+    }
+
+    private JsonObject progressToJson(RepositoryCleaner.Progress progress) {
+        JsonObject obj = new JsonObject();
+        obj.addProperty("taskId", progress.taskID().toString());
+        obj.addProperty("description", progress.description());
+        obj.addProperty("state", progress.state().name());
+        obj.addProperty("completedItems", progress.completedItems());
+        obj.addProperty("totalItems", progress.totalItems());
+        obj.addProperty("deletedRows", progress.deletedRows());
+        obj.add("error", str(progress.error()));
+        return obj;
     }
 
     private void closeRepository() {
+        // pending deletions must finish before their repositories are closed
+        if (cleaner != null) {
+            cleaner.close();
+        }
         if (repository instanceof AutoCloseable c) {
             try { c.close(); } catch (Exception ignored) {}
         }
@@ -0,0 +1,174 @@
+package org.myjtools.openbbt.jsonrpc.serve;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads JSON-RPC messages framed with a Content-Length header.
+ * <p>
+ * The input is read through a single buffer. Header lines are scanned in place, without
+ * building strings, and the body is parsed by a streaming JSON reader directly from the
+ * buffer, without copying it into an intermediate array first.
+ */
+final class MessageReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_LINE = 256;
+    private static final long END_OF_INPUT = -2;
+    private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] line = new byte[MAX_HEADER_LINE];
+    private final Body body = new Body();
+    private int position;
+    private int limit;
+
+    MessageReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Read the next message, or return {@code null} if the input ends before it.
+     * A message that cannot be parsed is skipped entirely before the error is thrown,
+     * so the next message can still be read.
+     */
+    JsonElement read() throws IOException {
+        long contentLength = readHeader();
+        if (contentLength == END_OF_INPUT) return null;
+        if (contentLength < 0) throw new IOException("Missing Content-Length header");
+        body.reset(contentLength);
+        try {
+            return JsonParser.parseReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        } finally {
+            body.skipRemaining();
+        }
+    }
+
+    private long readHeader() throws IOException {
+        long contentLength = -1;
+        int headerLines = 0;
+        int lineLength = 0;
+        while (true) {
+            int next = nextByte();
+            if (next < 0) return END_OF_INPUT;
+            if (next != '\n') {
+                // only the beginning of a line is relevant, longer lines are truncated
+                if (lineLength < line.length) line[lineLength++] = (byte) next;
+                continue;
+            }
+            int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+            lineLength = 0;
+            if (length == 0) {
+                // the empty line ends the header, blank lines before it are ignored
+                if (headerLines > 0) return contentLength;
+                continue;
+            }
+            headerLines++;
+            if (startsWithIgnoreCase(length, CONTENT_LENGTH)) {
+                contentLength = parseLength(CONTENT_LENGTH.length, length);
+            }
+        }
+    }
+
+    private boolean startsWithIgnoreCase(int length, byte[] prefix) {
+        if (length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (Character.toLowerCase(line[i]) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private long parseLength(int from, int to) throws IOException {
+        while (from < to && isBlank(line[from])) from++;
+        while (to > from && isBlank(line[to - 1])) to--;
+        if (from == to || to - from > 18) throw new IOException("Invalid Content-Length header");
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            byte c = line[i];
+            if (c < '0' || c > '9') throw new IOException("Invalid Content-Length header");
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isBlank(byte c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private int nextByte() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) return false;
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+
+    /**
+     * The body of the current message, served from the buffer and never beyond its length
+     */
+    private final class Body extends InputStream {
+
+        private long remaining;
+
+        void reset(long length) {
+            remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0 || (position == limit && !fill())) return -1;
+            remaining--;
+            return buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (length == 0) return 0;
+            if (remaining == 0) return -1;
+            int max = (int) Math.min(length, remaining);
+            if (position == limit) {
+                // large reads go straight to the target when the buffer is empty
+                if (max >= buffer.length) {
+                    int read = in.read(target, offset, max);
+                    if (read > 0) remaining -= read;
+                    return read;
+                }
+                if (!fill()) return -1;
+            }
+            int count = Math.min(max, limit - position);
+            System.arraycopy(buffer, position, target, offset, count);
+            position += count;
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(limit - position, remaining);
+        }
+
+        void skipRemaining() throws IOException {
+            while (remaining > 0) {
+                if (position == limit && !fill()) {
+                    remaining = 0;
+                    return;
+                }
+                int count = (int) Math.min(limit - position, remaining);
+                position += count;
+                remaining -= count;
+            }
+        }
+    }
+
+}
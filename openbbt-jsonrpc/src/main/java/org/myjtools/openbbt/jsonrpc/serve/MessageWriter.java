@@ -0,0 +1,149 @@
+package org.myjtools.openbbt.jsonrpc.serve;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.Strictness;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes JSON-RPC messages framed with a Content-Length header.
+ * <p>
+ * Each message is first serialized into a buffer of its own, taken from a pool of reused
+ * buffers, so the length of the body is known without building an intermediate string and
+ * several messages can be serialized at the same time. Then it is written along with its
+ * header through a buffered sink with a single flush. Messages written by several threads
+ * are serialized, one complete message at a time.
+ */
+final class MessageWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // a buffer grown beyond this size by a large message is not kept for the next ones
+    private static final int RETAINED_CAPACITY = 1024 * 1024;
+    private static final int POOL_SIZE = 16;
+    private static final byte[] CONTENT_LENGTH = "Content-Length: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEADER_END = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final TypeAdapter<JsonElement> JSON = new Gson().getAdapter(JsonElement.class);
+
+
+    /**
+     * Content written with a streaming JSON writer
+     */
+    @FunctionalInterface
+    interface Content {
+        void writeTo(JsonWriter json) throws IOException;
+    }
+
+
+    /**
+     * A message serialized and ready to be written
+     */
+    static final class Buffer {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+        private final Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8);
+
+        private void serialize(Content content) throws IOException {
+            bytes.reset();
+            JsonWriter json = new JsonWriter(writer);
+            json.setStrictness(Strictness.LENIENT);
+            content.writeTo(json);
+            json.flush();
+        }
+    }
+
+
+    private final OutputStream out;
+    private final byte[] digits = new byte[20];
+    private final BlockingQueue<Buffer> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    MessageWriter(OutputStream out) {
+        this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+    }
+
+    /**
+     * Serialize a message written with a streaming JSON writer. If the content fails, the
+     * buffer holding the partially written message is discarded instead of reused.
+     */
+    Buffer serialize(Content content) throws IOException {
+        Buffer buffer = pool.poll();
+        if (buffer == null) {
+            buffer = new Buffer();
+        }
+        buffer.serialize(content);
+        return buffer;
+    }
+
+    /**
+     * Serialize a message already built as a JSON tree
+     */
+    Buffer serialize(JsonElement message) {
+        try {
+            return serialize(json -> JSON.write(json, message));
+        } catch (IOException e) {
+            // the buffer is in memory, so this is not expected
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Serialize a successful response, whose result is streamed straight into the buffer
+     */
+    Buffer serializeResult(JsonElement id, Content result) throws IOException {
+        return serialize(json -> {
+            json.beginObject();
+            json.name("jsonrpc").value("2.0");
+            if (id != null) {
+                json.name("id");
+                JSON.write(json, id);
+            }
+            json.name("result");
+            result.writeTo(json);
+            json.endObject();
+        });
+    }
+
+    void write(Buffer message) throws IOException {
+        try {
+            synchronized (this) {
+                out.write(CONTENT_LENGTH);
+                writeNumber(message.bytes.size());
+                out.write(HEADER_END);
+                message.bytes.writeTo(out);
+                out.flush();
+            }
+        } finally {
+            release(message);
+        }
+    }
+
+    void write(JsonElement message) throws IOException {
+        write(serialize(message));
+    }
+
+    private void writeNumber(int value) throws IOException {
+        int start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        out.write(digits, start, digits.length - start);
+    }
+
+    private void release(Buffer buffer) {
+        if (buffer.bytes.size() <= RETAINED_CAPACITY) {
+            pool.offer(buffer);
+        }
+    }
+
+}
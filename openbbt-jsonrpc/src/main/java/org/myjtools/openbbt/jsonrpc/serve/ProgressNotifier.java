@@ -0,0 +1,169 @@
+package org.myjtools.openbbt.jsonrpc.serve;
+
+import com.google.gson.stream.JsonWriter;
+import org.myjtools.openbbt.core.contributors.EventObserver;
+import org.myjtools.openbbt.core.events.Event;
+import org.myjtools.openbbt.core.events.ExecutionFinished;
+import org.myjtools.openbbt.core.events.ExecutionNodeFinished;
+import org.myjtools.openbbt.core.events.ExecutionNodeStarted;
+import org.myjtools.openbbt.core.events.ExecutionStarted;
+import org.myjtools.openbbt.core.util.Log;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Forwards the progress of the executions published to the event bus as
+ * {@code executions/progress} notifications.
+ * <p>
+ * Events are not sent one by one; they are coalesced and sent together once per interval.
+ * Only the latest state of each execution and execution node is kept, so a node that starts
+ * and finishes within the same interval is notified once, as finished. Intervals without
+ * events send nothing.
+ */
+final class ProgressNotifier implements EventObserver, AutoCloseable {
+
+    static final String METHOD = "executions/progress";
+
+    private static final Log log = Log.of();
+
+    private final MessageWriter writer;
+    private final Consumer<MessageWriter.Buffer> sink;
+    private final ScheduledExecutorService timer;
+    private final Object lock = new Object();
+    private Map<UUID, Event> executions = new LinkedHashMap<>();
+    private Map<UUID, Event> nodes = new LinkedHashMap<>();
+
+    ProgressNotifier(MessageWriter writer, Consumer<MessageWriter.Buffer> sink, Duration interval) {
+        this.writer = writer;
+        this.sink = sink;
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("openbbt-jsonrpc-progress").daemon().factory()
+        );
+        long millis = interval.toMillis();
+        timer.scheduleAtFixedRate(this::flush, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        synchronized (lock) {
+            switch (event) {
+                case ExecutionStarted started -> executions.put(started.executionID(), started);
+                case ExecutionFinished finished -> executions.put(finished.executionID(), finished);
+                case ExecutionNodeStarted started -> nodes.put(started.executionNodeID(), started);
+                case ExecutionNodeFinished finished -> nodes.put(finished.executionNodeID(), finished);
+                default -> { }
+            }
+        }
+    }
+
+    /**
+     * Send the changes received since the previous notification, if any. Flushes do not
+     * overlap, so notifications are sent in the same order as the events.
+     */
+    synchronized void flush() {
+        Collection<Event> executionChanges;
+        Collection<Event> nodeChanges;
+        synchronized (lock) {
+            if (executions.isEmpty() && nodes.isEmpty()) {
+                return;
+            }
+            executionChanges = executions.values();
+            nodeChanges = nodes.values();
+            executions = new LinkedHashMap<>();
+            nodes = new LinkedHashMap<>();
+        }
+        try {
+            sink.accept(writer.serialize(json -> writeNotification(json, executionChanges, nodeChanges)));
+        } catch (Exception e) {
+            // a scheduled task that throws is not run again
+            log.error(e, "Error notifying the progress of the executions");
+        }
+    }
+
+    /**
+     * Stop the periodic notifications and send the pending changes
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        flush();
+    }
+
+    private static void writeNotification(JsonWriter json, Collection<Event> executions, Collection<Event> nodes)
+    throws IOException {
+        json.beginObject();
+        json.name("jsonrpc").value("2.0");
+        json.name("method").value(METHOD);
+        json.name("params").beginObject();
+        json.name("executions").beginArray();
+        for (Event event : executions) {
+            json.beginObject();
+            switch (event) {
+                case ExecutionStarted started -> {
+                    writeExecution(json, started.executionID(), started.planID(), started.profile());
+                    json.name("state").value("RUNNING");
+                    writeInstant(json, "startedAt", started.instant());
+                }
+                case ExecutionFinished finished -> {
+                    writeExecution(json, finished.executionID(), finished.planID(), finished.profile());
+                    json.name("state").value("FINISHED");
+                    json.name("result").value(finished.result() == null ? null : finished.result().name());
+                    writeInstant(json, "finishedAt", finished.instant());
+                }
+                default -> { }
+            }
+            json.endObject();
+        }
+        json.endArray();
+        json.name("nodes").beginArray();
+        for (Event event : nodes) {
+            json.beginObject();
+            switch (event) {
+                case ExecutionNodeStarted started -> {
+                    writeNode(json, started.executionID(), started.executionNodeID(), started.testPlanNodeID());
+                    json.name("state").value("RUNNING");
+                    writeInstant(json, "startedAt", started.instant());
+                }
+                case ExecutionNodeFinished finished -> {
+                    writeNode(json, finished.executionID(), finished.executionNodeID(), finished.testPlanNodeID());
+                    json.name("state").value("FINISHED");
+                    json.name("result").value(finished.result() == null ? null : finished.result().name());
+                    writeInstant(json, "finishedAt", finished.instant());
+                }
+                default -> { }
+            }
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        json.endObject();
+    }
+
+    private static void writeExecution(JsonWriter json, UUID executionID, UUID planID, String profile)
+    throws IOException {
+        json.name("executionId").value(executionID.toString());
+        json.name("planId").value(planID == null ? null : planID.toString());
+        json.name("profile").value(profile);
+    }
+
+    private static void writeNode(JsonWriter json, UUID executionID, UUID executionNodeID, UUID planNodeID)
+    throws IOException {
+        json.name("executionId").value(executionID.toString());
+        json.name("executionNodeId").value(executionNodeID.toString());
+        json.name("planNodeId").value(planNodeID == null ? null : planNodeID.toString());
+    }
+
+    private static void writeInstant(JsonWriter json, String name, Instant instant) throws IOException {
+        json.name(name).value(instant == null ? null : instant.toString());
+    }
+
+}
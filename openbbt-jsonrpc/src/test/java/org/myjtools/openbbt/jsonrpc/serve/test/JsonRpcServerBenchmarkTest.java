@@ -0,0 +1,134 @@
+package org.myjtools.openbbt.jsonrpc.serve.test;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.myjtools.openbbt.core.testplan.TestPlan;
+import org.myjtools.openbbt.core.util.Log;
+import org.myjtools.openbbt.jsonrpc.serve.JsonRpcServer;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the throughput of the server, in messages per second, sending requests and
+ * reading responses through a pipe, and checks that it stays above a conservative floor.
+ * Run with {@code -Dopenbbt.benchmark=true}; the timings are logged at info level.
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "openbbt.benchmark", matches = "true")
+class JsonRpcServerBenchmarkTest {
+
+    private static final Log log = Log.of();
+
+    private static final int WARMUP_MESSAGES = 20_000;
+    private static final int MESSAGES = 200_000;
+    private static final int PLANS = 10;
+    private static final long MIN_MESSAGES_PER_SECOND = 5_000;
+
+    private final List<TestPlan> plans = IntStream.range(0, PLANS)
+        .mapToObj(i -> new TestPlan(UUID.randomUUID(), UUID.randomUUID(), Instant.EPOCH, "h1", "h2", UUID.randomUUID(), 3, null))
+        .toList();
+
+
+    @Test
+    void messagesPerSecondOverPipe() throws Exception {
+        report("warmup", WARMUP_MESSAGES, exchange(WARMUP_MESSAGES));
+        long throughput = report("browse/plans", MESSAGES, exchange(MESSAGES));
+        assertThat(throughput).isGreaterThanOrEqualTo(MIN_MESSAGES_PER_SECOND);
+    }
+
+
+    /**
+     * Send the given number of requests followed by a shutdown, and return the elapsed
+     * nanoseconds until every response has been read
+     */
+    private long exchange(int messages) throws Exception {
+        Pipe requests = Pipe.open();
+        Pipe responses = Pipe.open();
+        JsonRpcServer server = new JsonRpcServer(
+            Channels.newInputStream(requests.source()),
+            Channels.newOutputStream(responses.sink()),
+            () -> new JsonRpcServerTest.StubPlanRepo() {
+                @Override public List<TestPlan> listPlans() { return plans; }
+            }
+        );
+        Thread serverThread = Thread.ofPlatform().name("benchmark-server").start(server::run);
+        long start = System.nanoTime();
+        Thread writerThread = Thread.ofPlatform().name("benchmark-writer").start(() -> {
+            try (OutputStream out = new BufferedOutputStream(Channels.newOutputStream(requests.sink()), 64 * 1024)) {
+                for (int id = 1; id <= messages; id++) {
+                    out.write(frame("{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"browse/plans\",\"params\":{}}"));
+                }
+                out.write(frame("{\"jsonrpc\":\"2.0\",\"id\":0,\"method\":\"shutdown\",\"params\":{}}"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        int received = 0;
+        try (InputStream in = new BufferedInputStream(Channels.newInputStream(responses.source()), 64 * 1024)) {
+            while (received <= messages && skipMessage(in)) {
+                received++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        writerThread.join();
+        serverThread.join();
+        assertThat(received).isEqualTo(messages + 1);
+        return elapsed;
+    }
+
+
+    private static byte[] frame(String json) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        byte[] header = ("Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] result = new byte[header.length + body.length];
+        System.arraycopy(header, 0, result, 0, header.length);
+        System.arraycopy(body, 0, result, header.length, body.length);
+        return result;
+    }
+
+
+    /**
+     * Read the header of the next response and skip its body
+     */
+    private static boolean skipMessage(InputStream in) throws IOException {
+        int contentLength = -1;
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\r') continue;
+            if (c != '\n') {
+                line.append((char) c);
+                continue;
+            }
+            if (line.isEmpty()) break;
+            if (line.toString().toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(line.substring(15).trim());
+            }
+            line.setLength(0);
+        }
+        if (contentLength < 0) return false;
+        in.skipNBytes(contentLength);
+        return true;
+    }
+
+
+    /**
+     * Log the elapsed time of an exchange and return its throughput, in messages per second
+     */
+    private static long report(String label, int messages, long elapsedNanos) {
+        long throughput = messages * 1_000_000_000L / Math.max(elapsedNanos, 1);
+        log.info("{}: {} ms ({} messages/s)", label, elapsedNanos / 1_000_000, throughput);
+        return throughput;
+    }
+
+}
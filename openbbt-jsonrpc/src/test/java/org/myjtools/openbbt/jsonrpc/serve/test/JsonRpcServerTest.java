@@ -3,6 +3,7 @@ package org.myjtools.openbbt.jsonrpc.serve.test;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import org.junit.jupiter.api.Test;
+import org.myjtools.openbbt.core.events.*;
 import org.myjtools.openbbt.core.execution.ExecutionResult;
 import org.myjtools.openbbt.core.execution.TestExecution;
 import org.myjtools.openbbt.core.execution.TestExecutionNode;
@@ -12,8 +13,13 @@ import org.myjtools.openbbt.jsonrpc.serve.JsonRpcServer;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -76,6 +82,13 @@ class JsonRpcServerTest {
         return list;
     }
 
+    private static JsonObject response(List<JsonObject> responses, int id) {
+        return responses.stream()
+            .filter(r -> r.has("id") && r.get("id").getAsInt() == id)
+            .findFirst()
+            .orElseThrow(() -> new AssertionError("No response for request " + id));
+    }
+
     private List<JsonObject> run(JsonRpcServer.RepositoryFactory factory, String... messages) {
         byte[][] frames = new byte[messages.length][];
         for (int i = 0; i < messages.length; i++) frames[i] = frame(messages[i]);
@@ -189,7 +202,16 @@ class JsonRpcServerTest {
         };
     }
 
-    private JsonRpcServer server(JsonRpcServer.RepositoryFactory factory, JsonRpcServer.ExecHandler exec,
+    /** Exec handler of the tests that never re-run failed test cases, so it can be a lambda */
+    @FunctionalInterface
+    private interface PlanExec extends JsonRpcServer.ExecHandler {
+        @Override
+        default TestExecution rerunFailed(BiConsumer<UUID, UUID> onCreated, UUID executionID, String profile) {
+            throw new AssertionError("re-run not expected");
+        }
+    }
+
+    private JsonRpcServer server(JsonRpcServer.RepositoryFactory factory, PlanExec exec,
                                  JsonRpcServer.PlanHandler plan, JsonRpcServer.ContributorsProvider contrib,
                                  String... messages) {
         byte[][] frames = new byte[messages.length][];
@@ -197,7 +219,7 @@ class JsonRpcServerTest {
         return new JsonRpcServer(new ByteArrayInputStream(concat(frames)), new ByteArrayOutputStream(), factory, exec, plan, contrib);
     }
 
-    private List<JsonObject> runWith(JsonRpcServer.RepositoryFactory factory, JsonRpcServer.ExecHandler exec,
+    private List<JsonObject> runWith(JsonRpcServer.RepositoryFactory factory, PlanExec exec,
                                      JsonRpcServer.PlanHandler plan, JsonRpcServer.ContributorsProvider contrib,
                                      String... messages) {
         byte[][] frames = new byte[messages.length][];
@@ -347,6 +369,38 @@ class JsonRpcServerTest {
         assertThat(arr.get(0).getAsJsonObject().get("nodeId").getAsString()).isEqualTo(childId.toString());
     }
 
+    @Test
+    void browseChildrenReturnsTheRequestedPageWithBulkChildCounts() {
+        UUID parentId = UUID.randomUUID();
+        List<UUID> childIds = Stream.generate(UUID::randomUUID).limit(5).toList();
+
+        List<JsonObject> responses = run(
+            () -> new StubPlanRepo() {
+                @Override public Stream<UUID> getNodeChildren(UUID id) {
+                    return id.equals(parentId) ? childIds.stream() : Stream.empty();
+                }
+                @Override public Optional<TestPlanNode> getNodeData(UUID id) {
+                    return childIds.contains(id) ? Optional.of(node(id)) : Optional.empty();
+                }
+                @Override public int countNodeChildren(UUID id) {
+                    throw new AssertionError("children should be counted in bulk");
+                }
+                @Override public Map<UUID, Integer> countNodeChildren(Collection<UUID> ids) {
+                    return Map.of(childIds.get(3), 7);
+                }
+            },
+            req(1, "browse/children", "{\"nodeId\":\"" + parentId + "\",\"after\":\"" + childIds.get(0) + "\",\"offset\":1,\"limit\":2}"),
+            req(99, "shutdown", "{}")
+        );
+
+        var arr = response(responses, 1).getAsJsonArray("result");
+        assertThat(arr).hasSize(2);
+        assertThat(arr.get(0).getAsJsonObject().get("nodeId").getAsString()).isEqualTo(childIds.get(2).toString());
+        assertThat(arr.get(0).getAsJsonObject().get("childCount").getAsInt()).isZero();
+        assertThat(arr.get(1).getAsJsonObject().get("nodeId").getAsString()).isEqualTo(childIds.get(3).toString());
+        assertThat(arr.get(1).getAsJsonObject().get("childCount").getAsInt()).isEqualTo(7);
+    }
+
     @Test
     void plansListReturnsMatchingPlans() {
         UUID planId = UUID.randomUUID(), rootId = UUID.randomUUID(), projectId = UUID.randomUUID();
@@ -380,7 +434,10 @@ class JsonRpcServerTest {
                     return List.of(p);
                 }
                 @Override public Optional<TestPlanNode> getNodeData(UUID id) {
-                    return id.equals(rootId) ? Optional.of(root) : Optional.empty();
+                    throw new AssertionError("plan roots should be fetched in bulk");
+                }
+                @Override public Map<UUID, TestPlanNode> getNodeData(Collection<UUID> ids) {
+                    return ids.contains(rootId) ? Map.of(rootId, root) : Map.of();
                 }
             },
             req(1, "plans/list", "{\"organization\":\"org\",\"project\":\"proj\",\"withExecutions\":true}"),
@@ -576,7 +633,10 @@ class JsonRpcServerTest {
                 return List.of(ex);
             }
             @Override public Optional<ExecutionResult> getExecutionNodeResult(UUID id) {
-                return id.equals(executionRootNodeId) ? Optional.of(ExecutionResult.FAILED) : Optional.empty();
+                throw new AssertionError("execution results should be fetched in bulk");
+            }
+            @Override public Map<UUID, ExecutionResult> getExecutionNodeResults(Collection<UUID> ids) {
+                return ids.contains(executionRootNodeId) ? Map.of(executionRootNodeId, ExecutionResult.FAILED) : Map.of();
             }
         };
 
@@ -740,6 +800,7 @@ class JsonRpcServerTest {
         var arr = responses.get(0).getAsJsonArray("result");
         assertThat(arr).hasSize(1);
         assertThat(arr.get(0).getAsJsonObject().get("attachmentId").getAsString()).isEqualTo(attId.toString());
+        assertThat(arr.get(0).getAsJsonObject().get("size").getAsLong()).isEqualTo(1);
     }
 
     @Test
@@ -799,6 +860,55 @@ class JsonRpcServerTest {
             .contains("Attachment not found");
     }
 
+    @Test
+    void executionsGetAttachmentChunkReturnsTheRequestedRange() {
+        UUID execId = UUID.randomUUID(), execNodeId = UUID.randomUUID(), attId = UUID.randomUUID();
+        byte[] data = "0123456789".getBytes(StandardCharsets.UTF_8);
+        AttachmentRepository.Attachment att = new AttachmentRepository.Attachment(attId, data, "text/plain");
+
+        StubAttachRepo attRepo = new StubAttachRepo() {
+            @Override public Optional<Attachment> retrieveAttachment(UUID eid, UUID nid, UUID aid) {
+                return Optional.of(att);
+            }
+        };
+        String ids = "\"executionId\":\"" + execId + "\",\"executionNodeId\":\"" + execNodeId + "\",\"attachmentId\":\"" + attId + "\"";
+
+        List<JsonObject> responses = runWith(
+            withAll(new StubPlanRepo() {}, new StubExecRepo() {}, attRepo),
+            null, null, null,
+            req(1, "executions/attachmentChunk", "{" + ids + ",\"offset\":2,\"length\":5}"),
+            req(2, "executions/attachmentChunk", "{" + ids + ",\"offset\":7,\"length\":5}"),
+            req(99, "shutdown", "{}")
+        );
+
+        var first = response(responses, 1).getAsJsonObject("result");
+        assertThat(first.get("contentType").getAsString()).isEqualTo("text/plain");
+        assertThat(first.get("size").getAsLong()).isEqualTo(10);
+        assertThat(first.get("offset").getAsLong()).isEqualTo(2);
+        assertThat(first.get("length").getAsInt()).isEqualTo(5);
+        assertThat(first.get("eof").getAsBoolean()).isFalse();
+        assertThat(first.get("data").getAsString()).isEqualTo(Base64.getEncoder().encodeToString("23456".getBytes(StandardCharsets.UTF_8)));
+
+        var last = response(responses, 2).getAsJsonObject("result");
+        assertThat(last.get("length").getAsInt()).isEqualTo(3);
+        assertThat(last.get("eof").getAsBoolean()).isTrue();
+        assertThat(last.get("data").getAsString()).isEqualTo(Base64.getEncoder().encodeToString("789".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void executionsGetAttachmentChunkWithInvalidRangeReturnsError() {
+        List<JsonObject> responses = runWith(
+            withAll(new StubPlanRepo() {}, new StubExecRepo() {}, new StubAttachRepo() {}),
+            null, null, null,
+            req(1, "executions/attachmentChunk",
+                "{\"executionId\":\"" + UUID.randomUUID() + "\",\"executionNodeId\":\"" + UUID.randomUUID() + "\",\"attachmentId\":\"" + UUID.randomUUID() + "\",\"offset\":-1}"),
+            req(99, "shutdown", "{}")
+        );
+
+        assertThat(responses.get(0).getAsJsonObject("error").get("message").getAsString())
+            .contains("Invalid attachment range");
+    }
+
     @Test
     void executionsDeleteRemovesExecution() {
         UUID execId = UUID.randomUUID();
@@ -996,6 +1106,172 @@ class JsonRpcServerTest {
         assertThat(capturedSuites).containsExactly("suite1", "suite2");
     }
 
+    @Test
+    void slowRequestDoesNotBlockLaterRequests() {
+        CountDownLatch plansListed = new CountDownLatch(1);
+
+        List<JsonObject> responses = run(
+            () -> new StubPlanRepo() {
+                @Override public Stream<UUID> getNodeChildren(UUID id) {
+                    try {
+                        // only completes if browse/plans runs while this request is in progress
+                        plansListed.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Stream.empty();
+                }
+                @Override public List<TestPlan> listPlans() {
+                    plansListed.countDown();
+                    return List.of();
+                }
+            },
+            req(1, "browse/children", "{\"nodeId\":\"" + UUID.randomUUID() + "\"}"),
+            req(2, "browse/plans", "{}"),
+            req(99, "shutdown", "{}")
+        );
+
+        assertThat(responses).extracting(r -> r.get("id").getAsInt()).containsExactly(2, 1, 99);
+        assertThat(plansListed.getCount()).isZero();
+    }
+
+    @Test
+    void cancelRequestRespondsWithCancellationError() {
+        UUID parentId = UUID.randomUUID();
+        List<UUID> childIds = Stream.generate(UUID::randomUUID).limit(1200).toList();
+        AtomicInteger batches = new AtomicInteger();
+
+        List<JsonObject> responses = run(
+            () -> new StubPlanRepo() {
+                @Override public Stream<UUID> getNodeChildren(UUID id) {
+                    batches.incrementAndGet();
+                    try {
+                        // the cancellation is received while the first batch is read
+                        Thread.sleep(300);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return childIds.stream();
+                }
+                @Override public Optional<TestPlanNode> getNodeData(UUID id) {
+                    return Optional.of(node(id));
+                }
+            },
+            req(1, "browse/children", "{\"nodeId\":\"" + parentId + "\"}"),
+            "{\"jsonrpc\":\"2.0\",\"method\":\"$/cancelRequest\",\"params\":{\"id\":1}}",
+            req(99, "shutdown", "{}")
+        );
+
+        assertThat(responses).hasSize(2);
+        assertThat(response(responses, 1).getAsJsonObject("error").get("code").getAsInt()).isEqualTo(-32800);
+        assertThat(response(responses, 99).has("result")).isTrue();
+        // the request is not interrupted, but it stops before reading the next batch
+        assertThat(batches.get()).isEqualTo(1);
+    }
+
+    @Test
+    void refreshDoesNotWaitForExecutionsInProgress() {
+        CountDownLatch refreshed = new CountDownLatch(2);
+        TestExecution ex = new TestExecution();
+        ex.executionID(UUID.randomUUID()); ex.planID(UUID.randomUUID()); ex.executedAt(Instant.EPOCH);
+        PlanExec exec = (onCreated, profile, suites) -> {
+            try {
+                // only completes if the refresh runs while the execution is in progress
+                refreshed.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return ex;
+        };
+
+        List<JsonObject> responses = runWith(
+            () -> { refreshed.countDown(); return new StubPlanRepo() {}; },
+            exec, null, null,
+            req(1, "exec", "{}"),
+            req(2, "refresh", "{}"),
+            req(3, "browse/plans", "{}"),
+            req(99, "shutdown", "{}")
+        );
+
+        assertThat(refreshed.getCount()).isZero();
+        assertThat(responses).extracting(r -> r.get("id").getAsInt()).endsWith(1, 99);
+        assertThat(response(responses, 2).has("result")).isTrue();
+        assertThat(response(responses, 3).has("result")).isTrue();
+    }
+
+    @Test
+    void shutdownWaitsForRequestsInProgress() {
+        List<JsonObject> responses = run(
+            () -> new StubPlanRepo() {
+                @Override public List<TestPlan> listPlans() {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return List.of();
+                }
+            },
+            req(1, "browse/plans", "{}"),
+            req(99, "shutdown", "{}")
+        );
+
+        assertThat(responses).extracting(r -> r.get("id").getAsInt()).containsExactly(1, 99);
+        assertThat(responses.get(0).has("result")).isTrue();
+    }
+
+    @Test
+    void executionProgressIsNotifiedCoalescedBeforeShutdownResponse() {
+        UUID execId = UUID.randomUUID(), planId = UUID.randomUUID();
+        UUID finishedNode = UUID.randomUUID(), runningNode = UUID.randomUUID(), planNode = UUID.randomUUID();
+        TestExecution ex = new TestExecution();
+        ex.executionID(execId); ex.planID(planId); ex.executedAt(Instant.EPOCH);
+        EventBus eventBus = new EventBus();
+        PlanExec exec = (onCreated, profile, suites) -> {
+            eventBus.publish(new ExecutionStarted(Instant.EPOCH, execId, planId, "ci"));
+            eventBus.publish(new ExecutionNodeStarted(Instant.EPOCH, execId, finishedNode, planNode));
+            eventBus.publish(new ExecutionNodeFinished(Instant.EPOCH, execId, finishedNode, planNode, ExecutionResult.PASSED));
+            eventBus.publish(new ExecutionNodeStarted(Instant.EPOCH, execId, runningNode, planNode));
+            eventBus.publish(new ExecutionFinished(Instant.EPOCH, execId, planId, "ci", ExecutionResult.FAILED));
+            return ex;
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // the interval is long enough for every event to be sent in the final notification
+        new JsonRpcServer(
+            new ByteArrayInputStream(concat(frame(req(1, "exec", "{}")), frame(req(99, "shutdown", "{}")))),
+            out, () -> new StubPlanRepo() {}, exec
+        ).notifyProgress(eventBus, Duration.ofMinutes(1)).run();
+        List<JsonObject> messages = parseResponses(out.toByteArray());
+
+        List<JsonObject> notifications = messages.stream()
+            .filter(m -> !m.has("id"))
+            .toList();
+        assertThat(notifications).hasSize(1);
+        JsonObject notification = notifications.get(0);
+        assertThat(notification.get("method").getAsString()).isEqualTo("executions/progress");
+        assertThat(messages.indexOf(notification)).isLessThan(messages.indexOf(response(messages, 99)));
+
+        var params = notification.getAsJsonObject("params");
+        var executions = params.getAsJsonArray("executions");
+        assertThat(executions).hasSize(1);
+        var execution = executions.get(0).getAsJsonObject();
+        assertThat(execution.get("executionId").getAsString()).isEqualTo(execId.toString());
+        assertThat(execution.get("state").getAsString()).isEqualTo("FINISHED");
+        assertThat(execution.get("result").getAsString()).isEqualTo("FAILED");
+        assertThat(execution.get("profile").getAsString()).isEqualTo("ci");
+
+        var nodes = params.getAsJsonArray("nodes");
+        assertThat(nodes).hasSize(2);
+        var first = nodes.get(0).getAsJsonObject();
+        assertThat(first.get("executionNodeId").getAsString()).isEqualTo(finishedNode.toString());
+        assertThat(first.get("state").getAsString()).isEqualTo("FINISHED");
+        assertThat(first.get("result").getAsString()).isEqualTo("PASSED");
+        var second = nodes.get(1).getAsJsonObject();
+        assertThat(second.get("executionNodeId").getAsString()).isEqualTo(runningNode.toString());
+        assertThat(second.get("state").getAsString()).isEqualTo("RUNNING");
+        assertThat(second.get("planNodeId").getAsString()).isEqualTo(planNode.toString());
+    }
+
     @Test
     void refreshReopensRepository() {
         List<StubPlanRepo> opened = new ArrayList<>();
@@ -1052,6 +1328,24 @@ class JsonRpcServerTest {
         assertThat(out.size()).isEqualTo(0);
     }
 
+    @Test
+    void framingAcceptsExtraHeadersAndBodiesLargerThanTheBuffer() {
+        String padding = "x".repeat(200_000);
+        byte[] body = req(1, "unknown/method", "{\"padding\":\"" + padding + "\"}").getBytes(StandardCharsets.UTF_8);
+        byte[] header = ("content-length: " + body.length + "\r\nContent-Type: application/vscode-jsonrpc; charset=utf-8\r\n\r\n")
+            .getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonRpcServer(
+            new ByteArrayInputStream(concat(header, body, frame(req(2, "shutdown", "{}")))),
+            out,
+            () -> new StubPlanRepo() {}
+        ).run();
+        List<JsonObject> responses = parseResponses(out.toByteArray());
+        assertThat(responses).hasSize(2);
+        assertThat(response(responses, 1).getAsJsonObject("error").get("code").getAsInt()).isEqualTo(-32601);
+        assertThat(response(responses, 2).has("result")).isTrue();
+    }
+
     @Test
     void nodeToJsonIncludesDocumentWhenPresent() {
         UUID nodeId = UUID.randomUUID();
@@ -1152,12 +1446,65 @@ class JsonRpcServerTest {
                 },
                 execRepo
             ),
-            (onCreated, profile, suites) -> newEx,
+            (PlanExec) (onCreated, profile, suites) -> newEx,
+            null, null
+        ).run();
+
+        List<JsonObject> responses = parseResponses(out.toByteArray());
+        var result = responses.get(0).getAsJsonObject("result");
+        assertThat(result.get("executionId").getAsString()).isEqualTo(newExecId.toString());
+    }
+
+    @Test
+    void execRerunFailedDelegatesToHandlerWithSourceProfile() {
+        UUID originalExecId = UUID.randomUUID(), planId = UUID.randomUUID();
+
+        TestExecution originalEx = new TestExecution();
+        originalEx.executionID(originalExecId);
+        originalEx.planID(planId);
+        originalEx.executedAt(Instant.EPOCH);
+        originalEx.profile("staging");
+
+        UUID newExecId = UUID.randomUUID();
+        TestExecution newEx = new TestExecution();
+        newEx.executionID(newExecId); newEx.planID(planId); newEx.executedAt(Instant.EPOCH);
+        newEx.rerunOf(originalExecId);
+
+        StubExecRepo execRepo = new StubExecRepo() {
+            @Override public Optional<TestExecution> getExecution(UUID id) {
+                return id.equals(originalExecId) ? Optional.of(originalEx) : Optional.empty();
+            }
+        };
+        List<String> rerunCalls = new ArrayList<>();
+        JsonRpcServer.ExecHandler execHandler = new JsonRpcServer.ExecHandler() {
+            @Override
+            public TestExecution exec(BiConsumer<UUID, UUID> onCreated, String profile, List<String> suites) {
+                throw new AssertionError("full execution not expected");
+            }
+            @Override
+            public TestExecution rerunFailed(BiConsumer<UUID, UUID> onCreated, UUID executionID, String profile) {
+                rerunCalls.add(executionID + " " + profile);
+                return newEx;
+            }
+        };
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonRpcServer(
+            new ByteArrayInputStream(concat(
+                frame(req(1, "exec", "{\"rerunFailed\":\"" + originalExecId + "\"}")),
+                frame(req(99, "shutdown", "{}"))
+            )),
+            out,
+            withExec(new StubPlanRepo() { }, execRepo),
+            execHandler,
             null, null
         ).run();
 
         List<JsonObject> responses = parseResponses(out.toByteArray());
         var result = responses.get(0).getAsJsonObject("result");
         assertThat(result.get("executionId").getAsString()).isEqualTo(newExecId.toString());
+        assertThat(result.get("rerunOf").getAsString()).isEqualTo(originalExecId.toString());
+        assertThat(result.get("effectiveResult").getAsString()).isEqualTo("PASSED");
+        assertThat(rerunCalls).containsExactly(originalExecId + " staging");
     }
 }
@@ -23,6 +23,7 @@ module org.myjtools.openbbt.persistence {
 	opens org.myjtools.openbbt.persistence.execution;
 	exports org.myjtools.openbbt.persistence.attachment;
 	opens org.myjtools.openbbt.persistence.attachment;
+	exports org.myjtools.openbbt.persistence.archive;
 
 	requires minio;
 	requires okhttp3;
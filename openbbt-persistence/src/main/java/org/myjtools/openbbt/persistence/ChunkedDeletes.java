@@ -0,0 +1,61 @@
+package org.myjtools.openbbt.persistence;
+
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Table;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.IntConsumer;
+
+/**
+ * Deletes large sets of rows in bounded chunks, so that each statement (and the
+ * cascades it triggers) only locks a limited number of rows and other connections
+ * can make progress between chunks.
+ * <p>
+ * Every chunk is deleted by primary key in its own statement, so with auto-commit
+ * enabled each chunk is committed independently.
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public final class ChunkedDeletes {
+
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+
+	private ChunkedDeletes() {
+		// utility class
+	}
+
+
+	/**
+	 * Delete every row of the table matching the condition, in chunks of at most
+	 * {@code chunkSize} rows.
+	 * @param key the primary key of the table
+	 * @param onChunkDeleted receives the number of rows deleted by each chunk
+	 * @return the total number of rows deleted
+	 */
+	public static int delete(
+		DSLContext dsl,
+		Table<?> table,
+		Field<UUID> key,
+		Condition condition,
+		int chunkSize,
+		IntConsumer onChunkDeleted
+	) {
+		int total = 0;
+		while (true) {
+			List<UUID> keys = dsl.select(key).from(table).where(condition).limit(chunkSize).fetch(key);
+			if (keys.isEmpty()) {
+				return total;
+			}
+			int deleted = dsl.deleteFrom(table).where(key.in(keys)).execute();
+			total += deleted;
+			onChunkDeleted.accept(deleted);
+			if (keys.size() < chunkSize) {
+				return total;
+			}
+		}
+	}
+
+}
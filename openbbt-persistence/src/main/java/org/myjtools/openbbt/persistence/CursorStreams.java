@@ -0,0 +1,105 @@
+package org.myjtools.openbbt.persistence;
+
+import org.jooq.*;
+import org.jooq.impl.DataSourceConnectionProvider;
+import org.jooq.impl.DefaultConnectionProvider;
+import org.myjtools.openbbt.core.OpenBBTException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy, cursor-backed streams over jOOQ queries, so that large result sets are
+ * traversed in constant memory instead of being fetched as a whole.
+ * <p>
+ * The underlying cursor and connection are released when the stream is closed or
+ * fully consumed. Callers that may stop before the end of the stream (for example using
+ * {@code findFirst} or {@code anyMatch}) must close it, preferably with
+ * try-with-resources.
+ * <p>
+ * The PostgreSQL driver only honours the fetch size within a transaction, so in that
+ * case the cursor is opened in a read-only transaction on a dedicated pooled connection.
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public final class CursorStreams {
+
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+
+
+	private CursorStreams() {
+		// utility class
+	}
+
+
+	public static <R extends Record> Stream<R> stream(DSLContext dsl, ResultQuery<R> query, int fetchSize) {
+		ConnectionProvider provider = dsl.configuration().connectionProvider();
+		if (dsl.dialect().family() != SQLDialect.POSTGRES || !(provider instanceof DataSourceConnectionProvider)) {
+			return query.fetchSize(fetchSize).fetchStream();
+		}
+		Connection connection = provider.acquire();
+		try {
+			connection.setAutoCommit(false);
+			connection.setReadOnly(true);
+			query.attach(dsl.configuration().derive(new DefaultConnectionProvider(connection)));
+			TransactionalCursor<R> cursor = new TransactionalCursor<>(query.fetchSize(fetchSize).fetchLazy(), provider, connection);
+			return StreamSupport.stream(cursor, false).onClose(cursor::close);
+		} catch (SQLException | RuntimeException e) {
+			release(provider, connection);
+			throw e instanceof RuntimeException runtime ? runtime : new OpenBBTException(e, "Cannot open cursor");
+		}
+	}
+
+
+	private static void release(ConnectionProvider provider, Connection connection) {
+		try {
+			connection.rollback();
+			connection.setReadOnly(false);
+			connection.setAutoCommit(true);
+		} catch (SQLException ignored) {
+			// the connection is returned to the pool anyway
+		} finally {
+			provider.release(connection);
+		}
+	}
+
+
+
+	private static final class TransactionalCursor<R extends Record> extends Spliterators.AbstractSpliterator<R> {
+
+		private final Cursor<R> cursor;
+		private final ConnectionProvider provider;
+		private final Connection connection;
+		private boolean closed;
+
+		TransactionalCursor(Cursor<R> cursor, ConnectionProvider provider, Connection connection) {
+			super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+			this.cursor = cursor;
+			this.provider = provider;
+			this.connection = connection;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super R> action) {
+			if (!closed && cursor.hasNext()) {
+				action.accept(cursor.fetchNext());
+				return true;
+			}
+			close();
+			return false;
+		}
+
+		synchronized void close() {
+			if (!closed) {
+				closed = true;
+				cursor.close();
+				release(provider, connection);
+			}
+		}
+	}
+
+}
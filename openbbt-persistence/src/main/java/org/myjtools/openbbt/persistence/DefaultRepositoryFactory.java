@@ -9,16 +9,23 @@ import org.myjtools.openbbt.core.persistence.AttachmentRepository;
 import org.myjtools.openbbt.core.persistence.TestExecutionRepository;
 import org.myjtools.openbbt.core.persistence.TestPlanRepository;
 import org.myjtools.openbbt.core.persistence.Repository;
+import org.myjtools.openbbt.persistence.archive.ExecutionArchiveStore;
+import org.myjtools.openbbt.persistence.attachment.ContentAddressedAttachmentRepository;
 import org.myjtools.openbbt.persistence.attachment.LocalAttachmentRepository;
 import org.myjtools.openbbt.persistence.attachment.MinioAttachmentRepository;
+import org.myjtools.openbbt.persistence.attachment.PackedAttachmentRepository;
 import org.myjtools.openbbt.persistence.execution.JooqExecutionRepository;
 import org.myjtools.openbbt.persistence.plan.JooqPlanRepository;
+import javax.sql.DataSource;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import static org.myjtools.openbbt.core.OpenBBTConfig.*;
+import static org.myjtools.openbbt.persistence.DataSourceProvider.DatabaseType.HSQLDB;
 
 @Extension
 public class DefaultRepositoryFactory implements RepositoryFactory {
@@ -26,6 +33,9 @@ public class DefaultRepositoryFactory implements RepositoryFactory {
 	@Inject
 	Config config;
 
+	/** Pools of the database files already opened, shared by the repositories of each file */
+	private final Map<Path, DataSource> fileDataSources = new ConcurrentHashMap<>();
+
 
 	@Override
 	@SuppressWarnings("unchecked")
@@ -35,9 +45,15 @@ public class DefaultRepositoryFactory implements RepositoryFactory {
 			case PERSISTENCE_MODE_TRANSIENT -> {
 				try {
 					if (type.equals(AttachmentRepository.class)) {
-						yield (T) new LocalAttachmentRepository(Files.createTempDirectory("openbbt-attachments"));
+						Path attachmentPath = Files.createTempDirectory("openbbt-attachments");
+						yield (T) createLocalAttachmentRepository(attachmentPath, attachmentPath.resolve("db"));
 					}
-					yield (T) createFileRepository(type, Files.createTempFile("openbbt", "db"));
+					Path filePath = Files.createTempFile("openbbt", "db");
+					Path archivePath = filePath.resolveSibling(filePath.getFileName() + "-archive");
+					yield (T) withArchiveStore(
+						createFileRepository(type, filePath, fetchSize(), deleteChunkSize()),
+						archivePath
+					);
 				} catch (IOException e) {
 					throw new OpenBBTException(e);
 				}
@@ -46,13 +62,16 @@ public class DefaultRepositoryFactory implements RepositoryFactory {
 				Path envPath = config.get(ENV_PATH, Path::of).orElseThrow(
 					() -> new OpenBBTException("Repository environment path not configured: {}", ENV_PATH)
 				);
-				if (type.equals(AttachmentRepository.class)) {
-					yield (T) new LocalAttachmentRepository(envPath.resolve("attachments"));
-				}
 				Path filePath = config.get(PERSISTENCE_FILE, Path::of).orElseThrow(
 					() -> new OpenBBTException("Repository file path not configured: {}", PERSISTENCE_FILE)
 				);
-				yield (T) createFileRepository(type, envPath.resolve(filePath));
+				if (type.equals(AttachmentRepository.class)) {
+					yield (T) createLocalAttachmentRepository(envPath.resolve("attachments"), envPath.resolve(filePath));
+				}
+				yield (T) withArchiveStore(
+					createFileRepository(type, envPath.resolve(filePath), fetchSize(), deleteChunkSize()),
+					archivePath(envPath)
+				);
 			}
 			case PERSISTENCE_MODE_REMOTE -> {
 				if (type.equals(AttachmentRepository.class)) {
@@ -67,7 +86,10 @@ public class DefaultRepositoryFactory implements RepositoryFactory {
 				String password = config.get(PERSISTENCE_DB_PASSWORD, String::toString).orElseThrow(
 					() -> new OpenBBTException("Repository remote password not configured: {}", PERSISTENCE_DB_PASSWORD)
 				);
-				yield (T) createRemoteRepository(type, url, username, password);
+				yield (T) withArchiveStore(
+					createRemoteRepository(type, url, username, password, fetchSize(), deleteChunkSize()),
+					archivePath(config.get(ENV_PATH, Path::of).orElse(ENV_DEFAULT_PATH))
+				);
 			}
 			default -> throw new OpenBBTException("Unsupported repository mode: {}, expected: {}",
 				mode,
@@ -108,10 +130,12 @@ public class DefaultRepositoryFactory implements RepositoryFactory {
 			};
 			Connection connection = provider.openConnection();
 			if (type.equals(TestPlanRepository.class)) {
-				return (T) new JooqPlanRepository(connection, provider.dialect());
+				return (T) new JooqPlanRepository(connection, provider.dialect()).fetchSize(fetchSize());
 			}
 			if (type.equals(TestExecutionRepository.class)) {
-				return (T) new JooqExecutionRepository(connection, provider.dialect());
+				return (T) new JooqExecutionRepository(connection, provider.dialect())
+					.fetchSize(fetchSize())
+					.archiveStore(new ExecutionArchiveStore(archivePath(config.get(ENV_PATH, Path::of).orElse(ENV_DEFAULT_PATH))));
 			}
 			throw new OpenBBTException("Unsupported repository type: {}", type.getName());
 		} catch (OpenBBTException e) {
@@ -122,6 +146,37 @@ public class DefaultRepositoryFactory implements RepositoryFactory {
 	}
 
 
+	/**
+	 * Attachments stored in the file system, as plain files, packed per execution, or
+	 * content-addressed with their references in the given database file
+	 */
+	private AttachmentRepository createLocalAttachmentRepository(Path attachmentPath, Path databaseFile) {
+		String store = config.get(ATTACHMENT_STORE, String.class).orElse(ATTACHMENT_STORE_FILES);
+		return switch (store) {
+			case ATTACHMENT_STORE_FILES -> new LocalAttachmentRepository(attachmentPath);
+			case ATTACHMENT_STORE_CONTENT_ADDRESSED ->
+				new ContentAddressedAttachmentRepository(attachmentPath, fileDataSource(databaseFile), HSQLDB.dialect());
+			case ATTACHMENT_STORE_PACKED -> new PackedAttachmentRepository(attachmentPath);
+			default -> throw new OpenBBTException("Unsupported attachment store: {}, expected: {}",
+				store,
+				List.of(ATTACHMENT_STORE_FILES, ATTACHMENT_STORE_CONTENT_ADDRESSED, ATTACHMENT_STORE_PACKED)
+			);
+		};
+	}
+
+
+	/**
+	 * The pool of a database file is created (and the file migrated) only once, and then
+	 * shared by every repository stored in it, including the attachment references
+	 */
+	private DataSource fileDataSource(Path filePath) {
+		return fileDataSources.computeIfAbsent(
+			filePath.toAbsolutePath().normalize(),
+			file -> DataSourceProvider.hsqldb(file).obtainDataSource()
+		);
+	}
+
+
 	private MinioAttachmentRepository createMinioRepository() {
 		String url = config.get(ATTACHMENT_SERVER_URL, String::toString).orElseThrow(
 			() -> new OpenBBTException("Attachment server URL not configured: {}", ATTACHMENT_SERVER_URL)
@@ -132,29 +187,70 @@ public class DefaultRepositoryFactory implements RepositoryFactory {
 		String password = config.get(ATTACHMENT_SERVER_PASSWORD, String::toString).orElseThrow(
 			() -> new OpenBBTException("Attachment server password not configured: {}", ATTACHMENT_SERVER_PASSWORD)
 		);
-		return new MinioAttachmentRepository(url, username, password);
+		return new MinioAttachmentRepository(url, username, password)
+			.uploadThreads(config.get(ATTACHMENT_SERVER_UPLOAD_THREADS, Integer.class)
+				.orElse(MinioAttachmentRepository.DEFAULT_UPLOAD_THREADS))
+			.uploadBufferSize(config.get(ATTACHMENT_SERVER_UPLOAD_BUFFER_SIZE, Integer.class)
+				.map(megabytes -> Math.min(megabytes, 2047) * 1024 * 1024)
+				.orElse(MinioAttachmentRepository.DEFAULT_UPLOAD_BUFFER_SIZE))
+			.uploadRetries(config.get(ATTACHMENT_SERVER_UPLOAD_RETRIES, Integer.class)
+				.orElse(MinioAttachmentRepository.DEFAULT_UPLOAD_RETRIES));
+	}
+
+
+	private int fetchSize() {
+		return config.get(PERSISTENCE_FETCH_SIZE, Integer.class).orElse(CursorStreams.DEFAULT_FETCH_SIZE);
+	}
+
+
+	private int deleteChunkSize() {
+		return config.get(PERSISTENCE_DELETE_CHUNK_SIZE, Integer.class).orElse(ChunkedDeletes.DEFAULT_CHUNK_SIZE);
+	}
+
+
+	/**
+	 * The archive of expired executions is kept in the file system, relative to the
+	 * environment path unless an absolute path is configured
+	 */
+	private Path archivePath(Path envPath) {
+		return envPath.resolve(config.get(PERSISTENCE_ARCHIVE_PATH, Path::of).orElse(Path.of("archive")));
+	}
+
+
+	private static Object withArchiveStore(Object repository, Path archivePath) {
+		if (repository instanceof JooqExecutionRepository executionRepository) {
+			executionRepository.archiveStore(new ExecutionArchiveStore(archivePath));
+		}
+		return repository;
 	}
 
 
-	private static Object createRemoteRepository(Class<?> type, String url, String username, String password) {
+	private static Object createRemoteRepository(
+		Class<?> type,
+		String url,
+		String username,
+		String password,
+		int fetchSize,
+		int deleteChunkSize
+	) {
 		DataSourceProvider provider = DataSourceProvider.postgresql(url, username, password);
 		if (type.equals(TestPlanRepository.class)) {
-			return new JooqPlanRepository(provider);
+			return new JooqPlanRepository(provider).fetchSize(fetchSize).deleteChunkSize(deleteChunkSize);
 		}
 		if (type.equals(TestExecutionRepository.class)) {
-			return new JooqExecutionRepository(provider);
+			return new JooqExecutionRepository(provider).fetchSize(fetchSize).deleteChunkSize(deleteChunkSize);
 		}
 		throw new OpenBBTException("Unsupported repository type for remote mode: {}", type.getName());
 	}
 
 
-	private static Object createFileRepository(Class<?> type, Path filePath) {
-		DataSourceProvider provider = DataSourceProvider.hsqldb(filePath);
+	private Object createFileRepository(Class<?> type, Path filePath, int fetchSize, int deleteChunkSize) {
+		DataSource dataSource = fileDataSource(filePath);
 		if (type.equals(TestPlanRepository.class)) {
-			return new JooqPlanRepository(provider);
+			return new JooqPlanRepository(dataSource, HSQLDB.dialect()).fetchSize(fetchSize).deleteChunkSize(deleteChunkSize);
 		}
 		if (type.equals(TestExecutionRepository.class)) {
-			return new JooqExecutionRepository(provider);
+			return new JooqExecutionRepository(dataSource, HSQLDB.dialect()).fetchSize(fetchSize).deleteChunkSize(deleteChunkSize);
 		}
 		throw new OpenBBTException("Unsupported repository type for file mode: {}", type.getName());
 	}
@@ -0,0 +1,419 @@
+package org.myjtools.openbbt.persistence.archive;
+
+import org.myjtools.openbbt.core.execution.ExecutionResult;
+import org.myjtools.openbbt.core.execution.TestExecution;
+import org.myjtools.openbbt.core.execution.TestExecutionNode;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact, read-only copy of an execution that has expired from the live repository.
+ * <p>
+ * The serialized form is columnar: a header with the execution data is followed by a
+ * directory of columns (their raw and compressed sizes) and a Deflate-compressed block
+ * per column. Values of the same shape are stored together (UUID halves, timestamps
+ * relative to the execution date, counters as variable-length integers), so that
+ * blocks compress well. Node rows are sorted by plan node ID, which makes the plan
+ * node column a sorted key to locate nodes with a binary search.
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public final class ExecutionArchive {
+
+	private static final int MAGIC = 0x4F424258;
+	private static final int VERSION = 2;
+
+	private enum Column {
+		EXECUTION_NODE_ID, PLAN_NODE_ID, STARTED_AT, FINISHED_AT, RESULT, MESSAGE,
+		TEST_PASSED_COUNT, TEST_ERROR_COUNT, TEST_FAILED_COUNT, ATTACHMENTS
+	}
+
+	/**
+	 * An archived execution node, along with the IDs of its attachments
+	 */
+	public record Node(
+		UUID executionNodeID,
+		UUID planNodeID,
+		Instant startTime,
+		Instant endTime,
+		ExecutionResult result,
+		String message,
+		Integer testPassedCount,
+		Integer testErrorCount,
+		Integer testFailedCount,
+		List<UUID> attachmentIDs
+	) { }
+
+
+	private final TestExecution execution;
+	private final List<Node> nodes;
+	private final UUID[] planNodeIDs;
+	private Map<UUID, Node> nodesByExecutionNode;
+
+
+	public ExecutionArchive(TestExecution execution, Collection<Node> nodes) {
+		this.execution = execution;
+		this.nodes = nodes.stream().sorted(Comparator.comparing(Node::planNodeID)).toList();
+		this.planNodeIDs = this.nodes.stream().map(Node::planNodeID).toArray(UUID[]::new);
+	}
+
+
+	public TestExecution execution() {
+		return execution;
+	}
+
+
+	public List<Node> nodes() {
+		return nodes;
+	}
+
+
+	public Optional<TestExecutionNode> node(UUID planNodeID) {
+		int index = Arrays.binarySearch(planNodeIDs, planNodeID);
+		return index < 0 ? Optional.empty() : Optional.of(toExecutionNode(nodes.get(index)));
+	}
+
+
+	public List<UUID> attachmentIDs(UUID executionNodeID) {
+		Node node = nodesByExecutionNode().get(executionNodeID);
+		return node == null ? List.of() : node.attachmentIDs();
+	}
+
+
+	private synchronized Map<UUID, Node> nodesByExecutionNode() {
+		if (nodesByExecutionNode == null) {
+			nodesByExecutionNode = new HashMap<>();
+			nodes.forEach(node -> nodesByExecutionNode.put(node.executionNodeID(), node));
+		}
+		return nodesByExecutionNode;
+	}
+
+
+	private TestExecutionNode toExecutionNode(Node row) {
+		TestExecutionNode node = new TestExecutionNode();
+		node.executionID(execution.executionID());
+		node.executionNodeID(row.executionNodeID());
+		node.planNodeID(row.planNodeID());
+		node.startTime(row.startTime());
+		node.endTime(row.endTime());
+		node.result(row.result());
+		node.message(row.message());
+		node.testPassedCount(row.testPassedCount());
+		node.testErrorCount(row.testErrorCount());
+		node.testFailedCount(row.testFailedCount());
+		return node;
+	}
+
+
+	public void write(OutputStream output) throws IOException {
+		DataOutputStream out = new DataOutputStream(output);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		writeUUID(out, execution.executionID());
+		writeUUID(out, execution.planID());
+		out.writeBoolean(execution.executionRootNodeID() != null);
+		if (execution.executionRootNodeID() != null) {
+			writeUUID(out, execution.executionRootNodeID());
+		}
+		out.writeLong(execution.executedAt().toEpochMilli());
+		writeNullableInt(out, execution.testPassedCount());
+		writeNullableInt(out, execution.testErrorCount());
+		writeNullableInt(out, execution.testFailedCount());
+		out.writeBoolean(execution.profile() != null);
+		if (execution.profile() != null) {
+			out.writeUTF(execution.profile());
+		}
+		out.writeBoolean(execution.rerunOf() != null);
+		if (execution.rerunOf() != null) {
+			writeUUID(out, execution.rerunOf());
+		}
+		out.writeInt(nodes.size());
+
+		long base = execution.executedAt().toEpochMilli();
+		List<byte[]> columns = new ArrayList<>();
+		for (Column column : Column.values()) {
+			ColumnWriter writer = new ColumnWriter();
+			switch (column) {
+				case EXECUTION_NODE_ID -> writer.uuids(nodes, Node::executionNodeID);
+				case PLAN_NODE_ID -> writer.uuids(nodes, Node::planNodeID);
+				case STARTED_AT -> nodes.forEach(node -> writer.instant(node.startTime(), base));
+				case FINISHED_AT -> nodes.forEach(node -> writer.instant(node.endTime(), base));
+				case RESULT -> nodes.forEach(node -> writer.bytes.write(node.result() == null ? 0 : node.result().value()));
+				case MESSAGE -> nodes.forEach(node -> writer.string(node.message()));
+				case TEST_PASSED_COUNT -> nodes.forEach(node -> writer.nullableInt(node.testPassedCount()));
+				case TEST_ERROR_COUNT -> nodes.forEach(node -> writer.nullableInt(node.testErrorCount()));
+				case TEST_FAILED_COUNT -> nodes.forEach(node -> writer.nullableInt(node.testFailedCount()));
+				case ATTACHMENTS -> nodes.forEach(node -> writer.attachments(node.attachmentIDs()));
+			}
+			columns.add(writer.bytes.toByteArray());
+		}
+		// column directory, followed by the compressed blocks
+		List<byte[]> blocks = columns.stream().map(ExecutionArchive::deflate).toList();
+		out.writeInt(columns.size());
+		for (int i = 0; i < columns.size(); i++) {
+			out.writeInt(columns.get(i).length);
+			out.writeInt(blocks.get(i).length);
+		}
+		for (byte[] block : blocks) {
+			out.write(block);
+		}
+		out.flush();
+	}
+
+
+	public static ExecutionArchive read(InputStream input) throws IOException {
+		DataInputStream in = new DataInputStream(input);
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not an execution archive");
+		}
+		int version = in.readInt();
+		// version 1 archives lack the re-run link
+		if (version < 1 || version > VERSION) {
+			throw new IOException("Unsupported execution archive version " + version);
+		}
+		TestExecution execution = new TestExecution();
+		execution.executionID(readUUID(in));
+		execution.planID(readUUID(in));
+		execution.executionRootNodeID(in.readBoolean() ? readUUID(in) : null);
+		execution.executedAt(Instant.ofEpochMilli(in.readLong()));
+		execution.testPassedCount(readNullableInt(in));
+		execution.testErrorCount(readNullableInt(in));
+		execution.testFailedCount(readNullableInt(in));
+		execution.profile(in.readBoolean() ? in.readUTF() : null);
+		if (version >= 2) {
+			execution.rerunOf(in.readBoolean() ? readUUID(in) : null);
+		}
+		int size = in.readInt();
+
+		int columnCount = in.readInt();
+		if (columnCount != Column.values().length) {
+			throw new IOException("Unexpected number of columns in execution archive: " + columnCount);
+		}
+		int[] rawLengths = new int[columnCount];
+		int[] blockLengths = new int[columnCount];
+		for (int i = 0; i < columnCount; i++) {
+			rawLengths[i] = in.readInt();
+			blockLengths[i] = in.readInt();
+		}
+		ColumnReader[] columns = new ColumnReader[columnCount];
+		for (int i = 0; i < columnCount; i++) {
+			columns[i] = new ColumnReader(inflate(in.readNBytes(blockLengths[i]), rawLengths[i]));
+		}
+
+		long base = execution.executedAt().toEpochMilli();
+		UUID[] executionNodeIDs = columns[Column.EXECUTION_NODE_ID.ordinal()].uuids(size);
+		UUID[] planNodeIDs = columns[Column.PLAN_NODE_ID.ordinal()].uuids(size);
+		List<Node> nodes = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			int result = columns[Column.RESULT.ordinal()].data[i];
+			nodes.add(new Node(
+				executionNodeIDs[i],
+				planNodeIDs[i],
+				columns[Column.STARTED_AT.ordinal()].instant(base),
+				columns[Column.FINISHED_AT.ordinal()].instant(base),
+				result == 0 ? null : ExecutionResult.of(result),
+				columns[Column.MESSAGE.ordinal()].string(),
+				columns[Column.TEST_PASSED_COUNT.ordinal()].nullableInt(),
+				columns[Column.TEST_ERROR_COUNT.ordinal()].nullableInt(),
+				columns[Column.TEST_FAILED_COUNT.ordinal()].nullableInt(),
+				columns[Column.ATTACHMENTS.ordinal()].attachments()
+			));
+		}
+		return new ExecutionArchive(execution, nodes);
+	}
+
+
+	private static void writeUUID(DataOutputStream out, UUID uuid) throws IOException {
+		out.writeLong(uuid.getMostSignificantBits());
+		out.writeLong(uuid.getLeastSignificantBits());
+	}
+
+
+	private static UUID readUUID(DataInputStream in) throws IOException {
+		return new UUID(in.readLong(), in.readLong());
+	}
+
+
+	private static void writeNullableInt(DataOutputStream out, Integer value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeInt(value);
+		}
+	}
+
+
+	private static Integer readNullableInt(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readInt() : null;
+	}
+
+
+	private static byte[] deflate(byte[] raw) {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		try (var out = new DeflaterOutputStream(compressed, deflater)) {
+			out.write(raw);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			deflater.end();
+		}
+		return compressed.toByteArray();
+	}
+
+
+	private static byte[] inflate(byte[] block, int rawLength) throws IOException {
+		try (var in = new InflaterInputStream(new ByteArrayInputStream(block))) {
+			byte[] raw = in.readNBytes(rawLength);
+			if (raw.length != rawLength) {
+				throw new IOException("Truncated column in execution archive");
+			}
+			return raw;
+		}
+	}
+
+
+
+	/*
+	 * Nullable values are stored as variable-length integers shifted by one, so that
+	 * zero stands for null; signed values are zigzag-encoded first.
+	 */
+
+	private static final class ColumnWriter {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		void uuids(List<Node> nodes, Function<Node, UUID> column) {
+			// most significant halves first, so that time-ordered IDs share long prefixes
+			nodes.forEach(node -> fixedLong(column.apply(node).getMostSignificantBits()));
+			nodes.forEach(node -> fixedLong(column.apply(node).getLeastSignificantBits()));
+		}
+
+		void instant(Instant instant, long base) {
+			varLong(instant == null ? 0 : zigzag(instant.toEpochMilli() - base) + 1);
+		}
+
+		void nullableInt(Integer value) {
+			varLong(value == null ? 0 : zigzag(value) + 1);
+		}
+
+		void string(String value) {
+			if (value == null) {
+				varLong(0);
+			} else {
+				byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+				varLong(utf8.length + 1L);
+				bytes.writeBytes(utf8);
+			}
+		}
+
+		void attachments(List<UUID> attachmentIDs) {
+			varLong(attachmentIDs.size());
+			for (UUID attachmentID : attachmentIDs) {
+				fixedLong(attachmentID.getMostSignificantBits());
+				fixedLong(attachmentID.getLeastSignificantBits());
+			}
+		}
+
+		private void fixedLong(long value) {
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				bytes.write((int) (value >>> shift));
+			}
+		}
+
+		private void varLong(long value) {
+			while ((value & ~0x7FL) != 0) {
+				bytes.write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			bytes.write((int) value);
+		}
+
+		private static long zigzag(long value) {
+			return (value << 1) ^ (value >> 63);
+		}
+	}
+
+
+
+	private static final class ColumnReader {
+
+		private final byte[] data;
+		private int position;
+
+		ColumnReader(byte[] data) {
+			this.data = data;
+		}
+
+		UUID[] uuids(int size) {
+			long[] most = new long[size];
+			for (int i = 0; i < size; i++) {
+				most[i] = fixedLong();
+			}
+			UUID[] uuids = new UUID[size];
+			for (int i = 0; i < size; i++) {
+				uuids[i] = new UUID(most[i], fixedLong());
+			}
+			return uuids;
+		}
+
+		Instant instant(long base) {
+			long value = varLong();
+			return value == 0 ? null : Instant.ofEpochMilli(unzigzag(value - 1) + base);
+		}
+
+		Integer nullableInt() {
+			long value = varLong();
+			return value == 0 ? null : (int) unzigzag(value - 1);
+		}
+
+		String string() {
+			long length = varLong();
+			if (length == 0) {
+				return null;
+			}
+			String value = new String(data, position, (int) length - 1, StandardCharsets.UTF_8);
+			position += (int) length - 1;
+			return value;
+		}
+
+		List<UUID> attachments() {
+			int count = (int) varLong();
+			List<UUID> attachmentIDs = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				attachmentIDs.add(new UUID(fixedLong(), fixedLong()));
+			}
+			return attachmentIDs;
+		}
+
+		private long fixedLong() {
+			long value = 0;
+			for (int i = 0; i < 8; i++) {
+				value = (value << 8) | (data[position++] & 0xFF);
+			}
+			return value;
+		}
+
+		private long varLong() {
+			long value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = data[position++];
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		private static long unzigzag(long value) {
+			return (value >>> 1) ^ -(value & 1);
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+package org.myjtools.openbbt.persistence.archive;
+
+import org.myjtools.openbbt.core.OpenBBTException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * File-system store of {@link ExecutionArchive}s, one file per execution, grouped in a
+ * directory per plan: {@code <directory>/<planID>/<executionID>.archive}.
+ * <p>
+ * Archives are written to a temporary file and then moved into place, so readers never
+ * see a partial archive. The store does not keep an index; callers must know the plan of
+ * an execution to open its archive. Recently opened archives are kept in memory, since navigating
+ * an archived execution usually reads several nodes of the same execution.
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public class ExecutionArchiveStore {
+
+	private static final String EXTENSION = ".archive";
+	private static final int CACHE_SIZE = 16;
+
+	private final Path directory;
+	private final Map<UUID, ExecutionArchive> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<UUID, ExecutionArchive> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+
+	public ExecutionArchiveStore(Path directory) {
+		this.directory = directory;
+	}
+
+
+	public Path directory() {
+		return directory;
+	}
+
+
+	public void store(ExecutionArchive archive) {
+		UUID planID = archive.execution().planID();
+		UUID executionID = archive.execution().executionID();
+		try {
+			Path planDirectory = Files.createDirectories(directory.resolve(planID.toString()));
+			Path temp = Files.createTempFile(planDirectory, executionID.toString(), ".tmp");
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+				archive.write(out);
+			} catch (IOException | RuntimeException e) {
+				Files.deleteIfExists(temp);
+				throw e;
+			}
+			Files.move(temp, file(planID, executionID), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to archive execution {}", executionID);
+		}
+		synchronized (cache) {
+			cache.put(executionID, archive);
+		}
+	}
+
+
+	public Optional<ExecutionArchive> open(UUID planID, UUID executionID) {
+		synchronized (cache) {
+			ExecutionArchive cached = cache.get(executionID);
+			if (cached != null) {
+				return Optional.of(cached);
+			}
+		}
+		Path file = file(planID, executionID);
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+			ExecutionArchive archive = ExecutionArchive.read(in);
+			synchronized (cache) {
+				cache.put(executionID, archive);
+			}
+			return Optional.of(archive);
+		} catch (NoSuchFileException e) {
+			// never archived, or deleted concurrently
+			return Optional.empty();
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to read archive of execution {}", executionID);
+		}
+	}
+
+
+	/**
+	 * List the IDs of the archived executions of a plan
+	 */
+	public List<UUID> list(UUID planID) {
+		Path planDirectory = directory.resolve(planID.toString());
+		if (!Files.isDirectory(planDirectory)) {
+			return List.of();
+		}
+		try (Stream<Path> files = Files.list(planDirectory)) {
+			return files
+				.map(file -> file.getFileName().toString())
+				.filter(name -> name.endsWith(EXTENSION))
+				.map(name -> UUID.fromString(name.substring(0, name.length() - EXTENSION.length())))
+				.toList();
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to list archived executions of plan {}", planID);
+		}
+	}
+
+
+	public void delete(UUID planID, UUID executionID) {
+		synchronized (cache) {
+			cache.remove(executionID);
+		}
+		try {
+			Files.deleteIfExists(file(planID, executionID));
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to delete archive of execution {}", executionID);
+		}
+	}
+
+
+	public void deletePlan(UUID planID) {
+		List<UUID> executionIDs = list(planID);
+		synchronized (cache) {
+			executionIDs.forEach(cache::remove);
+		}
+		Path planDirectory = directory.resolve(planID.toString());
+		try {
+			for (UUID executionID : executionIDs) {
+				Files.deleteIfExists(file(planID, executionID));
+			}
+			if (Files.isDirectory(planDirectory)) {
+				try (Stream<Path> leftovers = Files.list(planDirectory)) {
+					for (Path leftover : leftovers.toList()) {
+						Files.deleteIfExists(leftover);
+					}
+				}
+				Files.deleteIfExists(planDirectory);
+			}
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to delete archived executions of plan {}", planID);
+		}
+	}
+
+
+	private Path file(UUID planID, UUID executionID) {
+		return directory.resolve(planID.toString()).resolve(executionID + EXTENSION);
+	}
+
+}
@@ -0,0 +1,361 @@
+package org.myjtools.openbbt.persistence.attachment;
+
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.SQLDialect;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DataSourceConnectionProvider;
+import org.myjtools.openbbt.core.OpenBBTException;
+import org.myjtools.openbbt.core.persistence.AttachmentRepository;
+import org.myjtools.openbbt.persistence.DataSourceProvider;
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Attachment repository that stores every distinct payload only once.
+ * <p>
+ * Payloads are identified by the SHA-256 hash of their content and stored, compressed
+ * with Deflate, as a single file under {@code blobs/}, spread over subdirectories by the
+ * first two characters of the hash. The attachments of each execution node are kept as
+ * references to those blobs in the database, along with their content type, so
+ * identical attachments (such as the same stack trace or response dump repeated across
+ * test cases) take neither extra disk space nor extra files.
+ * <p>
+ * A blob is removed when its last reference is deleted. Publishing a blob and deleting
+ * references are serialized, so a blob is never removed while a new reference to it is
+ * being stored.
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public class ContentAddressedAttachmentRepository implements AttachmentRepository {
+
+	private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+	private static final String HASH_ALGORITHM = "SHA-256";
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+	private static final int LOOKUP_BATCH = 1000;
+
+	private static final Table<Record> TABLE_ATTACHMENT_BLOB = DSL.table("attachment_blob");
+	private static final Table<Record> TABLE_ATTACHMENT_REFERENCE = DSL.table("attachment_reference");
+	private static final Field<String> FIELD_CONTENT_HASH = DSL.field("content_hash", String.class);
+	private static final Field<Long> FIELD_CONTENT_SIZE = DSL.field("content_size", Long.class);
+	private static final Field<Long> FIELD_STORED_SIZE = DSL.field("stored_size", Long.class);
+	private static final Field<UUID> FIELD_EXECUTION_ID = DSL.field("execution_id", UUID.class);
+	private static final Field<UUID> FIELD_EXECUTION_NODE_ID = DSL.field("execution_node_id", UUID.class);
+	private static final Field<UUID> FIELD_ATTACHMENT_ID = DSL.field("attachment_id", UUID.class);
+	private static final Field<String> FIELD_CONTENT_TYPE = DSL.field("content_type", String.class);
+	private static final Field<String> FIELD_REFERENCE_HASH = DSL.field("attachment_reference.content_hash", String.class);
+	private static final Field<String> FIELD_BLOB_HASH = DSL.field("attachment_blob.content_hash", String.class);
+
+	private final Path blobPath;
+	private final Path tempPath;
+	private final DSLContext dsl;
+
+
+	public ContentAddressedAttachmentRepository(Path basePath, DataSourceProvider dataSourceProvider) {
+		this(basePath, dataSourceProvider.obtainDataSource(), dataSourceProvider.dialect());
+	}
+
+
+	public ContentAddressedAttachmentRepository(Path basePath, DataSource dataSource, SQLDialect dialect) {
+		this.blobPath = basePath.resolve("blobs");
+		this.tempPath = basePath.resolve("tmp");
+		this.dsl = DSL.using(new DataSourceConnectionProvider(dataSource), dialect);
+	}
+
+
+	@Override
+	public void storeAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID, byte[] bytes, String contentType) {
+		storeAttachment(executionID, executionNodeID, attachmentID, new ByteArrayInputStream(bytes), contentType);
+	}
+
+
+	@Override
+	public void storeAttachment(
+		UUID executionID,
+		UUID executionNodeID,
+		UUID attachmentID,
+		InputStream content,
+		String contentType
+	) {
+		PendingBlob blob;
+		try {
+			blob = compress(content);
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to store attachment {}", attachmentID);
+		}
+		try {
+			publish(blob, executionID, executionNodeID, attachmentID, contentType != null ? contentType : DEFAULT_CONTENT_TYPE);
+		} finally {
+			deleteQuietly(blob.file());
+		}
+	}
+
+
+	@Override
+	public Optional<Attachment> retrieveAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		return openAttachment(executionID, executionNodeID, attachmentID).map(content -> new Attachment(
+			attachmentID, content.readAllBytes(), content.info().contentType()
+		));
+	}
+
+
+	@Override
+	public Optional<AttachmentContent> openAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		return dsl.select(FIELD_CONTENT_SIZE, FIELD_CONTENT_TYPE, FIELD_REFERENCE_HASH)
+			.from(TABLE_ATTACHMENT_REFERENCE)
+			.join(TABLE_ATTACHMENT_BLOB).on(FIELD_REFERENCE_HASH.eq(FIELD_BLOB_HASH))
+			.where(FIELD_EXECUTION_ID.eq(executionID))
+			.and(FIELD_EXECUTION_NODE_ID.eq(executionNodeID))
+			.and(FIELD_ATTACHMENT_ID.eq(attachmentID))
+			.fetchOptional()
+			.map(rec -> {
+				Path file = blobFile(rec.value3());
+				return new AttachmentContent(
+					new AttachmentInfo(attachmentID, rec.value1(), rec.value2()),
+					() -> new InflaterInputStream(Files.newInputStream(file))
+				);
+			});
+	}
+
+
+	@Override
+	public Optional<AttachmentInfo> getAttachmentInfo(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		return openAttachment(executionID, executionNodeID, attachmentID).map(AttachmentContent::info);
+	}
+
+
+	@Override
+	public Stream<AttachmentInfo> listAttachments(UUID executionID, UUID executionNodeID) {
+		return dsl.select(FIELD_ATTACHMENT_ID, FIELD_CONTENT_SIZE, FIELD_CONTENT_TYPE)
+			.from(TABLE_ATTACHMENT_REFERENCE)
+			.join(TABLE_ATTACHMENT_BLOB).on(FIELD_REFERENCE_HASH.eq(FIELD_BLOB_HASH))
+			.where(FIELD_EXECUTION_ID.eq(executionID))
+			.and(FIELD_EXECUTION_NODE_ID.eq(executionNodeID))
+			.fetch()
+			.stream()
+			.map(rec -> new AttachmentInfo(rec.value1(), rec.value2(), rec.value3()));
+	}
+
+
+	@Override
+	public Stream<Attachment> streamAttachments(UUID executionID, UUID executionNodeID) {
+		return listAttachments(executionID, executionNodeID).map(info ->
+			retrieveAttachment(executionID, executionNodeID, info.attachmentID()).orElseThrow(
+				() -> new OpenBBTException("Attachment {} was deleted while reading it", info.attachmentID())
+			)
+		);
+	}
+
+
+	@Override
+	public synchronized void deleteAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		List<String> orphans = dsl.transactionResult(configuration -> {
+			DSLContext tx = DSL.using(configuration);
+			List<String> hashes = tx.select(FIELD_CONTENT_HASH)
+				.from(TABLE_ATTACHMENT_REFERENCE)
+				.where(FIELD_EXECUTION_ID.eq(executionID))
+				.and(FIELD_EXECUTION_NODE_ID.eq(executionNodeID))
+				.and(FIELD_ATTACHMENT_ID.eq(attachmentID))
+				.fetch(FIELD_CONTENT_HASH);
+			tx.deleteFrom(TABLE_ATTACHMENT_REFERENCE)
+				.where(FIELD_EXECUTION_ID.eq(executionID))
+				.and(FIELD_EXECUTION_NODE_ID.eq(executionNodeID))
+				.and(FIELD_ATTACHMENT_ID.eq(attachmentID))
+				.execute();
+			return deleteOrphanBlobs(tx, hashes);
+		});
+		deleteBlobFiles(orphans);
+	}
+
+
+	@Override
+	public synchronized void deleteAttachments(UUID executionID) {
+		List<String> orphans = dsl.transactionResult(configuration -> {
+			DSLContext tx = DSL.using(configuration);
+			List<String> hashes = tx.selectDistinct(FIELD_CONTENT_HASH)
+				.from(TABLE_ATTACHMENT_REFERENCE)
+				.where(FIELD_EXECUTION_ID.eq(executionID))
+				.fetch(FIELD_CONTENT_HASH);
+			tx.deleteFrom(TABLE_ATTACHMENT_REFERENCE)
+				.where(FIELD_EXECUTION_ID.eq(executionID))
+				.execute();
+			return deleteOrphanBlobs(tx, hashes);
+		});
+		deleteBlobFiles(orphans);
+	}
+
+
+	/**
+	 * Compress the content into a temporary file, computing the hash of the original
+	 * content at the same time
+	 */
+	private PendingBlob compress(InputStream content) throws IOException {
+		Files.createDirectories(tempPath);
+		Path file = Files.createTempFile(tempPath, "blob", ".tmp");
+		try {
+			DigestInputStream input = new DigestInputStream(content, newDigest());
+			long size;
+			try (OutputStream output = new DeflaterOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(file), WRITE_BUFFER_SIZE)
+			)) {
+				size = input.transferTo(output);
+			}
+			String hash = HexFormat.of().formatHex(input.getMessageDigest().digest());
+			return new PendingBlob(file, hash, size, Files.size(file));
+		} catch (IOException | RuntimeException e) {
+			deleteQuietly(file);
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Move the blob to its final location, unless an identical one is already stored,
+	 * and register the reference of the attachment
+	 */
+	private synchronized void publish(
+		PendingBlob blob,
+		UUID executionID,
+		UUID executionNodeID,
+		UUID attachmentID,
+		String contentType
+	) {
+		List<String> orphans = dsl.transactionResult(configuration -> {
+			DSLContext tx = DSL.using(configuration);
+			// storing an attachment again replaces its previous content
+			List<String> replaced = tx.select(FIELD_CONTENT_HASH)
+				.from(TABLE_ATTACHMENT_REFERENCE)
+				.where(FIELD_EXECUTION_ID.eq(executionID))
+				.and(FIELD_EXECUTION_NODE_ID.eq(executionNodeID))
+				.and(FIELD_ATTACHMENT_ID.eq(attachmentID))
+				.fetch(FIELD_CONTENT_HASH);
+			tx.deleteFrom(TABLE_ATTACHMENT_REFERENCE)
+				.where(FIELD_EXECUTION_ID.eq(executionID))
+				.and(FIELD_EXECUTION_NODE_ID.eq(executionNodeID))
+				.and(FIELD_ATTACHMENT_ID.eq(attachmentID))
+				.execute();
+			boolean known = tx.fetchExists(TABLE_ATTACHMENT_BLOB, FIELD_CONTENT_HASH.eq(blob.hash()));
+			Path target = blobFile(blob.hash());
+			if (!known || !Files.exists(target)) {
+				moveBlob(blob.file(), target);
+			}
+			if (!known) {
+				tx.insertInto(TABLE_ATTACHMENT_BLOB, FIELD_CONTENT_HASH, FIELD_CONTENT_SIZE, FIELD_STORED_SIZE)
+					.values(blob.hash(), blob.size(), blob.storedSize())
+					.execute();
+			}
+			tx.insertInto(
+					TABLE_ATTACHMENT_REFERENCE,
+					FIELD_EXECUTION_ID, FIELD_EXECUTION_NODE_ID, FIELD_ATTACHMENT_ID, FIELD_CONTENT_HASH, FIELD_CONTENT_TYPE
+				)
+				.values(executionID, executionNodeID, attachmentID, blob.hash(), contentType)
+				.execute();
+			return deleteOrphanBlobs(tx, replaced.stream().filter(hash -> !hash.equals(blob.hash())).toList());
+		});
+		deleteBlobFiles(orphans);
+	}
+
+
+	/**
+	 * Delete the rows of the given blobs that are no longer referenced
+	 * @return the hashes of the deleted blobs
+	 */
+	private static List<String> deleteOrphanBlobs(DSLContext tx, Collection<String> hashes) {
+		List<String> candidates = new ArrayList<>(new HashSet<>(hashes));
+		List<String> orphans = new ArrayList<>();
+		for (int from = 0; from < candidates.size(); from += LOOKUP_BATCH) {
+			List<String> batch = candidates.subList(from, Math.min(from + LOOKUP_BATCH, candidates.size()));
+			Set<String> referenced = new HashSet<>(tx.selectDistinct(FIELD_CONTENT_HASH)
+				.from(TABLE_ATTACHMENT_REFERENCE)
+				.where(FIELD_CONTENT_HASH.in(batch))
+				.fetch(FIELD_CONTENT_HASH));
+			List<String> unreferenced = batch.stream().filter(hash -> !referenced.contains(hash)).toList();
+			if (!unreferenced.isEmpty()) {
+				tx.deleteFrom(TABLE_ATTACHMENT_BLOB).where(FIELD_CONTENT_HASH.in(unreferenced)).execute();
+				orphans.addAll(unreferenced);
+			}
+		}
+		return orphans;
+	}
+
+
+	private void deleteBlobFiles(List<String> hashes) {
+		for (String hash : hashes) {
+			try {
+				Files.deleteIfExists(blobFile(hash));
+			} catch (IOException e) {
+				throw new OpenBBTException(e, "Failed to delete attachment blob {}", hash);
+			}
+		}
+	}
+
+
+	private static void moveBlob(Path source, Path target) {
+		try {
+			Files.createDirectories(target.getParent());
+			try {
+				Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to store attachment blob {}", target.getFileName());
+		}
+	}
+
+
+	private Path blobFile(String hash) {
+		return blobPath.resolve(hash.substring(0, 2)).resolve(hash);
+	}
+
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new OpenBBTException(e, "Error obtaining hash algorithm");
+		}
+	}
+
+
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException ignored) {
+			// a leftover temporary file does not affect the stored attachments
+		}
+	}
+
+
+	/**
+	 * A compressed payload waiting to be published
+	 * @param size      size of the original content, in bytes
+	 * @param storedSize size of the compressed content, in bytes
+	 */
+	private record PendingBlob(Path file, String hash, long size, long storedSize) { }
+
+}
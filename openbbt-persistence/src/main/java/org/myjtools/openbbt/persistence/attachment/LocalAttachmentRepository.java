@@ -3,14 +3,25 @@ package org.myjtools.openbbt.persistence.attachment;
 import org.myjtools.openbbt.core.OpenBBTException;
 import org.myjtools.openbbt.core.persistence.AttachmentRepository;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 public class LocalAttachmentRepository implements AttachmentRepository {
 
+	private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+	private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+
 	private final Path basePath;
 
 	public LocalAttachmentRepository(Path basePath) {
@@ -20,12 +31,53 @@ public class LocalAttachmentRepository implements AttachmentRepository {
 	@Override
 	public void storeAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID, byte[] bytes, String contentType) {
 		try {
-			Path dir = basePath.resolve(executionID.toString()).resolve(executionNodeID.toString());
-			Files.createDirectories(dir);
+			Path dir = createNodeDirectory(executionID, executionNodeID);
 			Files.write(dir.resolve(attachmentID.toString()), bytes);
-			if (contentType != null) {
-				Files.writeString(dir.resolve(attachmentID + ".mime"), contentType);
+			writeContentType(dir, attachmentID, contentType);
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to store attachment {}", attachmentID);
+		}
+	}
+
+	@Override
+	public void storeAttachment(
+		UUID executionID,
+		UUID executionNodeID,
+		UUID attachmentID,
+		InputStream content,
+		String contentType
+	) {
+		try {
+			Path dir = createNodeDirectory(executionID, executionNodeID);
+			Files.copy(content, dir.resolve(attachmentID.toString()), StandardCopyOption.REPLACE_EXISTING);
+			writeContentType(dir, attachmentID, contentType);
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to store attachment {}", attachmentID);
+		}
+	}
+
+	@Override
+	public void storeAttachment(
+		UUID executionID,
+		UUID executionNodeID,
+		UUID attachmentID,
+		ReadableByteChannel content,
+		String contentType
+	) {
+		try {
+			Path dir = createNodeDirectory(executionID, executionNodeID);
+			try (FileChannel file = FileChannel.open(
+				dir.resolve(attachmentID.toString()),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+			)) {
+				// the source is read until its end, the file system may transfer it without copying
+				long position = 0;
+				long transferred;
+				while ((transferred = file.transferFrom(content, position, TRANSFER_CHUNK)) > 0) {
+					position += transferred;
+				}
 			}
+			writeContentType(dir, attachmentID, contentType);
 		} catch (IOException e) {
 			throw new OpenBBTException(e, "Failed to store attachment {}", attachmentID);
 		}
@@ -33,56 +85,86 @@ public class LocalAttachmentRepository implements AttachmentRepository {
 
 	@Override
 	public Optional<Attachment> retrieveAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID) {
-		Path dir = basePath.resolve(executionID.toString()).resolve(executionNodeID.toString());
-		Path file = dir.resolve(attachmentID.toString());
-		if (Files.exists(file)) {
-			try {
-				byte[] bytes = Files.readAllBytes(file);
-				String contentType = "application/octet-stream";
-				Path mimeFile = dir.resolve(attachmentID + ".mime");
-				if (Files.exists(mimeFile)) {
-					contentType = Files.readString(mimeFile);
+		return openAttachment(executionID, executionNodeID, attachmentID).map(content -> new Attachment(
+			attachmentID, content.readAllBytes(), content.info().contentType()
+		));
+	}
+
+	@Override
+	public Optional<AttachmentContent> openAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		Path file = nodeDirectory(executionID, executionNodeID).resolve(attachmentID.toString());
+		return getAttachmentInfo(executionID, executionNodeID, attachmentID)
+			.map(info -> new AttachmentContent(info, () -> Files.newInputStream(file)));
+	}
+
+	@Override
+	public Optional<AttachmentChunk> readAttachmentChunk(
+		UUID executionID,
+		UUID executionNodeID,
+		UUID attachmentID,
+		long offset,
+		int length
+	) {
+		if (offset < 0 || length < 0) {
+			throw new OpenBBTException("Invalid range of attachment {}: offset {}, length {}", attachmentID, offset, length);
+		}
+		Path file = nodeDirectory(executionID, executionNodeID).resolve(attachmentID.toString());
+		return getAttachmentInfo(executionID, executionNodeID, attachmentID).map(info -> {
+			long start = Math.min(offset, info.size());
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, info.size() - start));
+			// positional reads, only the requested range is read from the file
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {
+					// keep reading until the range is complete or the file ends
 				}
-				return Optional.of(new Attachment(attachmentID, bytes, contentType));
 			} catch (IOException e) {
 				throw new OpenBBTException(e, "Failed to read attachment {}", attachmentID);
 			}
-		} else {
+			return new AttachmentChunk(info, start, Arrays.copyOf(buffer.array(), buffer.position()));
+		});
+	}
+
+	@Override
+	public Optional<AttachmentInfo> getAttachmentInfo(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		Path file = nodeDirectory(executionID, executionNodeID).resolve(attachmentID.toString());
+		if (!Files.isRegularFile(file)) {
 			return Optional.empty();
 		}
+		return Optional.of(attachmentInfo(file));
 	}
 
 	@Override
-	public java.util.stream.Stream<Attachment> streamAttachments(UUID executionID, UUID executionNodeID) {
-		Path dir = basePath.resolve(executionID.toString()).resolve(executionNodeID.toString());
-		if (Files.exists(dir) && Files.isDirectory(dir)) {
+	public Stream<AttachmentInfo> listAttachments(UUID executionID, UUID executionNodeID) {
+		Path dir = nodeDirectory(executionID, executionNodeID);
+		if (!Files.isDirectory(dir)) {
+			return Stream.empty();
+		}
+		try {
+			return Files.list(dir)
+				.filter(path -> !Files.isDirectory(path) && !path.getFileName().toString().endsWith(".mime"))
+				.map(this::attachmentInfo);
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to list attachments for execution {} node {}", executionID, executionNodeID);
+		}
+	}
+
+	@Override
+	public Stream<Attachment> streamAttachments(UUID executionID, UUID executionNodeID) {
+		Path dir = nodeDirectory(executionID, executionNodeID);
+		// each attachment is read only when the stream reaches it
+		return listAttachments(executionID, executionNodeID).map(info -> {
 			try {
-				return Files.list(dir)
-					.filter(path -> !Files.isDirectory(path) && !path.getFileName().toString().endsWith(".mime"))
-					.map(path -> {
-						try {
-							byte[] bytes = Files.readAllBytes(path);
-							String contentType = "application/octet-stream";
-							Path mimeFile = dir.resolve(path.getFileName().toString() + ".mime");
-							if (Files.exists(mimeFile)) {
-								contentType = Files.readString(mimeFile);
-							}
-							return new Attachment(UUID.fromString(path.getFileName().toString()), bytes, contentType);
-						} catch (IOException e) {
-							throw new OpenBBTException(e, "Failed to read attachment {}", path.getFileName());
-						}
-					});
+				byte[] bytes = Files.readAllBytes(dir.resolve(info.attachmentID().toString()));
+				return new Attachment(info.attachmentID(), bytes, info.contentType());
 			} catch (IOException e) {
-				throw new OpenBBTException(e, "Failed to list attachments for execution {} node {}", executionID, executionNodeID);
+				throw new OpenBBTException(e, "Failed to read attachment {}", info.attachmentID());
 			}
-		} else {
-			return java.util.stream.Stream.empty();
-		}
+		});
 	}
 
 	@Override
 	public void deleteAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID) {
-		Path dir = basePath.resolve(executionID.toString()).resolve(executionNodeID.toString());
+		Path dir = nodeDirectory(executionID, executionNodeID);
 		Path file = dir.resolve(attachmentID.toString());
 		try {
 			Files.deleteIfExists(file);
@@ -110,4 +192,35 @@ public class LocalAttachmentRepository implements AttachmentRepository {
 		}
 	}
 
+
+	private Path nodeDirectory(UUID executionID, UUID executionNodeID) {
+		return basePath.resolve(executionID.toString()).resolve(executionNodeID.toString());
+	}
+
+
+	private Path createNodeDirectory(UUID executionID, UUID executionNodeID) throws IOException {
+		return Files.createDirectories(nodeDirectory(executionID, executionNodeID));
+	}
+
+
+	private static void writeContentType(Path dir, UUID attachmentID, String contentType) throws IOException {
+		if (contentType != null) {
+			Files.writeString(dir.resolve(attachmentID + ".mime"), contentType);
+		}
+	}
+
+
+	private AttachmentInfo attachmentInfo(Path file) {
+		try {
+			String contentType = DEFAULT_CONTENT_TYPE;
+			Path mimeFile = file.resolveSibling(file.getFileName() + ".mime");
+			if (Files.exists(mimeFile)) {
+				contentType = Files.readString(mimeFile);
+			}
+			return new AttachmentInfo(UUID.fromString(file.getFileName().toString()), Files.size(file), contentType);
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to read attachment {}", file.getFileName());
+		}
+	}
+
 }
@@ -5,17 +5,59 @@ import io.minio.errors.ErrorResponseException;
 import io.minio.messages.Item;
 import org.myjtools.openbbt.core.OpenBBTException;
 import org.myjtools.openbbt.core.persistence.AttachmentRepository;
+import org.myjtools.openbbt.core.util.Log;
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+/**
+ * Attachment repository backed by a Minio (or any S3-compatible) server.
+ * <p>
+ * Attachments are uploaded asynchronously, so steps do not wait for the network: the
+ * content is queued in memory and uploaded by a fixed number of upload threads, with
+ * retries. The memory used by the queue is bounded; when it is full, storing an
+ * attachment waits until earlier uploads finish. Contents larger than a part are sent
+ * as multipart uploads. Queued attachments are visible to readers of this repository
+ * before they are uploaded, and {@link #flush(UUID)} waits until every attachment of an
+ * execution has been uploaded.
+ */
 public class MinioAttachmentRepository implements AttachmentRepository {
 
+	private static final Log log = Log.of();
+
 	private static final String BUCKET = "openbbt-attachments";
+	private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+	/** Part size of multipart uploads, which are used for larger contents */
+	private static final long PART_SIZE = 10L * 1024 * 1024;
+	private static final long RETRY_DELAY_MILLIS = 200;
+
+	public static final int DEFAULT_UPLOAD_THREADS = 4;
+	public static final int DEFAULT_UPLOAD_BUFFER_SIZE = 64 * 1024 * 1024;
+	public static final int DEFAULT_UPLOAD_RETRIES = 3;
 
 	private final MinioClient minioClient;
+	private final Map<String, PendingUpload> pendingUploads = new ConcurrentHashMap<>();
+	private final Map<UUID, AtomicInteger> failedUploads = new ConcurrentHashMap<>();
+	private int uploadThreads = DEFAULT_UPLOAD_THREADS;
+	private int uploadBufferSize = DEFAULT_UPLOAD_BUFFER_SIZE;
+	private int uploadRetries = DEFAULT_UPLOAD_RETRIES;
+	private ExecutorService uploadExecutor;
+	private Semaphore uploadBuffer;
 
 	public MinioAttachmentRepository(String url, String accessKey, String secretKey) {
 		this.minioClient = MinioClient.builder()
@@ -25,14 +67,59 @@ public class MinioAttachmentRepository implements AttachmentRepository {
 		ensureBucket();
 	}
 
+	/**
+	 * Sets the number of attachments uploaded concurrently
+	 */
+	public MinioAttachmentRepository uploadThreads(int uploadThreads) {
+		this.uploadThreads = Math.max(1, uploadThreads);
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of bytes waiting to be uploaded
+	 */
+	public MinioAttachmentRepository uploadBufferSize(int uploadBufferSize) {
+		this.uploadBufferSize = Math.max(1, uploadBufferSize);
+		return this;
+	}
+
+	/**
+	 * Sets the number of times a failed upload is retried
+	 */
+	public MinioAttachmentRepository uploadRetries(int uploadRetries) {
+		this.uploadRetries = Math.max(0, uploadRetries);
+		return this;
+	}
+
+
 	@Override
 	public void storeAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID, byte[] bytes, String contentType) {
+		enqueue(executionID, executionNodeID, attachmentID, bytes, contentType != null ? contentType : DEFAULT_CONTENT_TYPE);
+	}
+
+
+	@Override
+	public void storeAttachment(
+		UUID executionID,
+		UUID executionNodeID,
+		UUID attachmentID,
+		InputStream content,
+		String contentType
+	) {
+		String object = objectName(executionID, executionNodeID, attachmentID);
 		try {
+			// contents up to a part are queued; larger ones are streamed to the server right away
+			byte[] head = content.readNBytes((int) Math.min(PART_SIZE, uploadBufferSize) + 1);
+			if (head.length <= Math.min(PART_SIZE, uploadBufferSize)) {
+				storeAttachment(executionID, executionNodeID, attachmentID, head, contentType);
+				return;
+			}
+			awaitUpload(object);
 			minioClient.putObject(PutObjectArgs.builder()
 				.bucket(BUCKET)
-				.object(executionID + "/" + executionNodeID + "/" + attachmentID)
-				.stream(new ByteArrayInputStream(bytes), bytes.length, -1)
-				.contentType(contentType != null ? contentType : "application/octet-stream")
+				.object(object)
+				.stream(new SequenceInputStream(new ByteArrayInputStream(head), content), -1, PART_SIZE)
+				.contentType(contentType != null ? contentType : DEFAULT_CONTENT_TYPE)
 				.build());
 		} catch (Exception e) {
 			throw new OpenBBTException(e, "Failed to store attachment {} in Minio", attachmentID);
@@ -40,12 +127,30 @@ public class MinioAttachmentRepository implements AttachmentRepository {
 	}
 
 
+	/**
+	 * Wait until every attachment of the execution has been uploaded
+	 * @throws OpenBBTException if any attachment of the execution could not be uploaded
+	 */
+	@Override
+	public void flush(UUID executionID) {
+		awaitUploads(executionID);
+		AtomicInteger failures = failedUploads.remove(executionID);
+		if (failures != null && failures.get() > 0) {
+			throw new OpenBBTException("{} attachments of execution {} could not be uploaded to Minio", failures.get(), executionID);
+		}
+	}
+
+
 	@Override
 	public Optional<Attachment> retrieveAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		PendingUpload pending = pendingUploads.get(objectName(executionID, executionNodeID, attachmentID));
+		if (pending != null) {
+			return Optional.of(new Attachment(attachmentID, pending.bytes(), pending.contentType()));
+		}
 		try (var response = minioClient.getObject(
 			GetObjectArgs.builder()
 					.bucket(BUCKET)
-					.object(executionID + "/" + executionNodeID + "/" + attachmentID)
+					.object(objectName(executionID, executionNodeID, attachmentID))
 					.build()
 		)) {
 			return Optional.of(new Attachment(
@@ -54,8 +159,7 @@ public class MinioAttachmentRepository implements AttachmentRepository {
 					response.headers().get("Content-Type")
 			));
 		} catch (Exception e) {
-			if (e instanceof ErrorResponseException errorResponseException
-					&& "NoSuchKey".equals(errorResponseException.errorResponse().code())) {
+			if (isNotFound(e)) {
 				return Optional.empty();
 			}
 			throw new OpenBBTException(e, "Failed to retrieve attachment {} from Minio", attachmentID);
@@ -64,49 +168,135 @@ public class MinioAttachmentRepository implements AttachmentRepository {
 
 
 	@Override
-	public Stream<Attachment> streamAttachments(UUID executionID, UUID executionNodeID) {
+	public Optional<AttachmentContent> openAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		String object = objectName(executionID, executionNodeID, attachmentID);
+		PendingUpload pending = pendingUploads.get(object);
+		if (pending != null) {
+			return Optional.of(new AttachmentContent(pending.info(), () -> new ByteArrayInputStream(pending.bytes())));
+		}
+		return getAttachmentInfo(executionID, executionNodeID, attachmentID).map(info -> new AttachmentContent(
+			info,
+			() -> {
+				try {
+					return minioClient.getObject(GetObjectArgs.builder().bucket(BUCKET).object(object).build());
+				} catch (Exception e) {
+					throw new OpenBBTException(e, "Failed to retrieve attachment {} from Minio", attachmentID);
+				}
+			}
+		));
+	}
 
-		String prefix = executionID + "/" + executionNodeID + "/";
 
+	@Override
+	public Optional<AttachmentChunk> readAttachmentChunk(
+		UUID executionID,
+		UUID executionNodeID,
+		UUID attachmentID,
+		long offset,
+		int length
+	) {
+		if (offset < 0 || length < 0) {
+			throw new OpenBBTException("Invalid range of attachment {}: offset {}, length {}", attachmentID, offset, length);
+		}
+		String object = objectName(executionID, executionNodeID, attachmentID);
+		PendingUpload pending = pendingUploads.get(object);
+		if (pending != null) {
+			int start = (int) Math.min(offset, pending.bytes().length);
+			int end = (int) Math.min((long) start + length, pending.bytes().length);
+			return Optional.of(new AttachmentChunk(pending.info(), start, Arrays.copyOfRange(pending.bytes(), start, end)));
+		}
+		return getAttachmentInfo(executionID, executionNodeID, attachmentID).map(info -> {
+			long start = Math.min(offset, info.size());
+			long size = Math.min(length, info.size() - start);
+			if (size == 0) {
+				return new AttachmentChunk(info, start, new byte[0]);
+			}
+			// ranged request, only the requested bytes are transferred from the server
+			try (var response = minioClient.getObject(
+				GetObjectArgs.builder().bucket(BUCKET).object(object).offset(start).length(size).build()
+			)) {
+				return new AttachmentChunk(info, start, response.readAllBytes());
+			} catch (Exception e) {
+				throw new OpenBBTException(e, "Failed to retrieve attachment {} from Minio", attachmentID);
+			}
+		});
+	}
+
+
+	@Override
+	public Optional<AttachmentInfo> getAttachmentInfo(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		String object = objectName(executionID, executionNodeID, attachmentID);
+		PendingUpload pending = pendingUploads.get(object);
+		if (pending != null) {
+			return Optional.of(pending.info());
+		}
+		try {
+			return Optional.of(statAttachment(object, attachmentID));
+		} catch (Exception e) {
+			if (isNotFound(e)) {
+				return Optional.empty();
+			}
+			throw new OpenBBTException(e, "Failed to retrieve attachment {} from Minio", attachmentID);
+		}
+	}
+
+
+	@Override
+	public Stream<AttachmentInfo> listAttachments(UUID executionID, UUID executionNodeID) {
+		String prefix = executionID + "/" + executionNodeID + "/";
+		Map<UUID, AttachmentInfo> pending = new LinkedHashMap<>();
+		pendingUploads.forEach((object, upload) -> {
+			if (object.startsWith(prefix)) {
+				pending.put(upload.attachmentID(), upload.info());
+			}
+		});
 		Iterable<Result<Item>> results = minioClient.listObjects(
 			ListObjectsArgs.builder()
 				.bucket(BUCKET)
 				.prefix(prefix)
 				.recursive(true)
+				.includeUserMetadata(true)
 				.build()
 		);
-
-		return StreamSupport.stream(results.spliterator(), false)
+		Stream<AttachmentInfo> uploaded = StreamSupport.stream(results.spliterator(), false)
 				.map(result -> {
 					try {
 						Item item = result.get();
-						UUID attachmentID = UUID.fromString(
-								item.objectName().substring(prefix.length())
-						);
-						try (var response = minioClient.getObject(
-							GetObjectArgs.builder()
-									.bucket(BUCKET)
-									.object(item.objectName())
-									.build()
-						)) {
-							byte[] data = response.readAllBytes();
-							String contentType = response.headers().get("Content-Type");
-							return new Attachment(attachmentID, data, contentType);
+						UUID attachmentID = UUID.fromString(item.objectName().substring(prefix.length()));
+						String contentType = contentTypeOf(item.userMetadata());
+						if (contentType == null) {
+							// the server did not include the metadata in the listing
+							return statAttachment(item.objectName(), attachmentID);
 						}
-
+						return new AttachmentInfo(attachmentID, item.size(), contentType);
 					} catch (Exception e) {
-						throw new OpenBBTException(e, "Failed to stream attachment from Minio");
+						throw new OpenBBTException(e, "Failed to list attachments from Minio");
 					}
-				});
+				})
+				.filter(info -> !pending.containsKey(info.attachmentID()));
+		return Stream.concat(pending.values().stream(), uploaded);
+	}
+
+
+	@Override
+	public Stream<Attachment> streamAttachments(UUID executionID, UUID executionNodeID) {
+		return listAttachments(executionID, executionNodeID).map(info ->
+			retrieveAttachment(executionID, executionNodeID, info.attachmentID()).orElseThrow(
+				() -> new OpenBBTException("Attachment {} was deleted while reading it", info.attachmentID())
+			)
+		);
 	}
 
 
 	@Override
 	public void deleteAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		String object = objectName(executionID, executionNodeID, attachmentID);
+		// a queued upload would create the object again after removing it
+		awaitUpload(object);
 		try {
 			minioClient.removeObject(RemoveObjectArgs.builder()
 				.bucket(BUCKET)
-				.object(executionID + "/" + executionNodeID + "/" + attachmentID)
+				.object(object)
 				.build());
 		} catch (Exception e) {
 			throw new OpenBBTException(e, "Failed to delete attachment {} from Minio", attachmentID);
@@ -115,6 +305,8 @@ public class MinioAttachmentRepository implements AttachmentRepository {
 
 	@Override
 	public void deleteAttachments(UUID executionID) {
+		awaitUploads(executionID);
+		failedUploads.remove(executionID);
 		String prefix = executionID + "/";
 		try {
 			Iterable<Result<Item>> results = minioClient.listObjects(
@@ -141,6 +333,153 @@ public class MinioAttachmentRepository implements AttachmentRepository {
 	}
 
 
+	/**
+	 * Queue the upload of an attachment, waiting while the upload buffer is full. Uploads
+	 * of the same object are performed in the order they were queued.
+	 */
+	private void enqueue(UUID executionID, UUID executionNodeID, UUID attachmentID, byte[] bytes, String contentType) {
+		Semaphore buffer = uploadBuffer();
+		int permits = Math.min(bytes.length, uploadBufferSize);
+		try {
+			buffer.acquire(permits);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OpenBBTException(e, "Interrupted while queuing attachment {}", attachmentID);
+		}
+		String object = objectName(executionID, executionNodeID, attachmentID);
+		PendingUpload upload = new PendingUpload(executionID, attachmentID, bytes, contentType, new CompletableFuture<>());
+		PendingUpload previous = pendingUploads.put(object, upload);
+		CompletableFuture<Void> after = previous == null
+			? CompletableFuture.completedFuture(null)
+			: previous.completion().exceptionally(x -> null);
+		after.thenRunAsync(() -> {
+			try {
+				upload(object, upload);
+				upload.completion().complete(null);
+			} catch (RuntimeException e) {
+				failedUploads.computeIfAbsent(executionID, x -> new AtomicInteger()).incrementAndGet();
+				log.error(e, "Failed to upload attachment {} to Minio", attachmentID);
+				upload.completion().completeExceptionally(e);
+			} finally {
+				pendingUploads.remove(object, upload);
+				buffer.release(permits);
+			}
+		}, uploadExecutor());
+	}
+
+
+	private void upload(String object, PendingUpload upload) {
+		for (int attempt = 0; ; attempt++) {
+			try {
+				minioClient.putObject(PutObjectArgs.builder()
+					.bucket(BUCKET)
+					.object(object)
+					.stream(new ByteArrayInputStream(upload.bytes()), upload.bytes().length, PART_SIZE)
+					.contentType(upload.contentType())
+					.build());
+				return;
+			} catch (Exception e) {
+				if (attempt >= uploadRetries) {
+					throw new OpenBBTException(e, "Failed to store attachment {} in Minio", upload.attachmentID());
+				}
+				log.warn("Upload of attachment {} failed ({}), retrying", upload.attachmentID(), e.getMessage());
+				try {
+					Thread.sleep(RETRY_DELAY_MILLIS << attempt);
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					throw new OpenBBTException(interrupted, "Interrupted while uploading attachment {}", upload.attachmentID());
+				}
+			}
+		}
+	}
+
+
+	private void awaitUpload(String object) {
+		PendingUpload pending = pendingUploads.get(object);
+		if (pending != null) {
+			await(List.of(pending));
+		}
+	}
+
+
+	private void awaitUploads(UUID executionID) {
+		await(pendingUploads.values().stream().filter(upload -> upload.executionID().equals(executionID)).toList());
+	}
+
+
+	private static void await(List<PendingUpload> uploads) {
+		for (PendingUpload upload : uploads) {
+			try {
+				upload.completion().join();
+			} catch (CompletionException e) {
+				// failures are reported when flushing the execution
+			}
+		}
+	}
+
+
+	private synchronized ExecutorService uploadExecutor() {
+		if (uploadExecutor == null) {
+			uploadExecutor = Executors.newFixedThreadPool(
+				uploadThreads,
+				Thread.ofPlatform().name("openbbt-attachment-upload-", 0).daemon().factory()
+			);
+		}
+		return uploadExecutor;
+	}
+
+
+	private synchronized Semaphore uploadBuffer() {
+		if (uploadBuffer == null) {
+			uploadBuffer = new Semaphore(uploadBufferSize);
+		}
+		return uploadBuffer;
+	}
+
+
+	private static String objectName(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		return executionID + "/" + executionNodeID + "/" + attachmentID;
+	}
+
+
+	private static boolean isNotFound(Exception e) {
+		return e instanceof ErrorResponseException errorResponseException
+			&& "NoSuchKey".equals(errorResponseException.errorResponse().code());
+	}
+
+
+	private AttachmentInfo statAttachment(String object, UUID attachmentID) throws Exception {
+		StatObjectResponse stat = minioClient.statObject(StatObjectArgs.builder().bucket(BUCKET).object(object).build());
+		String contentType = stat.contentType() != null ? stat.contentType() : DEFAULT_CONTENT_TYPE;
+		return new AttachmentInfo(attachmentID, stat.size(), contentType);
+	}
+
+
+	private static String contentTypeOf(Map<String, String> metadata) {
+		if (metadata == null) {
+			return null;
+		}
+		return metadata.entrySet().stream()
+			.filter(entry -> entry.getKey().equalsIgnoreCase("Content-Type"))
+			.map(Map.Entry::getValue)
+			.findFirst()
+			.orElse(null);
+	}
+
+
+	private record PendingUpload(
+		UUID executionID,
+		UUID attachmentID,
+		byte[] bytes,
+		String contentType,
+		CompletableFuture<Void> completion
+	) {
+		AttachmentInfo info() {
+			return new AttachmentInfo(attachmentID, bytes.length, contentType);
+		}
+	}
+
+
 	private void ensureBucket() {
 		try {
 			boolean exists = minioClient.bucketExists(BucketExistsArgs.builder().bucket(BUCKET).build());
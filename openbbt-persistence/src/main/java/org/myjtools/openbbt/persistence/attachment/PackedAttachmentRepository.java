@@ -0,0 +1,698 @@
+package org.myjtools.openbbt.persistence.attachment;
+
+import org.myjtools.openbbt.core.OpenBBTException;
+import org.myjtools.openbbt.core.persistence.AttachmentRepository;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Attachment repository that packs all the attachments of an execution into a single
+ * segment file, {@code <executionID>.pack}.
+ * <p>
+ * Every attachment is appended as a record: a header with its execution node,
+ * identifier, content type and length, followed by the content. Space for a record is
+ * reserved atomically, along with its header marked as pending, and the content is then
+ * written with positional writes, so the test cases of a parallel execution store their
+ * attachments concurrently. The record is marked as complete once its content is
+ * written, so it is never visible before, and a record left pending by an interruption
+ * does not hide the records after it.
+ * <p>
+ * When the execution is {@linkplain #flush(UUID) flushed}, an index of the records is
+ * appended to the segment as a footer, along with its length and checksum. Readers map
+ * the index into memory to locate an attachment, and read its content with positional
+ * reads. A segment without a valid index (still being written by another process, or
+ * interrupted) is indexed by scanning its records, up to the first corrupt one.
+ * Attachments stored or deleted after the flush are indexed again on the next flush.
+ * <p>
+ * Deleting the attachments of an execution removes a single file.
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public class PackedAttachmentRepository implements AttachmentRepository {
+
+	private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+	private static final String SEGMENT_EXTENSION = ".pack";
+
+	private static final int RECORD_MAGIC = 0x4F425041;
+	private static final int FOOTER_MAGIC = 0x4F424932;
+	private static final byte RECORD_ATTACHMENT = 1;
+	/** A deleted attachment, or the space of an attachment that could not be written */
+	private static final byte RECORD_DELETED = 2;
+	/** An attachment whose content is still being written */
+	private static final byte RECORD_PENDING = 3;
+	/** magic, type, execution node, attachment and content type length */
+	private static final int RECORD_FIXED_HEADER = Integer.BYTES + 1 + 4 * Long.BYTES + Short.BYTES;
+	/** index offset, index length, entry count, index checksum and magic */
+	private static final int TRAILER_SIZE = 2 * Long.BYTES + 3 * Integer.BYTES;
+	private static final int CACHED_INDEXES = 64;
+
+	private final Path basePath;
+	private final Map<UUID, Segment> segments = new ConcurrentHashMap<>();
+	private final Map<UUID, CachedIndex> indexCache = Collections.synchronizedMap(
+		new LinkedHashMap<UUID, CachedIndex>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<UUID, CachedIndex> eldest) {
+				return size() > CACHED_INDEXES;
+			}
+		}
+	);
+
+
+	public PackedAttachmentRepository(Path basePath) {
+		this.basePath = basePath;
+	}
+
+
+	@Override
+	public void storeAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID, byte[] bytes, String contentType) {
+		write(executionID, segment -> {
+			append(segment, executionNodeID, attachmentID, contentType, bytes.length,
+				(channel, position) -> writeFully(channel, ByteBuffer.wrap(bytes), position)
+			);
+			return null;
+		});
+	}
+
+
+	@Override
+	public void storeAttachment(
+		UUID executionID,
+		UUID executionNodeID,
+		UUID attachmentID,
+		InputStream content,
+		String contentType
+	) {
+		// the length must be known to reserve the space, so the content is spooled first
+		Path spool = null;
+		try {
+			Files.createDirectories(basePath);
+			spool = Files.createTempFile(basePath, "attachment", ".tmp");
+			Files.copy(content, spool, StandardCopyOption.REPLACE_EXISTING);
+			Path source = spool;
+			long length = Files.size(spool);
+			write(executionID, segment -> {
+				append(segment, executionNodeID, attachmentID, contentType, length, (channel, position) -> {
+					try (FileChannel input = FileChannel.open(source, StandardOpenOption.READ)) {
+						long transferred = 0;
+						while (transferred < length) {
+							long count = channel.transferFrom(input, position + transferred, length - transferred);
+							if (count <= 0) {
+								throw new IOException("Unexpected end of attachment content");
+							}
+							transferred += count;
+						}
+					}
+				});
+				return null;
+			});
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to store attachment {}", attachmentID);
+		} finally {
+			if (spool != null) {
+				try {
+					Files.deleteIfExists(spool);
+				} catch (IOException ignored) {
+					// a leftover temporary file does not affect the stored attachments
+				}
+			}
+		}
+	}
+
+
+	@Override
+	public void flush(UUID executionID) {
+		Segment segment = segments.get(executionID);
+		if (segment != null) {
+			seal(executionID, segment);
+		}
+	}
+
+
+	@Override
+	public Optional<Attachment> retrieveAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		return openAttachment(executionID, executionNodeID, attachmentID).map(content -> new Attachment(
+			attachmentID, content.readAllBytes(), content.info().contentType()
+		));
+	}
+
+
+	@Override
+	public Optional<AttachmentContent> openAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		Path file = segmentFile(executionID);
+		return findEntry(executionID, new Key(executionNodeID, attachmentID)).map(entry -> new AttachmentContent(
+			entry.info(),
+			() -> new SegmentInputStream(FileChannel.open(file, StandardOpenOption.READ), entry.offset(), entry.length())
+		));
+	}
+
+
+	@Override
+	public Optional<AttachmentChunk> readAttachmentChunk(
+		UUID executionID,
+		UUID executionNodeID,
+		UUID attachmentID,
+		long offset,
+		int length
+	) {
+		if (offset < 0 || length < 0) {
+			throw new OpenBBTException("Invalid range of attachment {}: offset {}, length {}", attachmentID, offset, length);
+		}
+		Path file = segmentFile(executionID);
+		return findEntry(executionID, new Key(executionNodeID, attachmentID)).map(entry -> {
+			long start = Math.min(offset, entry.length());
+			int size = (int) Math.min(length, entry.length() - start);
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				ByteBuffer buffer = readFully(channel, entry.offset() + start, size);
+				return new AttachmentChunk(entry.info(), start, buffer.array());
+			} catch (IOException e) {
+				throw new OpenBBTException(e, "Failed to read attachment {}", attachmentID);
+			}
+		});
+	}
+
+
+	@Override
+	public Optional<AttachmentInfo> getAttachmentInfo(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		return findEntry(executionID, new Key(executionNodeID, attachmentID)).map(Entry::info);
+	}
+
+
+	@Override
+	public Stream<AttachmentInfo> listAttachments(UUID executionID, UUID executionNodeID) {
+		return entries(executionID).stream()
+			.filter(entry -> entry.nodeID().equals(executionNodeID))
+			.map(Entry::info);
+	}
+
+
+	@Override
+	public Stream<Attachment> streamAttachments(UUID executionID, UUID executionNodeID) {
+		return listAttachments(executionID, executionNodeID).map(info ->
+			retrieveAttachment(executionID, executionNodeID, info.attachmentID()).orElseThrow(
+				() -> new OpenBBTException("Attachment {} was deleted while reading it", info.attachmentID())
+			)
+		);
+	}
+
+
+	@Override
+	public void deleteAttachment(UUID executionID, UUID executionNodeID, UUID attachmentID) {
+		if (!Files.exists(segmentFile(executionID)) && !segments.containsKey(executionID)) {
+			return;
+		}
+		Key key = new Key(executionNodeID, attachmentID);
+		write(executionID, segment -> {
+			if (segment.get(key) != null) {
+				append(segment, executionNodeID, attachmentID, null, 0, null);
+			}
+			return null;
+		});
+	}
+
+
+	@Override
+	public void deleteAttachments(UUID executionID) {
+		Segment segment = segments.remove(executionID);
+		if (segment != null) {
+			segment.lock.writeLock().lock();
+			try {
+				segment.close();
+			} finally {
+				segment.lock.writeLock().unlock();
+			}
+		}
+		indexCache.remove(executionID);
+		try {
+			Files.deleteIfExists(segmentFile(executionID));
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to delete attachments for execution {}", executionID);
+		}
+	}
+
+
+	/**
+	 * Run a write operation on the open segment of an execution. A segment already
+	 * sealed is opened again, and stays open until the next flush.
+	 */
+	private <T> T write(UUID executionID, Function<Segment, T> operation) {
+		while (true) {
+			Segment segment = segments.computeIfAbsent(executionID, this::openSegment);
+			segment.lock.readLock().lock();
+			try {
+				if (segment.closed) {
+					// sealed or deleted meanwhile, the segment must be opened again
+					segments.remove(executionID, segment);
+					continue;
+				}
+				return operation.apply(segment);
+			} finally {
+				segment.lock.readLock().unlock();
+			}
+		}
+	}
+
+
+	private void append(
+		Segment segment,
+		UUID executionNodeID,
+		UUID attachmentID,
+		String contentType,
+		long length,
+		ContentWriter content
+	) {
+		byte type = content == null ? RECORD_DELETED : RECORD_PENDING;
+		String effectiveContentType = contentType != null ? contentType : DEFAULT_CONTENT_TYPE;
+		ByteBuffer header = header(type, executionNodeID, attachmentID, effectiveContentType, length);
+		try {
+			long offset = segment.reserve(header, length);
+			long typePosition = offset - header.capacity() + Integer.BYTES;
+			if (content != null) {
+				try {
+					content.write(segment.channel, offset);
+				} catch (IOException | RuntimeException e) {
+					// the reserved space is kept as a deleted record, so the segment can still be scanned
+					writeFully(segment.channel, ByteBuffer.wrap(new byte[] { RECORD_DELETED }), typePosition);
+					throw e;
+				}
+				writeFully(segment.channel, ByteBuffer.wrap(new byte[] { RECORD_ATTACHMENT }), typePosition);
+			}
+			Key key = new Key(executionNodeID, attachmentID);
+			if (content == null) {
+				segment.remove(key);
+			} else {
+				segment.put(new Entry(key, offset, length, effectiveContentType));
+			}
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to write attachment {} of execution node {}", attachmentID, executionNodeID);
+		}
+	}
+
+
+	private void seal(UUID executionID, Segment segment) {
+		segment.lock.writeLock().lock();
+		try {
+			if (segment.closed) {
+				return;
+			}
+			List<Entry> entries = segment.entries();
+			writeFully(segment.channel, footer(entries, segment.end), segment.end);
+			segment.channel.force(false);
+			segment.close();
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to write the attachment index of execution {}", executionID);
+		} finally {
+			segment.lock.writeLock().unlock();
+			segments.remove(executionID, segment);
+		}
+	}
+
+
+	private Segment openSegment(UUID executionID) {
+		Path file = segmentFile(executionID);
+		try {
+			Files.createDirectories(basePath);
+			FileChannel channel = FileChannel.open(
+				file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+			);
+			try {
+				SegmentIndex index = readIndex(channel);
+				// new records overwrite the index, or whatever follows the last valid record,
+				// and the index is written again when sealing
+				channel.truncate(index.dataEnd());
+				indexCache.remove(executionID);
+				return new Segment(channel, index.entries(), index.dataEnd());
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to open the attachments of execution {}", executionID);
+		}
+	}
+
+
+	private Optional<Entry> findEntry(UUID executionID, Key key) {
+		Segment segment = segments.get(executionID);
+		if (segment != null) {
+			return Optional.ofNullable(segment.get(key));
+		}
+		return Optional.ofNullable(storedIndex(executionID).get(key));
+	}
+
+
+	private Collection<Entry> entries(UUID executionID) {
+		Segment segment = segments.get(executionID);
+		if (segment != null) {
+			return segment.entries();
+		}
+		return storedIndex(executionID).values();
+	}
+
+
+	/**
+	 * Obtain the index of a segment that is not open for writing, reusing the last one
+	 * read while the file does not change
+	 */
+	private Map<Key, Entry> storedIndex(UUID executionID) {
+		Path file = segmentFile(executionID);
+		try {
+			long size = Files.size(file);
+			FileTime modified = Files.getLastModifiedTime(file);
+			CachedIndex cached = indexCache.get(executionID);
+			if (cached != null && cached.size() == size && cached.modified().equals(modified)) {
+				return cached.entries();
+			}
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				Map<Key, Entry> entries = Collections.unmodifiableMap(readIndex(channel).entries());
+				indexCache.put(executionID, new CachedIndex(size, modified, entries));
+				return entries;
+			}
+		} catch (NoSuchFileException e) {
+			return Map.of();
+		} catch (IOException e) {
+			throw new OpenBBTException(e, "Failed to read the attachments of execution {}", executionID);
+		}
+	}
+
+
+	private static SegmentIndex readIndex(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size >= TRAILER_SIZE) {
+			ByteBuffer trailer = readFully(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+			long indexOffset = trailer.getLong();
+			long indexLength = trailer.getLong();
+			int entryCount = trailer.getInt();
+			int checksum = trailer.getInt();
+			if (trailer.getInt() == FOOTER_MAGIC
+				&& indexOffset >= 0 && indexLength >= 0
+				&& indexOffset + indexLength == size - TRAILER_SIZE) {
+				MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, indexLength);
+				Optional<Map<Key, Entry>> entries = checksum(index) == checksum
+					? readEntries(index, entryCount)
+					: Optional.empty();
+				if (entries.isPresent()) {
+					return new SegmentIndex(entries.get(), indexOffset);
+				}
+			}
+		}
+		// no index, or a corrupt one
+		return scan(channel, size);
+	}
+
+
+	private static Optional<Map<Key, Entry>> readEntries(ByteBuffer index, int entryCount) {
+		try {
+			Map<Key, Entry> entries = new LinkedHashMap<>();
+			for (int i = 0; i < entryCount; i++) {
+				Key key = new Key(new UUID(index.getLong(), index.getLong()), new UUID(index.getLong(), index.getLong()));
+				long offset = index.getLong();
+				long length = index.getLong();
+				entries.put(key, new Entry(key, offset, length, readString(index)));
+			}
+			return index.hasRemaining() ? Optional.empty() : Optional.of(entries);
+		} catch (BufferUnderflowException e) {
+			return Optional.empty();
+		}
+	}
+
+
+	private static int checksum(ByteBuffer buffer) {
+		CRC32C crc = new CRC32C();
+		crc.update(buffer.duplicate());
+		return (int) crc.getValue();
+	}
+
+
+	private static SegmentIndex scan(FileChannel channel, long size) throws IOException {
+		Map<Key, Entry> entries = new LinkedHashMap<>();
+		long position = 0;
+		while (position + RECORD_FIXED_HEADER <= size) {
+			ByteBuffer fixed = readFully(channel, position, RECORD_FIXED_HEADER);
+			if (fixed.getInt() != RECORD_MAGIC) {
+				break;
+			}
+			byte type = fixed.get();
+			Key key = new Key(new UUID(fixed.getLong(), fixed.getLong()), new UUID(fixed.getLong(), fixed.getLong()));
+			int contentTypeLength = Short.toUnsignedInt(fixed.getShort());
+			long variableStart = position + RECORD_FIXED_HEADER;
+			if (variableStart + contentTypeLength + Long.BYTES > size) {
+				break;
+			}
+			ByteBuffer variable = readFully(channel, variableStart, contentTypeLength + Long.BYTES);
+			byte[] contentType = new byte[contentTypeLength];
+			variable.get(contentType);
+			long length = variable.getLong();
+			long offset = variableStart + contentTypeLength + Long.BYTES;
+			if (length < 0 || offset + length > size) {
+				break;
+			}
+			if (type == RECORD_ATTACHMENT) {
+				entries.put(key, new Entry(key, offset, length, new String(contentType, StandardCharsets.UTF_8)));
+			} else if (type == RECORD_DELETED) {
+				entries.remove(key);
+			} else if (type != RECORD_PENDING) {
+				break;
+			}
+			// a pending record is an attachment whose content was never completed, it is skipped
+			position = offset + length;
+		}
+		return new SegmentIndex(entries, position);
+	}
+
+
+	private static ByteBuffer header(byte type, UUID executionNodeID, UUID attachmentID, String contentType, long length) {
+		byte[] contentTypeBytes = contentType.getBytes(StandardCharsets.UTF_8);
+		if (contentTypeBytes.length > 0xFFFF) {
+			throw new OpenBBTException("Content type of attachment {} is too long", attachmentID);
+		}
+		ByteBuffer header = ByteBuffer.allocate(RECORD_FIXED_HEADER + contentTypeBytes.length + Long.BYTES);
+		header.putInt(RECORD_MAGIC).put(type);
+		putUUID(header, executionNodeID);
+		putUUID(header, attachmentID);
+		header.putShort((short) contentTypeBytes.length).put(contentTypeBytes).putLong(length);
+		return header.flip();
+	}
+
+
+	private static ByteBuffer footer(List<Entry> entries, long indexOffset) {
+		List<byte[]> contentTypes = new ArrayList<>(entries.size());
+		int indexLength = 0;
+		for (Entry entry : entries) {
+			byte[] contentType = entry.contentType().getBytes(StandardCharsets.UTF_8);
+			contentTypes.add(contentType);
+			indexLength += 4 * Long.BYTES + 2 * Long.BYTES + Short.BYTES + contentType.length;
+		}
+		ByteBuffer footer = ByteBuffer.allocate(indexLength + TRAILER_SIZE);
+		for (int i = 0; i < entries.size(); i++) {
+			Entry entry = entries.get(i);
+			putUUID(footer, entry.key().nodeID());
+			putUUID(footer, entry.key().attachmentID());
+			footer.putLong(entry.offset()).putLong(entry.length());
+			footer.putShort((short) contentTypes.get(i).length).put(contentTypes.get(i));
+		}
+		int checksum = checksum(footer.duplicate().flip());
+		footer.putLong(indexOffset).putLong(indexLength).putInt(entries.size()).putInt(checksum).putInt(FOOTER_MAGIC);
+		return footer.flip();
+	}
+
+
+	private static void putUUID(ByteBuffer buffer, UUID uuid) {
+		buffer.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+	}
+
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		long current = position;
+		while (buffer.hasRemaining()) {
+			current += channel.write(buffer, current);
+		}
+	}
+
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		long current = position;
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, current);
+			if (read < 0) {
+				throw new IOException("Unexpected end of attachment segment");
+			}
+			current += read;
+		}
+		return buffer.flip();
+	}
+
+
+	private Path segmentFile(UUID executionID) {
+		return basePath.resolve(executionID + SEGMENT_EXTENSION);
+	}
+
+
+
+	private record Key(UUID nodeID, UUID attachmentID) { }
+
+
+	private record Entry(Key key, long offset, long length, String contentType) {
+
+		UUID nodeID() {
+			return key.nodeID();
+		}
+
+		AttachmentInfo info() {
+			return new AttachmentInfo(key.attachmentID(), length, contentType);
+		}
+	}
+
+
+	private record SegmentIndex(Map<Key, Entry> entries, long dataEnd) { }
+
+
+	private record CachedIndex(long size, FileTime modified, Map<Key, Entry> entries) { }
+
+
+	@FunctionalInterface
+	private interface ContentWriter {
+		void write(FileChannel channel, long position) throws IOException;
+	}
+
+
+	/**
+	 * A segment open for writing. Writers hold the read lock, since they can proceed
+	 * concurrently; sealing or deleting the segment requires the write lock.
+	 */
+	private static final class Segment {
+
+		private final FileChannel channel;
+		private final Map<Key, Entry> index;
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+		private long end;
+		private volatile boolean closed;
+
+		private Segment(FileChannel channel, Map<Key, Entry> index, long end) {
+			this.channel = channel;
+			this.index = index;
+			this.end = end;
+		}
+
+		/**
+		 * Reserve the space of a record and write its header in the same step, so the
+		 * segment never has a reserved region without a header. Returns the offset of the
+		 * record content.
+		 */
+		private synchronized long reserve(ByteBuffer header, long length) throws IOException {
+			long position = end;
+			int headerSize = header.remaining();
+			writeFully(channel, header, position);
+			end += headerSize + length;
+			return position + headerSize;
+		}
+
+		private synchronized void put(Entry entry) {
+			index.put(entry.key(), entry);
+		}
+
+		private synchronized void remove(Key key) {
+			index.remove(key);
+		}
+
+		private synchronized Entry get(Key key) {
+			return index.get(key);
+		}
+
+		private synchronized List<Entry> entries() {
+			return new ArrayList<>(index.values());
+		}
+
+		private void close() {
+			closed = true;
+			try {
+				channel.close();
+			} catch (IOException e) {
+				throw new OpenBBTException(e, "Failed to close attachment segment");
+			}
+		}
+	}
+
+
+	/**
+	 * Reads a region of a segment with positional reads
+	 */
+	private static final class SegmentInputStream extends InputStream {
+
+		private final FileChannel channel;
+		private long position;
+		private long remaining;
+
+		private SegmentInputStream(FileChannel channel, long position, long length) {
+			this.channel = channel;
+			this.position = position;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			if (remaining <= 0) {
+				return -1;
+			}
+			int read = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(length, remaining)), position);
+			if (read < 0) {
+				return -1;
+			}
+			position += read;
+			remaining -= read;
+			return read;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(remaining, Integer.MAX_VALUE);
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+}
@@ -5,20 +5,39 @@ import org.jooq.Record;
 import org.jooq.impl.DSL;
 import org.jooq.impl.DataSourceConnectionProvider;
 import org.myjtools.openbbt.core.execution.ExecutionResult;
+import org.myjtools.openbbt.core.execution.ResourceSnapshot;
+import org.myjtools.openbbt.core.execution.TestCaseStats;
 import org.myjtools.openbbt.core.execution.TestExecution;
 import org.myjtools.openbbt.core.execution.TestExecutionNode;
+import org.myjtools.openbbt.core.OpenBBTException;
+import org.myjtools.openbbt.core.persistence.Page;
+import org.myjtools.openbbt.core.persistence.RetentionPolicy;
 import org.myjtools.openbbt.core.persistence.TestExecutionRepository;
+import org.myjtools.openbbt.core.testplan.NodeType;
+import org.myjtools.openbbt.core.testplan.TestPlanNode;
 import org.myjtools.openbbt.core.util.UUIDGenerator;
+import org.myjtools.openbbt.persistence.ChunkedDeletes;
+import org.myjtools.openbbt.persistence.CursorStreams;
 import org.myjtools.openbbt.persistence.DataSourceProvider;
+import org.myjtools.openbbt.persistence.archive.ExecutionArchive;
+import org.myjtools.openbbt.persistence.archive.ExecutionArchiveStore;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
 
 public class JooqExecutionRepository implements TestExecutionRepository, AutoCloseable {
 
@@ -42,9 +61,53 @@ public class JooqExecutionRepository implements TestExecutionRepository, AutoClo
 
 	private static final Field<UUID> FIELD_ATTACHMENT_ID = DSL.field("attachment_id", UUID.class);
 	private static final Field<String> FIELD_PROFILE = DSL.field("profile", String.class);
+	private static final Field<UUID> FIELD_RERUN_OF = DSL.field("rerun_of", UUID.class);
+	private static final Field<String> FIELD_STEP_PROVIDERS_HASH = DSL.field("step_providers_hash", String.class);
+
+	private static final Field<String> FIELD_RESOURCE_SNAPSHOT_HASH = DSL.field("resource_snapshot_hash", String.class);
+
+	private static final Table<Record> TABLE_RESOURCE_SNAPSHOT = DSL.table("resource_snapshot");
+	private static final Field<String> FIELD_SNAPSHOT_HASH = DSL.field("snapshot_hash", String.class);
+	private static final Field<String> FIELD_RESOURCE_PATH = DSL.field("resource_path", String.class);
+	private static final Field<String> FIELD_CONTENT_HASH = DSL.field("content_hash", String.class);
+
+	private static final Table<Record> TABLE_ARCHIVED_EXECUTION = DSL.table("archived_execution");
+
+	private static final Table<Record> TABLE_PLAN = DSL.table("plan");
+	private static final Table<Record> TABLE_PLAN_NODE = DSL.table("plan_node");
+	private static final Field<UUID> FIELD_NODE_ID = DSL.field("node_id", UUID.class);
+	private static final Field<Integer> FIELD_TYPE = DSL.field("type", Integer.class);
+	private static final Field<UUID> FIELD_QUALIFIED_PLAN_NODE_ID = DSL.field("execution_node.plan_node_id", UUID.class);
+	private static final int IN_LIST_SIZE = 1000;
+	private static final Field<UUID> FIELD_PLAN_NODE_ROOT = DSL.field("plan_node_root", UUID.class);
+
+	private static final Table<Record> TABLE_TEST_CASE_STATS = DSL.table("test_case_stats");
+	private static final Field<UUID> FIELD_PROJECT_ID = DSL.field("project_id", UUID.class);
+	private static final Field<String> FIELD_TEST_CASE_KEY = DSL.field("test_case_key", String.class);
+	private static final Field<String> FIELD_NAME = DSL.field("name", String.class);
+	private static final Field<Integer> FIELD_EXECUTION_COUNT = DSL.field("execution_count", Integer.class);
+	private static final Field<Integer> FIELD_QUALIFIED_EXECUTION_COUNT = DSL.field("test_case_stats.execution_count", Integer.class);
+	private static final Field<Integer> FIELD_SAMPLE_COUNT = DSL.field("sample_count", Integer.class);
+	private static final Field<Long> FIELD_RECENT_RESULTS = DSL.field("recent_results", Long.class);
+	private static final Field<Integer> FIELD_FLIP_COUNT = DSL.field("flip_count", Integer.class);
+	private static final Field<Integer> FIELD_RECENT_FLIPS = DSL.field("recent_flips", Integer.class);
+	private static final Field<Integer> FIELD_LAST_RESULT = DSL.field("last_result", Integer.class);
+	private static final Field<LocalDateTime> FIELD_LAST_EXECUTED_AT = DSL.field("last_executed_at", LocalDateTime.class);
+	private static final Field<Double> FIELD_DURATION_EWMA = DSL.field("duration_ewma", Double.class);
+	private static final Field<Double> FIELD_DURATION_DEVIATION = DSL.field("duration_deviation", Double.class);
+	private static final Field<Double> FIELD_DURATION_P95 = DSL.field("duration_p95", Double.class);
+	private static final List<Field<?>> TEST_CASE_STATS_FIELDS = List.of(
+		FIELD_PROJECT_ID, FIELD_TEST_CASE_KEY, FIELD_NAME, FIELD_PLAN_NODE_ID,
+		FIELD_EXECUTION_COUNT, FIELD_SAMPLE_COUNT, FIELD_RECENT_RESULTS, FIELD_FLIP_COUNT,
+		FIELD_RECENT_FLIPS, FIELD_LAST_RESULT, FIELD_LAST_EXECUTED_AT,
+		FIELD_DURATION_EWMA, FIELD_DURATION_DEVIATION, FIELD_DURATION_P95
+	);
 
 	private final DSLContext dsl;
 	private final Connection directConnection;
+	private int fetchSize = CursorStreams.DEFAULT_FETCH_SIZE;
+	private int deleteChunkSize = ChunkedDeletes.DEFAULT_CHUNK_SIZE;
+	private ExecutionArchiveStore archiveStore;
 
 
 	public JooqExecutionRepository(DataSourceProvider dataSourceProvider) {
@@ -61,6 +124,31 @@ public class JooqExecutionRepository implements TestExecutionRepository, AutoClo
 		this.directConnection = connection;
 	}
 
+	/**
+	 * Sets the number of rows fetched per round trip by the streaming methods
+	 */
+	public JooqExecutionRepository fetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of rows removed by each statement when deleting executions
+	 */
+	public JooqExecutionRepository deleteChunkSize(int deleteChunkSize) {
+		this.deleteChunkSize = deleteChunkSize;
+		return this;
+	}
+
+	/**
+	 * Sets the store where expired executions are archived. Without a store, executions
+	 * cannot be archived.
+	 */
+	public JooqExecutionRepository archiveStore(ExecutionArchiveStore archiveStore) {
+		this.archiveStore = archiveStore;
+		return this;
+	}
+
 	@Override
 	public void close() {
 		if (directConnection != null) {
@@ -71,18 +159,26 @@ public class JooqExecutionRepository implements TestExecutionRepository, AutoClo
 
 	@Override
 	public TestExecution newExecution(UUID planID, Instant executedAt, String profile) {
+		return newExecution(planID, executedAt, profile, null);
+	}
+
+
+	@Override
+	public TestExecution newExecution(UUID planID, Instant executedAt, String profile, UUID rerunOf) {
 		UUID id = UUIDGenerator.generateUUID();
 		dsl.insertInto(TABLE_EXECUTION)
 		   .set(FIELD_EXECUTION_ID, id)
 		   .set(FIELD_PLAN_ID, planID)
 		   .set(FIELD_EXECUTED_AT, LocalDateTime.ofInstant(executedAt, ZoneOffset.UTC))
 		   .set(FIELD_PROFILE, profile)
+		   .set(FIELD_RERUN_OF, rerunOf)
 		   .execute();
 		TestExecution execution = new TestExecution();
 		execution.executionID(id);
 		execution.planID(planID);
 		execution.executedAt(executedAt);
 		execution.profile(profile);
+		execution.rerunOf(rerunOf);
 		return execution;
 	}
 
@@ -105,7 +201,10 @@ public class JooqExecutionRepository implements TestExecutionRepository, AutoClo
 			.from(TABLE_EXECUTION_NODE)
 			.where(FIELD_EXECUTION_ID.eq(executionID))
 			.and(FIELD_PLAN_NODE_ID.eq(testPlanNodeID))
-			.fetchOptional(FIELD_EXECUTION_NODE_ID);
+			.fetchOptional(FIELD_EXECUTION_NODE_ID)
+			.or(() -> archivedIfRemoved(executionID)
+				.flatMap(archive -> archive.node(testPlanNodeID))
+				.map(TestExecutionNode::executionNodeID));
 	}
 
 
@@ -161,8 +260,13 @@ public class JooqExecutionRepository implements TestExecutionRepository, AutoClo
 
 	@Override
 	public Optional<TestExecution> getExecution(UUID executionId) {
+		return fetchExecution(executionId).or(() -> archived(executionId).map(ExecutionArchive::execution));
+	}
+
+
+	private Optional<TestExecution> fetchExecution(UUID executionId) {
 		return dsl.select(FIELD_EXECUTION_ID, FIELD_PLAN_ID, FIELD_EXECUTED_AT, FIELD_PROFILE,
-				FIELD_TEST_PASSED_COUNT, FIELD_TEST_ERROR_COUNT, FIELD_TEST_FAILED_COUNT)
+				FIELD_TEST_PASSED_COUNT, FIELD_TEST_ERROR_COUNT, FIELD_TEST_FAILED_COUNT, FIELD_RERUN_OF)
 			.from(TABLE_EXECUTION)
 			.where(FIELD_EXECUTION_ID.eq(executionId))
 			.fetchOptional(rec -> {
@@ -174,6 +278,7 @@ public class JooqExecutionRepository implements TestExecutionRepository, AutoClo
 				ex.testPassedCount(rec.value5());
 				ex.testErrorCount(rec.value6());
 				ex.testFailedCount(rec.value7());
+				ex.rerunOf(rec.value8());
 				return ex;
 			});
 	}
@@ -181,6 +286,18 @@ public class JooqExecutionRepository implements TestExecutionRepository, AutoClo
 
 	@Override
 	public List<TestExecution> listExecutions(UUID planID, UUID planNodeRoot, int offset, int max) {
+		try (Stream<TestExecution> executions = streamExecutions(planID, planNodeRoot, offset, max)) {
+			return executions.toList();
+		}
+	}
+
+	@Override
+	public Stream<TestExecution> streamExecutions(UUID planID, UUID planNodeRoot, int offset, int max) {
+		return streamExecutions(planID, planNodeRoot, Page.of(offset, max));
+	}
+
+	@Override
+	public Stream<TestExecution> streamExecutions(UUID planID, UUID planNodeRoot, Page page) {
 		// Two-table JOIN: execution LEFT JOIN execution_node.
 		// planNodeRoot is a parameter, so no cross-domain join to the plan table is needed.
 		// Table-qualified column names avoid ambiguity on execution_id without aliases.
@@ -192,18 +309,33 @@ public class JooqExecutionRepository implements TestExecutionRepository, AutoClo
 		var fErrorCount  = DSL.field("execution.test_error_count",  Integer.class);
 		var fFailedCount = DSL.field("execution.test_failed_count", Integer.class);
 		var fProfile     = DSL.field("execution.profile",           String.class);
+		var fRerunOf     = DSL.field("execution.rerun_of",          UUID.class);
+
+		Condition condition = FIELD_PLAN_ID.eq(planID);
+		if (page.after() != null) {
+			// the page is sought by execution date, instead of skipping the previous executions
+			Optional<LocalDateTime> executedAt = dsl.select(FIELD_EXECUTED_AT)
+				.from(TABLE_EXECUTION)
+				.where(fExecId.eq(page.after()))
+				.fetchOptional(FIELD_EXECUTED_AT);
+			if (executedAt.isEmpty()) {
+				return Stream.empty();
+			}
+			condition = condition.and(FIELD_EXECUTED_AT.lt(executedAt.get())
+				.or(FIELD_EXECUTED_AT.eq(executedAt.get()).and(fExecId.lt(page.after()))));
+		}
 
 		var query = dsl
-			.select(fExecId, FIELD_PLAN_ID, FIELD_EXECUTED_AT, fEnNodeId, fPassedCount, fErrorCount, fFailedCount, fProfile)
+			.select(fExecId, FIELD_PLAN_ID, FIELD_EXECUTED_AT, fEnNodeId, fPassedCount, fErrorCount, fFailedCount, fProfile, fRerunOf)
 			.from(TABLE_EXECUTION)
 			.leftJoin(TABLE_EXECUTION_NODE)
 				.on(fEnExecId.eq(fExecId)
 					.and(FIELD_PLAN_NODE_ID.eq(planNodeRoot)))
-			.where(FIELD_PLAN_ID.eq(planID))
-			.orderBy(FIELD_EXECUTED_AT.desc())
-			.offset(offset);
+			.where(condition)
+			.orderBy(FIELD_EXECUTED_AT.desc(), fExecId.desc())
+			.offset(page.offset());
 
-		return (max > 0 ? query.limit(max) : query).fetch().map(rec -> {
+		return CursorStreams.stream(dsl, page.max() > 0 ? query.limit(page.max()) : query, fetchSize).map(rec -> {
 			TestExecution ex = new TestExecution();
 			ex.executionID(rec.value1());
 			ex.planID(rec.value2());
@@ -213,33 +345,71 @@ public class JooqExecutionRepository implements TestExecutionRepository, AutoClo
 			ex.testErrorCount(rec.value6());
 			ex.testFailedCount(rec.value7());
 			ex.profile(rec.value8());
+			ex.rerunOf(rec.value9());
 			return ex;
 		});
 	}
 
 	@Override
 	public Optional<TestExecutionNode> getExecutionNode(UUID executionID, UUID planNodeID) {
+		return fetchExecutionNode(executionID, planNodeID)
+			.or(() -> archivedIfRemoved(executionID).flatMap(archive -> archive.node(planNodeID)));
+	}
+
+
+	private Optional<TestExecutionNode> fetchExecutionNode(UUID executionID, UUID planNodeID) {
+		return selectExecutionNodes(executionID)
+			.and(FIELD_PLAN_NODE_ID.eq(planNodeID))
+			.fetchOptional(rec -> toExecutionNode(executionID, rec));
+	}
+
+
+	@Override
+	public Map<UUID, TestExecutionNode> getExecutionNodes(UUID executionID, Collection<UUID> planNodeIDs) {
+		Map<UUID, TestExecutionNode> nodes = new HashMap<>();
+		List<UUID> ids = List.copyOf(planNodeIDs);
+		for (int from = 0; from < ids.size(); from += IN_LIST_SIZE) {
+			selectExecutionNodes(executionID)
+				.and(FIELD_PLAN_NODE_ID.in(ids.subList(from, Math.min(from + IN_LIST_SIZE, ids.size()))))
+				.fetch(rec -> toExecutionNode(executionID, rec))
+				.forEach(node -> nodes.put(node.planNodeID(), node));
+		}
+		if (nodes.isEmpty() && !ids.isEmpty()) {
+			archivedIfRemoved(executionID).ifPresent(archive -> ids.forEach(
+				id -> archive.node(id).ifPresent(node -> nodes.put(id, node))
+			));
+		}
+		return nodes;
+	}
+
+
+	private SelectConditionStep<Record9<UUID, UUID, LocalDateTime, LocalDateTime, Integer, String, Integer, Integer, Integer>>
+	selectExecutionNodes(UUID executionID) {
 		return dsl.select(
 				FIELD_EXECUTION_NODE_ID, FIELD_PLAN_NODE_ID,
 				FIELD_STARTED_AT, FIELD_FINISHED_AT, FIELD_RESULT, FIELD_MESSAGE,
 				FIELD_TEST_PASSED_COUNT, FIELD_TEST_ERROR_COUNT, FIELD_TEST_FAILED_COUNT)
 			.from(TABLE_EXECUTION_NODE)
-			.where(FIELD_EXECUTION_ID.eq(executionID))
-			.and(FIELD_PLAN_NODE_ID.eq(planNodeID))
-			.fetchOptional(rec -> {
-				TestExecutionNode node = new TestExecutionNode();
-				node.executionID(executionID);
-				node.executionNodeID(rec.value1());
-				node.planNodeID(rec.value2());
-				node.startTime(rec.value3() != null ? rec.value3().toInstant(java.time.ZoneOffset.UTC) : null);
-				node.endTime(rec.value4() != null ? rec.value4().toInstant(java.time.ZoneOffset.UTC) : null);
-				node.result(rec.value5() != null ? ExecutionResult.of(rec.value5()) : null);
-				node.message(rec.value6());
-				node.testPassedCount(rec.value7());
-				node.testErrorCount(rec.value8());
-				node.testFailedCount(rec.value9());
-				return node;
-			});
+			.where(FIELD_EXECUTION_ID.eq(executionID));
+	}
+
+
+	private static TestExecutionNode toExecutionNode(
+		UUID executionID,
+		Record9<UUID, UUID, LocalDateTime, LocalDateTime, Integer, String, Integer, Integer, Integer> rec
+	) {
+		TestExecutionNode node = new TestExecutionNode();
+		node.executionID(executionID);
+		node.executionNodeID(rec.value1());
+		node.planNodeID(rec.value2());
+		node.startTime(rec.value3() != null ? rec.value3().toInstant(java.time.ZoneOffset.UTC) : null);
+		node.endTime(rec.value4() != null ? rec.value4().toInstant(java.time.ZoneOffset.UTC) : null);
+		node.result(rec.value5() != null ? ExecutionResult.of(rec.value5()) : null);
+		node.message(rec.value6());
+		node.testPassedCount(rec.value7());
+		node.testErrorCount(rec.value8());
+		node.testFailedCount(rec.value9());
+		return node;
 	}
 
 	@Override
@@ -251,27 +421,220 @@ public class JooqExecutionRepository implements TestExecutionRepository, AutoClo
 			.map(ExecutionResult::of);
 	}
 
+	@Override
+	public Map<UUID, ExecutionResult> getExecutionNodeResults(Collection<UUID> executionNodeIDs) {
+		Map<UUID, ExecutionResult> results = new HashMap<>();
+		List<UUID> ids = List.copyOf(executionNodeIDs);
+		for (int from = 0; from < ids.size(); from += IN_LIST_SIZE) {
+			dsl.select(FIELD_EXECUTION_NODE_ID, FIELD_RESULT)
+				.from(TABLE_EXECUTION_NODE)
+				.where(FIELD_EXECUTION_NODE_ID.in(ids.subList(from, Math.min(from + IN_LIST_SIZE, ids.size()))))
+				.and(FIELD_RESULT.isNotNull())
+				.forEach(rec -> results.put(rec.value1(), ExecutionResult.of(rec.value2())));
+		}
+		return results;
+	}
+
 	public void clearAllData() {
+		dsl.deleteFrom(TABLE_TEST_CASE_STATS).execute();
 		dsl.deleteFrom(TABLE_EXECUTION_ATTACHMENT).execute();
 		dsl.deleteFrom(TABLE_EXECUTION_NODE).execute();
+		dsl.deleteFrom(TABLE_RESOURCE_SNAPSHOT).execute();
 		dsl.deleteFrom(TABLE_EXECUTION).execute();
+		dsl.deleteFrom(TABLE_ARCHIVED_EXECUTION).execute();
 	}
 
 	@Override
 	public void deleteExecution(UUID executionId) {
-		// EXECUTION_NODE_EXECUTION_FK and EXECUTION_ATTACHMENT_EXECUTION_FK are
-		// ON DELETE CASCADE, so deleting the execution row is enough for the DB.
-		dsl.deleteFrom(TABLE_EXECUTION)
+		deleteExecution(executionId, deleted -> { });
+	}
+
+	@Override
+	public void deleteExecution(UUID executionId, IntConsumer onRowsDeleted) {
+		deleteExecutionRows(executionId, onRowsDeleted);
+		if (archiveStore != null) {
+			archivedPlan(executionId).ifPresent(planId -> archiveStore.delete(planId, executionId));
+		}
+		onRowsDeleted.accept(dsl.deleteFrom(TABLE_ARCHIVED_EXECUTION)
 		   .where(FIELD_EXECUTION_ID.eq(executionId))
-		   .execute();
+		   .execute());
+	}
+
+	private void deleteExecutionRows(UUID executionId, IntConsumer onRowsDeleted) {
+		// The cascades from EXECUTION would remove every node and attachment record in a
+		// single statement, so they are deleted beforehand in bounded chunks.
+		ChunkedDeletes.delete(
+			dsl, TABLE_EXECUTION_ATTACHMENT, FIELD_ATTACHMENT_ID,
+			FIELD_EXECUTION_ID.eq(executionId), deleteChunkSize, onRowsDeleted
+		);
+		ChunkedDeletes.delete(
+			dsl, TABLE_EXECUTION_NODE, FIELD_EXECUTION_NODE_ID,
+			FIELD_EXECUTION_ID.eq(executionId), deleteChunkSize, onRowsDeleted
+		);
+		Optional<String> snapshotHash = dsl.select(FIELD_RESOURCE_SNAPSHOT_HASH)
+		   .from(TABLE_EXECUTION)
+		   .where(FIELD_EXECUTION_ID.eq(executionId))
+		   .and(FIELD_RESOURCE_SNAPSHOT_HASH.isNotNull())
+		   .fetchOptional(FIELD_RESOURCE_SNAPSHOT_HASH);
+		onRowsDeleted.accept(dsl.deleteFrom(TABLE_EXECUTION)
+		   .where(FIELD_EXECUTION_ID.eq(executionId))
+		   .execute());
+		// the snapshot is shared by every execution with the same resources
+		snapshotHash.ifPresent(hash -> onRowsDeleted.accept(dsl.deleteFrom(TABLE_RESOURCE_SNAPSHOT)
+		   .where(FIELD_SNAPSHOT_HASH.eq(hash))
+		   .andNotExists(DSL.selectOne().from(TABLE_EXECUTION).where(FIELD_RESOURCE_SNAPSHOT_HASH.eq(hash)))
+		   .execute()));
 	}
 
 	@Override
 	public void deleteExecutionsByPlan(UUID planId) {
-		// Same as deleteExecution: cascades handle nodes and attachment records.
-		dsl.deleteFrom(TABLE_EXECUTION)
+		deleteExecutionsByPlan(planId, deleted -> { });
+	}
+
+	@Override
+	public void deleteExecutionsByPlan(UUID planId, IntConsumer onRowsDeleted) {
+		dsl.select(FIELD_EXECUTION_ID)
+		   .from(TABLE_EXECUTION)
+		   .where(FIELD_PLAN_ID.eq(planId))
+		   .fetch(FIELD_EXECUTION_ID)
+		   .forEach(executionId -> deleteExecutionRows(executionId, onRowsDeleted));
+		if (archiveStore != null) {
+			archiveStore.deletePlan(planId);
+		}
+		onRowsDeleted.accept(dsl.deleteFrom(TABLE_ARCHIVED_EXECUTION)
 		   .where(FIELD_PLAN_ID.eq(planId))
+		   .execute());
+	}
+
+
+	@Override
+	public List<UUID> listExpiredExecutions(RetentionPolicy policy, Instant now) {
+		if (!policy.isEnabled()) {
+			return List.of();
+		}
+		var candidate = TABLE_EXECUTION.as(DSL.unquotedName("candidate"));
+		var newer = TABLE_EXECUTION.as(DSL.unquotedName("newer"));
+		var fCandidateId = DSL.field(DSL.unquotedName("candidate", "execution_id"), UUID.class);
+		var fCandidatePlanId = DSL.field(DSL.unquotedName("candidate", "plan_id"), UUID.class);
+		var fCandidateExecutedAt = DSL.field(DSL.unquotedName("candidate", "executed_at"), LocalDateTime.class);
+		var fNewerId = DSL.field(DSL.unquotedName("newer", "execution_id"), UUID.class);
+		var fNewerPlanId = DSL.field(DSL.unquotedName("newer", "plan_id"), UUID.class);
+		var fNewerExecutedAt = DSL.field(DSL.unquotedName("newer", "executed_at"), LocalDateTime.class);
+
+		Condition expired = DSL.falseCondition();
+		if (policy.maxExecutionsPerPlan() > 0) {
+			// an execution is expired when the plan has at least N newer executions
+			// (ties on the execution date are broken by ID, which is time-ordered)
+			var newerCount = DSL.selectCount()
+				.from(newer)
+				.where(fNewerPlanId.eq(fCandidatePlanId))
+				.and(fNewerExecutedAt.gt(fCandidateExecutedAt)
+					.or(fNewerExecutedAt.eq(fCandidateExecutedAt).and(fNewerId.gt(fCandidateId))));
+			expired = expired.or(DSL.field(newerCount).ge(policy.maxExecutionsPerPlan()));
+		}
+		Optional<Instant> cutoff = policy.expiresBefore(now);
+		if (cutoff.isPresent()) {
+			expired = expired.or(fCandidateExecutedAt.lt(LocalDateTime.ofInstant(cutoff.get(), ZoneOffset.UTC)));
+		}
+		return dsl.select(fCandidateId)
+			.from(candidate)
+			.where(expired)
+			.orderBy(fCandidatePlanId, fCandidateExecutedAt, fCandidateId)
+			.fetch(fCandidateId);
+	}
+
+
+	@Override
+	public void archiveExecution(UUID executionId, IntConsumer onRowsDeleted) {
+		if (archiveStore == null) {
+			throw new OpenBBTException("Execution archive not configured");
+		}
+		Optional<TestExecution> stored = fetchExecution(executionId);
+		if (stored.isEmpty()) {
+			return;
+		}
+		TestExecution execution = stored.get();
+		dsl.select(FIELD_PLAN_NODE_ROOT)
+			.from(TABLE_PLAN)
+			.where(FIELD_PLAN_ID.eq(execution.planID()))
+			.fetchOptional(FIELD_PLAN_NODE_ROOT)
+			.flatMap(planNodeRoot -> getExecutionNodeByPlanNode(executionId, planNodeRoot))
+			.ifPresent(execution::executionRootNodeID);
+
+		Map<UUID, List<UUID>> attachments = new HashMap<>();
+		dsl.select(FIELD_EXECUTION_NODE_ID, FIELD_ATTACHMENT_ID)
+			.from(TABLE_EXECUTION_ATTACHMENT)
+			.where(FIELD_EXECUTION_ID.eq(executionId))
+			.orderBy(FIELD_ATTACHMENT_ID)
+			.forEach(rec -> attachments.computeIfAbsent(rec.value1(), id -> new ArrayList<>()).add(rec.value2()));
+
+		var query = dsl.select(
+				FIELD_EXECUTION_NODE_ID, FIELD_PLAN_NODE_ID,
+				FIELD_STARTED_AT, FIELD_FINISHED_AT, FIELD_RESULT, FIELD_MESSAGE,
+				FIELD_TEST_PASSED_COUNT, FIELD_TEST_ERROR_COUNT, FIELD_TEST_FAILED_COUNT)
+			.from(TABLE_EXECUTION_NODE)
+			.where(FIELD_EXECUTION_ID.eq(executionId));
+		List<ExecutionArchive.Node> nodes;
+		try (var records = CursorStreams.stream(dsl, query, fetchSize)) {
+			nodes = records.map(rec -> new ExecutionArchive.Node(
+				rec.value1(),
+				rec.value2(),
+				rec.value3() != null ? rec.value3().toInstant(ZoneOffset.UTC) : null,
+				rec.value4() != null ? rec.value4().toInstant(ZoneOffset.UTC) : null,
+				rec.value5() != null ? ExecutionResult.of(rec.value5()) : null,
+				rec.value6(),
+				rec.value7(),
+				rec.value8(),
+				rec.value9(),
+				attachments.getOrDefault(rec.value1(), List.of())
+			)).toList();
+		}
+		// the archive is written before removing the rows, so a failure never loses data;
+		// an execution archived twice after a failure just replaces its archive
+		archiveStore.store(new ExecutionArchive(execution, nodes));
+		dsl.insertInto(TABLE_ARCHIVED_EXECUTION)
+		   .set(FIELD_EXECUTION_ID, executionId)
+		   .set(FIELD_PLAN_ID, execution.planID())
+		   .onDuplicateKeyIgnore()
 		   .execute();
+		deleteExecutionRows(executionId, onRowsDeleted);
+	}
+
+
+	@Override
+	public List<UUID> listArchivedExecutions(UUID planId) {
+		return dsl.select(FIELD_EXECUTION_ID)
+			.from(TABLE_ARCHIVED_EXECUTION)
+			.where(FIELD_PLAN_ID.eq(planId))
+			.fetch(FIELD_EXECUTION_ID);
+	}
+
+
+	private Optional<UUID> archivedPlan(UUID executionId) {
+		return dsl.select(FIELD_PLAN_ID)
+			.from(TABLE_ARCHIVED_EXECUTION)
+			.where(FIELD_EXECUTION_ID.eq(executionId))
+			.fetchOptional(FIELD_PLAN_ID);
+	}
+
+
+	private Optional<ExecutionArchive> archived(UUID executionId) {
+		if (archiveStore == null) {
+			return Optional.empty();
+		}
+		return archivedPlan(executionId).flatMap(planId -> archiveStore.open(planId, executionId));
+	}
+
+
+	/**
+	 * The archive of an execution, only if it is no longer in the repository. Executions
+	 * still in the repository are never looked up in the archive.
+	 */
+	private Optional<ExecutionArchive> archivedIfRemoved(UUID executionId) {
+		if (archiveStore == null || dsl.fetchExists(TABLE_EXECUTION, FIELD_EXECUTION_ID.eq(executionId))) {
+			return Optional.empty();
+		}
+		return archived(executionId);
 	}
 
 
@@ -311,6 +674,15 @@ public class JooqExecutionRepository implements TestExecutionRepository, AutoClo
 			.fetch(FIELD_ATTACHMENT_ID);
 	}
 
+	@Override
+	public List<UUID> listAttachmentIds(UUID executionID, UUID executionNodeID) {
+		List<UUID> attachmentIds = listAttachmentIds(executionNodeID);
+		if (!attachmentIds.isEmpty()) {
+			return attachmentIds;
+		}
+		return archivedIfRemoved(executionID).map(archive -> archive.attachmentIDs(executionNodeID)).orElse(List.of());
+	}
+
 	public boolean existsAttachment(UUID attachmentID) {
 		return dsl.fetchExists(
 			dsl.selectOne()
@@ -335,4 +707,264 @@ public class JooqExecutionRepository implements TestExecutionRepository, AutoClo
 		return id;
 	}
 
-}
\ No newline at end of file
+
+
+	@Override
+	public Map<UUID, Long> getHistoricalDurations(Collection<UUID> planNodeIDs, int lastExecutions) {
+		if (planNodeIDs.isEmpty()) {
+			return Map.of();
+		}
+		// the latest executions of each plan node are selected by the database, so only
+		// the rows actually averaged are transferred
+		var finished = dsl.select(
+				FIELD_PLAN_NODE_ID, FIELD_STARTED_AT, FIELD_FINISHED_AT,
+				DSL.rowNumber().over(DSL.partitionBy(FIELD_PLAN_NODE_ID).orderBy(FIELD_FINISHED_AT.desc()))
+					.as(DSL.unquotedName("recency")))
+			.from(TABLE_EXECUTION_NODE)
+			.where(FIELD_PLAN_NODE_ID.in(planNodeIDs))
+			.and(FIELD_STARTED_AT.isNotNull())
+			.and(FIELD_FINISHED_AT.isNotNull())
+			.asTable(DSL.unquotedName("finished"));
+		var fPlanNodeId = DSL.field(DSL.unquotedName("finished", "plan_node_id"), UUID.class);
+		var fStartedAt = DSL.field(DSL.unquotedName("finished", "started_at"), LocalDateTime.class);
+		var fFinishedAt = DSL.field(DSL.unquotedName("finished", "finished_at"), LocalDateTime.class);
+		var fRecency = DSL.field(DSL.unquotedName("finished", "recency"), Integer.class);
+		var query = dsl.select(fPlanNodeId, fStartedAt, fFinishedAt)
+			.from(finished)
+			.where(lastExecutions > 0 ? fRecency.le(lastExecutions) : DSL.noCondition());
+		// {sum of durations, number of executions}
+		Map<UUID, long[]> totals = new HashMap<>();
+		try (var records = CursorStreams.stream(dsl, query, fetchSize)) {
+			records.forEach(rec -> {
+				long[] total = totals.computeIfAbsent(rec.value1(), id -> new long[2]);
+				total[0] += Duration.between(rec.value2(), rec.value3()).toMillis();
+				total[1]++;
+			});
+		}
+		Map<UUID, Long> durations = new HashMap<>();
+		totals.forEach((planNodeID, total) -> durations.put(planNodeID, total[0] / total[1]));
+		return durations;
+	}
+
+
+	@Override
+	public List<UUID> listRerunTestCases(UUID executionID) {
+		List<UUID> testCases = selectTestCaseResults(executionID)
+			.and(FIELD_RESULT.in(
+				ExecutionResult.FAILED.value(), ExecutionResult.ERROR.value(), ExecutionResult.UNDEFINED.value()
+			))
+			.fetch(FIELD_QUALIFIED_PLAN_NODE_ID);
+		if (!testCases.isEmpty()) {
+			return testCases;
+		}
+		return archivedIfRemoved(executionID).isEmpty() ? testCases : TestExecutionRepository.super.listRerunTestCases(executionID);
+	}
+
+
+	@Override
+	public Map<UUID, ExecutionResult> getTestCaseResults(UUID executionID) {
+		Map<UUID, ExecutionResult> results = new HashMap<>();
+		selectTestCaseResults(executionID)
+			.and(FIELD_RESULT.isNotNull())
+			.forEach(rec -> results.put(rec.value1(), ExecutionResult.of(rec.value2())));
+		if (results.isEmpty()) {
+			archivedIfRemoved(executionID).ifPresent(archive -> results.putAll(archivedTestCaseResults(archive)));
+		}
+		return results;
+	}
+
+
+	private SelectConditionStep<Record2<UUID, Integer>> selectTestCaseResults(UUID executionID) {
+		return dsl.select(FIELD_QUALIFIED_PLAN_NODE_ID, FIELD_RESULT)
+			.from(TABLE_EXECUTION_NODE)
+			.join(TABLE_PLAN_NODE).on(FIELD_NODE_ID.eq(FIELD_QUALIFIED_PLAN_NODE_ID))
+			.where(DSL.field("execution_node.execution_id", UUID.class).eq(executionID))
+			.and(FIELD_TYPE.eq(NodeType.TEST_CASE.value));
+	}
+
+
+	private Map<UUID, ExecutionResult> archivedTestCaseResults(ExecutionArchive archive) {
+		Map<UUID, ExecutionResult> results = new HashMap<>();
+		archive.nodes().stream()
+			.filter(node -> node.result() != null)
+			.forEach(node -> results.put(node.planNodeID(), node.result()));
+		// the plan nodes are still in the live repository, only their type is needed
+		List<UUID> planNodeIDs = new ArrayList<>(results.keySet());
+		List<UUID> testCases = new ArrayList<>();
+		for (int from = 0; from < planNodeIDs.size(); from += IN_LIST_SIZE) {
+			testCases.addAll(dsl.select(FIELD_NODE_ID)
+				.from(TABLE_PLAN_NODE)
+				.where(FIELD_NODE_ID.in(planNodeIDs.subList(from, Math.min(from + IN_LIST_SIZE, planNodeIDs.size()))))
+				.and(FIELD_TYPE.eq(NodeType.TEST_CASE.value))
+				.fetch(FIELD_NODE_ID));
+		}
+		results.keySet().retainAll(testCases);
+		return results;
+	}
+
+
+	@Override
+	public void saveResourceSnapshot(UUID executionID, ResourceSnapshot snapshot) {
+		// executions with the same resources share the snapshot, so it is only stored
+		// when the resources have changed since any execution still present
+		String snapshotHash = snapshot.resourcesHash();
+		dsl.transaction(configuration -> {
+			DSLContext context = DSL.using(configuration);
+			context.update(TABLE_EXECUTION)
+				.set(FIELD_STEP_PROVIDERS_HASH, snapshot.stepProvidersHash())
+				.set(FIELD_RESOURCE_SNAPSHOT_HASH, snapshotHash)
+				.where(FIELD_EXECUTION_ID.eq(executionID))
+				.execute();
+			if (snapshot.contentHashes().isEmpty()
+				|| context.fetchExists(TABLE_RESOURCE_SNAPSHOT, FIELD_SNAPSHOT_HASH.eq(snapshotHash))) {
+				return;
+			}
+			var batch = context.batch(
+				context.insertInto(TABLE_RESOURCE_SNAPSHOT, FIELD_SNAPSHOT_HASH, FIELD_RESOURCE_PATH, FIELD_CONTENT_HASH)
+					.values((String) null, (String) null, (String) null)
+					.onDuplicateKeyIgnore()
+			);
+			snapshot.contentHashes().forEach((path, hash) -> batch.bind(snapshotHash, path, hash));
+			batch.execute();
+		});
+	}
+
+
+	@Override
+	public Optional<ResourceSnapshot> getResourceSnapshot(UUID executionID) {
+		var stored = dsl.select(FIELD_STEP_PROVIDERS_HASH, FIELD_RESOURCE_SNAPSHOT_HASH)
+			.from(TABLE_EXECUTION)
+			.where(FIELD_EXECUTION_ID.eq(executionID))
+			.and(FIELD_STEP_PROVIDERS_HASH.isNotNull())
+			.fetchOptional();
+		if (stored.isEmpty()) {
+			return Optional.empty();
+		}
+		Map<String, String> contentHashes = new HashMap<>();
+		dsl.select(FIELD_RESOURCE_PATH, FIELD_CONTENT_HASH)
+			.from(TABLE_RESOURCE_SNAPSHOT)
+			.where(FIELD_SNAPSHOT_HASH.eq(stored.get().value2()))
+			.forEach(rec -> contentHashes.put(rec.value1(), rec.value2()));
+		return Optional.of(new ResourceSnapshot(contentHashes, stored.get().value1()));
+	}
+
+
+	@Override
+	public void recordTestCaseResult(
+		UUID projectID,
+		TestPlanNode testCase,
+		ExecutionResult result,
+		long durationMillis,
+		Instant finishedAt
+	) {
+		// The new statistics are computed from the current ones and written with a single
+		// upsert, which only applies if the row has not changed since it was read (every
+		// write increments the execution count). Otherwise, the row is read again and the
+		// upsert retried, so concurrent writers, even from other processes, never lose results.
+		String testCaseKey = TestCaseStats.keyOf(testCase);
+		while (true) {
+			Optional<TestCaseStats> current = fetchTestCaseStats(dsl, projectID, testCaseKey);
+			TestCaseStats updated = current.orElseGet(() -> TestCaseStats.empty(projectID, testCaseKey))
+				.record(testCase.nodeID(), testCase.name(), result, durationMillis, finishedAt);
+			// stored rows have been executed at least once, so zero never matches an existing row
+			int expectedCount = current.map(TestCaseStats::executionCount).orElse(0);
+			Map<Field<?>, Object> values = new LinkedHashMap<>();
+			values.put(FIELD_NAME, updated.name());
+			values.put(FIELD_PLAN_NODE_ID, updated.planNodeID());
+			values.put(FIELD_EXECUTION_COUNT, updated.executionCount());
+			values.put(FIELD_SAMPLE_COUNT, updated.sampleCount());
+			values.put(FIELD_RECENT_RESULTS, updated.recentResults());
+			values.put(FIELD_FLIP_COUNT, updated.flipCount());
+			values.put(FIELD_RECENT_FLIPS, updated.recentFlips());
+			values.put(FIELD_LAST_RESULT, updated.lastResult() != null ? updated.lastResult().value() : null);
+			values.put(FIELD_LAST_EXECUTED_AT, updated.lastExecutedAt() != null
+				? LocalDateTime.ofInstant(updated.lastExecutedAt(), ZoneOffset.UTC) : null);
+			values.put(FIELD_DURATION_EWMA, updated.durationEwma());
+			values.put(FIELD_DURATION_DEVIATION, updated.durationDeviation());
+			values.put(FIELD_DURATION_P95, updated.durationP95());
+			int written = dsl.insertInto(TABLE_TEST_CASE_STATS)
+				.set(FIELD_PROJECT_ID, projectID)
+				.set(FIELD_TEST_CASE_KEY, testCaseKey)
+				.set(values)
+				.onConflict(FIELD_PROJECT_ID, FIELD_TEST_CASE_KEY)
+				.doUpdate()
+				.set(values)
+				.where(FIELD_QUALIFIED_EXECUTION_COUNT.eq(expectedCount))
+				.execute();
+			if (written > 0) {
+				return;
+			}
+		}
+	}
+
+
+	@Override
+	public Optional<TestCaseStats> getTestCaseStats(UUID projectID, String testCaseKey) {
+		return fetchTestCaseStats(dsl, projectID, testCaseKey);
+	}
+
+
+	@Override
+	public Map<String, TestCaseStats> getTestCaseStats(UUID projectID, Collection<String> testCaseKeys) {
+		Map<String, TestCaseStats> stats = new HashMap<>();
+		List<String> keys = List.copyOf(testCaseKeys);
+		for (int from = 0; from < keys.size(); from += IN_LIST_SIZE) {
+			selectTestCaseStats(dsl)
+				.where(FIELD_PROJECT_ID.eq(projectID))
+				.and(FIELD_TEST_CASE_KEY.in(keys.subList(from, Math.min(from + IN_LIST_SIZE, keys.size()))))
+				.fetch(this::toTestCaseStats)
+				.forEach(testCase -> stats.put(testCase.testCaseKey(), testCase));
+		}
+		return stats;
+	}
+
+
+	@Override
+	public List<TestCaseStats> listTestCaseStats(UUID projectID, TestCaseStats.Ranking ranking, int max) {
+		List<SortField<?>> order = switch (ranking) {
+			case FLAKY -> List.of(FIELD_RECENT_FLIPS.desc(), FIELD_TEST_CASE_KEY.asc());
+			case SLOWEST -> List.of(FIELD_DURATION_P95.desc(), FIELD_TEST_CASE_KEY.asc());
+		};
+		var query = selectTestCaseStats(dsl)
+			.where(FIELD_PROJECT_ID.eq(projectID))
+			.and(ranking == TestCaseStats.Ranking.FLAKY ? FIELD_RECENT_FLIPS.gt(0) : DSL.noCondition())
+			.orderBy(order);
+		return (max > 0 ? query.limit(max) : query).fetch(this::toTestCaseStats);
+	}
+
+
+	private Optional<TestCaseStats> fetchTestCaseStats(DSLContext context, UUID projectID, String testCaseKey) {
+		return selectTestCaseStats(context)
+			.where(FIELD_PROJECT_ID.eq(projectID))
+			.and(FIELD_TEST_CASE_KEY.eq(testCaseKey))
+			.fetchOptional(this::toTestCaseStats);
+	}
+
+
+	private SelectJoinStep<Record> selectTestCaseStats(DSLContext context) {
+		return context.select(TEST_CASE_STATS_FIELDS).from(TABLE_TEST_CASE_STATS);
+	}
+
+
+	private TestCaseStats toTestCaseStats(Record rec) {
+		Integer lastResult = rec.get(FIELD_LAST_RESULT);
+		LocalDateTime lastExecutedAt = rec.get(FIELD_LAST_EXECUTED_AT);
+		return new TestCaseStats(
+			rec.get(FIELD_PROJECT_ID),
+			rec.get(FIELD_TEST_CASE_KEY),
+			rec.get(FIELD_NAME),
+			rec.get(FIELD_PLAN_NODE_ID),
+			rec.get(FIELD_EXECUTION_COUNT),
+			rec.get(FIELD_SAMPLE_COUNT),
+			rec.get(FIELD_RECENT_RESULTS),
+			rec.get(FIELD_FLIP_COUNT),
+			rec.get(FIELD_RECENT_FLIPS),
+			lastResult != null ? ExecutionResult.of(lastResult) : null,
+			lastExecutedAt != null ? lastExecutedAt.toInstant(ZoneOffset.UTC) : null,
+			rec.get(FIELD_DURATION_EWMA),
+			rec.get(FIELD_DURATION_DEVIATION),
+			rec.get(FIELD_DURATION_P95)
+		);
+	}
+
+}
@@ -0,0 +1,336 @@
+package org.myjtools.openbbt.persistence.plan;
+
+import org.myjtools.openbbt.core.persistence.TestPlanNodeCriteria;
+import org.myjtools.openbbt.core.persistence.TestPlanNodeCriteria.*;
+import org.myjtools.openbbt.core.testplan.NodeType;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Plans how a {@link TestPlanNodeCriteria} tree is resolved by {@link JooqPlanRepository}.
+ * <p>
+ * The criteria are first normalized (nested conjunctions and disjunctions are flattened,
+ * redundant {@code all()} terms, duplicates and double negations removed, and traversal
+ * constraints over the same anchor node merged). Then, among the top-level conjuncts, a
+ * single hierarchy traversal is chosen to drive the query, while node type and tag
+ * predicates are pushed into that traversal and the rest are kept as plain filters.
+ * <p>
+ * Unbounded descendant traversals anchored at the root node of a plan are resolved with
+ * the {@code PLAN_ID} column instead of a recursive CTE, since every node of an assembled
+ * plan is assigned to it.
+ *
+ * @author Luis Iñesta Gelabert - luiinge@gmail.com
+ */
+public final class CriteriaQueryPlanner {
+
+	public enum Traversal {
+		/** No hierarchy constraint, the filters are evaluated over every node */
+		NONE,
+		/** Direct children of the anchor node */
+		CHILDREN,
+		/** Descendants of the anchor node, resolved with a recursive CTE */
+		DESCENDANTS,
+		/** Descendants of a plan root node, resolved with the plan hierarchy index */
+		PLAN_INDEX,
+		/** Ancestors of the anchor node, resolved with a recursive CTE */
+		ANCESTORS
+	}
+
+
+	/**
+	 * The chosen plan for a criteria tree
+	 * @param criteria the normalized criteria
+	 * @param traversal the traversal driving the query
+	 * @param anchor the anchor node of the traversal, if any
+	 * @param depth the maximum depth of the traversal, or -1 if unbounded
+	 * @param planID the plan whose hierarchy index is used, only for {@link Traversal#PLAN_INDEX}
+	 * @param nodeTypes the allowed node types, or null if not restricted
+	 * @param tags the tags every node must have, pushed into the traversal
+	 * @param filters the remaining conjuncts, evaluated as plain conditions
+	 */
+	public record QueryPlan(
+		TestPlanNodeCriteria criteria,
+		Traversal traversal,
+		UUID anchor,
+		int depth,
+		UUID planID,
+		Set<NodeType> nodeTypes,
+		List<String> tags,
+		List<TestPlanNodeCriteria> filters
+	) {
+
+		/**
+		 * @return the highest node type value allowed by the plan, used to stop the
+		 * recursion below nodes that cannot contain any allowed node (node types never
+		 * decrease from parent to child), or {@link Integer#MAX_VALUE} if not restricted
+		 */
+		public int maxNodeTypeValue() {
+			if (nodeTypes == null) {
+				return Integer.MAX_VALUE;
+			}
+			return nodeTypes.stream().mapToInt(type -> type.value).max().orElse(0);
+		}
+
+
+		public String explain() {
+			StringBuilder explain = new StringBuilder("criteria plan for ").append(describe(criteria));
+			explain.append("\n  traversal: ").append(traversal);
+			switch (traversal) {
+				case NONE -> explain.append(" (full scan)");
+				case CHILDREN -> explain.append(" of ").append(anchor).append(" (parent index)");
+				case PLAN_INDEX -> explain.append(" of ").append(anchor).append(" (plan index, plan ").append(planID).append(")");
+				case DESCENDANTS, ANCESTORS -> {
+					explain.append(" of ").append(anchor).append(" (recursive CTE, ");
+					explain.append(depth < 0 ? "unbounded depth" : "depth " + depth);
+					if (traversal == Traversal.DESCENDANTS && nodeTypes != null) {
+						explain.append(", recursion limited to node types <= ").append(maxNodeTypeValue());
+					}
+					explain.append(")");
+				}
+			}
+			if (nodeTypes != null) {
+				explain.append("\n  node types: ").append(nodeTypes);
+			}
+			if (!tags.isEmpty()) {
+				explain.append("\n  tags: ").append(tags);
+			}
+			filters.forEach(filter -> explain.append("\n  filter: ").append(describe(filter)));
+			return explain.toString();
+		}
+	}
+
+
+	private final Function<UUID, Optional<UUID>> planOfRootNode;
+
+
+	/**
+	 * @param planOfRootNode resolves the plan whose root is the given node, if any
+	 */
+	public CriteriaQueryPlanner(Function<UUID, Optional<UUID>> planOfRootNode) {
+		this.planOfRootNode = planOfRootNode;
+	}
+
+
+	public QueryPlan plan(TestPlanNodeCriteria criteria) {
+		TestPlanNodeCriteria normalized = normalize(criteria);
+		List<TestPlanNodeCriteria> conjuncts = switch (normalized) {
+			case AllCriteria all -> List.of();
+			case AndCriteria and -> List.of(and.conditions());
+			default -> List.of(normalized);
+		};
+
+		TestPlanNodeCriteria driver = chooseTraversal(conjuncts);
+		Set<NodeType> nodeTypes = null;
+		List<String> tags = new ArrayList<>();
+		List<TestPlanNodeCriteria> filters = new ArrayList<>();
+		for (TestPlanNodeCriteria conjunct : conjuncts) {
+			if (conjunct == driver) {
+				continue;
+			}
+			Optional<Set<NodeType>> types = nodeTypesOf(conjunct);
+			if (types.isPresent()) {
+				nodeTypes = nodeTypes == null ? EnumSet.copyOf(types.get()) : intersect(nodeTypes, types.get());
+			} else if (conjunct instanceof HasTagCriteria(String tag)) {
+				tags.add(tag);
+			} else {
+				filters.add(conjunct);
+			}
+		}
+
+		Traversal traversal = Traversal.NONE;
+		UUID anchor = null;
+		int depth = -1;
+		UUID planID = null;
+		if (driver instanceof IsDescendantCriteria(UUID parent, int d)) {
+			anchor = parent;
+			depth = d;
+			if (d == 1) {
+				traversal = Traversal.CHILDREN;
+			} else if (d < 0 && (planID = planOfRootNode.apply(parent).orElse(null)) != null) {
+				traversal = Traversal.PLAN_INDEX;
+			} else {
+				traversal = Traversal.DESCENDANTS;
+			}
+		} else if (driver instanceof IsAscendantCriteria(UUID child, int d)) {
+			anchor = child;
+			depth = d;
+			traversal = Traversal.ANCESTORS;
+		}
+		return new QueryPlan(
+			normalized, traversal, anchor, depth, planID, nodeTypes, List.copyOf(tags), List.copyOf(filters)
+		);
+	}
+
+
+	/**
+	 * Normalizes a criteria tree without changing its meaning
+	 * @param criteria the criteria
+	 * @return the normalized criteria
+	 */
+	public static TestPlanNodeCriteria normalize(TestPlanNodeCriteria criteria) {
+		return switch (criteria) {
+			case AndCriteria and -> {
+				List<TestPlanNodeCriteria> operands = new ArrayList<>();
+				for (TestPlanNodeCriteria condition : and.conditions()) {
+					TestPlanNodeCriteria operand = normalize(condition);
+					if (operand instanceof AndCriteria inner) {
+						operands.addAll(List.of(inner.conditions()));
+					} else if (!(operand instanceof AllCriteria)) {
+						operands.add(operand);
+					}
+				}
+				operands = mergeTraversals(distinct(operands));
+				yield switch (operands.size()) {
+					case 0 -> TestPlanNodeCriteria.all();
+					case 1 -> operands.getFirst();
+					default -> new AndCriteria(operands.toArray(TestPlanNodeCriteria[]::new));
+				};
+			}
+			case OrCriteria or -> {
+				List<TestPlanNodeCriteria> operands = new ArrayList<>();
+				for (TestPlanNodeCriteria condition : or.conditions()) {
+					TestPlanNodeCriteria operand = normalize(condition);
+					if (operand instanceof AllCriteria) {
+						yield operand;
+					} else if (operand instanceof OrCriteria inner) {
+						operands.addAll(List.of(inner.conditions()));
+					} else {
+						operands.add(operand);
+					}
+				}
+				operands = distinct(operands);
+				yield operands.size() == 1 ? operands.getFirst() : new OrCriteria(operands.toArray(TestPlanNodeCriteria[]::new));
+			}
+			case NotCriteria not -> {
+				TestPlanNodeCriteria operand = normalize(not.condition());
+				yield operand instanceof NotCriteria inner ? inner.condition() : new NotCriteria(operand);
+			}
+			default -> criteria;
+		};
+	}
+
+
+	/**
+	 * Human-readable, compact description of a criteria tree, used in the plan explanation
+	 */
+	public static String describe(TestPlanNodeCriteria criteria) {
+		return switch (criteria) {
+			case AllCriteria all -> "all";
+			case HasTagCriteria(String tag) -> "tag(" + tag + ")";
+			case HasPropertyCriteria(String property, String value) ->
+				"property(" + property + (value == null ? "" : "=" + value) + ")";
+			case HasNodeTypeCriteria(NodeType nodeType) -> "type(" + nodeType + ")";
+			case HasFieldCriteria(String field, Object value) -> "field(" + field + "=" + value + ")";
+			case HasValuedFieldCriteria(String field) -> "field(" + field + " is not null)";
+			case IsDescendantCriteria(UUID parent, int depth) -> "descendantOf(" + parent + ", " + depth + ")";
+			case IsAscendantCriteria(UUID child, int depth) -> "ascendantOf(" + child + ", " + depth + ")";
+			case AndCriteria and -> Stream.of(and.conditions())
+				.map(CriteriaQueryPlanner::describe).collect(Collectors.joining(", ", "and(", ")"));
+			case OrCriteria or -> Stream.of(or.conditions())
+				.map(CriteriaQueryPlanner::describe).collect(Collectors.joining(", ", "or(", ")"));
+			case NotCriteria not -> "not(" + describe(not.condition()) + ")";
+		};
+	}
+
+
+	/*
+	 * Direct children are the cheapest traversal, then ancestors (a single chain),
+	 * and finally descendants
+	 */
+	private static TestPlanNodeCriteria chooseTraversal(List<TestPlanNodeCriteria> conjuncts) {
+		TestPlanNodeCriteria chosen = null;
+		int chosenRank = Integer.MAX_VALUE;
+		for (TestPlanNodeCriteria conjunct : conjuncts) {
+			int rank = switch (conjunct) {
+				case IsDescendantCriteria descendant when descendant.depth() == 1 -> 0;
+				case IsAscendantCriteria ascendant -> 1;
+				case IsDescendantCriteria descendant -> 2;
+				default -> Integer.MAX_VALUE;
+			};
+			if (rank < chosenRank) {
+				chosen = conjunct;
+				chosenRank = rank;
+			}
+		}
+		return chosen;
+	}
+
+
+	/*
+	 * A type predicate is either a node type criteria or a disjunction of them
+	 */
+	private static Optional<Set<NodeType>> nodeTypesOf(TestPlanNodeCriteria criteria) {
+		if (criteria instanceof HasNodeTypeCriteria(NodeType nodeType) && nodeType != null) {
+			return Optional.of(EnumSet.of(nodeType));
+		}
+		if (criteria instanceof OrCriteria or && or.conditions().length > 0) {
+			Set<NodeType> types = EnumSet.noneOf(NodeType.class);
+			for (TestPlanNodeCriteria condition : or.conditions()) {
+				if (!(condition instanceof HasNodeTypeCriteria(NodeType nodeType)) || nodeType == null) {
+					return Optional.empty();
+				}
+				types.add(nodeType);
+			}
+			return Optional.of(types);
+		}
+		return Optional.empty();
+	}
+
+
+	private static Set<NodeType> intersect(Set<NodeType> a, Set<NodeType> b) {
+		Set<NodeType> result = EnumSet.noneOf(NodeType.class);
+		result.addAll(a);
+		result.retainAll(b);
+		return result;
+	}
+
+
+	private static List<TestPlanNodeCriteria> distinct(List<TestPlanNodeCriteria> operands) {
+		return new ArrayList<>(new LinkedHashSet<>(operands));
+	}
+
+
+	/*
+	 * Several traversals from the same anchor are merged into the most restrictive one
+	 */
+	private static List<TestPlanNodeCriteria> mergeTraversals(List<TestPlanNodeCriteria> operands) {
+		Map<UUID, Integer> descendantDepths = new LinkedHashMap<>();
+		Map<UUID, Integer> ascendantDepths = new LinkedHashMap<>();
+		List<TestPlanNodeCriteria> result = new ArrayList<>();
+		for (TestPlanNodeCriteria operand : operands) {
+			if (operand instanceof IsDescendantCriteria(UUID parent, int depth)) {
+				if (!descendantDepths.containsKey(parent)) {
+					result.add(operand);
+				}
+				descendantDepths.merge(parent, depth, CriteriaQueryPlanner::mostRestrictiveDepth);
+			} else if (operand instanceof IsAscendantCriteria(UUID child, int depth)) {
+				if (!ascendantDepths.containsKey(child)) {
+					result.add(operand);
+				}
+				ascendantDepths.merge(child, depth, CriteriaQueryPlanner::mostRestrictiveDepth);
+			} else {
+				result.add(operand);
+			}
+		}
+		result.replaceAll(operand -> switch (operand) {
+			case IsDescendantCriteria(UUID parent, int depth) -> new IsDescendantCriteria(parent, descendantDepths.get(parent));
+			case IsAscendantCriteria(UUID child, int depth) -> new IsAscendantCriteria(child, ascendantDepths.get(child));
+			default -> operand;
+		});
+		return result;
+	}
+
+
+	private static int mostRestrictiveDepth(int a, int b) {
+		if (a < 0) {
+			return b;
+		}
+		if (b < 0) {
+			return a;
+		}
+		return Math.min(a, b);
+	}
+
+}
@@ -5,10 +5,14 @@ import org.jooq.Record;
 import org.jooq.impl.DSL;
 import org.jooq.impl.DataSourceConnectionProvider;
 import org.myjtools.openbbt.core.OpenBBTException;
+import org.myjtools.openbbt.core.persistence.Page;
 import org.myjtools.openbbt.core.persistence.TestPlanNodeCriteria;
 import org.myjtools.openbbt.core.persistence.TestPlanRepository;
 import org.myjtools.openbbt.core.testplan.*;
+import org.myjtools.openbbt.core.util.Log;
 import org.myjtools.openbbt.core.util.UUIDGenerator;
+import org.myjtools.openbbt.persistence.ChunkedDeletes;
+import org.myjtools.openbbt.persistence.CursorStreams;
 import org.myjtools.openbbt.persistence.DataSourceProvider;
 import javax.sql.DataSource;
 import java.sql.Connection;
@@ -16,6 +20,8 @@ import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -48,6 +54,7 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 	private static final Field<String> FIELD_DATA_TABLE = DSL.field("data_table", String.class);
 	private static final Field<String> FIELD_DOCUMENT = DSL.field("document", String.class);
 	private static final Field<String> FIELD_DOCUMENT_MIME_TYPE = DSL.field("document_mime_type", String.class);
+	private static final Field<byte[]> FIELD_NODE_ARGUMENTS = DSL.field("node_arguments", byte[].class);
 
 	private static final Field<UUID> FIELD_PLAN_ID = DSL.field("plan_id", UUID.class);
 	private static final Field<Integer> FIELD_VALIDATION_STATUS = DSL.field("validation_status", Integer.class);
@@ -63,8 +70,24 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 	private static final Field<Integer> FIELD_TEST_CASE_COUNT = DSL.field("test_case_count", Integer.class);
 	private static final Field<String> FIELD_SUITES = DSL.field("suites", String.class);
 
+	private static final List<Field<?>> NODE_FIELDS = List.of(
+		FIELD_NODE_ID, FIELD_PARENT_NODE, FIELD_NODE_POSITION,
+		FIELD_TYPE, FIELD_NAME, FIELD_IDENTIFIER, FIELD_LANGUAGE, FIELD_SOURCE,
+		FIELD_KEYWORD, FIELD_DESCRIPTION, FIELD_DISPLAY, FIELD_DATA_TABLE,
+		FIELD_DOCUMENT, FIELD_DOCUMENT_MIME_TYPE, FIELD_NODE_ARGUMENTS,
+		FIELD_VALIDATION_STATUS, FIELD_VALIDATION_MESSAGE, FIELD_HAS_ISSUES,
+		FIELD_TEST_CASE_COUNT
+	);
+	// maximum number of values of the IN lists of the bulk queries
+	private static final int IN_LIST_SIZE = 1000;
+
 	private final DSLContext dsl;
 	private final Connection directConnection;
+	private final Map<UUID, UUID> planRoots = new ConcurrentHashMap<>();
+	private final CriteriaQueryPlanner queryPlanner = new CriteriaQueryPlanner(this::planOfRootNode);
+	private final Log log = Log.of();
+	private int fetchSize = CursorStreams.DEFAULT_FETCH_SIZE;
+	private int deleteChunkSize = ChunkedDeletes.DEFAULT_CHUNK_SIZE;
 
 	public JooqPlanRepository(DataSourceProvider dataSourceProvider) {
 		this(dataSourceProvider.obtainDataSource(), dataSourceProvider.dialect());
@@ -80,6 +103,22 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 		this.directConnection = connection;
 	}
 
+	/**
+	 * Sets the number of rows fetched per round trip by the streaming methods
+	 */
+	public JooqPlanRepository fetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of rows removed by each statement when deleting plans
+	 */
+	public JooqPlanRepository deleteChunkSize(int deleteChunkSize) {
+		this.deleteChunkSize = deleteChunkSize;
+		return this;
+	}
+
 	@Override
 	public void close() {
 		if (directConnection != null) {
@@ -88,27 +127,41 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 	}
 
 	public void clearAllData() {
-		dsl.deleteFrom(TABLE_PLAN_NODE_TAG).execute();
-		dsl.deleteFrom(TABLE_PLAN_NODE_PROPERTY).execute();
-		dsl.deleteFrom(TABLE_PLAN_NODE).execute();
+		try {
+			dsl.deleteFrom(TABLE_PLAN_NODE_TAG).execute();
+			dsl.deleteFrom(TABLE_PLAN_NODE_PROPERTY).execute();
+			dsl.deleteFrom(TABLE_PLAN_NODE).execute();
+		} finally {
+			invalidateCaches();
+		}
 	}
 
 
 	public Optional<TestPlanNode> getNodeData(UUID id) {
-		return dsl.select(
-				FIELD_NODE_ID, FIELD_PARENT_NODE, FIELD_NODE_POSITION,
-				FIELD_TYPE, FIELD_NAME, FIELD_IDENTIFIER, FIELD_LANGUAGE, FIELD_SOURCE,
-				FIELD_KEYWORD, FIELD_DESCRIPTION, FIELD_DISPLAY, FIELD_DATA_TABLE,
-				FIELD_DOCUMENT, FIELD_DOCUMENT_MIME_TYPE,
-				FIELD_VALIDATION_STATUS, FIELD_VALIDATION_MESSAGE, FIELD_HAS_ISSUES,
-				FIELD_TEST_CASE_COUNT
-			)
+		return dsl.select(NODE_FIELDS)
 			.from(TABLE_PLAN_NODE)
 			.where(FIELD_NODE_ID.eq(id))
 			.fetchOptional()
 			.map(this::mapPlanNode);
 	}
 
+
+	@Override
+	public Map<UUID, TestPlanNode> getNodeData(Collection<UUID> ids) {
+		List<TestPlanNode> nodes = new ArrayList<>();
+		for (List<UUID> chunk : inListChunks(ids)) {
+			nodes.addAll(dsl.select(NODE_FIELDS)
+				.from(TABLE_PLAN_NODE)
+				.where(FIELD_NODE_ID.in(chunk))
+				.fetch()
+				.map(this::mapPlanNodeColumns));
+		}
+		fillTagsAndProperties(nodes);
+		Map<UUID, TestPlanNode> nodesByID = new HashMap<>();
+		nodes.forEach(node -> nodesByID.put(node.nodeID(), node));
+		return nodesByID;
+	}
+
 	@Override
 	@SuppressWarnings("unchecked")
 	public <T> void updateNodeField(UUID id, String fieldName, T fieldValue) {
@@ -152,12 +205,16 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 
 
 	public void deleteNode(UUID id) {
-		// first detach from parent if exists
-		getParentNode(id).ifPresent(parent -> detachChildNode(parent, id));
-		// delete node (cascade should handle hierarchy, tags, properties)
-		dsl.deleteFrom(TABLE_PLAN_NODE)
-		   .where(FIELD_NODE_ID.eq(id))
-		   .execute();
+		try {
+			// first detach from parent if exists
+			getParentNode(id).ifPresent(parent -> detachChildNode(parent, id));
+			// delete node (cascade should handle hierarchy, tags, properties)
+			dsl.deleteFrom(TABLE_PLAN_NODE)
+			   .where(FIELD_NODE_ID.eq(id))
+			   .execute();
+		} finally {
+			invalidateCaches();
+		}
 	}
 
 
@@ -203,11 +260,10 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 
 	public Stream<UUID> getNodeChildren(UUID id) {
 		assertExistsNode(id);
-		return dsl.select(FIELD_NODE_ID)
+		return CursorStreams.stream(dsl, dsl.select(FIELD_NODE_ID)
 			.from(TABLE_PLAN_NODE)
 			.where(FIELD_PARENT_NODE.eq(id))
-			.orderBy(FIELD_NODE_POSITION)
-			.fetch().stream()
+			.orderBy(FIELD_NODE_POSITION), fetchSize)
 			.map(record1 -> mapUUID(record1, FIELD_NODE_ID));
 	}
 
@@ -222,6 +278,65 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 	}
 
 
+	@Override
+	public List<TestPlanNode> getNodeChildrenData(UUID id, Page page) {
+		assertExistsNode(id);
+		Condition condition = FIELD_PARENT_NODE.eq(id);
+		if (page.after() != null) {
+			// the page is sought by position, instead of skipping the previous children
+			Integer position = dsl.select(FIELD_NODE_POSITION)
+				.from(TABLE_PLAN_NODE)
+				.where(FIELD_NODE_ID.eq(page.after()))
+				.and(FIELD_PARENT_NODE.eq(id))
+				.fetchOne(FIELD_NODE_POSITION);
+			if (position == null) {
+				return List.of();
+			}
+			condition = condition.and(FIELD_NODE_POSITION.gt(position));
+		}
+		var query = dsl.select(NODE_FIELDS)
+			.from(TABLE_PLAN_NODE)
+			.where(condition)
+			.orderBy(FIELD_NODE_POSITION)
+			.offset(page.offset());
+		List<TestPlanNode> children = (page.max() > 0 ? query.limit(page.max()) : query)
+			.fetch()
+			.map(this::mapPlanNodeColumns);
+		fillTagsAndProperties(children);
+		return children;
+	}
+
+
+	@Override
+	public Map<UUID, Integer> countNodeChildren(Collection<UUID> ids) {
+		Map<UUID, Integer> counts = new HashMap<>();
+		for (List<UUID> chunk : inListChunks(ids)) {
+			dsl.select(FIELD_PARENT_NODE, DSL.count())
+				.from(TABLE_PLAN_NODE)
+				.where(FIELD_PARENT_NODE.in(chunk))
+				.groupBy(FIELD_PARENT_NODE)
+				.fetch()
+				.forEach(rec -> counts.put(rec.value1(), rec.value2()));
+		}
+		return counts;
+	}
+
+
+	@Override
+	public Map<UUID, List<UUID>> getNodeChildren(Collection<UUID> ids) {
+		Map<UUID, List<UUID>> children = new HashMap<>();
+		for (List<UUID> chunk : inListChunks(ids)) {
+			dsl.select(FIELD_PARENT_NODE, FIELD_NODE_ID)
+				.from(TABLE_PLAN_NODE)
+				.where(FIELD_PARENT_NODE.in(chunk))
+				.orderBy(FIELD_PARENT_NODE, FIELD_NODE_POSITION)
+				.fetch()
+				.forEach(rec -> children.computeIfAbsent(rec.value1(), x -> new ArrayList<>()).add(rec.value2()));
+		}
+		return children;
+	}
+
+
 	private static final Table<?> CTE_DESC = DSL.table(DSL.unquotedName("descendants"));
 	private static final Table<?> CTE_ANCS = DSL.table(DSL.unquotedName("ancestors"));
 	private static final Field<UUID> CTE_NID = DSL.field(DSL.unquotedName("nid"), UUID.class);
@@ -229,7 +344,7 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 
 	public Stream<UUID> getNodeDescendants(UUID id) {
 		assertExistsNode(id);
-		return dsl.withRecursive(DSL.unquotedName("descendants"), DSL.unquotedName("nid")).as(
+		return CursorStreams.stream(dsl, dsl.withRecursive(DSL.unquotedName("descendants"), DSL.unquotedName("nid")).as(
 			   DSL.select(FIELD_NODE_ID)
 				   .from(TABLE_PLAN_NODE)
 				   .where(FIELD_PARENT_NODE.eq(id))
@@ -241,8 +356,7 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 			   )
 		   )
 		   .select(CTE_NID)
-		   .from(CTE_DESC)
-		   .fetch().stream()
+		   .from(CTE_DESC), fetchSize)
 		   .map(rec -> rec.get(CTE_NID));
 	}
 
@@ -336,20 +450,24 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 
 
 	public UUID persistNode(TestPlanNode node) {
-		boolean isUpdate = node.nodeID() != null;
-		UUID id;
-		if (isUpdate) {
-			id = node.nodeID();
-			assertExistsNode(id);
-			updateNode(node);
-		} else {
-			id = UUIDGenerator.generateUUID();
-			node.nodeID(id);
-			insertNode(node);
+		try {
+			boolean isUpdate = node.nodeID() != null;
+			UUID id;
+			if (isUpdate) {
+				id = node.nodeID();
+				assertExistsNode(id);
+				updateNode(node);
+			} else {
+				id = UUIDGenerator.generateUUID();
+				node.nodeID(id);
+				insertNode(node);
+			}
+			syncTags(id, node.tags());
+			syncProperties(id, node.properties());
+			return id;
+		} finally {
+			invalidateCaches();
 		}
-		syncTags(id, node.tags());
-		syncProperties(id, node.properties());
-		return id;
 	}
 
 
@@ -366,9 +484,10 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 		   .set(FIELD_KEYWORD, node.keyword())
 		   .set(FIELD_DESCRIPTION, node.description())
 		   .set(FIELD_DISPLAY, node.display())
-		   .set(FIELD_DATA_TABLE, node.dataTable() != null ? node.dataTable().toString() : null)
-		   .set(FIELD_DOCUMENT, node.document() != null ? node.document().content() : null)
-		   .set(FIELD_DOCUMENT_MIME_TYPE, node.document() != null ? node.document().mimeType() : null)
+		   .set(FIELD_DATA_TABLE, (String) null)
+		   .set(FIELD_DOCUMENT, (String) null)
+		   .set(FIELD_DOCUMENT_MIME_TYPE, (String) null)
+		   .set(FIELD_NODE_ARGUMENTS, node.encodedArguments())
 		   .set(FIELD_TEST_CASE_COUNT, (Integer) null)
 		   .execute();
 	}
@@ -384,9 +503,10 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 		   .set(FIELD_KEYWORD, node.keyword())
 		   .set(FIELD_DESCRIPTION, node.description())
 		   .set(FIELD_DISPLAY, node.display())
-		   .set(FIELD_DATA_TABLE, node.dataTable() != null ? node.dataTable().toString() : null)
-		   .set(FIELD_DOCUMENT, node.document() != null ? node.document().content() : null)
-		   .set(FIELD_DOCUMENT_MIME_TYPE, node.document() != null ? node.document().mimeType() : null)
+		   .set(FIELD_DATA_TABLE, (String) null)
+		   .set(FIELD_DOCUMENT, (String) null)
+		   .set(FIELD_DOCUMENT_MIME_TYPE, (String) null)
+		   .set(FIELD_NODE_ARGUMENTS, node.encodedArguments())
 		   .set(FIELD_TEST_CASE_COUNT, node.testCaseCount())
 		   .where(FIELD_NODE_ID.eq(node.nodeID()))
 		   .execute();
@@ -429,18 +549,17 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 
 	@Override
 	public Stream<UUID> searchNodes(TestPlanNodeCriteria criteria) {
-		Condition condition = buildCondition(criteria);
-		return dsl.select(FIELD_NODE_ID).from(TABLE_PLAN_NODE)
+		Condition condition = planCondition(criteria);
+		return CursorStreams.stream(dsl, dsl.select(FIELD_NODE_ID).from(TABLE_PLAN_NODE)
 			.where(condition)
-			.orderBy(FIELD_NODE_ID)
-			.fetch().stream()
+			.orderBy(FIELD_NODE_ID), fetchSize)
 			.map(rec1 -> mapUUID(rec1, FIELD_NODE_ID));
 	}
 
 
 
 	public int countNodes(TestPlanNodeCriteria criteria) {
-		Condition condition = buildCondition(criteria);
+		Condition condition = planCondition(criteria);
 		Integer count = dsl.selectCount().from(TABLE_PLAN_NODE)
 				.where(condition)
 				.fetchOne(0, int.class);
@@ -533,6 +652,98 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 	}
 
 
+	/*
+	 * Resolves the criteria following the plan chosen by the query planner: the driving
+	 * traversal first, then the pushed-down node type and tag predicates, and finally
+	 * the remaining filters.
+	 */
+	private Condition planCondition(TestPlanNodeCriteria criteria) {
+		CriteriaQueryPlanner.QueryPlan plan = queryPlanner.plan(criteria);
+		log.debug("{}", plan::explain);
+		Condition condition = switch (plan.traversal()) {
+			case NONE -> DSL.trueCondition();
+			case CHILDREN -> FIELD_PARENT_NODE.eq(plan.anchor());
+			case PLAN_INDEX -> FIELD_PLAN_ID.eq(plan.planID()).and(FIELD_NODE_ID.ne(plan.anchor()));
+			case DESCENDANTS -> FIELD_NODE_ID.in(
+				selectDescendants(plan.anchor(), plan.depth(), plan.maxNodeTypeValue())
+			);
+			case ANCESTORS -> buildAscendantCondition(plan.anchor(), plan.depth());
+		};
+		if (plan.nodeTypes() != null) {
+			condition = condition.and(FIELD_TYPE.in(plan.nodeTypes().stream().map(type -> type.value).toList()));
+		}
+		for (String tag : plan.tags()) {
+			condition = condition.and(buildCondition(TestPlanNodeCriteria.withTag(tag)));
+		}
+		for (TestPlanNodeCriteria filter : plan.filters()) {
+			condition = condition.and(buildCondition(filter));
+		}
+		return condition;
+	}
+
+
+	/*
+	 * The plan of a node is resolved through its own PLAN_ID only when it is the root
+	 * of a persisted plan; plan hierarchies are not modified once assigned to a plan.
+	 */
+	private Optional<UUID> planOfRootNode(UUID nodeID) {
+		UUID cached = planRoots.get(nodeID);
+		if (cached != null) {
+			return Optional.of(cached);
+		}
+		Optional<UUID> planID = dsl.select(FIELD_PLAN_ID)
+			.from(TABLE_PLAN_NODE)
+			.where(FIELD_NODE_ID.eq(nodeID))
+			.and(FIELD_PLAN_ID.isNotNull())
+			.and(FIELD_NODE_ID.in(DSL.select(FIELD_PLAN_NODE_ROOT).from(TABLE_PLAN)))
+			.fetchOptional(FIELD_PLAN_ID);
+		planID.ifPresent(id -> planRoots.put(nodeID, id));
+		return planID;
+	}
+
+
+	private void invalidateCaches() {
+		planRoots.clear();
+	}
+
+
+	/*
+	 * Recursive descendant query that does not expand nodes whose type is above the
+	 * highest requested type, since node types never decrease from parent to child
+	 * (e.g. looking for test cases there is no need to walk through steps).
+	 */
+	private Select<Record1<UUID>> selectDescendants(UUID parent, int depth, int maxNodeType) {
+		var descendants = DSL.unquotedName("descendants");
+		var descendantsTable = DSL.table(descendants);
+		var dNodeId = DSL.field(DSL.unquotedName("descendants", "nid"), UUID.class);
+		var dDepth = DSL.field(DSL.unquotedName("descendants", "depth"), Integer.class);
+		var dType = DSL.field(DSL.unquotedName("descendants", "ntype"), Integer.class);
+		var nodeId = DSL.field(DSL.unquotedName("plan_node", "node_id"), UUID.class);
+		var parentNode = DSL.field(DSL.unquotedName("plan_node", "parent_node"), UUID.class);
+		var type = DSL.field(DSL.unquotedName("plan_node", "type"), Integer.class);
+		Condition expand = depth < 0 ? DSL.trueCondition() : dDepth.lt(depth);
+		if (maxNodeType < Integer.MAX_VALUE) {
+			expand = expand.and(dType.isNull().or(dType.le(maxNodeType)));
+		}
+		return DSL.withRecursive(
+				descendants, DSL.unquotedName("nid"), DSL.unquotedName("depth"), DSL.unquotedName("ntype")
+			).as(
+				DSL.select(nodeId, DSL.inline(1), type)
+					.from(TABLE_PLAN_NODE)
+					.where(parentNode.eq(parent))
+				.unionAll(
+					DSL.select(nodeId, dDepth.add(1), type)
+						.from(TABLE_PLAN_NODE)
+						.join(descendantsTable)
+						.on(parentNode.eq(dNodeId))
+						.where(expand)
+				)
+			)
+			.select(dNodeId)
+			.from(descendantsTable);
+	}
+
+
 	private Condition buildCondition(TestPlanNodeCriteria criteria) {
 		return switch (criteria) {
 			case TestPlanNodeCriteria.AllCriteria() -> DSL.trueCondition();
@@ -599,6 +810,7 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 			case "description" -> FIELD_DESCRIPTION;
 			case "display" -> FIELD_DISPLAY;
 			case "identifier" -> FIELD_IDENTIFIER;
+			case "hasissues", "has_issues" -> FIELD_HAS_ISSUES;
 			default -> throw new OpenBBTException("Unknown field: {}", fieldName);
 		};
 	}
@@ -679,6 +891,13 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 
 
 	private TestPlanNode mapPlanNode(Record rec) {
+		TestPlanNode node = mapPlanNodeColumns(rec);
+		fillTagsAndProperties(node);
+		return node;
+	}
+
+
+	private TestPlanNode mapPlanNodeColumns(Record rec) {
 		TestPlanNode node = new TestPlanNode();
 		node.nodeID(rec.get(FIELD_NODE_ID));
 		Integer typeValue = rec.get(FIELD_TYPE);
@@ -692,14 +911,21 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 		node.keyword(rec.get(FIELD_KEYWORD));
 		node.description(rec.get(FIELD_DESCRIPTION));
 		node.display(rec.get(FIELD_DISPLAY));
-		String dataTableStr = rec.get(FIELD_DATA_TABLE);
-		if (dataTableStr != null) {
-			node.dataTable(DataTable.fromString(dataTableStr));
-		}
-		String documentContent = rec.get(FIELD_DOCUMENT);
-		String documentMimeType = rec.get(FIELD_DOCUMENT_MIME_TYPE);
-		if (documentContent != null) {
-			node.document(Document.of(documentMimeType, documentContent));
+		byte[] arguments = rec.get(FIELD_NODE_ARGUMENTS);
+		if (arguments != null) {
+			// decoded lazily, only if the node arguments are actually accessed
+			node.encodedArguments(arguments);
+		} else {
+			// rows written before the binary encoding was introduced
+			String dataTableStr = rec.get(FIELD_DATA_TABLE);
+			if (dataTableStr != null) {
+				node.dataTable(DataTable.fromString(dataTableStr));
+			}
+			String documentContent = rec.get(FIELD_DOCUMENT);
+			String documentMimeType = rec.get(FIELD_DOCUMENT_MIME_TYPE);
+			if (documentContent != null) {
+				node.document(Document.of(documentMimeType, documentContent));
+			}
 		}
 		Integer validationStatusValue = rec.get(FIELD_VALIDATION_STATUS);
 		if (validationStatusValue != null) {
@@ -709,7 +935,6 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 		Boolean hasIssues = rec.get(FIELD_HAS_ISSUES);
 		node.hasIssues(Boolean.TRUE.equals(hasIssues));
 		node.testCaseCount(rec.get(FIELD_TEST_CASE_COUNT));
-		fillTagsAndProperties(node);
 		return node;
 	}
 
@@ -731,6 +956,38 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 	}
 
 
+	private void fillTagsAndProperties(List<TestPlanNode> nodes) {
+		Map<UUID, TestPlanNode> nodesByID = new HashMap<>();
+		for (TestPlanNode node : nodes) {
+			node.tags(new HashSet<>());
+			node.properties(new TreeMap<>());
+			nodesByID.put(node.nodeID(), node);
+		}
+		for (List<UUID> chunk : inListChunks(nodesByID.keySet())) {
+			dsl.select(FIELD_PLAN_NODE, FIELD_TAG)
+				.from(TABLE_PLAN_NODE_TAG)
+				.where(FIELD_PLAN_NODE.in(chunk))
+				.fetch()
+				.forEach(rec -> nodesByID.get(rec.get(FIELD_PLAN_NODE)).tags().add(rec.get(FIELD_TAG)));
+			dsl.select(FIELD_PLAN_NODE, FIELD_KEY, FIELD_VALUE)
+				.from(TABLE_PLAN_NODE_PROPERTY)
+				.where(FIELD_PLAN_NODE.in(chunk))
+				.fetch()
+				.forEach(rec -> nodesByID.get(rec.get(FIELD_PLAN_NODE)).properties().put(rec.get(FIELD_KEY), rec.get(FIELD_VALUE)));
+		}
+	}
+
+
+	private static List<List<UUID>> inListChunks(Collection<UUID> ids) {
+		List<UUID> list = List.copyOf(ids);
+		List<List<UUID>> chunks = new ArrayList<>();
+		for (int start = 0; start < list.size(); start += IN_LIST_SIZE) {
+			chunks.add(list.subList(start, Math.min(start + IN_LIST_SIZE, list.size())));
+		}
+		return chunks;
+	}
+
+
 
 
 	private Integer maxNodePosition(UUID planNodeID) {
@@ -749,57 +1006,130 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 		   .set(FIELD_VALIDATION_MESSAGE, message)
 		   .where(FIELD_NODE_ID.eq(nodeId))
 		   .execute();
+		if (status == ValidationStatus.ERROR) {
+			markNodeIssue(nodeId);
+		}
 	}
 
 
 	@Override
 	public void propagatePlanIssues(UUID planId) {
-		// Step 1: initialize HAS_ISSUES from own VALIDATION_STATUS
-		dsl.update(TABLE_PLAN_NODE)
-		   .set(FIELD_HAS_ISSUES, DSL.inline(false))
-		   .where(FIELD_PLAN_ID.eq(planId))
-		   .execute();
-		dsl.update(TABLE_PLAN_NODE)
-		   .set(FIELD_HAS_ISSUES, DSL.inline(true))
-		   .where(FIELD_PLAN_ID.eq(planId))
-		   .and(FIELD_VALIDATION_STATUS.isNotNull())
-		   .and(FIELD_VALIDATION_STATUS.gt(ValidationStatus.OK.value))
-		   .execute();
-		// Step 2: propagate upward — mark all ancestors of problematic nodes
-		var anc = DSL.unquotedName("anc");
-		var ancTable = DSL.table(anc);
-		var pid = DSL.field(DSL.unquotedName("pid"), UUID.class);
-		dsl.update(TABLE_PLAN_NODE)
-		   .set(FIELD_HAS_ISSUES, DSL.inline(true))
-		   .where(FIELD_PLAN_ID.eq(planId))
-		   .and(FIELD_NODE_ID.in(
-			   DSL.withRecursive(anc, DSL.unquotedName("pid")).as(
-				   DSL.select(FIELD_PARENT_NODE)
-					   .from(TABLE_PLAN_NODE)
-					   .where(FIELD_PLAN_ID.eq(planId))
-					   .and(FIELD_HAS_ISSUES.eq(DSL.inline(true)))
-					   .and(FIELD_PARENT_NODE.isNotNull())
-				   .unionAll(
-					   DSL.select(FIELD_PARENT_NODE)
-						   .from(TABLE_PLAN_NODE)
-						   .join(ancTable)
-						   .on(FIELD_NODE_ID.eq(pid))
-						   .where(FIELD_PARENT_NODE.isNotNull())
-				   )
-			   )
-			   .select(pid)
-			   .from(ancTable)
-			   .where(pid.isNotNull())
-		   ))
-		   .execute();
-		// Force HSQLDB to flush committed changes to disk so a subsequent
-		// JVM (e.g. 'openbbt serve') sees the updated HAS_ISSUES values.
+		// Compute the flags in memory from a single read of the plan hierarchy,
+		// and write back only the rows whose flag actually changes
+		record NodeRow(UUID parentId, boolean ownIssue, boolean hasIssues) {}
+		Map<UUID, NodeRow> rows = new HashMap<>();
+		dsl.select(FIELD_NODE_ID, FIELD_PARENT_NODE, FIELD_VALIDATION_STATUS, FIELD_HAS_ISSUES)
+			.from(TABLE_PLAN_NODE)
+			.where(FIELD_PLAN_ID.eq(planId))
+			.forEach(rec -> {
+				Integer status = rec.get(FIELD_VALIDATION_STATUS);
+				rows.put(rec.get(FIELD_NODE_ID), new NodeRow(
+					rec.get(FIELD_PARENT_NODE),
+					status != null && status > ValidationStatus.OK.value,
+					Boolean.TRUE.equals(rec.get(FIELD_HAS_ISSUES))
+				));
+			});
+		Set<UUID> withIssues = new HashSet<>();
+		rows.forEach((nodeID, row) -> {
+			if (row.ownIssue()) {
+				// walk up until reaching a node already visited
+				UUID current = nodeID;
+				while (current != null && rows.containsKey(current) && withIssues.add(current)) {
+					current = rows.get(current).parentId();
+				}
+			}
+		});
+		List<UUID> flagged = new ArrayList<>();
+		List<UUID> cleared = new ArrayList<>();
+		rows.forEach((nodeID, row) -> {
+			boolean hasIssues = withIssues.contains(nodeID);
+			if (hasIssues != row.hasIssues()) {
+				(hasIssues ? flagged : cleared).add(nodeID);
+			}
+		});
+		if (flagged.isEmpty() && cleared.isEmpty()) {
+			return;
+		}
+		var batch = dsl.batch(
+			dsl.update(TABLE_PLAN_NODE)
+			   .set(FIELD_HAS_ISSUES, DSL.param("hasIssues", Boolean.class))
+			   .where(FIELD_NODE_ID.eq(DSL.param("id", UUID.class)))
+		);
+		flagged.forEach(id -> batch.bind(true, id));
+		cleared.forEach(id -> batch.bind(false, id));
+		batch.execute();
+		log.debug("Issue propagation for plan {}: {} nodes flagged, {} cleared", planId, flagged.size(), cleared.size());
+		checkpoint();
+	}
+
+
+	@Override
+	public void markNodeIssue(UUID nodeId) {
+		assertExistsNode(nodeId);
+		// the node and its ancestors up to (excluding) the first one already flagged;
+		// the recursion itself stops there, since the ancestors above are flagged as well
+		var chain = DSL.unquotedName("chain");
+		var chainTable = DSL.table(chain);
+		var cNodeId = DSL.field(DSL.unquotedName("chain", "nid"), UUID.class);
+		var cParent = DSL.field(DSL.unquotedName("chain", "pid"), UUID.class);
+		var pNodeId = DSL.field(DSL.unquotedName("plan_node", "node_id"), UUID.class);
+		var pParent = DSL.field(DSL.unquotedName("plan_node", "parent_node"), UUID.class);
+		var pHasIssues = DSL.field(DSL.unquotedName("plan_node", "has_issues"), Boolean.class);
+		int flagged = dsl.update(TABLE_PLAN_NODE)
+			.set(FIELD_HAS_ISSUES, DSL.inline(true))
+			.where(FIELD_NODE_ID.in(
+				DSL.withRecursive(chain, DSL.unquotedName("nid"), DSL.unquotedName("pid")).as(
+					DSL.select(pNodeId, pParent)
+						.from(TABLE_PLAN_NODE)
+						.where(pNodeId.eq(nodeId))
+						.and(pHasIssues.eq(DSL.inline(false)))
+					.unionAll(
+						DSL.select(pNodeId, pParent)
+							.from(TABLE_PLAN_NODE)
+							.join(chainTable)
+							.on(pNodeId.eq(cParent))
+							.where(pHasIssues.eq(DSL.inline(false)))
+					)
+				)
+				.select(cNodeId)
+				.from(chainTable)
+			))
+			.execute();
+		if (flagged > 0) {
+			checkpoint();
+		}
+	}
+
+
+	/*
+	 * Force HSQLDB to flush committed changes to disk so a subsequent
+	 * JVM (e.g. 'openbbt serve') sees the updated HAS_ISSUES values.
+	 */
+	private void checkpoint() {
 		if (dsl.dialect() == SQLDialect.HSQLDB) {
 			dsl.execute("CHECKPOINT");
 		}
 	}
 
 
+	@Override
+	public PlanTagIndex getTagIndex(UUID planId) {
+		PlanTagIndex.Builder builder = PlanTagIndex.builder();
+		dsl.select(FIELD_NODE_ID)
+			.from(TABLE_PLAN_NODE)
+			.where(FIELD_PLAN_ID.eq(planId))
+			.fetch()
+			.forEach(rec -> builder.addNode(rec.get(FIELD_NODE_ID)));
+		dsl.select(FIELD_PLAN_NODE, FIELD_TAG)
+			.from(TABLE_PLAN_NODE_TAG)
+			.join(TABLE_PLAN_NODE).on(FIELD_PLAN_NODE.eq(FIELD_NODE_ID))
+			.where(FIELD_PLAN_ID.eq(planId))
+			.fetch()
+			.forEach(rec -> builder.addTag(rec.get(FIELD_PLAN_NODE), rec.get(FIELD_TAG)));
+		return builder.build();
+	}
+
+
 	@Override
 	public boolean planHasIssues(UUID planId) {
 		return dsl.fetchExists(
@@ -811,6 +1141,125 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 	}
 
 
+	@Override
+	public List<StepText> getDistinctPlanSteps(UUID planId) {
+		return dsl.selectDistinct(FIELD_NAME, FIELD_LANGUAGE)
+			.from(TABLE_PLAN_NODE)
+			.where(FIELD_PLAN_ID.eq(planId))
+			.and(FIELD_TYPE.eq(NodeType.STEP.value))
+			.fetch(rec -> new StepText(rec.get(FIELD_NAME), rec.get(FIELD_LANGUAGE)));
+	}
+
+
+	@Override
+	public List<UUID> getPlanAggregatorsWithoutSteps(UUID planId) {
+		var child = TABLE_PLAN_NODE.as(DSL.unquotedName("child"));
+		var childParent = DSL.field(DSL.unquotedName("child", "parent_node"), UUID.class);
+		var childType = DSL.field(DSL.unquotedName("child", "type"), Integer.class);
+		var nodeId = DSL.field(DSL.unquotedName("plan_node", "node_id"), UUID.class);
+		return dsl.select(nodeId)
+			.from(TABLE_PLAN_NODE)
+			.where(FIELD_PLAN_ID.eq(planId))
+			.and(FIELD_TYPE.eq(NodeType.STEP_AGGREGATOR.value))
+			.andNotExists(
+				DSL.selectOne()
+					.from(child)
+					.where(childParent.eq(nodeId))
+					.and(childType.in(NodeType.STEP.value, NodeType.VIRTUAL_STEP.value))
+			)
+			.fetch(nodeId);
+	}
+
+
+	@Override
+	public List<UUID> getPlanTestCasesWithoutSteps(UUID planId) {
+		// walk down from every test case of the plan at once, keeping the test case each row comes from
+		var walk = DSL.unquotedName("walk");
+		var walkTable = DSL.table(walk);
+		var wTestCase = DSL.field(DSL.unquotedName("walk", "tc"), UUID.class);
+		var wNodeId = DSL.field(DSL.unquotedName("walk", "nid"), UUID.class);
+		var wType = DSL.field(DSL.unquotedName("walk", "ntype"), Integer.class);
+		var nodeId = DSL.field(DSL.unquotedName("plan_node", "node_id"), UUID.class);
+		var parentNode = DSL.field(DSL.unquotedName("plan_node", "parent_node"), UUID.class);
+		var type = DSL.field(DSL.unquotedName("plan_node", "type"), Integer.class);
+		var testCasesWithSteps = DSL.withRecursive(
+				walk, DSL.unquotedName("tc"), DSL.unquotedName("nid"), DSL.unquotedName("ntype")
+			).as(
+				DSL.select(nodeId, nodeId, type)
+					.from(TABLE_PLAN_NODE)
+					.where(FIELD_PLAN_ID.eq(planId))
+					.and(type.eq(NodeType.TEST_CASE.value))
+				.unionAll(
+					DSL.select(wTestCase, nodeId, type)
+						.from(TABLE_PLAN_NODE)
+						.join(walkTable)
+						.on(parentNode.eq(wNodeId))
+						.where(wType.ne(NodeType.STEP.value))
+				)
+			)
+			.selectDistinct(wTestCase)
+			.from(walkTable)
+			.where(wType.eq(NodeType.STEP.value));
+		return dsl.select(FIELD_NODE_ID)
+			.from(TABLE_PLAN_NODE)
+			.where(FIELD_PLAN_ID.eq(planId))
+			.and(FIELD_TYPE.eq(NodeType.TEST_CASE.value))
+			.and(FIELD_NODE_ID.notIn(testCasesWithSteps))
+			.fetch(FIELD_NODE_ID);
+	}
+
+
+	@Override
+	public void setPlanValidation(UUID planId, Map<UUID, String> nodeErrors, Map<StepText, String> stepErrors) {
+		List<Query> updates = new ArrayList<>(1 + nodeErrors.size() + stepErrors.size());
+		// only rows that are not OK already need to be reset, and rows about to be set
+		// to ERROR are left alone (as long as the exclusion stays a bounded condition)
+		Condition reset = FIELD_PLAN_ID.eq(planId)
+			.and(FIELD_VALIDATION_STATUS.isDistinctFrom(ValidationStatus.OK.value));
+		int errorCount = nodeErrors.size() + stepErrors.size();
+		if (errorCount > 0 && errorCount <= IN_LIST_SIZE) {
+			List<Condition> pendingErrors = new ArrayList<>(1 + stepErrors.size());
+			if (!nodeErrors.isEmpty()) {
+				pendingErrors.add(FIELD_NODE_ID.in(nodeErrors.keySet()));
+			}
+			stepErrors.keySet().forEach(step -> pendingErrors.add(stepCondition(step)));
+			reset = reset.andNot(DSL.or(pendingErrors));
+		}
+		updates.add(dsl.update(TABLE_PLAN_NODE)
+			.set(FIELD_VALIDATION_STATUS, ValidationStatus.OK.value)
+			.set(FIELD_VALIDATION_MESSAGE, (String) null)
+			.where(reset)
+		);
+		nodeErrors.forEach((nodeID, message) -> updates.add(dsl.update(TABLE_PLAN_NODE)
+			.set(FIELD_VALIDATION_STATUS, ValidationStatus.ERROR.value)
+			.set(FIELD_VALIDATION_MESSAGE, message)
+			.where(FIELD_NODE_ID.eq(nodeID))
+			.and(errorChanged(message))
+		));
+		stepErrors.forEach((step, message) -> updates.add(dsl.update(TABLE_PLAN_NODE)
+			.set(FIELD_VALIDATION_STATUS, ValidationStatus.ERROR.value)
+			.set(FIELD_VALIDATION_MESSAGE, message)
+			.where(FIELD_PLAN_ID.eq(planId))
+			.and(stepCondition(step))
+			.and(errorChanged(message))
+		));
+		dsl.batch(updates).execute();
+	}
+
+
+	private static Condition stepCondition(StepText step) {
+		return FIELD_TYPE.eq(NodeType.STEP.value)
+			.and(FIELD_NAME.isNotDistinctFrom(step.name()))
+			.and(FIELD_LANGUAGE.isNotDistinctFrom(step.language()));
+	}
+
+
+	private static Condition errorChanged(String message) {
+		return FIELD_VALIDATION_STATUS.isDistinctFrom(ValidationStatus.ERROR.value)
+			.or(FIELD_VALIDATION_MESSAGE.isDistinctFrom(message));
+	}
+
+
 	@Override
 	public void assignPlanToNodes(UUID planId, UUID rootNodeId) {
 		var allNodes = DSL.unquotedName("all_nodes");
@@ -834,19 +1283,44 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 			   .from(allNodesTable)
 		   ))
 		   .execute();
+		invalidateCaches();
 	}
 
 
 	@Override
 	public void deletePlan(UUID planId) {
-		// Deleting the plan record is enough: the schema cascades handle everything.
-		// - EXECUTION_PLAN_FK ON DELETE CASCADE → removes executions, execution_nodes, execution_attachments
-		// - PLAN_NODE_PLAN_FK ON DELETE SET NULL → clears plan_id on plan_nodes
-		// - PLAN_PLAN_NODE_FK ON DELETE CASCADE → removes root plan_node, which cascades
-		//   via fk_plan_node_parent to all children, tags and properties.
-		dsl.deleteFrom(TABLE_PLAN)
-		   .where(FIELD_PLAN_ID.eq(planId))
-		   .execute();
+		deletePlan(planId, deleted -> { });
+	}
+
+
+	@Override
+	public void deletePlan(UUID planId, IntConsumer onRowsDeleted) {
+		try {
+			// Deleting the plan record alone would cascade to the whole node hierarchy in a
+			// single statement, so nodes are deleted beforehand in bounded chunks, deepest node
+			// types first (a child is never of a lower type than its parent) so that each chunk
+			// only cascades to its own tags, properties and execution nodes.
+			List<NodeType> types = Stream.of(NodeType.values())
+				.sorted(Comparator.comparingInt((NodeType type) -> type.value).reversed())
+				.toList();
+			for (NodeType type : types) {
+				ChunkedDeletes.delete(
+					dsl, TABLE_PLAN_NODE, FIELD_NODE_ID,
+					FIELD_PLAN_ID.eq(planId).and(FIELD_TYPE.eq(type.value)),
+					deleteChunkSize, onRowsDeleted
+				);
+			}
+			// Deleting the root node already cascades to the plan record; this removes plans
+			// whose nodes were never assigned, relying on the cascades as before:
+			// - EXECUTION_PLAN_FK ON DELETE CASCADE → removes executions, execution_nodes, execution_attachments
+			// - PLAN_PLAN_NODE_FK ON DELETE CASCADE → removes root plan_node, which cascades
+			//   via fk_plan_node_parent to all children, tags and properties.
+			onRowsDeleted.accept(dsl.deleteFrom(TABLE_PLAN)
+			   .where(FIELD_PLAN_ID.eq(planId))
+			   .execute());
+		} finally {
+			invalidateCaches();
+		}
 	}
 
 
@@ -913,28 +1387,52 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 
 
 	@Override
-	public void assignTestCaseCountsToNodes(UUID planId) {
+	public int assignTestCaseCountsToNodes(UUID planId) {
 		record NodeRow(UUID nodeId, UUID parentId, int type) {}
 
-		List<NodeRow> rows = dsl.select(FIELD_NODE_ID, FIELD_PARENT_NODE, FIELD_TYPE)
+		Map<UUID, NodeRow> rows = new HashMap<>();
+		Map<UUID, List<UUID>> childrenMap = new HashMap<>();
+		dsl.select(FIELD_NODE_ID, FIELD_PARENT_NODE, FIELD_TYPE)
 			.from(TABLE_PLAN_NODE)
 			.where(FIELD_PLAN_ID.eq(planId))
-			.fetch(r -> new NodeRow(r.get(FIELD_NODE_ID), r.get(FIELD_PARENT_NODE), r.get(FIELD_TYPE)));
-
-		Map<UUID, List<UUID>> childrenMap = new HashMap<>();
-		Map<UUID, Integer> typeMap = new HashMap<>();
-		for (var row : rows) {
-			typeMap.put(row.nodeId(), row.type());
-			childrenMap.computeIfAbsent(row.nodeId(), k -> new ArrayList<>());
-			if (row.parentId() != null) {
-				childrenMap.computeIfAbsent(row.parentId(), k -> new ArrayList<>()).add(row.nodeId());
+			.forEach(r -> {
+				var row = new NodeRow(r.get(FIELD_NODE_ID), r.get(FIELD_PARENT_NODE), r.get(FIELD_TYPE));
+				rows.put(row.nodeId(), row);
+				if (row.parentId() != null) {
+					childrenMap.computeIfAbsent(row.parentId(), k -> new ArrayList<>()).add(row.nodeId());
+				}
+			});
+
+		// pre-order walk from the plan roots, not descending into test cases;
+		// visiting it backwards yields every child before its parent
+		List<UUID> preOrder = new ArrayList<>(rows.size());
+		Deque<UUID> pending = new ArrayDeque<>();
+		rows.values().stream()
+			.filter(row -> row.parentId() == null || !rows.containsKey(row.parentId()))
+			.forEach(row -> pending.push(row.nodeId()));
+		while (!pending.isEmpty()) {
+			UUID nodeId = pending.pop();
+			preOrder.add(nodeId);
+			if (rows.get(nodeId).type() != NodeType.TEST_CASE.value) {
+				childrenMap.getOrDefault(nodeId, List.of()).forEach(pending::push);
 			}
 		}
 
 		Map<UUID, Integer> countMap = new HashMap<>();
-		for (var entry : typeMap.entrySet()) {
-			if (entry.getValue() != NodeType.TEST_CASE.value) {
-				countMap.put(entry.getKey(), countDescendantTestCases(entry.getKey(), childrenMap, typeMap));
+		int total = 0;
+		for (int i = preOrder.size() - 1; i >= 0; i--) {
+			NodeRow row = rows.get(preOrder.get(i));
+			int count;
+			if (row.type() == NodeType.TEST_CASE.value) {
+				count = 1;
+			} else {
+				count = countMap.getOrDefault(row.nodeId(), 0);
+				countMap.put(row.nodeId(), count);
+			}
+			if (row.parentId() != null && rows.containsKey(row.parentId())) {
+				countMap.merge(row.parentId(), count, Integer::sum);
+			} else {
+				total += count;
 			}
 		}
 
@@ -947,19 +1445,11 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 			countMap.forEach((id, count) -> batch.bind(count, id));
 			batch.execute();
 		}
-	}
-
-	private int countDescendantTestCases(UUID nodeId, Map<UUID, List<UUID>> childrenMap, Map<UUID, Integer> typeMap) {
-		int count = 0;
-		for (UUID child : childrenMap.getOrDefault(nodeId, List.of())) {
-			Integer childType = typeMap.get(child);
-			if (childType != null && childType == NodeType.TEST_CASE.value) {
-				count++;
-			} else {
-				count += countDescendantTestCases(child, childrenMap, typeMap);
-			}
-		}
-		return count;
+		dsl.update(TABLE_PLAN)
+			.set(FIELD_TEST_CASE_COUNT, total)
+			.where(FIELD_PLAN_ID.eq(planId))
+			.execute();
+		return total;
 	}
 
 
@@ -978,6 +1468,36 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 
 	@Override
 	public List<TestPlan> listPlans(String organization, String project, int offset, int max) {
+		return listPlans(organization, project, false, Page.of(offset, max));
+	}
+
+	@Override
+	public List<TestPlan> listPlans(String organization, String project, int offset, int max, boolean withExecutions) {
+		return listPlans(organization, project, withExecutions, Page.of(offset, max));
+	}
+
+	@Override
+	public List<TestPlan> listPlans(String organization, String project, boolean withExecutions, Page page) {
+		Condition condition = FIELD_ORGANIZATION_NAME.eq(organization).and(FIELD_PROJECT_NAME.eq(project));
+		if (withExecutions) {
+			condition = condition.and(DSL.exists(
+				DSL.selectOne()
+					.from(DSL.table("execution"))
+					.where(DSL.field("plan_id", UUID.class).eq(DSL.field("plan.plan_id", UUID.class)))
+			));
+		}
+		if (page.after() != null) {
+			// the page is sought by creation date, instead of skipping the previous plans
+			Optional<LocalDateTime> createdAt = dsl.select(FIELD_CREATED_AT)
+				.from(TABLE_PLAN)
+				.where(FIELD_PLAN_ID.eq(page.after()))
+				.fetchOptional(FIELD_CREATED_AT);
+			if (createdAt.isEmpty()) {
+				return List.of();
+			}
+			condition = condition.and(FIELD_CREATED_AT.lt(createdAt.get())
+				.or(FIELD_CREATED_AT.eq(createdAt.get()).and(FIELD_PLAN_ID.lt(page.after()))));
+		}
 		var query = dsl.select(
 				FIELD_PLAN_ID, FIELD_PROJECT_ID, FIELD_CREATED_AT,
 				FIELD_RESOURCE_SET_HASH, FIELD_CONFIGURATION_HASH, FIELD_PLAN_NODE_ROOT,
@@ -985,36 +1505,28 @@ public class JooqPlanRepository implements TestPlanRepository, AutoCloseable {
 			)
 			.from(TABLE_PLAN)
 			.join(TABLE_PROJECT).using(FIELD_PROJECT_ID)
-			.where(FIELD_ORGANIZATION_NAME.eq(organization))
-			.and(FIELD_PROJECT_NAME.eq(project))
-			.orderBy(FIELD_CREATED_AT.desc())
-			.offset(offset);
-		return (max > 0 ? query.limit(max) : query).fetch().map(this::mapPlan);
+			.where(condition)
+			.orderBy(FIELD_CREATED_AT.desc(), FIELD_PLAN_ID.desc())
+			.offset(page.offset());
+		return (page.max() > 0 ? query.limit(page.max()) : query).fetch().map(this::mapPlan);
 	}
 
 	@Override
-	public List<TestPlan> listPlans(String organization, String project, int offset, int max, boolean withExecutions) {
-		if (!withExecutions) {
-			return listPlans(organization, project, offset, max);
-		}
-		var existsExecution = DSL.exists(
-			DSL.selectOne()
-				.from(DSL.table("execution"))
-				.where(DSL.field("plan_id", UUID.class).eq(DSL.field("plan.plan_id", UUID.class)))
-		);
-		var query = dsl.select(
+	public List<TestPlan> listUnexecutedPlans() {
+		return dsl.select(
 				FIELD_PLAN_ID, FIELD_PROJECT_ID, FIELD_CREATED_AT,
 				FIELD_RESOURCE_SET_HASH, FIELD_CONFIGURATION_HASH, FIELD_PLAN_NODE_ROOT,
 				FIELD_TEST_CASE_COUNT, FIELD_SUITES
 			)
 			.from(TABLE_PLAN)
-			.join(TABLE_PROJECT).using(FIELD_PROJECT_ID)
-			.where(FIELD_ORGANIZATION_NAME.eq(organization))
-			.and(FIELD_PROJECT_NAME.eq(project))
-			.and(existsExecution)
+			.whereNotExists(
+				DSL.selectOne()
+					.from(DSL.table("execution"))
+					.where(DSL.field("execution.plan_id", UUID.class).eq(DSL.field("plan.plan_id", UUID.class)))
+			)
 			.orderBy(FIELD_CREATED_AT.desc())
-			.offset(offset);
-		return (max > 0 ? query.limit(max) : query).fetch().map(this::mapPlan);
+			.fetch()
+			.map(this::mapPlan);
 	}
 
 	@Override
@@ -0,0 +1,3 @@
+-- Compact binary encoding of node arguments (data tables and documents).
+-- Legacy DATA_TABLE / DOCUMENT columns are kept so that existing rows can still be read.
+ALTER TABLE PLAN_NODE ADD COLUMN NODE_ARGUMENTS BLOB NULL;
@@ -0,0 +1,24 @@
+-- Execution history aggregated per test case, updated every time a test case finishes.
+-- Test cases are identified by a stable key within the project, so the history survives
+-- rebuilding the plan.
+CREATE TABLE TEST_CASE_STATS (
+    PROJECT_ID UUID NOT NULL,
+    TEST_CASE_KEY VARCHAR(100) NOT NULL,
+    NAME VARCHAR(500) NULL,
+    PLAN_NODE_ID UUID NULL,
+    EXECUTION_COUNT INTEGER NOT NULL,
+    SAMPLE_COUNT INTEGER NOT NULL,
+    RECENT_RESULTS BIGINT NOT NULL,
+    FLIP_COUNT INTEGER NOT NULL,
+    RECENT_FLIPS INTEGER NOT NULL,
+    LAST_RESULT INTEGER NULL,
+    LAST_EXECUTED_AT TIMESTAMP NULL,
+    DURATION_EWMA DOUBLE PRECISION NOT NULL,
+    DURATION_DEVIATION DOUBLE PRECISION NOT NULL,
+    DURATION_P95 DOUBLE PRECISION NOT NULL,
+    CONSTRAINT TEST_CASE_STATS_PK PRIMARY KEY (PROJECT_ID, TEST_CASE_KEY),
+    CONSTRAINT TEST_CASE_STATS_PROJECT_FK FOREIGN KEY (PROJECT_ID) REFERENCES PROJECT(PROJECT_ID) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_test_case_stats_flips ON TEST_CASE_STATS(PROJECT_ID, RECENT_FLIPS);
+CREATE INDEX idx_test_case_stats_p95 ON TEST_CASE_STATS(PROJECT_ID, DURATION_P95);
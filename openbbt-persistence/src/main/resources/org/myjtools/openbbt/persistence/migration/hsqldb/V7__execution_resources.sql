@@ -0,0 +1,16 @@
+-- Content hash of every resource at the time of an execution, along with a hash of the
+-- step provider versions, used to select the test cases affected by later changes.
+-- Resource snapshots are stored once per distinct set of resources and shared by every
+-- execution taken with the same resources.
+CREATE TABLE RESOURCE_SNAPSHOT (
+    SNAPSHOT_HASH VARCHAR(100) NOT NULL,
+    RESOURCE_PATH VARCHAR(500) NOT NULL,
+    CONTENT_HASH VARCHAR(100) NOT NULL,
+    CONSTRAINT RESOURCE_SNAPSHOT_PK PRIMARY KEY (SNAPSHOT_HASH, RESOURCE_PATH)
+);
+
+ALTER TABLE EXECUTION ADD COLUMN STEP_PROVIDERS_HASH VARCHAR(100) NULL;
+
+ALTER TABLE EXECUTION ADD COLUMN RESOURCE_SNAPSHOT_HASH VARCHAR(100) NULL;
+
+CREATE INDEX idx_execution_resource_snapshot_hash ON EXECUTION(RESOURCE_SNAPSHOT_HASH);
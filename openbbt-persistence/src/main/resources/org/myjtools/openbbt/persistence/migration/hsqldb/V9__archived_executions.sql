@@ -0,0 +1,10 @@
+-- Plan of every archived execution, used to locate the archive of an execution without
+-- scanning the archive directory. The rows are removed along with the plan.
+CREATE TABLE ARCHIVED_EXECUTION (
+    EXECUTION_ID UUID NOT NULL,
+    PLAN_ID UUID NOT NULL,
+    CONSTRAINT ARCHIVED_EXECUTION_PK PRIMARY KEY (EXECUTION_ID),
+    CONSTRAINT ARCHIVED_EXECUTION_PLAN_FK FOREIGN KEY (PLAN_ID) REFERENCES PLAN(PLAN_ID) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_archived_execution_plan_id ON ARCHIVED_EXECUTION(PLAN_ID);
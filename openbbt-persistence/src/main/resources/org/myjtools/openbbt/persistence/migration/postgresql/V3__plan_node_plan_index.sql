@@ -0,0 +1,3 @@
+-- Lets the criteria query planner resolve descendants of a plan root by plan instead of
+-- walking the hierarchy with a recursive query.
+CREATE INDEX idx_plan_node_plan ON PLAN_NODE(PLAN_ID);
@@ -0,0 +1,6 @@
+-- Indexes the foreign key columns used by the chunked deletion of plans and executions,
+-- so that deleting a chunk of rows (and the cascades it triggers) does not scan whole tables.
+CREATE INDEX idx_execution_plan ON EXECUTION(PLAN_ID);
+CREATE INDEX idx_execution_node_plan_node ON EXECUTION_NODE(PLAN_NODE_ID);
+CREATE INDEX idx_execution_attachment_execution ON EXECUTION_ATTACHMENT(EXECUTION_ID);
+CREATE INDEX idx_execution_attachment_node ON EXECUTION_ATTACHMENT(EXECUTION_NODE_ID);
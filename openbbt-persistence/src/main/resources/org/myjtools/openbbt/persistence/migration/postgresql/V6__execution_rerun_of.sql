@@ -0,0 +1,6 @@
+-- Links an execution that re-runs the failed test cases of a previous execution to it.
+-- There is no foreign key, since the original execution may have been archived and
+-- removed from this table.
+ALTER TABLE EXECUTION ADD COLUMN RERUN_OF UUID NULL;
+
+CREATE INDEX idx_execution_rerun_of ON EXECUTION(RERUN_OF);
@@ -0,0 +1,22 @@
+-- Content-addressed attachment store: every distinct payload is stored once as a
+-- compressed blob, and each attachment of an execution node references its blob.
+-- References have no foreign key to the execution, since they must outlive archived
+-- executions until the attachments are deleted explicitly.
+CREATE TABLE ATTACHMENT_BLOB (
+    CONTENT_HASH VARCHAR(100) NOT NULL,
+    CONTENT_SIZE BIGINT NOT NULL,
+    STORED_SIZE BIGINT NOT NULL,
+    CONSTRAINT ATTACHMENT_BLOB_PK PRIMARY KEY (CONTENT_HASH)
+);
+
+CREATE TABLE ATTACHMENT_REFERENCE (
+    EXECUTION_ID UUID NOT NULL,
+    EXECUTION_NODE_ID UUID NOT NULL,
+    ATTACHMENT_ID UUID NOT NULL,
+    CONTENT_HASH VARCHAR(100) NOT NULL,
+    CONTENT_TYPE VARCHAR(255) NOT NULL,
+    CONSTRAINT ATTACHMENT_REFERENCE_PK PRIMARY KEY (EXECUTION_ID, EXECUTION_NODE_ID, ATTACHMENT_ID),
+    CONSTRAINT ATTACHMENT_REFERENCE_BLOB_FK FOREIGN KEY (CONTENT_HASH) REFERENCES ATTACHMENT_BLOB(CONTENT_HASH)
+);
+
+CREATE INDEX idx_attachment_reference_hash ON ATTACHMENT_REFERENCE(CONTENT_HASH);
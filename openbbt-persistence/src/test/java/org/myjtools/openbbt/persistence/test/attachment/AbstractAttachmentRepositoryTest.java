@@ -2,8 +2,14 @@ package org.myjtools.openbbt.persistence.test.attachment;
 
 import org.junit.jupiter.api.Test;
 import org.myjtools.openbbt.core.persistence.AttachmentRepository;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.util.List;
 import java.util.Optional;
+import java.util.Random;
 import java.util.UUID;
 import java.util.stream.Stream;
 import static org.junit.jupiter.api.Assertions.*;
@@ -199,6 +205,157 @@ abstract class AbstractAttachmentRepositoryTest {
 		assertEquals(1, countB);
 	}
 
+	// ── streaming content ──────────────────────────────────────────────────────
+
+	@Test
+	void storeAttachment_fromInputStream_retrievesSameContent() {
+		UUID executionID = UUID.randomUUID();
+		UUID nodeID = UUID.randomUUID();
+		UUID attachmentID = UUID.randomUUID();
+		byte[] content = new byte[100_000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i % 251);
+		}
+
+		repository().storeAttachment(executionID, nodeID, attachmentID, new ByteArrayInputStream(content), "application/pdf");
+
+		Optional<AttachmentRepository.Attachment> result = repository().retrieveAttachment(executionID, nodeID, attachmentID);
+		assertTrue(result.isPresent());
+		assertArrayEquals(content, result.get().bytes());
+		assertEquals("application/pdf", result.get().contentType());
+	}
+
+	@Test
+	void storeAttachment_fromChannel_retrievesSameContent() {
+		UUID executionID = UUID.randomUUID();
+		UUID nodeID = UUID.randomUUID();
+		UUID attachmentID = UUID.randomUUID();
+		byte[] content = "from a channel".getBytes();
+
+		repository().storeAttachment(
+			executionID, nodeID, attachmentID, Channels.newChannel(new ByteArrayInputStream(content)), "text/plain"
+		);
+
+		Optional<AttachmentRepository.Attachment> result = repository().retrieveAttachment(executionID, nodeID, attachmentID);
+		assertTrue(result.isPresent());
+		assertArrayEquals(content, result.get().bytes());
+	}
+
+	@Test
+	void openAttachment_existingAttachment_opensContentOnDemand() throws IOException {
+		UUID executionID = UUID.randomUUID();
+		UUID nodeID = UUID.randomUUID();
+		UUID attachmentID = UUID.randomUUID();
+		byte[] content = "open me".getBytes();
+
+		repository().storeAttachment(executionID, nodeID, attachmentID, content, "text/plain");
+
+		Optional<AttachmentRepository.AttachmentContent> result = repository().openAttachment(executionID, nodeID, attachmentID);
+		assertTrue(result.isPresent());
+		assertEquals(content.length, result.get().info().size());
+		assertEquals("text/plain", result.get().info().contentType());
+		try (InputStream input = result.get().open()) {
+			assertArrayEquals(content, input.readAllBytes());
+		}
+		// each call opens a new stream
+		assertArrayEquals(content, result.get().readAllBytes());
+	}
+
+	@Test
+	void openAttachment_missingAttachment_returnsEmpty() {
+		assertTrue(repository().openAttachment(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()).isEmpty());
+		assertTrue(repository().getAttachmentInfo(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()).isEmpty());
+	}
+
+	@Test
+	void listAttachments_returnsSizeAndContentType() {
+		UUID executionID = UUID.randomUUID();
+		UUID nodeID = UUID.randomUUID();
+		UUID id1 = UUID.randomUUID();
+		UUID id2 = UUID.randomUUID();
+
+		repository().storeAttachment(executionID, nodeID, id1, "first".getBytes(), "text/plain");
+		repository().storeAttachment(executionID, nodeID, id2, new ByteArrayInputStream(new byte[2048]), "image/png");
+		repository().storeAttachment(executionID, UUID.randomUUID(), UUID.randomUUID(), "other".getBytes(), "text/plain");
+
+		List<AttachmentRepository.AttachmentInfo> infos;
+		try (Stream<AttachmentRepository.AttachmentInfo> stream = repository().listAttachments(executionID, nodeID)) {
+			infos = stream.toList();
+		}
+
+		assertEquals(2, infos.size());
+		assertTrue(infos.contains(new AttachmentRepository.AttachmentInfo(id1, 5, "text/plain")));
+		assertTrue(infos.contains(new AttachmentRepository.AttachmentInfo(id2, 2048, "image/png")));
+	}
+
+	@Test
+	void listAttachments_emptyNode_returnsEmptyStream() {
+		try (Stream<AttachmentRepository.AttachmentInfo> stream = repository().listAttachments(UUID.randomUUID(), UUID.randomUUID())) {
+			assertEquals(0, stream.count());
+		}
+	}
+
+	// ── readAttachmentChunk ────────────────────────────────────────────────────
+
+	@Test
+	void readAttachmentChunk_returnsTheRequestedRange() {
+		UUID executionID = UUID.randomUUID();
+		UUID nodeID = UUID.randomUUID();
+		UUID attachmentID = UUID.randomUUID();
+
+		repository().storeAttachment(executionID, nodeID, attachmentID, "0123456789".getBytes(), "text/plain");
+
+		AttachmentRepository.AttachmentChunk chunk = repository()
+			.readAttachmentChunk(executionID, nodeID, attachmentID, 3, 4).orElseThrow();
+		assertArrayEquals("3456".getBytes(), chunk.bytes());
+		assertEquals(3, chunk.offset());
+		assertEquals(new AttachmentRepository.AttachmentInfo(attachmentID, 10, "text/plain"), chunk.info());
+		assertFalse(chunk.isLast());
+	}
+
+	@Test
+	void readAttachmentChunk_atTheEnd_returnsTheRemainingBytes() {
+		UUID executionID = UUID.randomUUID();
+		UUID nodeID = UUID.randomUUID();
+		UUID attachmentID = UUID.randomUUID();
+
+		repository().storeAttachment(executionID, nodeID, attachmentID, "0123456789".getBytes(), "text/plain");
+
+		AttachmentRepository.AttachmentChunk chunk = repository()
+			.readAttachmentChunk(executionID, nodeID, attachmentID, 8, 100).orElseThrow();
+		assertArrayEquals("89".getBytes(), chunk.bytes());
+		assertTrue(chunk.isLast());
+
+		AttachmentRepository.AttachmentChunk beyond = repository()
+			.readAttachmentChunk(executionID, nodeID, attachmentID, 50, 100).orElseThrow();
+		assertEquals(0, beyond.bytes().length);
+		assertTrue(beyond.isLast());
+	}
+
+	@Test
+	void readAttachmentChunk_consecutiveChunks_returnTheWholeContent() throws IOException {
+		UUID executionID = UUID.randomUUID();
+		UUID nodeID = UUID.randomUUID();
+		UUID attachmentID = UUID.randomUUID();
+		byte[] content = new byte[10_000];
+		new Random(42).nextBytes(content);
+
+		repository().storeAttachment(executionID, nodeID, attachmentID, content, "application/octet-stream");
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		AttachmentRepository.AttachmentChunk chunk;
+		do {
+			chunk = repository().readAttachmentChunk(executionID, nodeID, attachmentID, output.size(), 3000).orElseThrow();
+			output.write(chunk.bytes());
+		} while (!chunk.isLast());
+		assertArrayEquals(content, output.toByteArray());
+	}
+
+	@Test
+	void readAttachmentChunk_nonExisting_returnsEmpty() {
+		assertTrue(repository().readAttachmentChunk(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), 0, 10).isEmpty());
+	}
+
 	// ── deleteAttachment ───────────────────────────────────────────────────────
 
 	@Test
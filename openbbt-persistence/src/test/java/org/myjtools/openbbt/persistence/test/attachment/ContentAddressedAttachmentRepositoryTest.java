@@ -0,0 +1,107 @@
+package org.myjtools.openbbt.persistence.test.attachment;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.myjtools.openbbt.core.persistence.AttachmentRepository;
+import org.myjtools.openbbt.persistence.DataSourceProvider;
+import org.myjtools.openbbt.persistence.attachment.ContentAddressedAttachmentRepository;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentAddressedAttachmentRepositoryTest extends AbstractAttachmentRepositoryTest {
+
+	@TempDir
+	private Path tempDir;
+
+	private DataSource dataSource;
+	private ContentAddressedAttachmentRepository repository;
+
+	@BeforeEach
+	void setUp() {
+		DataSourceProvider provider = DataSourceProvider.hsqldb(tempDir.resolve("db").resolve("openbbt.db"));
+		dataSource = provider.obtainDataSource();
+		repository = new ContentAddressedAttachmentRepository(tempDir.resolve("attachments"), dataSource, provider.dialect());
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (dataSource instanceof HikariDataSource hikari) {
+			hikari.close();
+		}
+	}
+
+	@Override
+	protected AttachmentRepository repository() {
+		return repository;
+	}
+
+	@Test
+	void identicalContent_isStoredOnce() throws IOException {
+		UUID executionID = UUID.randomUUID();
+		byte[] content = "java.lang.IllegalStateException: the same stack trace\n".repeat(100).getBytes();
+
+		repository.storeAttachment(executionID, UUID.randomUUID(), UUID.randomUUID(), content, "text/plain");
+		repository.storeAttachment(executionID, UUID.randomUUID(), UUID.randomUUID(), content, "text/plain");
+		repository.storeAttachment(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), content, "text/plain");
+
+		List<Path> blobs = blobFiles();
+		assertEquals(1, blobs.size());
+		assertTrue(Files.size(blobs.get(0)) < content.length);
+	}
+
+	@Test
+	void blob_isRemovedWithItsLastReference() throws IOException {
+		UUID executionA = UUID.randomUUID();
+		UUID executionB = UUID.randomUUID();
+		UUID nodeID = UUID.randomUUID();
+		UUID attachmentA = UUID.randomUUID();
+		UUID attachmentB = UUID.randomUUID();
+		byte[] content = "shared".getBytes();
+
+		repository.storeAttachment(executionA, nodeID, attachmentA, content, "text/plain");
+		repository.storeAttachment(executionB, nodeID, attachmentB, content, "text/plain");
+
+		repository.deleteAttachments(executionA);
+		assertEquals(1, blobFiles().size());
+		assertArrayEquals(content, repository.retrieveAttachment(executionB, nodeID, attachmentB).orElseThrow().bytes());
+
+		repository.deleteAttachment(executionB, nodeID, attachmentB);
+		assertEquals(0, blobFiles().size());
+	}
+
+	@Test
+	void storingAnAttachmentAgain_replacesItsContent() throws IOException {
+		UUID executionID = UUID.randomUUID();
+		UUID nodeID = UUID.randomUUID();
+		UUID attachmentID = UUID.randomUUID();
+
+		repository.storeAttachment(executionID, nodeID, attachmentID, "first".getBytes(), "text/plain");
+		repository.storeAttachment(executionID, nodeID, attachmentID, "second".getBytes(), "text/csv");
+
+		AttachmentRepository.Attachment attachment = repository.retrieveAttachment(executionID, nodeID, attachmentID).orElseThrow();
+		assertArrayEquals("second".getBytes(), attachment.bytes());
+		assertEquals("text/csv", attachment.contentType());
+		assertEquals(1, blobFiles().size());
+	}
+
+
+	private List<Path> blobFiles() throws IOException {
+		Path blobs = tempDir.resolve("attachments").resolve("blobs");
+		if (!Files.exists(blobs)) {
+			return List.of();
+		}
+		try (Stream<Path> files = Files.walk(blobs)) {
+			return files.filter(Files::isRegularFile).toList();
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package org.myjtools.openbbt.persistence.test.attachment;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.EnabledIf;
 import org.myjtools.openbbt.core.persistence.AttachmentRepository;
 import org.myjtools.openbbt.persistence.attachment.MinioAttachmentRepository;
@@ -9,6 +10,10 @@ import org.testcontainers.containers.wait.strategy.HttpWaitStrategy;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import static org.junit.jupiter.api.Assertions.*;
 
 @Testcontainers
 @EnabledIf("isDockerAvailable")
@@ -38,10 +43,40 @@ class MinioAttachmentRepositoryTest extends AbstractAttachmentRepositoryTest {
 			.forPath("/minio/health/live")
 			.withStartupTimeout(Duration.ofSeconds(60)));
 
+	// uploads are asynchronous, so each test uses a single repository
+	private MinioAttachmentRepository repository;
+
 	@Override
 	protected AttachmentRepository repository() {
+		if (repository == null) {
+			repository = newRepository();
+		}
+		return repository;
+	}
+
+	private static MinioAttachmentRepository newRepository() {
 		String url = "http://" + minio.getHost() + ":" + minio.getMappedPort(9000);
 		return new MinioAttachmentRepository(url, ACCESS_KEY, SECRET_KEY);
 	}
 
+	@Test
+	void flush_waitsUntilEveryAttachmentIsUploaded() {
+		MinioAttachmentRepository queued = newRepository().uploadThreads(2).uploadBufferSize(64 * 1024);
+		UUID executionID = UUID.randomUUID();
+		UUID nodeID = UUID.randomUUID();
+		List<UUID> attachmentIDs = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			UUID attachmentID = UUID.randomUUID();
+			attachmentIDs.add(attachmentID);
+			queued.storeAttachment(executionID, nodeID, attachmentID, new byte[8 * 1024], "application/octet-stream");
+		}
+
+		queued.flush(executionID);
+
+		MinioAttachmentRepository reader = newRepository();
+		for (UUID attachmentID : attachmentIDs) {
+			assertEquals(8 * 1024, reader.getAttachmentInfo(executionID, nodeID, attachmentID).orElseThrow().size());
+		}
+	}
+
 }
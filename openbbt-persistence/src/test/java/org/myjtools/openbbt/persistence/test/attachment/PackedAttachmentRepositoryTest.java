@@ -0,0 +1,193 @@
+package org.myjtools.openbbt.persistence.test.attachment;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.myjtools.openbbt.core.persistence.AttachmentRepository;
+import org.myjtools.openbbt.persistence.attachment.PackedAttachmentRepository;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedAttachmentRepositoryTest extends AbstractAttachmentRepositoryTest {
+
+	/** magic, type, node, attachment, content type length, "text/plain" and content length */
+	private static final int RECORD_HEADER_SIZE = 4 + 1 + 32 + 2 + "text/plain".length() + 8;
+	/** index offset, index length, entry count, index checksum and magic */
+	private static final int FOOTER_TRAILER_SIZE = 8 + 8 + 4 + 4 + 4;
+
+	@TempDir
+	private Path tempDir;
+
+	private PackedAttachmentRepository repository;
+
+	@BeforeEach
+	void setUp() {
+		repository = new PackedAttachmentRepository(tempDir);
+	}
+
+	@Override
+	protected AttachmentRepository repository() {
+		return repository;
+	}
+
+	@Test
+	void attachmentsOfAnExecution_arePackedInASingleFile() throws IOException {
+		UUID executionID = UUID.randomUUID();
+		for (int i = 0; i < 10; i++) {
+			repository.storeAttachment(executionID, UUID.randomUUID(), UUID.randomUUID(), ("data " + i).getBytes(), "text/plain");
+		}
+		repository.flush(executionID);
+
+		try (Stream<Path> files = Files.list(tempDir)) {
+			assertEquals(List.of(tempDir.resolve(executionID + ".pack")), files.toList());
+		}
+	}
+
+	@Test
+	void flushedSegment_isReadFromItsIndex() {
+		UUID executionID = UUID.randomUUID();
+		UUID nodeID = UUID.randomUUID();
+		UUID attachmentID = UUID.randomUUID();
+		UUID deletedID = UUID.randomUUID();
+
+		repository.storeAttachment(executionID, nodeID, attachmentID, "indexed".getBytes(), "text/plain");
+		repository.storeAttachment(executionID, nodeID, deletedID, "deleted".getBytes(), "text/plain");
+		repository.deleteAttachment(executionID, nodeID, deletedID);
+		repository.flush(executionID);
+
+		PackedAttachmentRepository reader = new PackedAttachmentRepository(tempDir);
+		AttachmentRepository.Attachment attachment = reader.retrieveAttachment(executionID, nodeID, attachmentID).orElseThrow();
+		assertArrayEquals("indexed".getBytes(), attachment.bytes());
+		assertEquals("text/plain", attachment.contentType());
+		assertTrue(reader.retrieveAttachment(executionID, nodeID, deletedID).isEmpty());
+	}
+
+	@Test
+	void unflushedSegment_isReadByScanningItsRecords() {
+		UUID executionID = UUID.randomUUID();
+		UUID nodeID = UUID.randomUUID();
+		UUID kept = UUID.randomUUID();
+		UUID deleted = UUID.randomUUID();
+
+		repository.storeAttachment(executionID, nodeID, kept, "kept".getBytes(), "text/plain");
+		repository.storeAttachment(executionID, nodeID, deleted, "deleted".getBytes(), "text/plain");
+		repository.deleteAttachment(executionID, nodeID, deleted);
+
+		PackedAttachmentRepository reader = new PackedAttachmentRepository(tempDir);
+		List<AttachmentRepository.AttachmentInfo> infos;
+		try (Stream<AttachmentRepository.AttachmentInfo> stream = reader.listAttachments(executionID, nodeID)) {
+			infos = stream.toList();
+		}
+		assertEquals(List.of(new AttachmentRepository.AttachmentInfo(kept, 4, "text/plain")), infos);
+	}
+
+	@Test
+	void storingAfterFlush_keepsPreviousAttachments() {
+		UUID executionID = UUID.randomUUID();
+		UUID nodeID = UUID.randomUUID();
+		UUID first = UUID.randomUUID();
+		UUID second = UUID.randomUUID();
+
+		repository.storeAttachment(executionID, nodeID, first, "first".getBytes(), "text/plain");
+		repository.flush(executionID);
+		repository.storeAttachment(executionID, nodeID, second, "second".getBytes(), "text/plain");
+
+		PackedAttachmentRepository reader = new PackedAttachmentRepository(tempDir);
+		assertArrayEquals("first".getBytes(), reader.retrieveAttachment(executionID, nodeID, first).orElseThrow().bytes());
+		assertArrayEquals("second".getBytes(), reader.retrieveAttachment(executionID, nodeID, second).orElseThrow().bytes());
+	}
+
+	@Test
+	void corruptIndex_isRecoveredByScanningTheRecords() throws IOException {
+		UUID executionID = UUID.randomUUID();
+		UUID nodeID = UUID.randomUUID();
+		UUID attachmentID = UUID.randomUUID();
+		repository.storeAttachment(executionID, nodeID, attachmentID, "recovered".getBytes(), "text/plain");
+		repository.flush(executionID);
+
+		// alter the last byte of the index, which is covered by the footer checksum
+		Path file = tempDir.resolve(executionID + ".pack");
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length - FOOTER_TRAILER_SIZE - 1] ^= 0x7F;
+		Files.write(file, bytes);
+
+		PackedAttachmentRepository reader = new PackedAttachmentRepository(tempDir);
+		assertArrayEquals("recovered".getBytes(), reader.retrieveAttachment(executionID, nodeID, attachmentID).orElseThrow().bytes());
+	}
+
+	@Test
+	void interruptedRecord_doesNotHideTheFollowingRecords() throws IOException {
+		UUID executionID = UUID.randomUUID();
+		UUID nodeID = UUID.randomUUID();
+		UUID first = UUID.randomUUID();
+		UUID interrupted = UUID.randomUUID();
+		UUID third = UUID.randomUUID();
+		repository.storeAttachment(executionID, nodeID, first, "first".getBytes(), "text/plain");
+		repository.storeAttachment(executionID, nodeID, interrupted, "interrupted".getBytes(), "text/plain");
+		repository.storeAttachment(executionID, nodeID, third, "third".getBytes(), "text/plain");
+
+		// mark the second record as pending, as if the process had stopped while writing it
+		Path file = tempDir.resolve(executionID + ".pack");
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[RECORD_HEADER_SIZE + "first".length() + Integer.BYTES] = 3;
+		Files.write(file, bytes);
+
+		PackedAttachmentRepository reopened = new PackedAttachmentRepository(tempDir);
+		UUID fourth = UUID.randomUUID();
+		reopened.storeAttachment(executionID, nodeID, fourth, "fourth".getBytes(), "text/plain");
+		reopened.flush(executionID);
+
+		PackedAttachmentRepository reader = new PackedAttachmentRepository(tempDir);
+		assertArrayEquals("first".getBytes(), reader.retrieveAttachment(executionID, nodeID, first).orElseThrow().bytes());
+		assertTrue(reader.retrieveAttachment(executionID, nodeID, interrupted).isEmpty());
+		assertArrayEquals("third".getBytes(), reader.retrieveAttachment(executionID, nodeID, third).orElseThrow().bytes());
+		assertArrayEquals("fourth".getBytes(), reader.retrieveAttachment(executionID, nodeID, fourth).orElseThrow().bytes());
+	}
+
+	@Test
+	void concurrentWriters_storeEveryAttachment() throws Exception {
+		UUID executionID = UUID.randomUUID();
+		Map<UUID, byte[]> contents = new ConcurrentHashMap<>();
+		UUID nodeID = UUID.randomUUID();
+		try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+			List<Future<?>> futures = IntStream.range(0, 200).<Future<?>>mapToObj(i -> executor.submit(() -> {
+				UUID attachmentID = UUID.randomUUID();
+				byte[] content = ("attachment " + i + " ").repeat(i + 1).getBytes();
+				contents.put(attachmentID, content);
+				repository.storeAttachment(executionID, nodeID, attachmentID, content, "text/plain");
+			})).toList();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+		repository.flush(executionID);
+
+		PackedAttachmentRepository reader = new PackedAttachmentRepository(tempDir);
+		contents.forEach((attachmentID, content) ->
+			assertArrayEquals(content, reader.retrieveAttachment(executionID, nodeID, attachmentID).orElseThrow().bytes())
+		);
+	}
+
+	@Test
+	void deleteAttachments_removesTheSegmentFile() {
+		UUID executionID = UUID.randomUUID();
+		repository.storeAttachment(executionID, UUID.randomUUID(), UUID.randomUUID(), "data".getBytes(), "text/plain");
+		repository.flush(executionID);
+
+		repository.deleteAttachments(executionID);
+
+		assertFalse(Files.exists(tempDir.resolve(executionID + ".pack")));
+	}
+
+}
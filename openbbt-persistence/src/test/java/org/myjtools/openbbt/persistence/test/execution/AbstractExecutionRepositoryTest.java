@@ -4,22 +4,39 @@ import com.zaxxer.hikari.HikariDataSource;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.myjtools.openbbt.core.execution.ChangeImpact;
+import org.myjtools.openbbt.core.execution.EffectiveResult;
 import org.myjtools.openbbt.core.execution.ExecutionResult;
+import org.myjtools.openbbt.core.execution.ResourceSnapshot;
+import org.myjtools.openbbt.core.execution.TestCaseStats;
 import org.myjtools.openbbt.core.execution.TestExecution;
+import org.myjtools.openbbt.core.execution.TestExecutionNode;
+import org.myjtools.openbbt.core.persistence.Page;
+import org.myjtools.openbbt.core.persistence.RetentionPolicy;
 import org.myjtools.openbbt.core.testplan.NodeType;
 import org.myjtools.openbbt.core.testplan.TestPlan;
 import org.myjtools.openbbt.core.testplan.TestPlanNode;
 import org.myjtools.openbbt.core.testplan.TestProject;
 import org.myjtools.openbbt.persistence.DataSourceProvider;
+import org.myjtools.openbbt.persistence.archive.ExecutionArchiveStore;
 import org.myjtools.openbbt.persistence.execution.JooqExecutionRepository;
 import org.myjtools.openbbt.persistence.plan.JooqPlanRepository;
 import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 
 abstract class AbstractExecutionRepositoryTest {
 
@@ -405,6 +422,27 @@ abstract class AbstractExecutionRepositoryTest {
 		assertThat(repo.listExecutions(planID, root, 0, 2)).hasSize(2);
 	}
 
+	@Test
+	void streamExecutions_readsLazilyWithSmallFetchSize() {
+		UUID planID = persistPlanWithRoot();
+		UUID root = rootPlanNodeOf(planID);
+		for (int i = 0; i < 5; i++) {
+			executionWithRootNode(planID, root, Instant.now().minusSeconds(100L * i), ExecutionResult.PASSED);
+		}
+		repo.fetchSize(2);
+
+		try (Stream<TestExecution> executions = repo.streamExecutions(planID, root, 0, 0)) {
+			assertThat(executions).hasSize(5);
+		}
+		// partially consumed streams must release their resources when closed
+		for (int i = 0; i < 20; i++) {
+			try (Stream<TestExecution> executions = repo.streamExecutions(planID, root, 0, 0)) {
+				assertThat(executions.findFirst()).isPresent();
+			}
+		}
+		assertThat(repo.listExecutions(planID, root, 1, 2)).hasSize(2);
+	}
+
 	@Test
 	void listExecutions_withMaxZero_returnsAll() {
 		UUID planID = persistPlanWithRoot();
@@ -460,6 +498,27 @@ abstract class AbstractExecutionRepositoryTest {
 		assertThat(page2.get(1).executionID()).isEqualTo(e1.executionID());
 	}
 
+	@Test
+	void streamExecutions_withCursor_continuesAfterTheGivenExecution() {
+		UUID planID = persistPlanWithRoot();
+		UUID root = rootPlanNodeOf(planID);
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		TestExecution e1 = executionWithRootNode(planID, root, now.minusSeconds(200), ExecutionResult.PASSED);
+		TestExecution e2 = executionWithRootNode(planID, root, now.minusSeconds(100), ExecutionResult.FAILED);
+		TestExecution e3 = executionWithRootNode(planID, root, now, ExecutionResult.ERROR);
+
+		// Desc: [e3, e2, e1]
+		try (Stream<TestExecution> page = repo.streamExecutions(planID, root, new Page(e3.executionID(), 0, 1))) {
+			assertThat(page.map(TestExecution::executionID)).containsExactly(e2.executionID());
+		}
+		try (Stream<TestExecution> page = repo.streamExecutions(planID, root, new Page(e3.executionID(), 1, 0))) {
+			assertThat(page.map(TestExecution::executionID)).containsExactly(e1.executionID());
+		}
+		try (Stream<TestExecution> page = repo.streamExecutions(planID, root, new Page(UUID.randomUUID(), 0, 0))) {
+			assertThat(page).isEmpty();
+		}
+	}
+
 	@Test
 	void getExecutionNodeResult_returnsResultAfterFinish() {
 		UUID planID = persistPlanWithRoot();
@@ -534,4 +593,357 @@ abstract class AbstractExecutionRepositoryTest {
 		assertThat(repo.getExecutionNodeResult(stepExecNodeID)).contains(ExecutionResult.PASSED);
 	}
 
-}
\ No newline at end of file
+	// --- chunked deletion ---
+
+	@Test
+	void deletePlan_removesExecutionsAndNodesInChunks() {
+		UUID planID = persistPlanWithRoot();
+		UUID root = rootPlanNodeOf(planID);
+		List<UUID> planNodes = new ArrayList<>(List.of(root));
+		for (int i = 0; i < 3; i++) {
+			UUID feature = persistPlanNodeUnder(root, NodeType.TEST_FEATURE, "feature " + i);
+			planNodes.add(feature);
+			planNodes.add(persistPlanNodeUnder(feature, NodeType.TEST_CASE, "test case " + i));
+		}
+		planRepo.assignPlanToNodes(planID, root);
+		UUID unexecutedPlanID = persistPlanWithRoot();
+		TestExecution execution = repo.newExecution(planID, Instant.now(), null);
+		for (UUID planNode : planNodes) {
+			repo.newAttachment(repo.newExecutionNode(execution.executionID(), planNode));
+		}
+		assertThat(planRepo.listUnexecutedPlans()).extracting(TestPlan::planID).containsExactly(unexecutedPlanID);
+
+		repo.deleteChunkSize(3);
+		planRepo.deleteChunkSize(3);
+		List<Integer> executionChunks = new ArrayList<>();
+		repo.deleteExecutionsByPlan(planID, executionChunks::add);
+		List<Integer> planChunks = new ArrayList<>();
+		planRepo.deletePlan(planID, planChunks::add);
+
+		// 7 attachments and 7 execution nodes in chunks of 3, plus the execution itself
+		assertThat(executionChunks).containsExactly(3, 3, 1, 3, 3, 1, 1);
+		assertThat(planChunks).allMatch(rows -> rows <= 3).hasSizeGreaterThan(2);
+		assertThat(planChunks.stream().mapToInt(Integer::intValue).sum()).isEqualTo(planNodes.size());
+		assertThat(repo.getExecution(execution.executionID())).isEmpty();
+		assertThat(planRepo.getPlan(planID)).isEmpty();
+		assertThat(planRepo.existsNode(root)).isFalse();
+		assertThat(planRepo.listUnexecutedPlans()).extracting(TestPlan::planID).containsExactly(unexecutedPlanID);
+	}
+
+
+	// --- retention ---
+
+	@Test
+	void archiveExecution_keepsExpiredExecutionReadableFromTheArchive(@TempDir Path archiveDir) {
+		repo.archiveStore(new ExecutionArchiveStore(archiveDir));
+		UUID planID = persistPlanWithRoot();
+		UUID root = rootPlanNodeOf(planID);
+		UUID testCase = persistPlanNodeUnder(root, NodeType.TEST_CASE, "test case");
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		TestExecution older = executionWithRootNode(planID, root, now.minus(Duration.ofDays(10)), ExecutionResult.FAILED);
+		TestExecution newer = executionWithRootNode(planID, root, now.minusSeconds(10), ExecutionResult.PASSED);
+		UUID testCaseNode = repo.newExecutionNode(older.executionID(), testCase);
+		repo.updateExecutionNodeStart(testCaseNode, now.minus(Duration.ofDays(10)));
+		repo.updateExecutionNodeFinish(testCaseNode, ExecutionResult.FAILED, now.minus(Duration.ofDays(10)).plusMillis(250));
+		repo.updateExecutionNodeMessage(testCaseNode, "expected <1> but was <2>");
+		UUID attachment = repo.newAttachment(testCaseNode);
+
+		assertThat(repo.listExpiredExecutions(new RetentionPolicy(1, null), now)).containsExactly(older.executionID());
+		assertThat(repo.listExpiredExecutions(new RetentionPolicy(0, Duration.ofDays(7)), now)).containsExactly(older.executionID());
+		assertThat(repo.listExpiredExecutions(new RetentionPolicy(2, Duration.ofDays(30)), now)).isEmpty();
+
+		repo.archiveExecution(older.executionID(), deleted -> { });
+
+		assertThat(repo.listExecutions(planID, root, 0, 0)).extracting(TestExecution::executionID)
+			.containsExactly(newer.executionID());
+		assertThat(repo.listArchivedExecutions(planID)).containsExactly(older.executionID());
+		assertThat(repo.getExecution(older.executionID())).hasValueSatisfying(execution -> {
+			assertThat(execution.planID()).isEqualTo(planID);
+			assertThat(execution.executedAt()).isEqualTo(now.minus(Duration.ofDays(10)));
+		});
+		TestExecutionNode node = repo.getExecutionNode(older.executionID(), testCase).orElseThrow();
+		assertThat(node.executionNodeID()).isEqualTo(testCaseNode);
+		assertThat(node.result()).isEqualTo(ExecutionResult.FAILED);
+		assertThat(node.duration()).isEqualTo(250);
+		assertThat(node.message()).isEqualTo("expected <1> but was <2>");
+		assertThat(repo.listAttachmentIds(older.executionID(), testCaseNode)).containsExactly(attachment);
+		assertThat(repo.existsAttachment(attachment)).isFalse();
+
+		repo.deleteExecutionsByPlan(planID);
+		assertThat(repo.getExecution(older.executionID())).isEmpty();
+		assertThat(repo.listArchivedExecutions(planID)).isEmpty();
+	}
+
+
+	// --- test case statistics ---
+
+	@Test
+	void recordTestCaseResult_maintainsStatsPerTestCase() {
+		UUID planID = persistPlanWithRoot();
+		UUID projectID = planRepo.getPlan(planID).orElseThrow().projectID();
+		UUID root = rootPlanNodeOf(planID);
+		TestPlanNode flaky = planRepo.getNodeData(persistPlanNodeUnder(root, NodeType.TEST_CASE, "flaky")).orElseThrow();
+		TestPlanNode slow = planRepo.getNodeData(persistPlanNodeUnder(root, NodeType.TEST_CASE, "slow")).orElseThrow();
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		repo.recordTestCaseResult(projectID, flaky, ExecutionResult.PASSED, 100, now);
+		repo.recordTestCaseResult(projectID, flaky, ExecutionResult.FAILED, 120, now);
+		repo.recordTestCaseResult(projectID, slow, ExecutionResult.PASSED, 3000, now);
+
+		TestCaseStats stats = repo.getTestCaseStats(projectID, TestCaseStats.keyOf(flaky)).orElseThrow();
+		assertThat(stats.name()).isEqualTo("flaky");
+		assertThat(stats.planNodeID()).isEqualTo(flaky.nodeID());
+		assertThat(stats.executionCount()).isEqualTo(2);
+		assertThat(stats.trend()).isEqualTo("FP");
+		assertThat(stats.recentFlips()).isEqualTo(1);
+		assertThat(stats.lastResult()).isEqualTo(ExecutionResult.FAILED);
+		assertThat(stats.lastExecutedAt()).isEqualTo(now);
+
+		assertThat(repo.listTestCaseStats(projectID, TestCaseStats.Ranking.FLAKY, 0))
+			.extracting(TestCaseStats::name).containsExactly("flaky");
+		assertThat(repo.listTestCaseStats(projectID, TestCaseStats.Ranking.SLOWEST, 0))
+			.extracting(TestCaseStats::name).containsExactly("slow", "flaky");
+		assertThat(repo.listTestCaseStats(projectID, TestCaseStats.Ranking.SLOWEST, 1))
+			.extracting(TestCaseStats::name).containsExactly("slow");
+	}
+
+
+	@Test
+	void getHistoricalDurations_averagesOnlyTheLatestExecutions() {
+		UUID planID = persistPlanWithRoot();
+		UUID root = rootPlanNodeOf(planID);
+		UUID testCase = persistPlanNodeUnder(root, NodeType.TEST_CASE, "test case");
+		UUID neverFinished = persistPlanNodeUnder(root, NodeType.TEST_CASE, "never finished");
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		long[] durations = { 900, 300, 100 };
+		for (int i = 0; i < durations.length; i++) {
+			Instant startedAt = now.plusSeconds(i * 10L);
+			TestExecution execution = repo.newExecution(planID, startedAt, null);
+			UUID node = repo.newExecutionNode(execution.executionID(), testCase);
+			repo.updateExecutionNodeStart(node, startedAt);
+			repo.updateExecutionNodeFinish(node, ExecutionResult.PASSED, startedAt.plusMillis(durations[i]));
+			repo.updateExecutionNodeStart(repo.newExecutionNode(execution.executionID(), neverFinished), startedAt);
+		}
+
+		assertThat(repo.getHistoricalDurations(List.of(testCase, neverFinished), 2)).containsExactly(Map.entry(testCase, 200L));
+		assertThat(repo.getHistoricalDurations(List.of(testCase), 0)).containsExactly(Map.entry(testCase, 433L));
+	}
+
+
+	@Test
+	void getTestCaseStats_fetchesSeveralTestCasesAtOnce() {
+		UUID planID = persistPlanWithRoot();
+		UUID projectID = planRepo.getPlan(planID).orElseThrow().projectID();
+		UUID root = rootPlanNodeOf(planID);
+		TestPlanNode first = planRepo.getNodeData(persistPlanNodeUnder(root, NodeType.TEST_CASE, "first")).orElseThrow();
+		TestPlanNode second = planRepo.getNodeData(persistPlanNodeUnder(root, NodeType.TEST_CASE, "second")).orElseThrow();
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		repo.recordTestCaseResult(projectID, first, ExecutionResult.PASSED, 100, now);
+
+		Map<String, TestCaseStats> stats = repo.getTestCaseStats(
+			projectID, List.of(TestCaseStats.keyOf(first), TestCaseStats.keyOf(second))
+		);
+		assertThat(stats).containsOnlyKeys(TestCaseStats.keyOf(first));
+		assertThat(stats.get(TestCaseStats.keyOf(first)).name()).isEqualTo("first");
+	}
+
+
+	@Test
+	void recordTestCaseResult_doesNotLoseConcurrentResults() {
+		UUID planID = persistPlanWithRoot();
+		UUID projectID = planRepo.getPlan(planID).orElseThrow().projectID();
+		UUID root = rootPlanNodeOf(planID);
+		TestPlanNode testCase = planRepo.getNodeData(persistPlanNodeUnder(root, NodeType.TEST_CASE, "busy")).orElseThrow();
+		// a second repository over the same database behaves like another process
+		JooqExecutionRepository otherRepo = new JooqExecutionRepository(dataSource, dataSourceProvider().dialect());
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+		IntStream.range(0, 40).parallel().forEach(i -> (i % 2 == 0 ? repo : otherRepo)
+			.recordTestCaseResult(projectID, testCase, ExecutionResult.PASSED, 100, now));
+
+		TestCaseStats stats = repo.getTestCaseStats(projectID, TestCaseStats.keyOf(testCase)).orElseThrow();
+		assertThat(stats.executionCount()).isEqualTo(40);
+		assertThat(stats.sampleCount()).isEqualTo(40);
+	}
+
+
+	// --- re-runs ---
+
+	@Test
+	void listRerunTestCases_returnsOnlyTheTestCasesThatDidNotPass() {
+		UUID planID = persistPlanWithRoot();
+		UUID root = rootPlanNodeOf(planID);
+		UUID passed = persistPlanNodeUnder(root, NodeType.TEST_CASE, "passed");
+		UUID failed = persistPlanNodeUnder(root, NodeType.TEST_CASE, "failed");
+		UUID undefined = persistPlanNodeUnder(root, NodeType.TEST_CASE, "undefined");
+		UUID failedStep = persistPlanNodeUnder(failed, NodeType.STEP, "step");
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		TestExecution original = repo.newExecution(planID, now, null);
+		repo.updateExecutionNodeFinish(repo.newExecutionNode(original.executionID(), root), ExecutionResult.FAILED, now);
+		repo.updateExecutionNodeFinish(repo.newExecutionNode(original.executionID(), passed), ExecutionResult.PASSED, now);
+		repo.updateExecutionNodeFinish(repo.newExecutionNode(original.executionID(), failed), ExecutionResult.FAILED, now);
+		repo.updateExecutionNodeFinish(repo.newExecutionNode(original.executionID(), failedStep), ExecutionResult.FAILED, now);
+		repo.updateExecutionNodeFinish(repo.newExecutionNode(original.executionID(), undefined), ExecutionResult.UNDEFINED, now);
+
+		assertThat(repo.listRerunTestCases(original.executionID())).containsExactlyInAnyOrder(failed, undefined);
+	}
+
+
+	@Test
+	void getEffectiveTestCaseResults_prefersTheResultsOfTheRerun() {
+		UUID planID = persistPlanWithRoot();
+		UUID root = rootPlanNodeOf(planID);
+		UUID passed = persistPlanNodeUnder(root, NodeType.TEST_CASE, "passed");
+		UUID fixed = persistPlanNodeUnder(root, NodeType.TEST_CASE, "fixed");
+		UUID broken = persistPlanNodeUnder(root, NodeType.TEST_CASE, "broken");
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		TestExecution original = repo.newExecution(planID, now, null);
+		repo.updateExecutionNodeFinish(repo.newExecutionNode(original.executionID(), passed), ExecutionResult.PASSED, now);
+		repo.updateExecutionNodeFinish(repo.newExecutionNode(original.executionID(), fixed), ExecutionResult.FAILED, now);
+		repo.updateExecutionNodeFinish(repo.newExecutionNode(original.executionID(), broken), ExecutionResult.ERROR, now);
+
+		TestExecution rerun = repo.newExecution(planID, now.plusSeconds(1), null, original.executionID());
+		repo.updateExecutionNodeFinish(repo.newExecutionNode(rerun.executionID(), fixed), ExecutionResult.PASSED, now);
+		repo.updateExecutionNodeFinish(repo.newExecutionNode(rerun.executionID(), broken), ExecutionResult.FAILED, now);
+
+		assertThat(repo.getExecution(rerun.executionID()).orElseThrow().rerunOf()).isEqualTo(original.executionID());
+		assertThat(repo.getTestCaseResults(rerun.executionID())).containsOnlyKeys(fixed, broken);
+		assertThat(repo.getEffectiveTestCaseResults(rerun.executionID())).containsExactlyInAnyOrderEntriesOf(Map.of(
+			passed, ExecutionResult.PASSED,
+			fixed, ExecutionResult.PASSED,
+			broken, ExecutionResult.FAILED
+		));
+		EffectiveResult effective = EffectiveResult.of(repo, rerun.executionID());
+		assertThat(effective.result()).isEqualTo(ExecutionResult.FAILED);
+		assertThat(effective.passedCount()).isEqualTo(2);
+		assertThat(effective.failedCount()).isEqualTo(1);
+		assertThat(effective.errorCount()).isZero();
+	}
+
+
+	// --- change impact ---
+
+	@Test
+	void resourceSnapshot_isStoredPerExecution() {
+		UUID planID = persistPlanWithRoot();
+		TestExecution execution = repo.newExecution(planID, Instant.now(), null);
+		assertThat(repo.getResourceSnapshot(execution.executionID())).isEmpty();
+
+		var snapshot = new ResourceSnapshot(Map.of("a.feature", "h1", "data/users.csv", "h2"), "providers");
+		repo.saveResourceSnapshot(execution.executionID(), snapshot);
+
+		assertThat(repo.getResourceSnapshot(execution.executionID())).contains(snapshot);
+		repo.deleteExecution(execution.executionID());
+		assertThat(repo.getResourceSnapshot(execution.executionID())).isEmpty();
+	}
+
+
+	@Test
+	void resourceSnapshot_isSharedByExecutionsWithTheSameResources() {
+		UUID planID = persistPlanWithRoot();
+		TestExecution first = repo.newExecution(planID, Instant.now(), null);
+		TestExecution second = repo.newExecution(planID, Instant.now(), null);
+		var snapshot = new ResourceSnapshot(Map.of("a.feature", "h1", "data/users.csv", "h2"), "providers");
+		repo.saveResourceSnapshot(first.executionID(), snapshot);
+		repo.saveResourceSnapshot(second.executionID(), snapshot);
+
+		repo.deleteExecution(first.executionID());
+		assertThat(repo.getResourceSnapshot(second.executionID())).contains(snapshot);
+		repo.deleteExecution(second.executionID());
+		assertThat(repo.getResourceSnapshot(second.executionID())).isEmpty();
+	}
+
+
+	@Test
+	void getExecutionNodes_fetchesSeveralNodesAtOnce() {
+		UUID planID = persistPlanWithRoot();
+		UUID root = rootPlanNodeOf(planID);
+		UUID first = persistPlanNodeUnder(root, NodeType.TEST_CASE, "first");
+		UUID second = persistPlanNodeUnder(root, NodeType.TEST_CASE, "second");
+		UUID notExecuted = persistPlanNodeUnder(root, NodeType.TEST_CASE, "not executed");
+		TestExecution execution = repo.newExecution(planID, Instant.now(), null);
+		Instant now = Instant.now();
+		repo.updateExecutionNodeFinish(repo.newExecutionNode(execution.executionID(), first), ExecutionResult.PASSED, now);
+		repo.updateExecutionNodeFinish(repo.newExecutionNode(execution.executionID(), second), ExecutionResult.FAILED, now);
+
+		var nodes = repo.getExecutionNodes(execution.executionID(), List.of(first, second, notExecuted));
+
+		assertThat(nodes).containsOnlyKeys(first, second);
+		assertThat(nodes.get(first).result()).isEqualTo(ExecutionResult.PASSED);
+		assertThat(nodes.get(second).result()).isEqualTo(ExecutionResult.FAILED);
+	}
+
+
+	@Test
+	void getExecutionNodeResults_fetchesTheFinishedNodesAtOnce() {
+		UUID planID = persistPlanWithRoot();
+		UUID root = rootPlanNodeOf(planID);
+		TestExecution execution = repo.newExecution(planID, Instant.now(), null);
+		UUID passed = repo.newExecutionNode(execution.executionID(), persistPlanNodeUnder(root, NodeType.TEST_CASE, "passed"));
+		UUID failed = repo.newExecutionNode(execution.executionID(), persistPlanNodeUnder(root, NodeType.TEST_CASE, "failed"));
+		UUID running = repo.newExecutionNode(execution.executionID(), persistPlanNodeUnder(root, NodeType.TEST_CASE, "running"));
+		Instant now = Instant.now();
+		repo.updateExecutionNodeFinish(passed, ExecutionResult.PASSED, now);
+		repo.updateExecutionNodeFinish(failed, ExecutionResult.FAILED, now);
+
+		var results = repo.getExecutionNodeResults(List.of(passed, failed, running, UUID.randomUUID()));
+
+		assertThat(results).containsOnly(entry(passed, ExecutionResult.PASSED), entry(failed, ExecutionResult.FAILED));
+	}
+
+
+	@Test
+	void changeImpact_considersSourceAndReferencedResources() {
+		UUID root = rootPlanNodeOf(persistPlanWithRoot());
+		UUID usersID = planRepo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE)
+			.name("users").source("users.feature[3,1]"));
+		planRepo.attachChildNodeLast(root, usersID);
+		UUID stepID = planRepo.persistNode(new TestPlanNode().nodeType(NodeType.STEP)
+			.name("the table USERS contains the data of file data/users.csv").source("users.feature[4,3]"));
+		planRepo.attachChildNodeLast(usersID, stepID);
+		UUID ordersID = planRepo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE)
+			.name("orders").source("orders.feature[3,1]"));
+		planRepo.attachChildNodeLast(root, ordersID);
+		TestPlanNode users = planRepo.getNodeData(usersID).orElseThrow();
+		TestPlanNode orders = planRepo.getNodeData(ordersID).orElseThrow();
+
+		var impact = new ChangeImpact(planRepo, List.of("users.feature", "orders.feature", "data/users.csv"));
+
+		assertThat(impact.dependenciesOf(users)).containsExactlyInAnyOrder("users.feature", "data/users.csv");
+		assertThat(impact.isAffected(users, Set.of("data/users.csv"))).isTrue();
+		assertThat(impact.isAffected(orders, Set.of("data/users.csv"))).isFalse();
+		assertThat(impact.isAffected(orders, Set.of("orders.feature"))).isTrue();
+	}
+
+
+	@Test
+	void changeImpact_matchesReferencesByWholeFileName() {
+		UUID root = rootPlanNodeOf(persistPlanWithRoot());
+		UUID testCaseID = persistPlanNodeUnder(root, NodeType.TEST_CASE, "users");
+		persistPlanNodeUnder(testCaseID, NodeType.STEP, "the users are loaded from './data/users.csv'.");
+		TestPlanNode testCase = planRepo.getNodeData(testCaseID).orElseThrow();
+
+		var impact = new ChangeImpact(planRepo, List.of("resources/data/users.csv", "resources/data/myusers.csv"));
+
+		assertThat(impact.dependenciesOf(testCase)).containsExactly("resources/data/users.csv");
+	}
+
+
+	@Test
+	void changeImpact_walksTheKnownNodesInMemory() {
+		UUID root = rootPlanNodeOf(persistPlanWithRoot());
+		UUID testCaseID = persistPlanNodeUnder(root, NodeType.TEST_CASE, "users");
+		UUID aggregatorID = persistPlanNodeUnder(testCaseID, NodeType.STEP_AGGREGATOR, "background");
+		persistPlanNodeUnder(aggregatorID, NodeType.STEP, "the users are loaded from data/users.csv");
+		persistPlanNodeUnder(root, NodeType.TEST_CASE, "orders from data/orders.csv");
+		List<UUID> descendants;
+		try (Stream<UUID> stream = planRepo.getNodeDescendants(root)) {
+			descendants = stream.toList();
+		}
+		Map<UUID, TestPlanNode> knownNodes = planRepo.getNodeData(descendants);
+
+		var impact = new ChangeImpact(planRepo, List.of("data/users.csv", "data/orders.csv"), knownNodes);
+
+		assertThat(impact.dependenciesOf(knownNodes.get(testCaseID))).containsExactly("data/users.csv");
+	}
+
+}
@@ -0,0 +1,131 @@
+package org.myjtools.openbbt.persistence.test.execution;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.myjtools.openbbt.core.execution.TestExecution;
+import org.myjtools.openbbt.core.persistence.RepositoryCleaner;
+import org.myjtools.openbbt.core.testplan.NodeType;
+import org.myjtools.openbbt.core.testplan.TestPlan;
+import org.myjtools.openbbt.core.testplan.TestPlanNode;
+import org.myjtools.openbbt.core.testplan.TestProject;
+import org.myjtools.openbbt.persistence.DataSourceProvider;
+import org.myjtools.openbbt.persistence.execution.JooqExecutionRepository;
+import org.myjtools.openbbt.persistence.plan.JooqPlanRepository;
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RepositoryCleanerTest {
+
+	@TempDir
+	private Path tempDir;
+
+	private DataSourceProvider provider;
+	private DataSource dataSource;
+	private JooqPlanRepository planRepo;
+	private JooqExecutionRepository repo;
+
+
+	@BeforeEach
+	void setUp() {
+		provider = DataSourceProvider.hsqldb(tempDir.resolve("testdb"));
+		dataSource = provider.obtainDataSource();
+		planRepo = new JooqPlanRepository(dataSource, provider.dialect());
+		repo = new JooqExecutionRepository(dataSource, provider.dialect());
+	}
+
+
+	@AfterEach
+	void tearDown() {
+		if (dataSource instanceof HikariDataSource hikari) {
+			hikari.close();
+		}
+	}
+
+
+	private TestExecution persistExecution() {
+		UUID root = planRepo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_PLAN).name("root"));
+		UUID projectID = planRepo.persistProject(new TestProject("P", "desc", "Org", List.of()));
+		TestPlan plan = planRepo.persistPlan(new TestPlan(null, projectID, Instant.now(), "rh", "ch", root, 0, null));
+		TestExecution execution = repo.newExecution(plan.planID(), Instant.now(), null);
+		repo.newExecutionNode(execution.executionID(), root);
+		return execution;
+	}
+
+
+	@Test
+	void deleteExecution_completesWithTheRowsDeleted() throws Exception {
+		TestExecution execution = persistExecution();
+		try (var cleaner = new RepositoryCleaner(planRepo, repo, null)) {
+			var progress = cleaner.deleteExecution(execution.executionID()).completion().get(10, TimeUnit.SECONDS);
+
+			assertThat(progress.state()).isEqualTo(RepositoryCleaner.State.COMPLETED);
+			assertThat(progress.completedItems()).isEqualTo(1);
+			assertThat(progress.deletedRows()).isPositive();
+			assertThat(repo.getExecution(execution.executionID())).isEmpty();
+		}
+	}
+
+
+	@Test
+	void taskFailingWithAnException_completesAsFailed() throws Exception {
+		var failingRepo = new JooqExecutionRepository(dataSource, provider.dialect()) {
+			@Override
+			public void deleteExecution(UUID executionId, IntConsumer onRowsDeleted) {
+				throw new IllegalStateException("database unavailable");
+			}
+		};
+		try (var cleaner = new RepositoryCleaner(planRepo, failingRepo, null)) {
+			var progress = cleaner.deleteExecution(UUID.randomUUID()).completion().get(10, TimeUnit.SECONDS);
+
+			assertThat(progress.state()).isEqualTo(RepositoryCleaner.State.FAILED);
+			assertThat(progress.error()).isEqualTo("database unavailable");
+		}
+	}
+
+
+	@Test
+	void taskAbortedByAnError_completesExceptionally() {
+		var failingRepo = new JooqExecutionRepository(dataSource, provider.dialect()) {
+			@Override
+			public void deleteExecution(UUID executionId, IntConsumer onRowsDeleted) {
+				throw new StackOverflowError();
+			}
+		};
+		try (var cleaner = new RepositoryCleaner(planRepo, failingRepo, null)) {
+			var task = cleaner.deleteExecution(UUID.randomUUID());
+
+			assertThatThrownBy(() -> task.completion().get(10, TimeUnit.SECONDS))
+				.isInstanceOf(ExecutionException.class);
+			assertThat(task.progress().state()).isEqualTo(RepositoryCleaner.State.FAILED);
+			// later tasks still run
+			var next = cleaner.deleteExecution(persistExecution().executionID()).completion().join();
+			assertThat(next.state()).isEqualTo(RepositoryCleaner.State.COMPLETED);
+		}
+	}
+
+
+	@Test
+	void finishedTasks_areRetainedOnlyForTheRetentionWindow() {
+		try (var cleaner = new RepositoryCleaner(planRepo, repo, null)) {
+			var retained = cleaner.deleteExecution(persistExecution().executionID());
+			retained.completion().join();
+			assertThat(cleaner.task(retained.taskID())).contains(retained);
+
+			cleaner.retainFinishedTasks(Duration.ZERO);
+			assertThat(cleaner.task(retained.taskID())).isEmpty();
+		}
+	}
+
+}
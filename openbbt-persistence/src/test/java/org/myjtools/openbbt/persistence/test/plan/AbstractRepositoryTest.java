@@ -4,6 +4,7 @@ import com.zaxxer.hikari.HikariDataSource;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.myjtools.openbbt.core.persistence.Page;
 import org.myjtools.openbbt.core.persistence.TestPlanNodeCriteria;
 import org.myjtools.openbbt.core.testplan.*;
 import org.myjtools.openbbt.persistence.DataSourceProvider;
@@ -12,6 +13,7 @@ import javax.sql.DataSource;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.stream.Stream;
 import static org.assertj.core.api.Assertions.assertThat;
 
 abstract class AbstractRepositoryTest {
@@ -98,6 +100,25 @@ abstract class AbstractRepositoryTest {
 		assertThat(retrieved.document()).isNull();
 	}
 
+	@Test
+	void nodeArgumentsAreStoredLosslessly() {
+		DataTable dataTable = new DataTable(List.of(
+			List.of("a|b", "c||d"),
+			List.of("", "a|b")
+		));
+		Document document = Document.of("application/json", "{\"key\":\"value\"}\n".repeat(500));
+
+		UUID id = repo.persistNode(new TestPlanNode()
+			.nodeType(NodeType.STEP)
+			.name("step with arguments")
+			.dataTable(dataTable)
+			.document(document));
+
+		TestPlanNode retrieved = repo.getNodeData(id).orElseThrow();
+		assertThat(retrieved.dataTable()).isEqualTo(dataTable);
+		assertThat(retrieved.document()).isEqualTo(document);
+	}
+
 	@Test
 	void updateAndRetrieveFields() {
 		TestPlanNode node = new TestPlanNode()
@@ -306,6 +327,76 @@ abstract class AbstractRepositoryTest {
 		assertThat(repo.countNodeChildren(root)).isEqualTo(2);
 	}
 
+	@Test
+	void countNodeChildren_ofSeveralNodes_countsEachOne() {
+		UUID root = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_PLAN).name("root"));
+		UUID child1 = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_SUITE).name("child1"));
+		UUID child2 = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_SUITE).name("child2"));
+		UUID grandchild = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("grandchild"));
+		repo.attachChildNodeLast(root, child1);
+		repo.attachChildNodeLast(root, child2);
+		repo.attachChildNodeLast(child1, grandchild);
+
+		Map<UUID, Integer> counts = repo.countNodeChildren(List.of(root, child1, child2));
+
+		assertThat(counts.get(root)).isEqualTo(2);
+		assertThat(counts.get(child1)).isEqualTo(1);
+		assertThat(counts.getOrDefault(child2, 0)).isZero();
+	}
+
+	@Test
+	void getNodeData_ofSeveralNodes_returnsTheExistingOnesWithTagsAndProperties() {
+		UUID tagged = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("tagged")
+			.tags(new HashSet<>(Set.of("smoke"))));
+		UUID withProperty = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("with property")
+			.addProperty("priority", "high"));
+
+		Map<UUID, TestPlanNode> nodes = repo.getNodeData(List.of(tagged, withProperty, UUID.randomUUID()));
+
+		assertThat(nodes).containsOnlyKeys(tagged, withProperty);
+		assertThat(nodes.get(tagged).tags()).containsExactly("smoke");
+		assertThat(nodes.get(withProperty).name()).isEqualTo("with property");
+		assertThat(nodes.get(withProperty).properties()).containsEntry("priority", "high");
+	}
+
+	@Test
+	void getNodeChildrenData_returnsChildrenWithTagsAndProperties() {
+		UUID root = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_PLAN).name("root"));
+		UUID child1 = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("child1")
+			.tags(new HashSet<>(Set.of("smoke", "slow"))));
+		UUID child2 = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("child2")
+			.addProperty("priority", "high"));
+		repo.attachChildNodeLast(root, child1);
+		repo.attachChildNodeLast(root, child2);
+
+		List<TestPlanNode> children = repo.getNodeChildrenData(root, Page.ALL);
+
+		assertThat(children).extracting(TestPlanNode::nodeID).containsExactly(child1, child2);
+		assertThat(children.get(0).tags()).containsExactlyInAnyOrder("smoke", "slow");
+		assertThat(children.get(0).properties()).isEmpty();
+		assertThat(children.get(1).tags()).isEmpty();
+		assertThat(children.get(1).properties()).containsEntry("priority", "high");
+	}
+
+	@Test
+	void getNodeChildrenData_withCursor_continuesAfterTheGivenChild() {
+		UUID root = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_PLAN).name("root"));
+		List<UUID> children = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			UUID child = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("child" + i));
+			repo.attachChildNodeLast(root, child);
+			children.add(child);
+		}
+
+		assertThat(repo.getNodeChildrenData(root, Page.of(1, 2)))
+			.extracting(TestPlanNode::nodeID).containsExactly(children.get(1), children.get(2));
+		assertThat(repo.getNodeChildrenData(root, new Page(children.get(2), 0, 0)))
+			.extracting(TestPlanNode::nodeID).containsExactly(children.get(3), children.get(4));
+		assertThat(repo.getNodeChildrenData(root, new Page(children.get(0), 1, 2)))
+			.extracting(TestPlanNode::nodeID).containsExactly(children.get(2), children.get(3));
+		assertThat(repo.getNodeChildrenData(root, new Page(UUID.randomUUID(), 0, 0))).isEmpty();
+	}
+
 	@Test
 	void getNodeDescendants_returnsAllDescendants() {
 		UUID root = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_PLAN).name("root"));
@@ -424,6 +515,90 @@ abstract class AbstractRepositoryTest {
 		assertThat(results).hasSize(1);
 	}
 
+	@Test
+	void getNodeDescendants_streamsWithSmallFetchSize() {
+		UUID root = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_PLAN).name("root"));
+		List<UUID> children = new ArrayList<>();
+		for (int i = 0; i < 7; i++) {
+			UUID child = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("child" + i));
+			repo.attachChildNodeLast(root, child);
+			children.add(child);
+		}
+		repo.fetchSize(3);
+
+		try (Stream<UUID> descendants = repo.getNodeDescendants(root)) {
+			assertThat(descendants).containsExactlyInAnyOrderElementsOf(children);
+		}
+		assertThat(repo.getNodeChildren(root).toList()).containsExactlyElementsOf(children);
+		// partially consumed streams must release their resources when closed
+		for (int i = 0; i < 20; i++) {
+			try (Stream<UUID> matches = repo.searchNodes(TestPlanNodeCriteria.childOf(root))) {
+				assertThat(matches.findFirst()).isPresent();
+			}
+		}
+	}
+
+	@Test
+	void searchNodes_descendantsByTypeAndTag() {
+		UUID root = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_PLAN).name("root"));
+		UUID feature = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_FEATURE).name("feature"));
+		UUID smoke = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("smoke")
+			.tags(new HashSet<>(Set.of("smoke"))));
+		UUID step = repo.persistNode(new TestPlanNode().nodeType(NodeType.STEP).name("step")
+			.tags(new HashSet<>(Set.of("smoke"))));
+		UUID plain = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("plain"));
+		repo.attachChildNodeLast(root, feature);
+		repo.attachChildNodeLast(feature, smoke);
+		repo.attachChildNodeLast(feature, plain);
+		repo.attachChildNodeLast(smoke, step);
+
+		assertThat(repo.searchNodes(TestPlanNodeCriteria.and(
+			TestPlanNodeCriteria.descendantOf(root),
+			TestPlanNodeCriteria.withNodeType(NodeType.TEST_CASE),
+			TestPlanNodeCriteria.withTag("smoke")
+		)).toList()).containsExactly(smoke);
+		assertThat(repo.searchNodes(TestPlanNodeCriteria.and(
+			TestPlanNodeCriteria.descendantOf(root),
+			TestPlanNodeCriteria.or(
+				TestPlanNodeCriteria.withNodeType(NodeType.TEST_CASE),
+				TestPlanNodeCriteria.withNodeType(NodeType.STEP)
+			),
+			TestPlanNodeCriteria.withTag("smoke")
+		)).toList()).containsExactlyInAnyOrder(smoke, step);
+		assertThat(repo.searchNodes(TestPlanNodeCriteria.and(
+			TestPlanNodeCriteria.and(TestPlanNodeCriteria.descendantOf(root), TestPlanNodeCriteria.all()),
+			TestPlanNodeCriteria.descendantOf(root, 2),
+			TestPlanNodeCriteria.not(TestPlanNodeCriteria.not(TestPlanNodeCriteria.withNodeType(NodeType.TEST_CASE)))
+		)).toList()).containsExactlyInAnyOrder(smoke, plain);
+		assertThat(repo.countNodes(TestPlanNodeCriteria.and(
+			TestPlanNodeCriteria.descendantOf(root),
+			TestPlanNodeCriteria.withNodeType(NodeType.TEST_CASE),
+			TestPlanNodeCriteria.withNodeType(NodeType.STEP)
+		))).isZero();
+	}
+
+	@Test
+	void searchNodes_descendantsOfPlanRoot() {
+		UUID root = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_PLAN).name("root"));
+		UUID feature = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_FEATURE).name("feature"));
+		UUID testCase = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("test case"));
+		UUID other = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("other"));
+		repo.attachChildNodeLast(root, feature);
+		repo.attachChildNodeLast(feature, testCase);
+		UUID projectID = repo.persistProject(new TestProject("MyProject", "desc", "MyOrg", List.of()));
+		TestPlan plan = repo.persistPlan(new TestPlan(null, projectID, Instant.now(), "rHash", "cHash", root, 1, null));
+		repo.assignPlanToNodes(plan.planID(), root);
+
+		assertThat(repo.searchNodes(TestPlanNodeCriteria.descendantOf(root)).toList())
+			.containsExactlyInAnyOrderElementsOf(repo.getNodeDescendants(root).toList())
+			.containsExactlyInAnyOrder(feature, testCase)
+			.doesNotContain(root, other);
+		assertThat(repo.countNodes(TestPlanNodeCriteria.and(
+			TestPlanNodeCriteria.descendantOf(root),
+			TestPlanNodeCriteria.withNodeType(NodeType.TEST_CASE)
+		))).isEqualTo(1);
+	}
+
 	@Test
 	void searchNodes_byProperty() {
 		TestPlanNode withProp = new TestPlanNode().nodeType(NodeType.TEST_CASE).name("with")
@@ -736,6 +911,22 @@ abstract class AbstractRepositoryTest {
 		assertThat(page2.get(1).createdAt()).isEqualTo(t1);
 	}
 
+	@Test
+	void listPlans_withCursor_continuesAfterTheGivenPlan() {
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		TestPlan p1 = persistPlanForProject("OrgA", "ProjA", now.minusSeconds(300));
+		TestPlan p2 = persistPlanForProject("OrgA", "ProjA", now.minusSeconds(200));
+		TestPlan p3 = persistPlanForProject("OrgA", "ProjA", now.minusSeconds(100));
+		TestPlan p4 = persistPlanForProject("OrgA", "ProjA", now);
+
+		// Desc order: [p4, p3, p2, p1]
+		assertThat(repo.listPlans("OrgA", "ProjA", false, new Page(p4.planID(), 0, 2)))
+			.extracting(TestPlan::planID).containsExactly(p3.planID(), p2.planID());
+		assertThat(repo.listPlans("OrgA", "ProjA", false, new Page(p3.planID(), 1, 0)))
+			.extracting(TestPlan::planID).containsExactly(p1.planID());
+		assertThat(repo.listPlans("OrgA", "ProjA", false, new Page(UUID.randomUUID(), 0, 0))).isEmpty();
+	}
+
 	@Test
 	void listPlans_resultContainsPlanIdAndProjectId() {
 		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
@@ -766,4 +957,144 @@ abstract class AbstractRepositoryTest {
 		assertThat(children).containsExactly(child1, child3, child2);
 	}
 
-}
\ No newline at end of file
+	@Test
+	void planValidation_isResolvedWithSetBasedQueries() {
+		UUID root = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_PLAN).name("root"));
+		UUID testCaseA = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("A"));
+		UUID testCaseB = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("B"));
+		UUID aggregator = repo.persistNode(new TestPlanNode().nodeType(NodeType.STEP_AGGREGATOR).name("agg"));
+		UUID emptyAggregator = repo.persistNode(new TestPlanNode().nodeType(NodeType.STEP_AGGREGATOR).name("empty"));
+		UUID step1 = repo.persistNode(new TestPlanNode().nodeType(NodeType.STEP).name("Given a").language("en"));
+		UUID step2 = repo.persistNode(new TestPlanNode().nodeType(NodeType.STEP).name("Given a").language("en"));
+		UUID step3 = repo.persistNode(new TestPlanNode().nodeType(NodeType.STEP).name("Given b"));
+		UUID virtualStep = repo.persistNode(new TestPlanNode().nodeType(NodeType.VIRTUAL_STEP).name("virtual"));
+		repo.attachChildNodeLast(root, testCaseA);
+		repo.attachChildNodeLast(root, testCaseB);
+		repo.attachChildNodeLast(testCaseA, aggregator);
+		repo.attachChildNodeLast(testCaseA, emptyAggregator);
+		repo.attachChildNodeLast(testCaseA, step3);
+		repo.attachChildNodeLast(aggregator, step1);
+		repo.attachChildNodeLast(aggregator, step2);
+		repo.attachChildNodeLast(testCaseB, virtualStep);
+		UUID projectID = repo.persistProject(new TestProject("MyProject", "desc", "MyOrg", List.of()));
+		TestPlan plan = repo.persistPlan(new TestPlan(null, projectID, Instant.now(), "rHash", "cHash", root, 2, null));
+		repo.assignPlanToNodes(plan.planID(), root);
+
+		assertThat(repo.getPlanAggregatorsWithoutSteps(plan.planID())).containsExactly(emptyAggregator);
+		assertThat(repo.getPlanTestCasesWithoutSteps(plan.planID())).containsExactly(testCaseB);
+		assertThat(repo.getDistinctPlanSteps(plan.planID()))
+			.containsExactlyInAnyOrder(new StepText("Given a", "en"), new StepText("Given b", null));
+
+		repo.setPlanValidation(
+			plan.planID(),
+			Map.of(testCaseB, "no steps"),
+			Map.of(new StepText("Given b", null), "unknown step")
+		);
+
+		assertThat(repo.getNodeData(testCaseB).orElseThrow().validationStatus()).isEqualTo(ValidationStatus.ERROR);
+		assertThat(repo.getNodeData(testCaseB).orElseThrow().validationMessage()).isEqualTo("no steps");
+		assertThat(repo.getNodeData(step3).orElseThrow().validationMessage()).isEqualTo("unknown step");
+		assertThat(repo.getNodeData(step1).orElseThrow().validationStatus()).isEqualTo(ValidationStatus.OK);
+		assertThat(repo.getNodeData(root).orElseThrow().validationStatus()).isEqualTo(ValidationStatus.OK);
+		repo.propagatePlanIssues(plan.planID());
+		assertThat(repo.getNodeData(testCaseA).orElseThrow().hasIssues()).isTrue();
+
+		// validating again resets the errors that are gone and keeps the ones that remain
+		repo.setPlanValidation(plan.planID(), Map.of(), Map.of(new StepText("Given b", null), "unknown step"));
+		assertThat(repo.getNodeData(testCaseB).orElseThrow().validationStatus()).isEqualTo(ValidationStatus.OK);
+		assertThat(repo.getNodeData(testCaseB).orElseThrow().validationMessage()).isNull();
+		assertThat(repo.getNodeData(step3).orElseThrow().validationStatus()).isEqualTo(ValidationStatus.ERROR);
+		assertThat(repo.getNodeData(step3).orElseThrow().validationMessage()).isEqualTo("unknown step");
+	}
+
+	@Test
+	void markNodeIssue_flagsAncestorsUpToTheFirstFlaggedOne() {
+		UUID root = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_PLAN).name("root"));
+		UUID feature = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_FEATURE).name("feature"));
+		UUID testCase = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("test case"));
+		UUID other = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("other"));
+		repo.attachChildNodeLast(root, feature);
+		repo.attachChildNodeLast(feature, testCase);
+		repo.attachChildNodeLast(feature, other);
+		UUID projectID = repo.persistProject(new TestProject("MyProject", "desc", "MyOrg", List.of()));
+		TestPlan plan = repo.persistPlan(new TestPlan(null, projectID, Instant.now(), "rHash", "cHash", root, 2, null));
+		repo.assignPlanToNodes(plan.planID(), root);
+
+		repo.markNodeIssue(testCase);
+		assertThat(repo.getNodeData(root).orElseThrow().hasIssues()).isTrue();
+		assertThat(repo.getNodeData(feature).orElseThrow().hasIssues()).isTrue();
+		assertThat(repo.getNodeData(other).orElseThrow().hasIssues()).isFalse();
+		repo.markNodeIssue(other);
+		assertThat(repo.getNodeData(other).orElseThrow().hasIssues()).isTrue();
+
+		// no node has its own validation error, so propagation clears every flag
+		repo.propagatePlanIssues(plan.planID());
+		assertThat(repo.planHasIssues(plan.planID())).isFalse();
+
+		// a node validation error flags its ancestors without a whole plan propagation
+		repo.setNodeValidation(other, ValidationStatus.ERROR, "error");
+		assertThat(repo.getNodeData(root).orElseThrow().hasIssues()).isTrue();
+		assertThat(repo.getNodeData(testCase).orElseThrow().hasIssues()).isFalse();
+		repo.propagatePlanIssues(plan.planID());
+		assertThat(repo.getNodeData(root).orElseThrow().hasIssues()).isTrue();
+		assertThat(repo.getNodeData(testCase).orElseThrow().hasIssues()).isFalse();
+	}
+
+	@Test
+	void assignTestCaseCountsToNodes_countsNodesAndPlanInOnePass() {
+		UUID root = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_PLAN).name("root"));
+		UUID featureA = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_FEATURE).name("feature A"));
+		UUID featureB = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_FEATURE).name("feature B"));
+		UUID testCaseA1 = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("test case A1"));
+		UUID testCaseA2 = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("test case A2"));
+		UUID testCaseB1 = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("test case B1"));
+		UUID step = repo.persistNode(new TestPlanNode().nodeType(NodeType.STEP).name("Given a"));
+		repo.attachChildNodeLast(root, featureA);
+		repo.attachChildNodeLast(root, featureB);
+		repo.attachChildNodeLast(featureA, testCaseA1);
+		repo.attachChildNodeLast(featureA, testCaseA2);
+		repo.attachChildNodeLast(featureB, testCaseB1);
+		repo.attachChildNodeLast(testCaseA1, step);
+		UUID projectID = repo.persistProject(new TestProject("MyProject", "desc", "MyOrg", List.of()));
+		TestPlan plan = repo.persistPlan(new TestPlan(null, projectID, Instant.now(), "rHash", "cHash", root, 0, null));
+		repo.assignPlanToNodes(plan.planID(), root);
+
+		assertThat(repo.assignTestCaseCountsToNodes(plan.planID())).isEqualTo(3);
+		assertThat(repo.getPlan(plan.planID()).orElseThrow().testCaseCount()).isEqualTo(3);
+		assertThat(repo.getNodeData(root).orElseThrow().testCaseCount()).isEqualTo(3);
+		assertThat(repo.getNodeData(featureA).orElseThrow().testCaseCount()).isEqualTo(2);
+		assertThat(repo.getNodeData(featureB).orElseThrow().testCaseCount()).isEqualTo(1);
+		assertThat(repo.getNodeData(testCaseA1).orElseThrow().testCaseCount()).isNull();
+		assertThat(repo.getNodeData(step).orElseThrow().testCaseCount()).isNull();
+	}
+
+	@Test
+	void getTagIndex_indexesTheTagsOfEveryPlanNode() {
+		UUID root = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_PLAN).name("root"));
+		UUID smoke = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("smoke")
+			.tags(new HashSet<>(Set.of("smoke"))));
+		UUID smokeAndSlow = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("smoke and slow")
+			.tags(new HashSet<>(Set.of("smoke", "slow"))).properties(new TreeMap<>(Map.of("env", "prod"))));
+		UUID plain = repo.persistNode(new TestPlanNode().nodeType(NodeType.TEST_CASE).name("plain"));
+		repo.attachChildNodeLast(root, smoke);
+		repo.attachChildNodeLast(root, smokeAndSlow);
+		repo.attachChildNodeLast(root, plain);
+		UUID projectID = repo.persistProject(new TestProject("MyProject", "desc", "MyOrg", List.of()));
+		TestPlan plan = repo.persistPlan(new TestPlan(null, projectID, Instant.now(), "rHash", "cHash", root, 3, null));
+		repo.assignPlanToNodes(plan.planID(), root);
+
+		PlanTagIndex index = repo.getTagIndex(plan.planID());
+
+		assertThat(index.size()).isEqualTo(4);
+		assertThat(index.tags()).containsExactlyInAnyOrder("smoke", "slow");
+		assertThat(index.contains(plain)).isTrue();
+		assertThat(index.hasTag(smoke, "smoke")).isTrue();
+		assertThat(index.hasTag(smoke, "slow")).isFalse();
+		assertThat(index.hasTag(smokeAndSlow, "slow")).isTrue();
+		assertThat(index.hasTag(root, "slow")).isFalse();
+
+		repo.addNodeTag(plain, "slow");
+		assertThat(repo.getTagIndex(plan.planID()).hasTag(plain, "slow")).isTrue();
+	}
+
+}
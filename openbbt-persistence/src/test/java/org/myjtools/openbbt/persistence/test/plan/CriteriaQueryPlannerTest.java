@@ -0,0 +1,100 @@
+package org.myjtools.openbbt.persistence.test.plan;
+
+import org.junit.jupiter.api.Test;
+import org.myjtools.openbbt.core.persistence.TestPlanNodeCriteria;
+import org.myjtools.openbbt.core.testplan.NodeType;
+import org.myjtools.openbbt.persistence.plan.CriteriaQueryPlanner;
+import org.myjtools.openbbt.persistence.plan.CriteriaQueryPlanner.QueryPlan;
+import org.myjtools.openbbt.persistence.plan.CriteriaQueryPlanner.Traversal;
+import java.util.Optional;
+import java.util.UUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.myjtools.openbbt.core.persistence.TestPlanNodeCriteria.*;
+
+class CriteriaQueryPlannerTest {
+
+	private final UUID planRoot = UUID.randomUUID();
+	private final UUID planID = UUID.randomUUID();
+	private final UUID node = UUID.randomUUID();
+	private final CriteriaQueryPlanner planner = new CriteriaQueryPlanner(
+		id -> id.equals(planRoot) ? Optional.of(planID) : Optional.empty()
+	);
+
+
+	@Test
+	void normalizeFlattensAndSimplifies() {
+		TestPlanNodeCriteria criteria = and(
+			all(),
+			and(withTag("a"), withTag("a")),
+			not(not(withTag("b")))
+		);
+		assertThat(CriteriaQueryPlanner.describe(CriteriaQueryPlanner.normalize(criteria)))
+			.isEqualTo("and(tag(a), tag(b))");
+		assertThat(CriteriaQueryPlanner.normalize(and(all(), withTag("a")))).isEqualTo(withTag("a"));
+		assertThat(CriteriaQueryPlanner.normalize(and(all(), all()))).isEqualTo(all());
+		assertThat(CriteriaQueryPlanner.normalize(or(withTag("a"), or(all(), withTag("b"))))).isEqualTo(all());
+	}
+
+
+	@Test
+	void normalizeMergesTraversalsFromTheSameAnchor() {
+		assertThat(CriteriaQueryPlanner.normalize(and(descendantOf(node), descendantOf(node, 3), descendantOf(node, 2))))
+			.isEqualTo(descendantOf(node, 2));
+		assertThat(CriteriaQueryPlanner.normalize(and(descendantOf(node), descendantOf(node))))
+			.isEqualTo(descendantOf(node));
+	}
+
+
+	@Test
+	void directChildrenArePreferredAsDrivingTraversal() {
+		UUID parent = UUID.randomUUID();
+		QueryPlan plan = planner.plan(and(descendantOf(node), childOf(parent), withTag("a")));
+		assertThat(plan.traversal()).isEqualTo(Traversal.CHILDREN);
+		assertThat(plan.anchor()).isEqualTo(parent);
+		assertThat(plan.tags()).containsExactly("a");
+		assertThat(plan.filters()).containsExactly(descendantOf(node));
+	}
+
+
+	@Test
+	void nodeTypesArePushedIntoTheTraversal() {
+		QueryPlan plan = planner.plan(and(
+			descendantOf(node),
+			or(withNodeType(NodeType.TEST_CASE), withNodeType(NodeType.TEST_FEATURE)),
+			not(withNodeType(NodeType.TEST_FEATURE))
+		));
+		assertThat(plan.traversal()).isEqualTo(Traversal.DESCENDANTS);
+		assertThat(plan.nodeTypes()).containsExactlyInAnyOrder(NodeType.TEST_CASE, NodeType.TEST_FEATURE);
+		assertThat(plan.maxNodeTypeValue()).isEqualTo(NodeType.TEST_CASE.value);
+		assertThat(plan.filters()).containsExactly(not(withNodeType(NodeType.TEST_FEATURE)));
+		assertThat(plan.explain()).contains("recursion limited to node types <= " + NodeType.TEST_CASE.value);
+	}
+
+
+	@Test
+	void contradictoryNodeTypesSelectNothing() {
+		QueryPlan plan = planner.plan(and(withNodeType(NodeType.TEST_CASE), withNodeType(NodeType.STEP)));
+		assertThat(plan.traversal()).isEqualTo(Traversal.NONE);
+		assertThat(plan.nodeTypes()).isEmpty();
+	}
+
+
+	@Test
+	void descendantsOfPlanRootUseThePlanIndex() {
+		QueryPlan plan = planner.plan(and(descendantOf(planRoot), withNodeType(NodeType.TEST_CASE)));
+		assertThat(plan.traversal()).isEqualTo(Traversal.PLAN_INDEX);
+		assertThat(plan.planID()).isEqualTo(planID);
+		assertThat(planner.plan(descendantOf(planRoot, 2)).traversal()).isEqualTo(Traversal.DESCENDANTS);
+	}
+
+
+	@Test
+	void criteriaWithoutTraversalAreFullScans() {
+		QueryPlan plan = planner.plan(or(withTag("a"), withProperty("env", null)));
+		assertThat(plan.traversal()).isEqualTo(Traversal.NONE);
+		assertThat(plan.nodeTypes()).isNull();
+		assertThat(plan.filters()).hasSize(1);
+		assertThat(plan.explain()).contains("filter: or(tag(a), property(env))");
+	}
+
+}
@@ -154,10 +154,9 @@ export async function openExecutionDetail(
             }
         } else if (msg.type === 'openAttachment') {
             try {
-                const data = await client.getAttachment(msg.executionId, msg.executionNodeId, msg.attachmentId);
-                const ext = contentTypeToExtension(data.contentType);
+                const ext = contentTypeToExtension(msg.contentType);
                 const tmpFile = path.join(os.tmpdir(), `openbbt-attachment-${msg.attachmentId}${ext}`);
-                fs.writeFileSync(tmpFile, Buffer.from(data.data, 'base64'));
+                await downloadAttachment(client, msg.executionId, msg.executionNodeId, msg.attachmentId, tmpFile);
                 await vscode.commands.executeCommand('vscode.open', vscode.Uri.file(tmpFile));
             } catch (err) {
                 vscode.window.showErrorMessage(`OpenBBT: failed to open attachment — ${err}`);
@@ -167,6 +166,34 @@ export async function openExecutionDetail(
 }
 
 
+/**
+ * Write an attachment to a file chunk by chunk, so large attachments are never
+ * held entirely in memory, either here or in the server.
+ */
+async function downloadAttachment(
+    client: OpenBBTClient,
+    executionId: string,
+    executionNodeId: string,
+    attachmentId: string,
+    file: string
+): Promise<void> {
+    const fd = fs.openSync(file, 'w');
+    try {
+        let offset = 0;
+        for (;;) {
+            const chunk = await client.getAttachmentChunk(executionId, executionNodeId, attachmentId, offset);
+            const bytes = Buffer.from(chunk.data, 'base64');
+            fs.writeSync(fd, bytes);
+            offset = chunk.offset + bytes.length;
+            if (chunk.eof || bytes.length === 0) {
+                break;
+            }
+        }
+    } finally {
+        fs.closeSync(fd);
+    }
+}
+
 async function resolvePlanNodeRoot(client: OpenBBTClient, execution: ExecutionListItem): Promise<string> {
     if (execution.planNodeRoot) {
         return execution.planNodeRoot;
@@ -1,7 +1,7 @@
 import * as fs from 'fs';
 import * as path from 'path';
 import * as vscode from 'vscode';
-import { ExecutionListItem, OpenBBTClient, PlanListItem } from './openbbtClient';
+import { ExecutionListItem, ExecutionProgress, OpenBBTClient, PlanListItem } from './openbbtClient';
 import { ISSUE_URI_SCHEME } from './testPlanProvider';
 
 // ---------------------------------------------------------------------------
@@ -117,11 +117,19 @@ export class ExecutionProvider implements vscode.TreeDataProvider<ExecutionItem>
     /** executionId → number of poll attempts so far */
     private _pollAttempts = new Map<string, number>();
     private _pollTimer: ReturnType<typeof setInterval> | undefined;
+    /** whether the server notifies the progress, so polling only expires stale executions */
+    private _progressNotified = false;
+    /** planId → plan item last shown, so progress only refreshes the affected plans */
+    private _planItems = new Map<string, ExecutionItem>();
+    /** executionId → execution item last shown */
+    private _executionItems = new Map<string, ExecutionItem>();
 
     constructor(private readonly workspacePath: string | undefined) {}
 
     setClient(client: OpenBBTClient): void {
         this.client = client;
+        this._progressNotified = false;
+        client.onProgress = (progress) => this._onProgress(progress);
     }
 
     refresh(expandPlans = false): void {
@@ -158,6 +166,43 @@ export class ExecutionProvider implements vscode.TreeDataProvider<ExecutionItem>
 
     // --- Private ---
 
+    /**
+     * Apply the changes of a progress notification. The tree only shows executions, so node
+     * changes are ignored, and only the plans whose executions have started or finished since
+     * they were loaded are refreshed; the whole tree is refreshed only for unknown plans.
+     */
+    private _onProgress(progress: ExecutionProgress): void {
+        this._progressNotified = true;
+        const changedPlans = new Set<ExecutionItem>();
+        let unknownPlan = false;
+        for (const ex of progress.executions) {
+            if (ex.state === 'FINISHED') {
+                this._pendingExecs.delete(ex.executionId);
+                this._pollAttempts.delete(ex.executionId);
+            }
+            const shown = this._executionItems.get(ex.executionId);
+            if (ex.state === 'RUNNING' && shown && shown.execution?.result === undefined) {
+                continue;
+            }
+            const planItem = ex.planId ? this._planItems.get(ex.planId) : undefined;
+            if (planItem) {
+                changedPlans.add(planItem);
+            } else {
+                unknownPlan = true;
+            }
+        }
+        if (unknownPlan) {
+            this._onDidChangeTreeData.fire();
+        } else {
+            for (const planItem of changedPlans) {
+                this._onDidChangeTreeData.fire(planItem);
+            }
+        }
+        if (this._pollTimer && this._pendingExecs.size === 0) {
+            this._stopPolling();
+        }
+    }
+
     private _pollTick(): void {
         if (this._pendingExecs.size === 0) {
             this._stopPolling();
@@ -175,7 +220,9 @@ export class ExecutionProvider implements vscode.TreeDataProvider<ExecutionItem>
         }
 
         // Refresh tree — loadExecutions will detect completed executions
-        this._onDidChangeTreeData.fire();
+        if (!this._progressNotified) {
+            this._onDidChangeTreeData.fire();
+        }
 
         if (this._pendingExecs.size === 0) {
             this._stopPolling();
@@ -215,11 +262,12 @@ export class ExecutionProvider implements vscode.TreeDataProvider<ExecutionItem>
             const plans: PlanListItem[] = await this.client.listPlansByProject(organization, projectName, 0, 0, true);
             const expand = this._expandOnNextLoad || this._pendingExecs.size > 0;
             this._expandOnNextLoad = false;
+            this._planItems.clear();
             return plans.map(plan => {
                 const parts: string[] = [`${plan.testCaseCount ?? 0}`];
                 if (plan.hasIssues) { parts.push('⚠ issues'); }
                 parts.push(plan.testCases ? plan.testCases : 'all suites');
-                return new ExecutionItem(
+                const item = new ExecutionItem(
                     'plan',
                     formatDate(plan.createdAt),
                     expand ? vscode.TreeItemCollapsibleState.Expanded : vscode.TreeItemCollapsibleState.Collapsed,
@@ -228,6 +276,8 @@ export class ExecutionProvider implements vscode.TreeDataProvider<ExecutionItem>
                     parts.join(' | '),
                     plan.hasIssues,
                 );
+                this._planItems.set(plan.planId, item);
+                return item;
             });
         } catch {
             return [];
@@ -259,7 +309,7 @@ export class ExecutionProvider implements vscode.TreeDataProvider<ExecutionItem>
                     parts.push(`${ex.testPassedCount} / ${total}`);
                 }
                 if (ex.profile) { parts.push(`profile: ${ex.profile}`); }
-                return new ExecutionItem(
+                const item = new ExecutionItem(
                     'execution',
                     formatDate(ex.executedAt),
                     vscode.TreeItemCollapsibleState.None,
@@ -267,6 +317,8 @@ export class ExecutionProvider implements vscode.TreeDataProvider<ExecutionItem>
                     ex,
                     parts.length > 0 ? parts.join(' | ') : undefined,
                 );
+                this._executionItems.set(ex.executionId, item);
+                return item;
             });
         } catch {
             return [];
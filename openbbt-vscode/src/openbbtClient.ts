@@ -27,6 +27,7 @@ export interface ExecutionListItem {
     testErrorCount?: number;
     testFailedCount?: number;
     profile?: string;
+    rerunOf?: string;
 }
 
 export interface ExecNodeInfo {
@@ -49,16 +50,32 @@ export interface AttachmentMeta {
     executionId: string;
     executionNodeId: string;
     contentType: string;
+    size?: number;
 }
 
 export interface AttachmentData extends AttachmentMeta {
     data: string; // base64
 }
 
+export interface AttachmentChunk {
+    attachmentId: string;
+    contentType: string;
+    size: number;
+    offset: number;
+    length: number;
+    eof: boolean;
+    data: string; // base64
+}
+
 export interface ExecResult {
     executionId: string;
     planId: string;
     result?: string;
+    rerunOf?: string;
+    effectiveResult?: string;
+    effectivePassedCount?: number;
+    effectiveErrorCount?: number;
+    effectiveFailedCount?: number;
 }
 
 export interface NodeDocument {
@@ -86,11 +103,72 @@ export interface NodeInfo {
     dataTable: string[][] | null;
 }
 
+/** A page of a list: skips `offset` items after the item with id `after`, then takes up to `limit` (0 = all) */
+export interface PageParams {
+    offset?: number;
+    limit?: number;
+    after?: string;
+}
+
 export interface ContributorInfo {
     type: string;
     implementations: string[];
 }
 
+export interface CleanupProgress {
+    taskId: string;
+    description: string;
+    state: 'PENDING' | 'RUNNING' | 'COMPLETED' | 'FAILED';
+    completedItems: number;
+    totalItems: number;
+    deletedRows: number;
+    error: string | null;
+}
+
+export interface TestCaseStats {
+    testCaseKey: string;
+    name: string | null;
+    planNodeId: string | null;
+    executionCount: number;
+    lastResult: string | null;
+    lastExecutedAt: string | null;
+    trend: string;
+    failureRate: number;
+    flipCount: number;
+    recentFlips: number;
+    durationAvgMs: number;
+    durationP95Ms: number;
+}
+
+export interface ExecutionProgressItem {
+    executionId: string;
+    planId: string | null;
+    profile: string | null;
+    state: 'RUNNING' | 'FINISHED';
+    result?: string | null;
+    startedAt?: string | null;
+    finishedAt?: string | null;
+}
+
+export interface ExecutionNodeProgressItem {
+    executionId: string;
+    executionNodeId: string;
+    planNodeId: string | null;
+    state: 'RUNNING' | 'FINISHED';
+    result?: string | null;
+    startedAt?: string | null;
+    finishedAt?: string | null;
+}
+
+/**
+ * Changes of the executions in progress since the previous `executions/progress`
+ * notification; each execution and node appears once, with its latest state.
+ */
+export interface ExecutionProgress {
+    executions: ExecutionProgressItem[];
+    nodes: ExecutionNodeProgressItem[];
+}
+
 type PendingRequest = {
     resolve: (result: unknown) => void;
     reject: (err: Error) => void;
@@ -110,6 +188,7 @@ export class OpenBBTClient {
     private readonly executable: string;
     private readonly log: (msg: string) => void;
     onConnected: (() => void) | undefined = undefined;
+    onProgress: ((progress: ExecutionProgress) => void) | undefined = undefined;
 
     constructor(executable: string, cwd: string, log: (msg: string) => void = () => {}) {
         this.executable = executable;
@@ -168,24 +247,24 @@ export class OpenBBTClient {
         return this.call('browse/node', { nodeId }) as Promise<NodeInfo>;
     }
 
-    async getChildren(nodeId: string): Promise<NodeInfo[]> {
-        return this.call('browse/children', { nodeId }) as Promise<NodeInfo[]>;
+    async getChildren(nodeId: string, page: PageParams = {}, signal?: AbortSignal): Promise<NodeInfo[]> {
+        return this.call('browse/children', { nodeId, ...page }, signal) as Promise<NodeInfo[]>;
     }
 
     async getPlan(planId: string): Promise<{ planId: string; createdAt: string; planNodeRoot: string; organization?: string; project?: string; description?: string; suites?: string }> {
         return this.call('plans/get', { planId }) as Promise<{ planId: string; createdAt: string; planNodeRoot: string; organization?: string; project?: string; description?: string; suites?: string }>;
     }
 
-    async listPlansByProject(organization: string, project: string, offset = 0, max = 0, withExecutions = false): Promise<PlanListItem[]> {
-        return this.call('plans/list', { organization, project, offset, max, withExecutions }) as Promise<PlanListItem[]>;
+    async listPlansByProject(organization: string, project: string, offset = 0, max = 0, withExecutions = false, after?: string): Promise<PlanListItem[]> {
+        return this.call('plans/list', { organization, project, offset, max, withExecutions, after }) as Promise<PlanListItem[]>;
     }
 
-    async listExecutionsByPlan(planId: string, offset = 0, max = 0): Promise<ExecutionListItem[]> {
-        return this.call('executions/list', { planId, offset, max }) as Promise<ExecutionListItem[]>;
+    async listExecutionsByPlan(planId: string, offset = 0, max = 0, after?: string): Promise<ExecutionListItem[]> {
+        return this.call('executions/list', { planId, offset, max, after }) as Promise<ExecutionListItem[]>;
     }
 
     async deleteUnexecutedPlans(): Promise<void> {
-        await this.call('plans/deleteUnexecuted', {});
+        await this.awaitCleanup(await this.call('plans/deleteUnexecuted', {}) as CleanupProgress);
     }
 
     async exec(detach = false, suites?: string[], profile?: string): Promise<ExecResult> {
@@ -199,6 +278,10 @@ export class OpenBBTClient {
         return this.call('exec', { detach, rerun: executionId }) as Promise<ExecResult>;
     }
 
+    async rerunFailed(executionId: string, detach = false): Promise<ExecResult> {
+        return this.call('exec', { detach, rerunFailed: executionId }) as Promise<ExecResult>;
+    }
+
     async getExecutionNode(executionId: string, planNodeId: string): Promise<ExecNodeInfo | null> {
         try {
             return await this.call('executions/node', { executionId, planNodeId }) as ExecNodeInfo;
@@ -207,6 +290,14 @@ export class OpenBBTClient {
         }
     }
 
+    async listTestCaseStats(planId: string, ranking: 'flaky' | 'slowest' = 'flaky', max = 0): Promise<TestCaseStats[]> {
+        return this.call('stats/testCases', { planId, ranking, max }) as Promise<TestCaseStats[]>;
+    }
+
+    async getTestCaseStats(planId: string, planNodeId: string): Promise<TestCaseStats | null> {
+        return this.call('stats/testCase', { planId, planNodeId }) as Promise<TestCaseStats | null>;
+    }
+
     async listAttachments(executionId: string, planNodeId: string): Promise<AttachmentMeta[]> {
         return this.call('executions/attachments', { executionId, planNodeId }) as Promise<AttachmentMeta[]>;
     }
@@ -215,12 +306,38 @@ export class OpenBBTClient {
         return this.call('executions/attachment', { executionId, executionNodeId, attachmentId }) as Promise<AttachmentData>;
     }
 
+    async getAttachmentChunk(
+        executionId: string,
+        executionNodeId: string,
+        attachmentId: string,
+        offset: number,
+        length?: number
+    ): Promise<AttachmentChunk> {
+        return this.call(
+            'executions/attachmentChunk',
+            { executionId, executionNodeId, attachmentId, offset, length }
+        ) as Promise<AttachmentChunk>;
+    }
+
     async deleteExecution(executionId: string): Promise<void> {
-        await this.call('executions/delete', { executionId });
+        await this.awaitCleanup(await this.call('executions/delete', { executionId }) as CleanupProgress);
     }
 
     async deletePlan(planId: string): Promise<void> {
-        await this.call('plans/delete', { planId });
+        await this.awaitCleanup(await this.call('plans/delete', { planId }) as CleanupProgress);
+    }
+
+    /**
+     * Deletions run in the background on the server side; poll the task until it finishes.
+     */
+    private async awaitCleanup(progress: CleanupProgress): Promise<void> {
+        while (progress.state === 'PENDING' || progress.state === 'RUNNING') {
+            await new Promise(resolve => setTimeout(resolve, 500));
+            progress = await this.call('cleanup/status', { taskId: progress.taskId }) as CleanupProgress;
+        }
+        if (progress.state === 'FAILED') {
+            throw new Error(progress.error ?? 'cleanup task failed');
+        }
     }
 
     async shutdown(): Promise<void> {
@@ -238,20 +355,33 @@ export class OpenBBTClient {
 
     // --- Internal ---
 
-    private call(method: string, params: object): Promise<unknown> {
+    /**
+     * Send a request. The server processes requests concurrently, so responses may arrive
+     * in any order; aborting the signal asks the server to cancel the request.
+     */
+    private call(method: string, params: object, signal?: AbortSignal): Promise<unknown> {
         if (!this.connected) {
             this.connect();
         }
         return new Promise((resolve, reject) => {
             const id = this.nextId++;
             this.pending.set(id, { resolve, reject });
-            const body = JSON.stringify({ jsonrpc: '2.0', id, method, params });
-            const header = `Content-Length: ${Buffer.byteLength(body, 'utf8')}\r\n\r\n`;
+            this.send({ jsonrpc: '2.0', id, method, params });
             this.log(`[serve →] ${method} (id=${id})`);
-            this.process!.stdin.write(header + body, 'utf8');
+            signal?.addEventListener('abort', () => {
+                if (this.pending.has(id)) {
+                    this.send({ jsonrpc: '2.0', method: '$/cancelRequest', params: { id } });
+                }
+            }, { once: true });
         });
     }
 
+    private send(message: object): void {
+        const body = JSON.stringify(message);
+        const header = `Content-Length: ${Buffer.byteLength(body, 'utf8')}\r\n\r\n`;
+        this.process!.stdin.write(header + body, 'utf8');
+    }
+
     private onData(chunk: Buffer): void {
         this.buffer = Buffer.concat([this.buffer, chunk]);
         while (true) {
@@ -288,7 +418,7 @@ export class OpenBBTClient {
     }
 
     private handleMessage(body: string): void {
-        let msg: { id?: number; result?: unknown; error?: { code: number; message: string } };
+        let msg: { id?: number; method?: string; params?: unknown; result?: unknown; error?: { code: number; message: string } };
         try {
             msg = JSON.parse(body);
         } catch {
@@ -296,7 +426,10 @@ export class OpenBBTClient {
             return;
         }
         if (msg.id === undefined) {
-            return; // notification — ignore
+            if (msg.method === 'executions/progress') {
+                this.onProgress?.(msg.params as ExecutionProgress);
+            }
+            return; // other notifications — ignore
         }
         this.log(`[serve ←] response id=${msg.id} ${msg.error ? 'ERROR: ' + msg.error.message : 'OK'}`);
         const pending = this.pending.get(msg.id);
@@ -26,6 +26,7 @@ import java.util.Map;
 public class DbStepProvider implements StepProvider {
 
 	private static final Log log = Log.of("plugins.db");
+	private static final String PLUGIN = "db";
 
 	@Inject
 	private ResourceFinder resourceFinder;
@@ -137,7 +138,7 @@ public class DbStepProvider implements StepProvider {
 		String tableContent = engine.printTable(alias, table);
 		log.debug("{}\n{}", table, tableContent);
 		ExecutionContext.current()
-			.storeAttachment(tableContent.getBytes(StandardCharsets.UTF_8), "csv");
+			.captureAttachment(PLUGIN, tableContent.getBytes(StandardCharsets.UTF_8), "csv");
 	}
 
 }
@@ -37,7 +37,10 @@ import static org.myjtools.openbbt.plugins.gherkin.GherkinConstants.*;
  * <p>Tags, properties (extracted from Gherkin comments matching
  * {@code # key: value}), identifiers, and source locations are propagated to the
  * resulting plan nodes. A {@link TagExpression} filter is applied so that only
- * scenarios matching the expression are included in the output.</p>
+ * scenarios matching the expression are included in the output. The expression is
+ * checked in memory before a scenario is persisted, so filtered-out scenarios are never
+ * written; inherited tags are read back from the repository only for parents not built
+ * by this assembler.</p>
  *
  * @author Luis Iñesta Gelabert - luiinge@gmail.com
  * @see GherkinSuiteAssembler
@@ -55,6 +58,8 @@ public class FeaturePlanAssembler {
 	private final TagExpression tagExpression;
 	private final TestPlanRepository repository;
 	private final Map<UUID, Object> underlyingModels = new HashMap<>();
+	// data of the nodes acting as parents, so inherited tags and properties are not read back
+	private final Map<UUID, TestPlanNode> parentNodes = new HashMap<>();
 
 
 
@@ -120,20 +125,19 @@ public class FeaturePlanAssembler {
 
 		var id = repository.persistNode(nodeData);
 		underlyingModels.put(id, feature);
+		parentNodes.put(id, nodeData);
 
+		List<UUID> children = new ArrayList<>();
 		for (var child : feature.children()) {
 			if (child instanceof Scenario scenario) {
-				scenarioNode(scenario,id).ifPresent( scenarioNode ->
-					repository.attachChildNodeLast(id, scenarioNode)
-				);
+				scenarioNode(scenario,id).ifPresent(children::add);
 			} else if (child instanceof ScenarioOutline scenarioOutline) {
-				scenarioOutlineNode(scenarioOutline,id).ifPresent( scenarioOutlineNode ->
-					 repository.attachChildNodeLast(id, scenarioOutlineNode)
-				);
+				scenarioOutlineNode(scenarioOutline,id).ifPresent(children::add);
 			}
 		}
+		children.forEach(child -> repository.attachChildNodeLast(id, child));
 
-		if (repository.countNodeChildren(id) == 0) {
+		if (children.isEmpty()) {
 			repository.deleteNode(id);
 			underlyingModels.remove(id);
 			return Optional.empty();
@@ -167,8 +171,8 @@ public class FeaturePlanAssembler {
 		String keyword,
 		UUID parent
 	) {
-		boolean include = tagExpression.evaluate(tags(parent, scenarioDefinition));
-		if (!include) {
+		Set<String> tags = tags(parent, scenarioDefinition);
+		if (!tagExpression.evaluate(tags)) {
 			return Optional.empty();
 		}
 		var data = new TestPlanNode(NodeType.TEST_CASE)
@@ -178,13 +182,14 @@ public class FeaturePlanAssembler {
 			.display(identifier != null ? "{identifier} - {name}" : "{name}")
 			.keyword(keyword)
 			.description(scenarioDefinition.description())
-			.tags(tags(parent,scenarioDefinition))
+			.tags(tags)
 			.source(nodeLocation(scenarioDefinition))
 			.addProperties(propertiesFromComments(scenarioDefinition,parent))
 			.addProperty(GHERKIN_TYPE, GHERKIN_TYPE_SCENARIO);
 
 		var id = repository.persistNode(data);
 		underlyingModels.put(id,scenarioDefinition);
+		parentNodes.put(id, data);
 
 		var backgroundNodeId = createBackgroundStepsNode(id, null);
 		if (backgroundNodeId != null) {
@@ -197,9 +202,9 @@ public class FeaturePlanAssembler {
 
 
 	private Optional<UUID> scenarioOutlineNode(ScenarioOutline scenarioOutline, UUID parent) {
-
-		boolean include = tagExpression.evaluate(tags(parent, scenarioOutline));
-		if (!include) {
+		// the examples inherit the tags of the outline, so they all match or none does
+		Set<String> tags = tags(parent, scenarioOutline);
+		if (!tagExpression.evaluate(tags)) {
 			return Optional.empty();
 		}
 		var node = new TestPlanNode(NodeType.TEST_FEATURE)
@@ -209,7 +214,7 @@ public class FeaturePlanAssembler {
 			.language(feature.language())
 			.keyword(scenarioOutline.keyword())
 			.description(scenarioOutline.description())
-			.tags(tags(parent,scenarioOutline))
+			.tags(tags)
 			.source(nodeLocation(scenarioOutline))
 			.addProperties(propertiesFromComments(scenarioOutline,parent))
 			.addProperty(GHERKIN_TYPE, GHERKIN_TYPE_SCENARIO_OUTLINE);
@@ -218,6 +223,7 @@ public class FeaturePlanAssembler {
 
 		var id = repository.persistNode(node);
 		underlyingModels.put(id,scenarioOutline);
+		parentNodes.put(id, node);
 
 		scenarioOutline.examples().stream()
 			.flatMap(examples -> createScenariosFromExamples(scenarioOutline, examples, id).stream())
@@ -294,7 +300,7 @@ public class FeaturePlanAssembler {
 			if (scenarioID.isEmpty()) {
 				return scenarioID;
 			}
-			repository.getNodeChildren(scenarioID.orElseThrow()).forEach(scenarioChildID -> {
+			repository.getNodeChildren(scenarioID.orElseThrow()).toList().forEach(scenarioChildID -> {
 				var scenarioChild = repository.getNodeData(scenarioChildID).orElseThrow();
 				if (scenarioChild.name() != null) {
 					scenarioChild.name(substitution.apply(scenarioChild.name()));
@@ -312,7 +318,10 @@ public class FeaturePlanAssembler {
 
 
 	private Map<String,String> propertiesFromComments(Commented node, UUID nodeID) {
-		SortedMap<String,String> properties = new TreeMap<>(repository.getNodeProperties(nodeID));
+		TestPlanNode parent = parentNodes.get(nodeID);
+		SortedMap<String,String> properties = new TreeMap<>(
+			parent != null ? parent.properties() : repository.getNodeProperties(nodeID)
+		);
 		properties.putAll(propertiesFromComments(node));
 		return properties;
 	}
@@ -336,7 +345,8 @@ public class FeaturePlanAssembler {
 
 
 	private Set<String> tags(UUID nodeID, Tagged node) {
-		Set<String> result = new HashSet<>(repository.getNodeTags(nodeID));
+		TestPlanNode parent = parentNodes.get(nodeID);
+		Set<String> result = new HashSet<>(parent != null ? parent.tags() : repository.getNodeTags(nodeID));
 		result.addAll(tags(node));
 		return result;
 	}
@@ -129,13 +129,13 @@ public class GherkinSuiteAssembler implements SuiteAssembler {
 			TestPlanNodeCriteria.descendantOf(root),
 			TestPlanNodeCriteria.withNodeType(NodeType.TEST_CASE),
 			TestPlanNodeCriteria.withTag(definitionTag)
-		)).forEach(definitionTestCase -> redefine(root,definitionTestCase));
+		)).toList().forEach(definitionTestCase -> redefine(root,definitionTestCase));
 
 		repository.searchNodes(TestPlanNodeCriteria.and(
 			TestPlanNodeCriteria.descendantOf(root),
 			TestPlanNodeCriteria.withProperty(GHERKIN_TYPE, GHERKIN_TYPE_FEATURE),
 			TestPlanNodeCriteria.withTag(implementationTag)
-		)).forEach(implementationFeature -> repository.deleteNode(implementationFeature));
+		)).toList().forEach(implementationFeature -> repository.deleteNode(implementationFeature));
 
 		repository.searchNodes(TestPlanNodeCriteria.and(
 			TestPlanNodeCriteria.descendantOf(root),
@@ -143,7 +143,7 @@ public class GherkinSuiteAssembler implements SuiteAssembler {
 				TestPlanNodeCriteria.withTag(definitionTag),
 				TestPlanNodeCriteria.withTag(implementationTag)
 			)
-		)).forEach(it -> {
+		)).toList().forEach(it -> {
 			repository.removeNodeTag(it, implementationTag);
 			repository.removeNodeTag(it, definitionTag);
 		});
@@ -170,7 +170,7 @@ public class GherkinSuiteAssembler implements SuiteAssembler {
 			TestPlanNodeCriteria.descendantOf(root),
 			TestPlanNodeCriteria.withTag(implementationTag),
 			TestPlanNodeCriteria.withProperty(GHERKIN_TYPE, GHERKIN_TYPE_SCENARIO_OUTLINE)
-		)).forEach(scenarioOutline ->
+		)).toList().forEach(scenarioOutline ->
 			repository.getNodeChildren(scenarioOutline).toList()
 				.forEach(child -> repository.deleteNode(child))
 		);
@@ -201,7 +201,7 @@ public class GherkinSuiteAssembler implements SuiteAssembler {
 			TestPlanNodeCriteria.withTag(definitionTag),
 			TestPlanNodeCriteria.withNodeType(NodeType.TEST_CASE),
 			TestPlanNodeCriteria.withField("identifier", null)
-		)).forEach(it -> repository.deleteNode(it));
+		)).toList().forEach(it -> repository.deleteNode(it));
 	}
 
 
@@ -211,7 +211,7 @@ public class GherkinSuiteAssembler implements SuiteAssembler {
 			TestPlanNodeCriteria.descendantOf(root),
 			TestPlanNodeCriteria.withTag(implementationTag),
 			TestPlanNodeCriteria.withProperty(GHERKIN_TYPE, GHERKIN_TYPE_SCENARIO_OUTLINE)
-		)).forEach(scenarioOutline -> fillImplementationScenarioOutline(root, scenarioOutline, tagExpression));
+		)).toList().forEach(scenarioOutline -> fillImplementationScenarioOutline(root, scenarioOutline, tagExpression));
 	}
 
 
@@ -221,13 +221,17 @@ public class GherkinSuiteAssembler implements SuiteAssembler {
 		UUID impFeature = repository.getParentNode(impScenarioOutline).orElseThrow();
 		String identifier = repository.getNodeField(impScenarioOutline, "identifier").orElseThrow().toString();
 
-		UUID defScenarioOutline = repository.searchNodes(TestPlanNodeCriteria.and(
+		Optional<UUID> defScenarioOutlineID;
+		try (Stream<UUID> defScenarioOutlines = repository.searchNodes(TestPlanNodeCriteria.and(
 			TestPlanNodeCriteria.descendantOf(root),
 			TestPlanNodeCriteria.withNodeType(NodeType.TEST_FEATURE),
 			TestPlanNodeCriteria.withTag(definitionTag),
 			TestPlanNodeCriteria.withProperty(GHERKIN_TYPE, GHERKIN_TYPE_SCENARIO_OUTLINE),
 			TestPlanNodeCriteria.withField("identifier",identifier)
-		)).findFirst().orElseThrow(
+		))) {
+			defScenarioOutlineID = defScenarioOutlines.findFirst();
+		}
+		UUID defScenarioOutline = defScenarioOutlineID.orElseThrow(
 			() -> new OpenBBTException(
 				"There is no definition feature with name {}",
 				repository.getNodeField(impFeature, "name").orElseThrow()
@@ -310,10 +314,14 @@ public class GherkinSuiteAssembler implements SuiteAssembler {
 
 
 	private void moveBackgroundToOtherTestCase(UUID origin, UUID target) {
-		repository.searchNodes(TestPlanNodeCriteria.and(
+		Optional<UUID> background;
+		try (Stream<UUID> backgrounds = repository.searchNodes(TestPlanNodeCriteria.and(
 			TestPlanNodeCriteria.childOf(origin),
 			TestPlanNodeCriteria.withProperty(GHERKIN_TYPE, GHERKIN_TYPE_BACKGROUND)
-		)).findFirst().ifPresent(originBackground -> {
+		))) {
+			background = backgrounds.findFirst();
+		}
+		background.ifPresent(originBackground -> {
 			repository.detachChildNode(origin, originBackground);
 			repository.attachChildNodeFirst(target, originBackground); // background always in first
 			repository.updateNodeField(originBackground, "name", "<definition>");
@@ -337,17 +345,20 @@ public class GherkinSuiteAssembler implements SuiteAssembler {
 	private void deleteBackground(UUID defTestCase) {
 		repository.getNodeChildren(defTestCase)
 			.filter(child -> repository.existsNodeProperty(child, GHERKIN_TYPE, GHERKIN_TYPE_BACKGROUND))
+			.toList()
 			.forEach( child -> repository.deleteNode(child) );
 	}
 
 
 	private Optional<UUID> implementationTestCase(UUID root, UUID definitionTestCase) {
-		return repository.searchNodes(TestPlanNodeCriteria.and(
+		try (Stream<UUID> testCases = repository.searchNodes(TestPlanNodeCriteria.and(
 			TestPlanNodeCriteria.descendantOf(root),
 			TestPlanNodeCriteria.withNodeType(NodeType.TEST_CASE),
 			TestPlanNodeCriteria.withTag(implementationTag),
 			TestPlanNodeCriteria.withField("identifier",repository.getNodeField(definitionTestCase,"identifier").orElseThrow()))
-		).findFirst();
+		)) {
+			return testCases.findFirst();
+		}
 	}
 
 
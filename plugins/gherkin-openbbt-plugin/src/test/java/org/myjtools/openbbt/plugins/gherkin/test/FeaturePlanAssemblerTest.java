@@ -9,11 +9,15 @@ import org.myjtools.openbbt.core.persistence.TestPlanRepository;
 import org.myjtools.openbbt.core.persistence.TestPlanRepositoryWriter;
 import org.myjtools.openbbt.persistence.DataSourceProvider;
 import org.myjtools.openbbt.persistence.plan.JooqPlanRepository;
+import org.myjtools.openbbt.core.testplan.NodeType;
 import org.myjtools.openbbt.core.testplan.TagExpression;
+import org.myjtools.openbbt.core.testplan.TestPlanNode;
 import org.myjtools.openbbt.plugins.gherkin.FeaturePlanAssembler;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -109,6 +113,22 @@ class FeaturePlanAssemblerTest {
 
 	}
 
+	@Test
+	void testScenariosFilteredOutByTagsAreNotPersisted() throws IOException {
+		List<String> persistedTestCases = new ArrayList<>();
+		TestPlanRepository repository = new JooqPlanRepository(DataSourceProvider.hsqldb(tempDir.resolve("testdb"))) {
+			@Override
+			public UUID persistNode(TestPlanNode node) {
+				if (node.nodeType() == NodeType.TEST_CASE) {
+					persistedTestCases.add(node.name());
+				}
+				return super.persistNode(node);
+			}
+		};
+		assertThat(assembleFeature(repository, "ScenarioA")).isPresent();
+		assertThat(persistedTestCases).containsExactly("Test Scenario");
+	}
+
 	@Test
 	void testAssembleScenarioWithInvalidTags() throws IOException {
 		TestPlanRepository repository = new JooqPlanRepository(DataSourceProvider.hsqldb(tempDir.resolve("testdb")));
@@ -21,6 +21,8 @@ import org.myjtools.openbbt.plugins.rest.jdk.JdkHttpEngine;
 )
 public class RestStepProvider implements StepProvider  {
 
+	private static final String PLUGIN = "rest";
+
 	@Inject
 	ResourceFinder resourceFinder;
 
@@ -144,7 +146,7 @@ public class RestStepProvider implements StepProvider  {
 
 	private void storeHttpExchange() {
 		String content = restEngine.requestRaw() + "\n\n" + restEngine.responseRaw();
-		ExecutionContext.current().storeAttachment(content.getBytes(), "text/plain");
+		ExecutionContext.current().captureAttachment(PLUGIN, content.getBytes(), "text/plain");
 	}
 
 	protected String interpolate(String text) {